@@ -14,6 +14,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
 import org.zeromq.ZMQ.Socket;
 
 import java.io.FileWriter;
@@ -21,6 +22,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -34,30 +36,60 @@ import java.util.concurrent.atomic.AtomicLong;
  * 
  * CASOS SOPORTADOS:
  * - Comunicación asíncrona con DTI
- * - Reset de semestre automático
+ * - Solicitudes de varios semestres a la vez (el DTI lleva un pool por semestre)
  * - Tolerancia a fallas del servidor
  * - Distribución en múltiples máquinas
  * - Integración completa con entidades existentes
+ * 
+ * CORRELACIÓN:
+ * - Cada mensaje viaja como [vacío][idSolicitud][payload] y el DTI devuelve
+ *   [vacío][idSolicitud][respuesta]; la respuesta completa el future de ese id
+ * - Un único hilo de E/S es dueño del socket DEALER: los demás hilos le
+ *   encargan los envíos por una cola y lo despiertan por un canal inproc
+ * - Toda llamada (solicitud, confirmación, reset, ping, comando) devuelve un
+ *   future correlacionado; los métodos síncronos solo esperan ese future
  */
 public class ClienteAsincrono implements AutoCloseable {
     
+    private static final byte[] VACIO = new byte[0];
+    // Espera máxima del poller del hilo de E/S (revisión de heartbeat)
+    private static final int INTERVALO_ES_MS = 100;
+    private static final long TIMEOUT_PING_MS = 1000;
+    private static final long TIMEOUT_SIMULACION_FALLA_MS = 15000;
+    
     // Configuración del cliente
     private final Facultad facultad;
     private final ConfiguracionAsincrono configuracion;
     private final ZContext contexto;
     private final Socket cliente;
     private final String identificadorFacultad;
+    private final String endpointServidor;
+    // Conmutación por error: con respaldo configurado, el silencio del servidor
+    // activo durante umbralConmutacionMs hace pasar al otro y reenviar lo pendiente
+    private final String endpointRespaldo;
+    private volatile String endpointActivo;
+    private final long intervaloHeartbeatMs;
+    private final long umbralConmutacionMs;
+    private final ConcurrentHashMap<String, String> mensajesEnVuelo = new ConcurrentHashMap<>();
+    private final AtomicLong conmutaciones = new AtomicLong(0);
     
     // Manejo asíncrono
     private final ObjectMapper json = new ObjectMapper();
+    // Completa los futures fuera del hilo de E/S para no frenar el socket
     private final ExecutorService executorRespuestas = Executors.newSingleThreadExecutor();
-    private final ConcurrentHashMap<String, CompletableFuture<ResultadoEnvio>> solicitudesPendientes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<String>> solicitudesPendientes = new ConcurrentHashMap<>();
     private final AtomicLong contadorSolicitudes = new AtomicLong(0);
     
+    // Hilo de E/S: único que usa el socket DEALER
+    private final ConcurrentLinkedQueue<Runnable> tareasES = new ConcurrentLinkedQueue<>();
+    private final Socket timbre;    // PUSH: lo usan los hilos que encargan envíos (con lock)
+    private final Socket timbreES;  // PULL: lo lee el hilo de E/S
+    private CompletableFuture<Boolean> heartbeatEnCurso;
+    
     // Estado del cliente
     private volatile boolean activo = true;
-    private Thread hiloReceptor;
-    private int semestreActual = 1;
+    private Thread hiloES;
+    private volatile int semestreActual = 1;
     
     // Métricas y logging
     private final AtomicLong mensajesEnviados = new AtomicLong(0);
@@ -82,25 +114,41 @@ public class ClienteAsincrono implements AutoCloseable {
         
         this.contexto = new ZContext();
         this.identificadorFacultad = generarIdentificadorFacultad();
-        this.archivoLog = String.format("cliente_asincrono_%s_%s.log", 
+        this.endpointServidor = String.format("tcp://%s:%d",
+            facultad.getDirServidorCentral().getHostAddress(),
+            facultad.getPuertoServidorCentral());
+        String respaldo = configuracion.getClienteServidorRespaldo();
+        this.endpointRespaldo = respaldo.isEmpty() ? null : "tcp://" + respaldo;
+        this.endpointActivo = endpointServidor;
+        this.intervaloHeartbeatMs = configuracion.getClienteHeartbeatMs();
+        this.umbralConmutacionMs = configuracion.getClienteConmutacionMs();
+        this.archivoLog = String.format("cliente_asincrono_%s_%s.log",
             facultad.getNombre().replaceAll("[^a-zA-Z0-9]", "_"),
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")));
         
         // Crear socket DEALER para comunicación asíncrona
         this.cliente = contexto.createSocket(SocketType.DEALER);
         
+        // Canal para despertar al hilo de E/S cuando hay envíos encargados
+        String endpointTimbre = "inproc://timbre-" + identificadorFacultad;
+        this.timbreES = contexto.createSocket(SocketType.PULL);
+        this.timbreES.bind(endpointTimbre);
+        this.timbre = contexto.createSocket(SocketType.PUSH);
+        this.timbre.connect(endpointTimbre);
+        
         // Configurar socket
         configurarSocket();
         
-        // Conectar al servidor DTI
-        conectarAServidor();
+        // Conectar el socket e iniciar el hilo de E/S antes de verificar la conexión
+        cliente.connect(endpointActivo);
+        iniciarHiloES();
         
-        // Iniciar receptor de respuestas
-        iniciarReceptorRespuestas();
+        // Verificar que el servidor DTI responde
+        conectarAServidor();
         
         // Log inicial
-        registrarEvento("CLIENTE_INICIADO", String.format("Facultad: %s, Servidor: %s:%d", 
-            facultad.getNombre(), 
+        registrarEvento("CLIENTE_INICIADO", String.format("Facultad: %s, Servidor: %s:%d",
+            facultad.getNombre(),
             facultad.getDirServidorCentral().getHostAddress(),
             facultad.getPuertoServidorCentral()));
     }
@@ -130,8 +178,8 @@ public class ClienteAsincrono implements AutoCloseable {
      * Genera identificador único para la facultad
      */
     private String generarIdentificadorFacultad() {
-        return String.format("FAC_%s_%d", 
-            facultad.getNombre().replaceAll("[^a-zA-Z0-9]", ""), 
+        return String.format("FAC_%s_%d",
+            facultad.getNombre().replaceAll("[^a-zA-Z0-9]", ""),
             System.currentTimeMillis() % 10000);
     }
     
@@ -142,13 +190,19 @@ public class ClienteAsincrono implements AutoCloseable {
         // Configurar identidad única
         cliente.setIdentity(identificadorFacultad.getBytes(ZMQ.CHARSET));
         
-        // Configurar timeouts para tolerancia a fallas
-        cliente.setReceiveTimeOut((int)timeoutConexion / 6);  // Timeout más corto para recepción
-        cliente.setSendTimeOut((int)timeoutConexion / 6);     // Timeout más corto para envío
+        // El hilo de E/S envía y lee sin bloquear: los timeouts se aplican a
+        // cada future y no al socket
         
         // Configurar reconexión automática
-        cliente.setReconnectIVL(1000);    // Intentar reconectar cada 1 segundo
-        cliente.setReconnectIVLMax(5000); // Máximo 5 segundos entre intentos
+        if (endpointRespaldo != null) {
+            // El respaldo abre su puerto al promoverse: reintentar rápido para
+            // que la conmutación no espere un intervalo de reconexión largo
+            cliente.setReconnectIVL(50);
+            cliente.setReconnectIVLMax(500);
+        } else {
+            cliente.setReconnectIVL(1000);    // Intentar reconectar cada 1 segundo
+            cliente.setReconnectIVLMax(5000); // Máximo 5 segundos entre intentos
+        }
         
         // Configurar buffer para evitar pérdida de mensajes
         cliente.setSndHWM(1000);
@@ -159,25 +213,21 @@ public class ClienteAsincrono implements AutoCloseable {
     }
     
     /**
-     * Conecta al servidor DTI con reintentos
+     * Verifica con pings que el servidor DTI responda, con reintentos. El
+     * socket ya está conectado: ZeroMQ reintenta la conexión TCP por su cuenta
      */
     private void conectarAServidor() {
-        String endpoint = String.format("tcp://%s:%d", 
-            facultad.getDirServidorCentral().getHostAddress(),
-            facultad.getPuertoServidorCentral());
-        
         int intentos = 0;
         boolean conectado = false;
         
         while (intentos < maxReintentos && !conectado) {
             try {
-                cliente.connect(endpoint);
                 conectado = verificarConexion();
                 
                 if (conectado) {
-                    System.out.printf("[FACULTAD ASÍNCRONA] 🔗 %s conectada a DTI: %s (intento %d)%n", 
-                        facultad.getNombre(), endpoint, intentos + 1);
-                    registrarEvento("CONEXION_EXITOSA", String.format("Endpoint: %s, Intentos: %d", endpoint, intentos + 1));
+                    System.out.printf("[FACULTAD ASÍNCRONA] 🔗 %s conectada a DTI: %s (intento %d)%n",
+                        facultad.getNombre(), endpointActivo, intentos + 1);
+                    registrarEvento("CONEXION_EXITOSA", String.format("Endpoint: %s, Intentos: %d", endpointActivo, intentos + 1));
                     mostrarSocketsPattern();
                 } else {
                     intentos++;
@@ -187,19 +237,9 @@ public class ClienteAsincrono implements AutoCloseable {
                     }
                 }
                 
-            } catch (Exception e) {
-                intentos++;
-                erroresConexion.incrementAndGet();
-                System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error conexión intento %d: %s%n", intentos, e.getMessage());
-                
-                if (intentos < maxReintentos) {
-                    try {
-                        Thread.sleep(1000 * intentos);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
         
@@ -211,16 +251,10 @@ public class ClienteAsincrono implements AutoCloseable {
     }
     
     /**
-     * Verifica la conexión enviando un ping
+     * Verifica la conexión enviando un ping y esperando su PONG
      */
     private boolean verificarConexion() {
-        try {
-            cliente.send("PING_SERVER", ZMQ.DONTWAIT);
-            String respuesta = cliente.recvStr(1000); // 1 segundo timeout
-            return "PONG".equals(respuesta);
-        } catch (Exception e) {
-            return false;
-        }
+        return pingAsincrono().join();
     }
     
     /**
@@ -236,7 +270,7 @@ public class ClienteAsincrono implements AutoCloseable {
         System.out.println("│ Máquina 3    Máquina 2     Máquina 2     Máquina 1    │");
         System.out.println("└─────────────────────────────────────────────────────────┘");
         System.out.printf("📍 Facultad: %s (Socket DEALER)%n", identificadorFacultad);
-        System.out.printf("📍 Conectado a DTI: %s:%d%n", 
+        System.out.printf("📍 Conectado a DTI: %s:%d%n",
             facultad.getDirServidorCentral().getHostAddress(),
             facultad.getPuertoServidorCentral());
         System.out.println("📍 Comunicación: Asíncrona, no bloqueante");
@@ -244,124 +278,270 @@ public class ClienteAsincrono implements AutoCloseable {
     }
     
     /**
-     * Inicia hilo receptor de respuestas asíncronas
+     * Inicia el hilo de E/S: ejecuta los envíos encargados, lee las respuestas
+     * y las asocia a su solicitud por el id que devuelve el DTI
      */
-    private void iniciarReceptorRespuestas() {
-        hiloReceptor = new Thread(() -> {
-            System.out.printf("[FACULTAD ASÍNCRONA] 🎧 Receptor iniciado para %s%n", facultad.getNombre());
+    private void iniciarHiloES() {
+        hiloES = new Thread(() -> {
+            System.out.printf("[FACULTAD ASÍNCRONA] 🎧 Hilo de E/S iniciado para %s%n", facultad.getNombre());
+            
+            Poller poller = contexto.createPoller(2);
+            poller.register(cliente, Poller.POLLIN);
+            poller.register(timbreES, Poller.POLLIN);
             
             while (activo && !Thread.currentThread().isInterrupted()) {
                 try {
-                    // Escuchar respuestas del DTI
-                    String respuesta = cliente.recvStr(ZMQ.DONTWAIT);
-                    if (respuesta != null) {
-                        procesarRespuestaAsincrona(respuesta);
-                        mensajesRecibidos.incrementAndGet();
-                        ultimoHeartbeat = System.currentTimeMillis();
-                        servidorDisponible = true; // Servidor respondió, está disponible
-                    } else {
-                        Thread.sleep(10);
-                        verificarHeartbeat();
+                    poller.poll(INTERVALO_ES_MS);
+                    
+                    // Envíos encargados por otros hilos
+                    if (poller.pollin(1)) {
+                        while (timbreES.recv(ZMQ.DONTWAIT) != null) {
+                            // Solo despierta al hilo; las tareas están en la cola
+                        }
+                    }
+                    Runnable tarea;
+                    while ((tarea = tareasES.poll()) != null) {
+                        tarea.run();
+                    }
+                    
+                    // Respuestas del DTI
+                    if (poller.pollin(0)) {
+                        while (recibirRespuesta()) {
+                            // Leer todo lo disponible antes de volver a esperar
+                        }
                     }
+                    
+                    verificarHeartbeat();
+                    
                 } catch (Exception e) {
                     if (activo) {
-                        System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error en receptor: %s%n", e.getMessage());
+                        System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error en hilo de E/S: %s%n", e.getMessage());
                         erroresConexion.incrementAndGet();
                         verificarDisponibilidadServidor();
                     }
                 }
             }
             
-            System.out.printf("[FACULTAD ASÍNCRONA] 🛑 Receptor detenido para %s%n", facultad.getNombre());
+            poller.close();
+            System.out.printf("[FACULTAD ASÍNCRONA] 🛑 Hilo de E/S detenido para %s%n", facultad.getNombre());
         });
         
-        hiloReceptor.setDaemon(true);
-        hiloReceptor.start();
+        hiloES.setDaemon(true);
+        hiloES.start();
     }
     
     /**
-     * Verifica heartbeat con el servidor
+     * Encarga una tarea sobre el socket al hilo de E/S. Si ya se está en ese
+     * hilo se ejecuta directamente
+     */
+    private void ejecutarEnHiloES(Runnable tarea) {
+        if (Thread.currentThread() == hiloES) {
+            tarea.run();
+            return;
+        }
+        
+        tareasES.add(tarea);
+        synchronized (timbre) {
+            timbre.send(VACIO, ZMQ.DONTWAIT);
+        }
+    }
+    
+    /**
+     * Envía un mensaje con un id nuevo y devuelve el future que completará la
+     * respuesta con ese mismo id (o que falla por timeout)
+     */
+    private CompletableFuture<String> enviarMensaje(String payload, long timeoutMs) {
+        String idSolicitud = generarIdSolicitud();
+        CompletableFuture<String> future = new CompletableFuture<>();
+        solicitudesPendientes.put(idSolicitud, future);
+        if (endpointRespaldo != null) {
+            mensajesEnVuelo.put(idSolicitud, payload);
+        }
+        
+        future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+              .whenComplete((respuesta, error) -> {
+                  solicitudesPendientes.remove(idSolicitud);
+                  mensajesEnVuelo.remove(idSolicitud);
+              });
+        
+        ejecutarEnHiloES(() -> {
+            if (!escribirMensaje(idSolicitud, payload)) {
+                future.completeExceptionally(new RuntimeException("Cola de envío llena, servidor DTI no disponible"));
+            }
+        });
+        
+        return future;
+    }
+    
+    /**
+     * Escribe [vacío][idSolicitud][payload] en el socket (solo el hilo de E/S).
+     * Si entra el primer frame ZeroMQ garantiza el resto del mensaje
+     */
+    private boolean escribirMensaje(String idSolicitud, String payload) {
+        if (!cliente.send(VACIO, ZMQ.SNDMORE | ZMQ.DONTWAIT)) {
+            return false;
+        }
+        cliente.sendMore(idSolicitud);
+        cliente.send(payload, 0);
+        mensajesEnviados.incrementAndGet();
+        return true;
+    }
+    
+    /**
+     * Lee una respuesta disponible (sin bloquear) y completa el future de su
+     * id. Devuelve false si no había nada que leer
+     */
+    private boolean recibirRespuesta() {
+        // Formato: [vacío][idSolicitud][respuesta]
+        byte[] delimitador = cliente.recv(ZMQ.DONTWAIT);
+        if (delimitador == null) {
+            return false;
+        }
+        
+        String idSolicitud = cliente.hasReceiveMore() ? cliente.recvStr() : null;
+        String respuesta = cliente.hasReceiveMore() ? cliente.recvStr() : null;
+        while (cliente.hasReceiveMore()) {
+            cliente.recv();
+        }
+        
+        mensajesRecibidos.incrementAndGet();
+        ultimoHeartbeat = System.currentTimeMillis();
+        servidorDisponible = true; // Servidor respondió, está disponible
+        
+        CompletableFuture<String> future = idSolicitud != null ? solicitudesPendientes.remove(idSolicitud) : null;
+        if (future == null || respuesta == null) {
+            System.out.printf("[FACULTAD ASÍNCRONA] ⚠️ Respuesta sin solicitud pendiente descartada (id: %s)%n", idSolicitud);
+            registrarEvento("RESPUESTA_DESCARTADA", "ID: " + idSolicitud);
+            return true;
+        }
+        
+        executorRespuestas.execute(() -> future.complete(respuesta));
+        return true;
+    }
+    
+    /**
+     * Verifica heartbeat con el servidor (se ejecuta en el hilo de E/S)
      */
     private void verificarHeartbeat() {
         long tiempoActual = System.currentTimeMillis();
-        if (tiempoActual - ultimoHeartbeat > timeoutConexion) {
-            System.out.printf("[FACULTAD ASÍNCRONA] 💓 Enviando heartbeat a DTI...%n");
-            try {
-                cliente.send("HEARTBEAT", ZMQ.DONTWAIT);
-                mensajesEnviados.incrementAndGet();
-            } catch (Exception e) {
-                System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error enviando heartbeat: %s%n", e.getMessage());
-                servidorDisponible = false;
+        long silencio = tiempoActual - ultimoHeartbeat;
+        
+        if (endpointRespaldo != null && silencio > umbralConmutacionMs) {
+            conmutarServidor(silencio);
+            return;
+        }
+        
+        long intervalo = endpointRespaldo != null ? intervaloHeartbeatMs : timeoutConexion;
+        if (silencio > intervalo
+                && (heartbeatEnCurso == null || heartbeatEnCurso.isDone())) {
+            if (endpointRespaldo == null) {
+                System.out.printf("[FACULTAD ASÍNCRONA] 💓 Enviando heartbeat a DTI...%n");
             }
+            heartbeatEnCurso = enviarMensaje("HEARTBEAT", endpointRespaldo != null ? umbralConmutacionMs : timeoutConexion)
+                .handle((respuesta, error) -> {
+                    // Con respaldo la falta de respuesta se resuelve conmutando
+                    if (error == null || endpointRespaldo == null) {
+                        servidorDisponible = error == null && "PONG".equals(respuesta);
+                    }
+                    if (error != null && endpointRespaldo == null) {
+                        System.err.printf("[FACULTAD ASÍNCRONA] ❌ Heartbeat sin respuesta: %s%n", error.getMessage());
+                    }
+                    return servidorDisponible;
+                });
         }
     }
     
+    /**
+     * Pasa al otro servidor (principal ↔ respaldo) y reenvía con el mismo id
+     * todo lo que seguía sin respuesta; el servidor reconoce los reenvíos por
+     * identidad + id y no vuelve a asignarlos (se ejecuta en el hilo de E/S)
+     */
+    private void conmutarServidor(long silencioMs) {
+        String anterior = endpointActivo;
+        String siguiente = anterior.equals(endpointServidor) ? endpointRespaldo : endpointServidor;
+        
+        cliente.disconnect(anterior);
+        cliente.connect(siguiente);
+        endpointActivo = siguiente;
+        conmutaciones.incrementAndGet();
+        // Plazo completo para que el nuevo servidor responda antes de volver a conmutar
+        ultimoHeartbeat = System.currentTimeMillis();
+        
+        int reenviados = 0;
+        for (Map.Entry<String, String> pendiente : mensajesEnVuelo.entrySet()) {
+            if (escribirMensaje(pendiente.getKey(), pendiente.getValue())) {
+                reenviados++;
+            }
+        }
+        
+        System.out.printf("[FACULTAD ASÍNCRONA] 🔀 Sin respuesta de %s en %d ms, conmutando a %s (%d pendientes reenviados)%n",
+            anterior, silencioMs, siguiente, reenviados);
+        registrarEvento("CONMUTACION", String.format("De: %s, A: %s, Reenviados: %d", anterior, siguiente, reenviados));
+    }
+    
+    /**
+     * Envía un ping correlacionado; el future se completa con true si el DTI
+     * respondió PONG a tiempo y con false en caso contrario (nunca falla)
+     */
+    public CompletableFuture<Boolean> pingAsincrono() {
+        return enviarMensaje("PING_SERVER", TIMEOUT_PING_MS)
+            .handle((respuesta, error) -> {
+                boolean disponible = error == null && "PONG".equals(respuesta);
+                servidorDisponible = disponible;
+                if (disponible) {
+                    ultimoHeartbeat = System.currentTimeMillis();
+                }
+                return disponible;
+            });
+    }
+    
     /**
      * Verifica si el servidor DTI está disponible (para Caso 5 - tolerancia a fallas)
      */
     private void verificarDisponibilidadServidor() {
-        try {
-            // Enviar mensaje de ping
-            cliente.send("PING_SERVER", ZMQ.DONTWAIT);
-            mensajesEnviados.incrementAndGet();
-            
-            // Esperar respuesta breve
-            String respuesta = cliente.recvStr(1000); // 1 segundo timeout
-            
-            if ("PONG".equals(respuesta)) {
-                servidorDisponible = true;
-                ultimoHeartbeat = System.currentTimeMillis();
+        pingAsincrono().thenAccept(disponible -> {
+            if (disponible) {
                 System.out.printf("[FACULTAD ASÍNCRONA] ✅ Servidor DTI disponible%n");
             } else {
-                servidorDisponible = false;
                 System.out.printf("[FACULTAD ASÍNCRONA] ⚠️ Servidor DTI no responde correctamente%n");
                 registrarEvento("SERVIDOR_NO_DISPONIBLE", "Respuesta inválida o timeout");
             }
-            
-        } catch (Exception e) {
-            servidorDisponible = false;
-            System.out.printf("[FACULTAD ASÍNCRONA] ❌ Servidor DTI no disponible: %s%n", e.getMessage());
-            registrarEvento("SERVIDOR_ERROR", e.getMessage());
+        });
+    }
+    
+    /**
+     * Pide al servidor abrir un semestre y tomarlo como actual (Caso 2) sin
+     * bloquear; el semestre anterior conserva sus asignaciones
+     */
+    public CompletableFuture<Boolean> solicitarResetSemestreAsincrono(int nuevoSemestre) {
+        if (nuevoSemestre == semestreActual) {
+            return CompletableFuture.completedFuture(true); // Ya estamos en el semestre correcto
         }
+        
+        System.out.printf("[FACULTAD ASÍNCRONA] 🔄 Solicitando reset de semestre %d → %d%n",
+            semestreActual, nuevoSemestre);
+        
+        return enviarMensaje("RESET_SEMESTRE:" + nuevoSemestre, timeoutConexion)
+            .handle((respuesta, error) -> {
+                if (error == null && respuesta.startsWith("SEMESTRE_RESET_OK")) {
+                    semestreActual = nuevoSemestre;
+                    System.out.printf("[FACULTAD ASÍNCRONA] ✅ Semestre cambiado a %d%n", nuevoSemestre);
+                    registrarEvento("SEMESTRE_CAMBIADO", String.format("Nuevo semestre: %d", nuevoSemestre));
+                    return true;
+                }
+                
+                String detalle = error != null ? error.getMessage() : respuesta;
+                System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error cambiando semestre: %s%n", detalle);
+                registrarEvento("ERROR_RESET_SEMESTRE", detalle);
+                return false;
+            });
     }
     
     /**
      * Solicita reset de semestre al servidor (Caso 2)
      */
     public boolean solicitarResetSemestre(int nuevoSemestre) {
-        try {
-            if (nuevoSemestre == semestreActual) {
-                return true; // Ya estamos en el semestre correcto
-            }
-            
-            System.out.printf("[FACULTAD ASÍNCRONA] 🔄 Solicitando reset de semestre %d → %d%n", 
-                semestreActual, nuevoSemestre);
-            
-            String comando = "RESET_SEMESTRE:" + nuevoSemestre;
-            cliente.send(comando, ZMQ.DONTWAIT);
-            mensajesEnviados.incrementAndGet();
-            
-            // Esperar confirmación
-            String respuesta = cliente.recvStr((int)timeoutConexion);
-            if (respuesta != null) {
-                mensajesRecibidos.incrementAndGet();
-            }
-            
-            if (respuesta != null && respuesta.startsWith("SEMESTRE_RESET_OK")) {
-                semestreActual = nuevoSemestre;
-                System.out.printf("[FACULTAD ASÍNCRONA] ✅ Semestre cambiado a %d%n", nuevoSemestre);
-                registrarEvento("SEMESTRE_CAMBIADO", String.format("Nuevo semestre: %d", nuevoSemestre));
-                return true;
-            } else {
-                System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error cambiando semestre: %s%n", respuesta);
-                return false;
-            }
-            
-        } catch (Exception e) {
-            System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error en reset de semestre: %s%n", e.getMessage());
-            registrarEvento("ERROR_RESET_SEMESTRE", e.getMessage());
-            return false;
-        }
+        return solicitarResetSemestreAsincrono(nuevoSemestre).join();
     }
     
     /**
@@ -371,15 +551,9 @@ public class ClienteAsincrono implements AutoCloseable {
         try {
             System.out.println("[FACULTAD ASÍNCRONA] 💥 Solicitando simulación de falla del servidor...");
             
-            cliente.send("SIMULAR_FALLA", ZMQ.DONTWAIT);
-            mensajesEnviados.incrementAndGet();
-            
-            String respuesta = cliente.recvStr(15000); // 15 segundos para la simulación
-            if (respuesta != null) {
-                mensajesRecibidos.incrementAndGet();
-            }
+            String respuesta = enviarMensaje("SIMULAR_FALLA", TIMEOUT_SIMULACION_FALLA_MS).get();
             
-            if (respuesta != null && (respuesta.equals("REPLICA_ACTIVADA") || respuesta.equals("FALLA_SIMULADA"))) {
+            if (respuesta.equals("REPLICA_ACTIVADA") || respuesta.equals("FALLA_SIMULADA")) {
                 System.out.println("[FACULTAD ASÍNCRONA] ✅ Simulación de falla procesada correctamente");
                 registrarEvento("FALLA_SIMULADA", "Comando enviado exitosamente");
                 return true;
@@ -403,38 +577,23 @@ public class ClienteAsincrono implements AutoCloseable {
             return CompletableFuture.failedFuture(new RuntimeException("Servidor DTI no disponible"));
         }
         
+        // La solicitud lleva su semestre y el DTI la asigna en el pool de ese
+        // semestre: no hace falta un reset previo ni esperar a otros semestres
+        semestreActual = solicitud.getSemestre();
         try {
-            // Actualizar semestre si es necesario
-            if (solicitud.getSemestre() != semestreActual) {
-                if (!solicitarResetSemestre(solicitud.getSemestre())) {
-                    return CompletableFuture.failedFuture(new RuntimeException("Error cambiando semestre"));
-                }
-            }
-            
-            // Crear identificador único para tracking
-            String idSolicitud = generarIdSolicitud();
-            
-            // Crear Future para la respuesta
-            CompletableFuture<ResultadoEnvio> futureRespuesta = new CompletableFuture<>();
-            solicitudesPendientes.put(idSolicitud, futureRespuesta);
-            
-            // Configurar timeout para el Future
-            futureRespuesta.orTimeout(timeoutConexion, TimeUnit.MILLISECONDS);
-            
-            // Enviar solicitud
             String payload = json.writeValueAsString(solicitud);
-            cliente.send(payload, ZMQ.DONTWAIT);
-            mensajesEnviados.incrementAndGet();
+            CompletableFuture<String> respuesta = enviarMensaje(payload, timeoutConexion);
             
-            System.out.printf("[FACULTAD ASÍNCRONA] 📤 Solicitud enviada desde %s: %s (%d salones, %d labs)%n", 
-                facultad.getNombre(), solicitud.getPrograma(), 
-                solicitud.getNumSalones(), solicitud.getNumLaboratorios());
+            System.out.printf("[FACULTAD ASÍNCRONA] 📤 Solicitud enviada desde %s: %s (%d salones, %d labs, semestre %d)%n",
+                facultad.getNombre(), solicitud.getPrograma(),
+                solicitud.getNumSalones(), solicitud.getNumLaboratorios(), solicitud.getSemestre());
             
-            registrarEvento("SOLICITUD_ENVIADA", 
-                String.format("ID: %s, Programa: %s, Salones: %d, Labs: %d", 
-                    idSolicitud, solicitud.getPrograma(), solicitud.getNumSalones(), solicitud.getNumLaboratorios()));
+            registrarEvento("SOLICITUD_ENVIADA",
+                String.format("Programa: %s, Salones: %d, Labs: %d, Semestre: %d",
+                    solicitud.getPrograma(), solicitud.getNumSalones(), solicitud.getNumLaboratorios(),
+                    solicitud.getSemestre()));
             
-            return futureRespuesta;
+            return respuesta.thenApply(this::procesarRespuestaAsincrona);
             
         } catch (Exception e) {
             System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error enviando solicitud: %s%n", e.getMessage());
@@ -448,18 +607,13 @@ public class ClienteAsincrono implements AutoCloseable {
      */
     public ResultadoEnvio enviarSolicitudServidor(Solicitud solicitud) {
         try {
-            System.out.printf("[FACULTAD ASÍNCRONA] 🔄 Solicitud síncrona desde %s para: %s%n", 
+            System.out.printf("[FACULTAD ASÍNCRONA] 🔄 Solicitud síncrona desde %s para: %s%n",
                 facultad.getNombre(), solicitud.getPrograma());
             
             CompletableFuture<ResultadoEnvio> future = enviarSolicitudAsincrona(solicitud);
             ResultadoEnvio resultado = future.get(timeoutConexion, TimeUnit.MILLISECONDS);
             
-            System.out.printf("[FACULTAD ASÍNCRONA] 📨 Respuesta recibida: %s%n", 
-                resultado.getInfoGeneral().length() > 50 ? 
-                resultado.getInfoGeneral().substring(0, 50) + "..." : 
-                resultado.getInfoGeneral());
-            
-            registrarEvento("SOLICITUD_COMPLETADA", 
+            registrarEvento("SOLICITUD_COMPLETADA",
                 String.format("Programa: %s, Resultado: %s", solicitud.getPrograma(), resultado.getInfoGeneral()));
             
             return resultado;
@@ -468,6 +622,15 @@ public class ClienteAsincrono implements AutoCloseable {
             System.err.println("[FACULTAD ASÍNCRONA] ⏰ Timeout esperando respuesta del DTI");
             registrarEvento("TIMEOUT", "Timeout esperando respuesta del servidor");
             return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                System.err.println("[FACULTAD ASÍNCRONA] ⏰ Timeout esperando respuesta del DTI");
+                registrarEvento("TIMEOUT", "Timeout esperando respuesta del servidor");
+            } else {
+                System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error en solicitud síncrona: %s%n", e.getCause().getMessage());
+                registrarEvento("ERROR_SOLICITUD_SINCRONA", e.getCause().getMessage());
+            }
+            return null;
         } catch (Exception e) {
             System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error en solicitud síncrona: %s%n", e.getMessage());
             registrarEvento("ERROR_SOLICITUD_SINCRONA", e.getMessage());
@@ -476,76 +639,66 @@ public class ClienteAsincrono implements AutoCloseable {
     }
     
     /**
-     * Confirma asignación (síncrono para casos de prueba)
+     * Confirma o rechaza una asignación sin bloquear
      */
-    public String confirmarAsignacion(Solicitud solicitud, ResultadoEnvio resultado, boolean aceptado) {
+    public CompletableFuture<String> confirmarAsignacionAsincrona(Solicitud solicitud, ResultadoEnvio resultado, boolean aceptado) {
         try {
-            String encabezado = aceptado ? 
-                "CONFIRMAR_ASIGNACION:" + solicitud.getPrograma() :
-                "RECHAZAR_ASIGNACION:" + solicitud.getPrograma();
+            // El semestre indica al DTI en qué pool devolver un rechazo
+            String encabezado = (aceptado ? "CONFIRMAR_ASIGNACION:" : "RECHAZAR_ASIGNACION:")
+                + solicitud.getPrograma() + ":SEMESTRE=" + solicitud.getSemestre();
             
             ConfirmacionAsignacion confirmacion = new ConfirmacionAsignacion(encabezado, resultado);
             String payload = json.writeValueAsString(confirmacion);
             
-            cliente.send(payload, ZMQ.DONTWAIT);
-            mensajesEnviados.incrementAndGet();
+            CompletableFuture<String> respuesta = enviarMensaje(payload, timeoutConexion);
             
-            System.out.printf("[FACULTAD ASÍNCRONA] 📋 Confirmación enviada desde %s: %s%n", 
+            System.out.printf("[FACULTAD ASÍNCRONA] 📋 Confirmación enviada desde %s: %s%n",
                 facultad.getNombre(), aceptado ? "ACEPTADA" : "RECHAZADA");
             
-            // Esperar respuesta de confirmación
-            String respuesta = cliente.recvStr((int)timeoutConexion);
-            if (respuesta != null) {
-                mensajesRecibidos.incrementAndGet();
-            }
-            
-            registrarEvento("CONFIRMACION_ENVIADA", 
-                String.format("Programa: %s, Tipo: %s, Respuesta: %s", 
-                    solicitud.getPrograma(), aceptado ? "ACEPTACION" : "RECHAZO", respuesta));
-            
-            return respuesta != null ? respuesta : "ERROR_CONFIRMACION";
-            
+            return respuesta.whenComplete((texto, error) -> registrarEvento("CONFIRMACION_ENVIADA",
+                String.format("Programa: %s, Tipo: %s, Respuesta: %s",
+                    solicitud.getPrograma(), aceptado ? "ACEPTACION" : "RECHAZO",
+                    error != null ? error.getMessage() : texto)));
+                    
         } catch (Exception e) {
             System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error en confirmación: %s%n", e.getMessage());
             registrarEvento("ERROR_CONFIRMACION", e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * Confirma asignación (síncrono para casos de prueba)
+     */
+    public String confirmarAsignacion(Solicitud solicitud, ResultadoEnvio resultado, boolean aceptado) {
+        try {
+            return confirmarAsignacionAsincrona(solicitud, resultado, aceptado).get();
+        } catch (ExecutionException e) {
+            return "ERROR_CONFIRMACION";
+        } catch (Exception e) {
             return "[FACULTAD] Error en la recepción de la confirmación";
         }
     }
     
     /**
-     * Procesa respuestas asíncronas del DTI
+     * Interpreta la respuesta correlacionada de una solicitud de recursos
      */
-    private void procesarRespuestaAsincrona(String respuestaJson) {
+    private ResultadoEnvio procesarRespuestaAsincrona(String respuestaJson) {
         try {
-            // Manejar respuestas de heartbeat/ping
-            if ("PONG".equals(respuestaJson)) {
-                ultimoHeartbeat = System.currentTimeMillis();
-                servidorDisponible = true;
-                return;
-            }
-            
-            // Procesar como ResultadoEnvio
             ResultadoEnvio resultado = json.readValue(respuestaJson, ResultadoEnvio.class);
             
-            System.out.printf("[FACULTAD ASÍNCRONA] 📨 Respuesta asíncrona: %s%n", 
-                resultado.getInfoGeneral().length() > 50 ? 
-                resultado.getInfoGeneral().substring(0, 50) + "..." : 
+            System.out.printf("[FACULTAD ASÍNCRONA] 📨 Respuesta asíncrona: %s%n",
+                resultado.getInfoGeneral().length() > 50 ?
+                resultado.getInfoGeneral().substring(0, 50) + "..." :
                 resultado.getInfoGeneral());
             
-            // Completar la primera solicitud pendiente (simplificado para casos de prueba)
-            if (!solicitudesPendientes.isEmpty()) {
-                String primeraSolicitud = solicitudesPendientes.keys().nextElement();
-                CompletableFuture<ResultadoEnvio> future = solicitudesPendientes.remove(primeraSolicitud);
-                if (future != null && !future.isDone()) {
-                    future.complete(resultado);
-                }
-            }
-            
             registrarEvento("RESPUESTA_RECIBIDA", resultado.getInfoGeneral());
+            return resultado;
             
         } catch (Exception e) {
             System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error procesando respuesta: %s%n", e.getMessage());
             registrarEvento("ERROR_PROCESAMIENTO_RESPUESTA", e.getMessage());
+            throw new CompletionException(e);
         }
     }
     
@@ -553,8 +706,8 @@ public class ClienteAsincrono implements AutoCloseable {
      * Genera ID único para solicitud
      */
     private String generarIdSolicitud() {
-        return String.format("SOL-%s-%d", 
-            identificadorFacultad, 
+        return String.format("SOL-%s-%d",
+            identificadorFacultad,
             contadorSolicitudes.incrementAndGet());
     }
     
@@ -614,11 +767,13 @@ public class ClienteAsincrono implements AutoCloseable {
         // Cancelar solicitudes pendientes
         cancelarSolicitudesPendientes();
         
-        // Detener hilo receptor
-        if (hiloReceptor != null) {
-            hiloReceptor.interrupt();
+        // Detener hilo de E/S: se lo despierta para que vea activo = false
+        if (hiloES != null) {
+            synchronized (timbre) {
+                timbre.send(VACIO, ZMQ.DONTWAIT);
+            }
             try {
-                hiloReceptor.join(2000);
+                hiloES.join(2000);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
@@ -637,6 +792,8 @@ public class ClienteAsincrono implements AutoCloseable {
         
         // Cerrar conexiones ZMQ
         if (cliente != null) cliente.close();
+        timbre.close();
+        timbreES.close();
         if (contexto != null) contexto.close();
         
         // Estadísticas finales
@@ -762,6 +919,20 @@ public class ClienteAsincrono implements AutoCloseable {
         return servidorDisponible;
     }
     
+    /**
+     * Servidor al que está conectado el cliente (cambia al conmutar)
+     */
+    public String getEndpointActivo() {
+        return endpointActivo;
+    }
+    
+    /**
+     * Veces que el cliente conmutó entre principal y respaldo
+     */
+    public long getConmutaciones() {
+        return conmutaciones.get();
+    }
+    
     /**
      * Obtiene el semestre actual
      */
@@ -777,14 +948,16 @@ public class ClienteAsincrono implements AutoCloseable {
         servidorDisponible = false;
         
         try {
-            // Cerrar conexión actual
-            cliente.disconnect(String.format("tcp://%s:%d", 
-                facultad.getDirServidorCentral().getHostAddress(),
-                facultad.getPuertoServidorCentral()));
+            // Cerrar la conexión actual y reconectar desde el hilo de E/S,
+            // único que puede tocar el socket
+            ejecutarEnHiloES(() -> {
+                cliente.disconnect(endpointActivo);
+                cliente.connect(endpointActivo);
+            });
             
             Thread.sleep(1000);
             
-            // Reconectar
+            // Verificar que el servidor responde
             conectarAServidor();
             
             return servidorDisponible;
@@ -802,8 +975,9 @@ public class ClienteAsincrono implements AutoCloseable {
         mensajesEnviados.set(0);
         mensajesRecibidos.set(0);
         erroresConexion.set(0);
-        contadorSolicitudes.set(0);
-        solicitudesPendientes.clear();
+        // El contador de ids no se reinicia: una respuesta atrasada no debe
+        // completar una solicitud nueva con el mismo id
+        cancelarSolicitudesPendientes();
         
         System.out.printf("[FACULTAD ASÍNCRONA] 🔄 Métricas reseteadas para %s%n", facultad.getNombre());
         registrarEvento("METRICAS_RESETEADAS", "Todas las métricas han sido reiniciadas");
@@ -812,23 +986,27 @@ public class ClienteAsincrono implements AutoCloseable {
     /**
      * Envía comando personalizado al servidor
      */
+    public CompletableFuture<String> enviarComandoAsincrono(String comando) {
+        if (!servidorDisponible) {
+            return CompletableFuture.failedFuture(new RuntimeException("Servidor no disponible"));
+        }
+        
+        return enviarMensaje(comando, timeoutConexion)
+            .whenComplete((respuesta, error) -> registrarEvento("COMANDO_ENVIADO",
+                String.format("Comando: %s, Respuesta: %s", comando, error != null ? error.getMessage() : respuesta)));
+    }
+    
+    /**
+     * Envía comando personalizado al servidor y espera su respuesta
+     */
     public String enviarComando(String comando) {
         try {
-            if (!servidorDisponible) {
-                return "ERROR: Servidor no disponible";
-            }
-            
-            cliente.send(comando, ZMQ.DONTWAIT);
-            mensajesEnviados.incrementAndGet();
-            
-            String respuesta = cliente.recvStr((int)timeoutConexion);
-            if (respuesta != null) {
-                mensajesRecibidos.incrementAndGet();
-            }
-            
-            registrarEvento("COMANDO_ENVIADO", String.format("Comando: %s, Respuesta: %s", comando, respuesta));
-            return respuesta != null ? respuesta : "ERROR: Sin respuesta";
+            return enviarComandoAsincrono(comando).get();
             
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof TimeoutException
+                ? "ERROR: Sin respuesta"
+                : "ERROR: " + e.getCause().getMessage();
         } catch (Exception e) {
             System.err.printf("[FACULTAD ASÍNCRONA] ❌ Error enviando comando: %s%n", e.getMessage());
             registrarEvento("ERROR_COMANDO", e.getMessage());
@@ -17,12 +17,33 @@ public class ConfiguracionAsincrono {
     public static final int DEFAULT_MAX_SALONES = 380;
     public static final int DEFAULT_MAX_LABS = 60;
     public static final int DEFAULT_THREAD_POOL_SIZE = 10;
+    // Semestres con pool abierto a la vez (0 = sin límite, nunca se archivan solos)
+    public static final int DEFAULT_SEMESTRES_ABIERTOS = 0;
+    // Rango de semestres admitidos y tope de pools abiertos (acotan la memoria
+    // del libro de semestres; 0 = sin tope)
+    public static final int DEFAULT_SEMESTRE_MINIMO = 1;
+    public static final int DEFAULT_SEMESTRE_MAXIMO = 9999;
+    public static final int DEFAULT_SEMESTRES_MAXIMO_ABIERTOS = 16;
+    
+    // Configuración por defecto de la bitácora (escritura agrupada)
+    public static final int DEFAULT_BITACORA_CAPACIDAD = 8192;
+    public static final String DEFAULT_BITACORA_SINCRONIZACION = "intervalo";
+    public static final long DEFAULT_BITACORA_INTERVALO_SYNC_MS = 1000;
+    public static final long DEFAULT_BITACORA_PREASIGNACION_BYTES = 1024 * 1024;
+    
+    // Configuración por defecto de la réplica en caliente
+    public static final String DEFAULT_REPLICA_ROL = "principal";
+    public static final long DEFAULT_REPLICA_HEARTBEAT_MS = 100;
+    public static final long DEFAULT_REPLICA_TIMEOUT_MS = 500;
+    public static final int DEFAULT_REPLICA_CLAVES_RECORDADAS = 10000;
     
     // Configuración por defecto del cliente
     public static final String DEFAULT_CLIENT_SERVER_IP = "localhost";
     public static final int DEFAULT_CLIENT_SERVER_PORT = 5556;
     public static final long DEFAULT_TIMEOUT_MS = 30000;
     public static final int DEFAULT_RETRY_ATTEMPTS = 3;
+    public static final long DEFAULT_CLIENTE_HEARTBEAT_MS = 200;
+    public static final long DEFAULT_CLIENTE_CONMUTACION_MS = 600;
     
     // Configuración para casos de prueba
     public static final int CASO_1_SALONES = 380;
@@ -127,14 +148,31 @@ public class ConfiguracionAsincrono {
         propiedades.setProperty("servidor.maxSalones", String.valueOf(DEFAULT_MAX_SALONES));
         propiedades.setProperty("servidor.maxLabs", String.valueOf(DEFAULT_MAX_LABS));
         propiedades.setProperty("servidor.threadPoolSize", String.valueOf(DEFAULT_THREAD_POOL_SIZE));
+        propiedades.setProperty("servidor.semestresAbiertos", String.valueOf(DEFAULT_SEMESTRES_ABIERTOS));
+        propiedades.setProperty("servidor.semestreMinimo", String.valueOf(DEFAULT_SEMESTRE_MINIMO));
+        propiedades.setProperty("servidor.semestreMaximo", String.valueOf(DEFAULT_SEMESTRE_MAXIMO));
+        propiedades.setProperty("servidor.semestresMaximoAbiertos", String.valueOf(DEFAULT_SEMESTRES_MAXIMO_ABIERTOS));
         propiedades.setProperty("servidor.replicaHabilitada", "false");
         propiedades.setProperty("servidor.heartbeatInterval", "10000");
+        propiedades.setProperty("servidor.bitacora.capacidad", String.valueOf(DEFAULT_BITACORA_CAPACIDAD));
+        propiedades.setProperty("servidor.bitacora.sincronizacion", DEFAULT_BITACORA_SINCRONIZACION);
+        propiedades.setProperty("servidor.bitacora.intervaloSyncMs", String.valueOf(DEFAULT_BITACORA_INTERVALO_SYNC_MS));
+        propiedades.setProperty("servidor.bitacora.preasignacionBytes", String.valueOf(DEFAULT_BITACORA_PREASIGNACION_BYTES));
+        propiedades.setProperty("servidor.replica.rol", DEFAULT_REPLICA_ROL);
+        propiedades.setProperty("servidor.replica.endpointPublicacion", "");
+        propiedades.setProperty("servidor.replica.endpointPrincipal", "");
+        propiedades.setProperty("servidor.replica.heartbeatMs", String.valueOf(DEFAULT_REPLICA_HEARTBEAT_MS));
+        propiedades.setProperty("servidor.replica.timeoutMs", String.valueOf(DEFAULT_REPLICA_TIMEOUT_MS));
+        propiedades.setProperty("servidor.replica.clavesRecordadas", String.valueOf(DEFAULT_REPLICA_CLAVES_RECORDADAS));
         
         // Configuración del cliente
         propiedades.setProperty("cliente.servidorIp", DEFAULT_CLIENT_SERVER_IP);
         propiedades.setProperty("cliente.servidorPuerto", String.valueOf(DEFAULT_CLIENT_SERVER_PORT));
         propiedades.setProperty("cliente.timeoutMs", String.valueOf(DEFAULT_TIMEOUT_MS));
         propiedades.setProperty("cliente.reintentos", String.valueOf(DEFAULT_RETRY_ATTEMPTS));
+        propiedades.setProperty("cliente.servidorRespaldo", "");
+        propiedades.setProperty("cliente.heartbeatMs", String.valueOf(DEFAULT_CLIENTE_HEARTBEAT_MS));
+        propiedades.setProperty("cliente.conmutacionMs", String.valueOf(DEFAULT_CLIENTE_CONMUTACION_MS));
         
         System.out.println("[CONFIG] Configuración por defecto cargada");
     }
@@ -161,6 +199,33 @@ public class ConfiguracionAsincrono {
         return Integer.parseInt(propiedades.getProperty("servidor.threadPoolSize", String.valueOf(DEFAULT_THREAD_POOL_SIZE)));
     }
     
+    /**
+     * Ventana de semestres abiertos: al abrir el semestre s se archivan los
+     * abiertos hasta s - ventana (0 = solo se archivan con CERRAR_SEMESTRE)
+     */
+    public int getSemestresAbiertos() {
+        return Integer.parseInt(propiedades.getProperty("servidor.semestresAbiertos", String.valueOf(DEFAULT_SEMESTRES_ABIERTOS)));
+    }
+    
+    /**
+     * Rango de semestres que se pueden abrir: los de fuera se rechazan
+     */
+    public int getSemestreMinimo() {
+        return Integer.parseInt(propiedades.getProperty("servidor.semestreMinimo", String.valueOf(DEFAULT_SEMESTRE_MINIMO)));
+    }
+    
+    public int getSemestreMaximo() {
+        return Integer.parseInt(propiedades.getProperty("servidor.semestreMaximo", String.valueOf(DEFAULT_SEMESTRE_MAXIMO)));
+    }
+    
+    /**
+     * Pools de semestre abiertos a la vez; con el tope alcanzado un semestre
+     * nuevo se rechaza hasta cerrar otro (0 = sin tope)
+     */
+    public int getSemestresMaximoAbiertos() {
+        return Integer.parseInt(propiedades.getProperty("servidor.semestresMaximoAbiertos", String.valueOf(DEFAULT_SEMESTRES_MAXIMO_ABIERTOS)));
+    }
+    
     public boolean isReplicaHabilitada() {
         return Boolean.parseBoolean(propiedades.getProperty("servidor.replicaHabilitada", "false"));
     }
@@ -169,6 +234,65 @@ public class ConfiguracionAsincrono {
         return Long.parseLong(propiedades.getProperty("servidor.heartbeatInterval", "10000"));
     }
     
+    /**
+     * Registros que caben en el anillo de la bitácora antes de frenar a los productores
+     */
+    public int getBitacoraCapacidad() {
+        return Integer.parseInt(propiedades.getProperty("servidor.bitacora.capacidad", String.valueOf(DEFAULT_BITACORA_CAPACIDAD)));
+    }
+    
+    /**
+     * Política de fsync de la bitácora: ninguna, intervalo o lote
+     */
+    public String getBitacoraSincronizacion() {
+        return propiedades.getProperty("servidor.bitacora.sincronizacion", DEFAULT_BITACORA_SINCRONIZACION);
+    }
+    
+    public long getBitacoraIntervaloSyncMs() {
+        return Long.parseLong(propiedades.getProperty("servidor.bitacora.intervaloSyncMs", String.valueOf(DEFAULT_BITACORA_INTERVALO_SYNC_MS)));
+    }
+    
+    public long getBitacoraPreasignacionBytes() {
+        return Long.parseLong(propiedades.getProperty("servidor.bitacora.preasignacionBytes", String.valueOf(DEFAULT_BITACORA_PREASIGNACION_BYTES)));
+    }
+    
+    /**
+     * Rol en la réplica en caliente: principal (atiende y publica) o respaldo
+     * (replica al principal y lo reemplaza si deja de enviar heartbeats)
+     */
+    public boolean isReplicaRespaldo() {
+        return "respaldo".equalsIgnoreCase(propiedades.getProperty("servidor.replica.rol", DEFAULT_REPLICA_ROL).trim());
+    }
+    
+    /**
+     * Endpoint donde el principal publica los deltas (vacío = no publica)
+     */
+    public String getReplicaEndpointPublicacion() {
+        return propiedades.getProperty("servidor.replica.endpointPublicacion", "").trim();
+    }
+    
+    /**
+     * Endpoint de publicación del principal al que se suscribe el respaldo
+     */
+    public String getReplicaEndpointPrincipal() {
+        return propiedades.getProperty("servidor.replica.endpointPrincipal", "").trim();
+    }
+    
+    public long getReplicaHeartbeatMs() {
+        return Long.parseLong(propiedades.getProperty("servidor.replica.heartbeatMs", String.valueOf(DEFAULT_REPLICA_HEARTBEAT_MS)));
+    }
+    
+    /**
+     * Silencio del principal tras el cual el respaldo se promueve
+     */
+    public long getReplicaTimeoutMs() {
+        return Long.parseLong(propiedades.getProperty("servidor.replica.timeoutMs", String.valueOf(DEFAULT_REPLICA_TIMEOUT_MS)));
+    }
+    
+    public int getReplicaClavesRecordadas() {
+        return Integer.parseInt(propiedades.getProperty("servidor.replica.clavesRecordadas", String.valueOf(DEFAULT_REPLICA_CLAVES_RECORDADAS)));
+    }
+    
     // ============ GETTERS PARA CLIENTE ============
     
     public String getClienteServidorIp() {
@@ -187,6 +311,27 @@ public class ConfiguracionAsincrono {
         return Integer.parseInt(propiedades.getProperty("cliente.reintentos", String.valueOf(DEFAULT_RETRY_ATTEMPTS)));
     }
     
+    /**
+     * Servidor de respaldo como ip:puerto (vacío = sin conmutación)
+     */
+    public String getClienteServidorRespaldo() {
+        return propiedades.getProperty("cliente.servidorRespaldo", "").trim();
+    }
+    
+    /**
+     * Con respaldo configurado: heartbeat al servidor tras este tiempo sin mensajes
+     */
+    public long getClienteHeartbeatMs() {
+        return Long.parseLong(propiedades.getProperty("cliente.heartbeatMs", String.valueOf(DEFAULT_CLIENTE_HEARTBEAT_MS)));
+    }
+    
+    /**
+     * Con respaldo configurado: silencio del servidor tras el cual se conmuta al otro
+     */
+    public long getClienteConmutacionMs() {
+        return Long.parseLong(propiedades.getProperty("cliente.conmutacionMs", String.valueOf(DEFAULT_CLIENTE_CONMUTACION_MS)));
+    }
+    
     // ============ UTILIDADES ============
     
     /**
@@ -242,6 +387,32 @@ public class ConfiguracionAsincrono {
                 return false;
             }
             
+            if (getSemestresAbiertos() < 0) {
+                System.err.println("[CONFIG] Ventana de semestres abiertos inválida: " + getSemestresAbiertos());
+                return false;
+            }
+            if (getSemestreMinimo() > getSemestreMaximo() || getSemestresMaximoAbiertos() < 0) {
+                System.err.println("[CONFIG] Rango de semestres inválido: " + getSemestreMinimo() + ".." + getSemestreMaximo()
+                        + ", máximo abiertos " + getSemestresMaximoAbiertos());
+                return false;
+            }
+            
+            // Validar bitácora
+            if (getBitacoraCapacidad() <= 0) {
+                System.err.println("[CONFIG] Capacidad de bitácora inválida: " + getBitacoraCapacidad());
+                return false;
+            }
+            
+            // Validar réplica
+            if (isReplicaRespaldo() && getReplicaEndpointPrincipal().isEmpty()) {
+                System.err.println("[CONFIG] El respaldo requiere servidor.replica.endpointPrincipal");
+                return false;
+            }
+            if (getReplicaHeartbeatMs() <= 0 || getReplicaTimeoutMs() <= getReplicaHeartbeatMs()) {
+                System.err.println("[CONFIG] servidor.replica.timeoutMs debe superar a servidor.replica.heartbeatMs");
+                return false;
+            }
+            
             return true;
             
         } catch (NumberFormatException e) {
@@ -264,6 +435,8 @@ public class ConfiguracionAsincrono {
         System.out.printf("║ Pool de Hilos: %-45d ║%n", getThreadPoolSize());
         System.out.printf("║ Réplica Habilitada: %-40s ║%n", isReplicaHabilitada() ? "SÍ" : "NO");
         System.out.printf("║ Timeout Cliente: %-43d ms ║%n", getClienteTimeoutMs());
+        System.out.printf("║ Bitácora fsync: %-44s ║%n", getBitacoraSincronizacion());
+        System.out.printf("║ Rol réplica: %-47s ║%n", isReplicaRespaldo() ? "respaldo" : "principal");
         System.out.printf("║ Endpoint: %-50s ║%n", getEndpointServidor());
         System.out.println("╚══════════════════════════════════════════════════════════════╝");
     }
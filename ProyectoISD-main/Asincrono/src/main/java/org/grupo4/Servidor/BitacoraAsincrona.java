@@ -0,0 +1,301 @@
+package org.grupo4.asincrono.servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bitácora de solo anexado con escritura agrupada (group commit)
+ * 
+ * FUNCIONAMIENTO:
+ * - Los productores (hilos del pool) dejan cada registro en un anillo acotado
+ *   sin locks: reservan una posición con CAS y publican el registro en ella
+ * - Un único hilo escritor vacía el anillo por lotes en un buffer directo y
+ *   los escribe en un FileChannel preasignado por bloques
+ * - Política de sincronización a disco: NINGUNA (solo al cerrar), INTERVALO
+ *   (a lo sumo un force cada intervaloSyncMs) o LOTE (force tras cada lote)
+ * - Con el anillo lleno el productor espera a que el escritor libere espacio
+ *   (contrapresión) en lugar de perder registros o crecer sin límite
+ */
+public class BitacoraAsincrona implements AutoCloseable {
+    
+    public enum PoliticaSincronizacion {
+        NINGUNA, INTERVALO, LOTE;
+        
+        public static PoliticaSincronizacion desde(String valor) {
+            try {
+                return valueOf(valor.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("[BITÁCORA] ⚠️ Política de sincronización desconocida: " + valor + ", usando INTERVALO");
+                return INTERVALO;
+            }
+        }
+    }
+    
+    private static final int TAMANO_BUFFER = 64 * 1024;
+    // Espera del escritor con el anillo vacío (o hasta el próximo force)
+    private static final long ESPERA_ESCRITOR_NS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long ESPERA_PRODUCTOR_NS = TimeUnit.MICROSECONDS.toNanos(50);
+    
+    private final String archivo;
+    private final PoliticaSincronizacion politica;
+    private final long intervaloSyncNs;
+    private final long preasignacionBytes;
+    
+    // Anillo MPSC: "reservados" avanza con CAS en los productores y "leidos"
+    // solo lo escribe el hilo escritor; una posición en null aún no se publicó
+    private final AtomicReferenceArray<byte[]> anillo;
+    private final int mascara;
+    private final AtomicLong reservados = new AtomicLong(0);
+    private volatile long leidos = 0;
+    
+    private final FileChannel canal;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BUFFER);
+    private long posicion;
+    private long tamanoPreasignado;
+    private long ultimaSincronizacion = System.nanoTime();
+    private boolean pendienteSincronizar = false;
+    
+    private final Thread escritor;
+    private volatile boolean escritorDormido = false;
+    private volatile boolean activa = true;
+    
+    // Métricas
+    private final AtomicLong esperasPorLlenado = new AtomicLong(0);
+    private long registrosEscritos = 0;
+    private long lotesEscritos = 0;
+    private long sincronizaciones = 0;
+    
+    /**
+     * @param capacidad          registros que caben en el anillo (se redondea a potencia de 2)
+     * @param preasignacionBytes tamaño de cada bloque que se reserva en el archivo (0 = sin preasignar)
+     */
+    public BitacoraAsincrona(String archivo, int capacidad, PoliticaSincronizacion politica,
+                             long intervaloSyncMs, long preasignacionBytes) throws IOException {
+        this.archivo = archivo;
+        this.politica = politica;
+        this.intervaloSyncNs = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervaloSyncMs));
+        this.preasignacionBytes = Math.max(0, preasignacionBytes);
+        
+        int tamanoAnillo = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.anillo = new AtomicReferenceArray<>(tamanoAnillo);
+        this.mascara = tamanoAnillo - 1;
+        
+        this.canal = FileChannel.open(Path.of(archivo),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.posicion = canal.size();
+        this.tamanoPreasignado = posicion;
+        
+        this.escritor = new Thread(this::escribir, "bitacora-" + archivo);
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+    
+    /**
+     * Encola una línea de texto (sin salto final) para su escritura
+     */
+    public void registrar(String linea) {
+        registrar((linea + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Encola un registro ya codificado. Si el anillo está lleno espera hasta
+     * que el escritor libere espacio. Devuelve false si la bitácora se cerró
+     */
+    public boolean registrar(byte[] registro) {
+        long secuencia;
+        boolean espero = false;
+        
+        while (true) {
+            if (!activa) {
+                return false;
+            }
+            secuencia = reservados.get();
+            if (secuencia - leidos >= anillo.length()) {
+                // Anillo lleno: contrapresión sobre el productor
+                if (!espero) {
+                    espero = true;
+                    esperasPorLlenado.incrementAndGet();
+                }
+                despertarEscritor();
+                LockSupport.parkNanos(ESPERA_PRODUCTOR_NS);
+                continue;
+            }
+            if (reservados.compareAndSet(secuencia, secuencia + 1)) {
+                break;
+            }
+        }
+        
+        anillo.lazySet((int) (secuencia & mascara), registro);
+        if (escritorDormido) {
+            despertarEscritor();
+        }
+        return true;
+    }
+    
+    private void despertarEscritor() {
+        LockSupport.unpark(escritor);
+    }
+    
+    /**
+     * Bucle del hilo escritor: toma todo lo publicado, lo escribe como un lote
+     * y sincroniza según la política
+     */
+    private void escribir() {
+        while (true) {
+            int tomados = 0;
+            try {
+                tomados = vaciarAnillo();
+                if (buffer.position() > 0) {
+                    volcarBuffer();
+                }
+                if (tomados > 0) {
+                    lotesEscritos++;
+                    pendienteSincronizar = true;
+                }
+                sincronizarSegunPolitica();
+            } catch (IOException e) {
+                System.err.println("[BITÁCORA] ❌ Error escribiendo " + archivo + ": " + e.getMessage());
+                buffer.clear();
+            }
+            
+            if (tomados == 0) {
+                if (!activa && leidos == reservados.get()) {
+                    return;
+                }
+                escritorDormido = true;
+                if (leidos == reservados.get()) {
+                    LockSupport.parkNanos(ESPERA_ESCRITOR_NS);
+                }
+                escritorDormido = false;
+            }
+        }
+    }
+    
+    /**
+     * Copia al buffer todos los registros publicados de forma contigua
+     */
+    private int vaciarAnillo() throws IOException {
+        int tomados = 0;
+        long siguiente = leidos;
+        
+        while (true) {
+            int indice = (int) (siguiente & mascara);
+            byte[] registro = anillo.get(indice);
+            if (registro == null) {
+                break; // No reservado o reservado y aún no publicado
+            }
+            anillo.set(indice, null);
+            
+            if (registro.length > buffer.remaining()) {
+                volcarBuffer();
+            }
+            if (registro.length > buffer.capacity()) {
+                escribirEnCanal(ByteBuffer.wrap(registro));
+            } else {
+                buffer.put(registro);
+            }
+            
+            siguiente++;
+            leidos = siguiente; // Libera la posición para los productores
+            tomados++;
+        }
+        
+        registrosEscritos += tomados;
+        return tomados;
+    }
+    
+    private void volcarBuffer() throws IOException {
+        buffer.flip();
+        escribirEnCanal(buffer);
+        buffer.clear();
+    }
+    
+    private void escribirEnCanal(ByteBuffer datos) throws IOException {
+        preasignar(posicion + datos.remaining());
+        while (datos.hasRemaining()) {
+            posicion += canal.write(datos, posicion);
+        }
+    }
+    
+    /**
+     * Extiende el archivo por bloques para que las escrituras no tengan que
+     * hacerlo crecer (y actualizar su metadata) en cada lote
+     */
+    private void preasignar(long requerido) throws IOException {
+        if (preasignacionBytes == 0 || requerido <= tamanoPreasignado) {
+            return;
+        }
+        while (tamanoPreasignado < requerido) {
+            tamanoPreasignado += preasignacionBytes;
+        }
+        canal.write(ByteBuffer.wrap(new byte[1]), tamanoPreasignado - 1);
+    }
+    
+    private void sincronizarSegunPolitica() throws IOException {
+        if (!pendienteSincronizar) {
+            return;
+        }
+        switch (politica) {
+            case LOTE -> sincronizar();
+            case INTERVALO -> {
+                if (System.nanoTime() - ultimaSincronizacion >= intervaloSyncNs) {
+                    sincronizar();
+                }
+            }
+            case NINGUNA -> { }
+        }
+    }
+    
+    private void sincronizar() throws IOException {
+        canal.force(false);
+        ultimaSincronizacion = System.nanoTime();
+        pendienteSincronizar = false;
+        sincronizaciones++;
+    }
+    
+    /**
+     * Registros que todavía esperan en el anillo
+     */
+    public long pendientes() {
+        return reservados.get() - leidos;
+    }
+    
+    public String resumen() {
+        return String.format("%d registros, %d lotes, %d fsync, %d esperas por anillo lleno (%s)",
+                registrosEscritos, lotesEscritos, sincronizaciones, esperasPorLlenado.get(), politica);
+    }
+    
+    /**
+     * Deja de aceptar registros, escribe lo pendiente, sincroniza y recorta la
+     * parte preasignada que no se usó
+     */
+    @Override
+    public void close() {
+        if (!activa) {
+            return;
+        }
+        activa = false;
+        despertarEscritor();
+        try {
+            escritor.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        try {
+            canal.truncate(posicion);
+            canal.force(true);
+            canal.close();
+        } catch (IOException e) {
+            System.err.println("[BITÁCORA] ❌ Error cerrando " + archivo + ": " + e.getMessage());
+        }
+    }
+}
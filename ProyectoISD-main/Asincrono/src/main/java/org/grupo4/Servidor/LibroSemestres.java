@@ -0,0 +1,267 @@
+package org.grupo4.asincrono.servidor;
+
+import org.grupo4.concurrencia.RecursosEmpaquetados;
+import org.grupo4.entidades.AdministradorInstalaciones;
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.redes.EstadoAsignacion;
+import org.grupo4.redes.ResultadoEnvio;
+import org.grupo4.repositorio.BitacoraInstalaciones.Transicion;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Libro de asignaciones por semestre
+ * 
+ * FUNCIONAMIENTO:
+ * - Cada semestre abierto tiene su propio AdministradorInstalaciones con la
+ *   capacidad completa (maxSalones, maxLabs); el semestre se abre con la
+ *   primera solicitud o reset que lo nombra, sin tocar a los demás
+ * - Las solicitudes de semestres distintos no comparten estado: cada pool
+ *   avanza con su propio compareAndSet y nunca hay un reset global
+ * - Cerrar un semestre lo archiva como su estado empaquetado (un long con
+ *   salones, labs y aulas móviles); después ya no acepta asignaciones ni
+ *   devoluciones
+ * - Solo se abren semestres dentro de [semestreMinimo, semestreMaximo] y
+ *   hasta maximoAbiertos pools a la vez: un semestre fuera del rango o sin
+ *   lugar se rechaza como uno archivado, así la memoria queda acotada
+ * 
+ * CONCURRENCIA:
+ * - Cada semestre lleva un candado de lectura/escritura: asignar y devolver
+ *   toman el de lectura (no se bloquean entre sí) y cerrar el de escritura,
+ *   así ninguna transición queda fuera del estado archivado
+ */
+public class LibroSemestres {
+    
+    private static final class Semestre {
+        final AdministradorInstalaciones recursos;
+        final ReentrantReadWriteLock candado = new ReentrantReadWriteLock();
+        boolean cerrado;
+        
+        Semestre(AdministradorInstalaciones recursos) {
+            this.recursos = recursos;
+        }
+    }
+    
+    private final int maxSalones;
+    private final int maxLabs;
+    private final int semestreMinimo;
+    private final int semestreMaximo;
+    // 0 = sin límite de pools abiertos
+    private final int maximoAbiertos;
+    private final ConcurrentHashMap<Integer, Semestre> abiertos = new ConcurrentHashMap<>();
+    // Semestres cerrados: estado empaquetado final de cada uno
+    private final ConcurrentSkipListMap<Integer, Long> archivados = new ConcurrentSkipListMap<>();
+    
+    public LibroSemestres(int maxSalones, int maxLabs, int semestreMinimo, int semestreMaximo, int maximoAbiertos) {
+        this.maxSalones = maxSalones;
+        this.maxLabs = maxLabs;
+        this.semestreMinimo = semestreMinimo;
+        this.semestreMaximo = semestreMaximo;
+        this.maximoAbiertos = maximoAbiertos;
+    }
+    
+    /**
+     * Abre el semestre si no existe. Devuelve false si ya está archivado,
+     * está fuera del rango o no queda lugar para otro pool
+     */
+    public boolean abrir(int semestre) {
+        return semestre(semestre) != null;
+    }
+    
+    public boolean estaAbierto(int semestre) {
+        return abiertos.containsKey(semestre);
+    }
+    
+    public boolean estaArchivado(int semestre) {
+        return archivados.containsKey(semestre);
+    }
+    
+    public boolean enRango(int semestre) {
+        return semestre >= semestreMinimo && semestre <= semestreMaximo;
+    }
+    
+    public boolean hayLugar() {
+        return maximoAbiertos <= 0 || abiertos.size() < maximoAbiertos;
+    }
+    
+    /**
+     * Asigna en el pool del semestre (abriéndolo si hace falta). Un semestre
+     * que no se puede abrir rechaza la solicitud con SOLICITUD_INVALIDA
+     */
+    public ResultadoAsignacion asignar(int semestre, int salones, int labs) {
+        ResultadoAsignacion resultado = conSemestre(semestre, recursos -> recursos.asignar(salones, labs));
+        return resultado != null ? resultado : ResultadoAsignacion.rechazada(EstadoAsignacion.SOLICITUD_INVALIDA, 0);
+    }
+    
+    /**
+     * Devuelve recursos rechazados al pool del semestre; false si el semestre
+     * está archivado o la devolución no es válida
+     */
+    public boolean devolver(int semestre, int labs, int aulasMoviles, int salones) {
+        Boolean devuelto = conSemestre(semestre,
+                recursos -> recursos.devolverRecursos(new ResultadoEnvio("", labs, aulasMoviles, salones)));
+        return devuelto != null && devuelto;
+    }
+    
+    /**
+     * Aplica una transición recibida de otro servidor sobre el semestre
+     * (se ignora si aquí ya está archivado)
+     */
+    public void aplicarTransicion(int semestre, Transicion transicion) {
+        conSemestre(semestre, recursos -> {
+            recursos.aplicarTransicion(transicion);
+            return Boolean.TRUE;
+        });
+    }
+    
+    /**
+     * Adopta el estado empaquetado de un semestre recibido de otro servidor
+     */
+    public void restablecerEstado(int semestre, long estadoEmpaquetado) {
+        conSemestre(semestre, recursos -> {
+            recursos.restablecerEstado(estadoEmpaquetado);
+            return Boolean.TRUE;
+        });
+    }
+    
+    /**
+     * Ejecuta la acción sobre el pool del semestre con su candado de lectura.
+     * Devuelve null si el semestre no se puede abrir
+     */
+    private <T> T conSemestre(int semestre, Function<AdministradorInstalaciones, T> accion) {
+        while (true) {
+            Semestre actual = semestre(semestre);
+            if (actual == null) {
+                return null;
+            }
+            actual.candado.readLock().lock();
+            try {
+                // Se cerró entre la búsqueda y el candado: volver a mirar
+                if (!actual.cerrado) {
+                    return accion.apply(actual.recursos);
+                }
+            } finally {
+                actual.candado.readLock().unlock();
+            }
+        }
+    }
+    
+    private Semestre semestre(int semestre) {
+        Semestre actual = abiertos.get(semestre);
+        if (actual != null || archivados.containsKey(semestre) || !enRango(semestre)) {
+            return actual;
+        }
+        // Abrir es raro: se serializa para que el tope de pools sea exacto
+        synchronized (abiertos) {
+            actual = abiertos.get(semestre);
+            if (actual != null || archivados.containsKey(semestre) || !hayLugar()) {
+                return actual;
+            }
+            actual = new Semestre(new AdministradorInstalaciones(maxSalones, maxLabs));
+            abiertos.put(semestre, actual);
+            return actual;
+        }
+    }
+    
+    /**
+     * Cierra el semestre y lo archiva. Devuelve el estado archivado, o -1 si
+     * el semestre no estaba abierto
+     */
+    public long cerrar(int semestre) {
+        Semestre actual = abiertos.get(semestre);
+        if (actual == null) {
+            return -1;
+        }
+        actual.candado.writeLock().lock();
+        try {
+            if (actual.cerrado) {
+                return -1;
+            }
+            long estado = actual.recursos.getEstadoEmpaquetado();
+            archivados.put(semestre, estado);
+            actual.cerrado = true;
+            abiertos.remove(semestre);
+            return estado;
+        } finally {
+            actual.candado.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Archiva un semestre con el estado final que cerró otro servidor
+     */
+    public void archivar(int semestre, long estadoEmpaquetado) {
+        archivados.put(semestre, estadoEmpaquetado);
+        Semestre actual = abiertos.get(semestre);
+        if (actual != null) {
+            actual.candado.writeLock().lock();
+            try {
+                actual.cerrado = true;
+                abiertos.remove(semestre);
+            } finally {
+                actual.candado.writeLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * Quita el pool de un semestre abierto sin archivarlo (la réplica lo
+     * descarta cuando el principal no lo tiene abierto)
+     */
+    public void descartar(int semestre) {
+        Semestre actual = abiertos.get(semestre);
+        if (actual != null) {
+            actual.candado.writeLock().lock();
+            try {
+                actual.cerrado = true;
+                abiertos.remove(semestre);
+            } finally {
+                actual.candado.writeLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * Estado empaquetado de cada semestre abierto, ordenado por semestre
+     */
+    public NavigableMap<Integer, Long> getEstadosAbiertos() {
+        NavigableMap<Integer, Long> estados = new TreeMap<>();
+        for (Map.Entry<Integer, Semestre> entrada : abiertos.entrySet()) {
+            estados.put(entrada.getKey(), entrada.getValue().recursos.getEstadoEmpaquetado());
+        }
+        return estados;
+    }
+    
+    /**
+     * Estado final de cada semestre archivado, ordenado por semestre
+     */
+    public NavigableMap<Integer, Long> getArchivados() {
+        return Collections.unmodifiableNavigableMap(archivados);
+    }
+    
+    /**
+     * Estadísticas del semestre abierto, o su estado final si está archivado
+     */
+    public String getEstadisticas(int semestre) {
+        Semestre actual = abiertos.get(semestre);
+        if (actual != null) {
+            return actual.recursos.getEstadisticas();
+        }
+        Long archivado = archivados.get(semestre);
+        return archivado != null ? describir(archivado) + " (archivado)" : "Semestre " + semestre + " sin asignaciones";
+    }
+    
+    public static String describir(long estadoEmpaquetado) {
+        return String.format("Salones disponibles: %d, Laboratorios disponibles: %d, Aulas móviles: %d",
+                RecursosEmpaquetados.salones(estadoEmpaquetado),
+                RecursosEmpaquetados.labs(estadoEmpaquetado),
+                RecursosEmpaquetados.aulasMoviles(estadoEmpaquetado));
+    }
+}
@@ -0,0 +1,460 @@
+package org.grupo4.asincrono.servidor;
+
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.repositorio.BitacoraInstalaciones;
+import org.grupo4.repositorio.BitacoraInstalaciones.Transicion;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+import org.zeromq.ZMQ.Socket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Réplica en caliente del estado de instalaciones entre dos servidores DTI
+ * 
+ * FUNCIONAMIENTO:
+ * - El principal publica (PUB) cada delta de asignación, devolución o cierre
+ *   de semestre con un número de secuencia y, cada heartbeatMs, un mensaje
+ *   ESTADO con el estado empaquetado de cada semestre abierto y la secuencia
+ *   que cubre
+ * - El respaldo (SUB) aplica los deltas en orden sobre su propio
+ *   LibroSemestres; al arrancar, o tras un hueco en la secuencia, se
+ *   sincroniza adoptando los estados del siguiente ESTADO. Un cierre se
+ *   archiva siempre (el semestre ya no cambia en el principal)
+ * - Si el respaldo deja de recibir mensajes durante timeoutMs se promueve y
+ *   el servidor abre su puerto de clientes con el estado replicado
+ * - Cada delta lleva la clave de su solicitud (cliente + id): una solicitud
+ *   que el cliente reenvía tras conmutar no vuelve a descontar recursos
+ * 
+ * FORMATO:
+ * - Delta:  ["D"][secuencia i64, tipo u8, salones, labs, aulas, semestre i32][clave]
+ * - Cierre: ["C"][secuencia i64, semestre i32, estado i64]
+ * - Estado: ["E"][secuencia i64, semestre actual i32, n i32, (semestre i32, estado i64) x n]
+ */
+public class ReplicacionEstado implements AutoCloseable {
+    
+    private static final byte[] DELTA = {'D'};
+    private static final byte[] ESTADO = {'E'};
+    private static final byte[] CIERRE = {'C'};
+    private static final int TAMANO_DELTA = 8 + 1 + 4 * 4;
+    private static final int TAMANO_CIERRE = 8 + 4 + 8;
+    private static final int TAMANO_ESTADO_BASE = 8 + 4 + 4;
+    private static final int TAMANO_ESTADO_SEMESTRE = 4 + 8;
+    // Mensajes que el PUB retiene para un respaldo lento antes de descartar
+    // (un hueco se recupera con el siguiente ESTADO)
+    private static final int HWM_PUBLICACION = 100_000;
+    
+    private final LibroSemestres libro;
+    private final long heartbeatMs;
+    private final long timeoutMs;
+    
+    // Claves de solicitudes ya aplicadas (aquí o en el principal), LRU acotado
+    private final Map<String, Transicion> recordadas;
+    // Claves que se están aplicando: una copia que llega a la vez (un reenvío
+    // tras conmutar que compite con el original) espera y vuelve a mirar
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> enCurso = new ConcurrentHashMap<>();
+    
+    // Principal: cada transición se aplica y publica con el candado de lectura;
+    // el ESTADO se publica con el de escritura, así su estado coincide
+    // exactamente con su secuencia y ningún delta queda de un lado y otro
+    private final ReentrantReadWriteLock candado = new ReentrantReadWriteLock();
+    private Socket publicador;
+    private IntSupplier semestre = () -> 1;
+    private long secuencia = 0;
+    private Thread hiloHeartbeat;
+    private volatile boolean activa = true;
+    
+    // Respaldo: último semestre recibido del principal
+    private volatile int semestreReplicado = 1;
+    
+    /**
+     * @param clavesRecordadas solicitudes recientes cuyo resultado se recuerda
+     *                         para responder un reenvío sin aplicarlo dos veces
+     */
+    public ReplicacionEstado(LibroSemestres libro, long heartbeatMs, long timeoutMs,
+                             int clavesRecordadas) {
+        this.libro = libro;
+        this.heartbeatMs = Math.max(1, heartbeatMs);
+        this.timeoutMs = Math.max(this.heartbeatMs * 2, timeoutMs);
+        int capacidad = Math.max(1, clavesRecordadas);
+        this.recordadas = new LinkedHashMap<>(capacidad * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Transicion> mayor) {
+                return size() > capacidad;
+            }
+        };
+    }
+    
+    // ======================== PRINCIPAL ========================
+    
+    /**
+     * Empieza a publicar deltas y heartbeats de estado en el endpoint dado
+     */
+    public void iniciarPublicacion(ZContext contexto, String endpoint, IntSupplier semestreActual) {
+        Socket socket = contexto.createSocket(SocketType.PUB);
+        socket.setSndHWM(HWM_PUBLICACION);
+        socket.bind(endpoint);
+        this.semestre = semestreActual;
+        this.publicador = socket;
+        
+        hiloHeartbeat = new Thread(this::publicarHeartbeats, "replica-heartbeat");
+        hiloHeartbeat.setDaemon(true);
+        hiloHeartbeat.start();
+        System.out.println("[RÉPLICA] 📡 Publicando estado en " + endpoint + " cada " + heartbeatMs + " ms");
+    }
+    
+    public boolean isPublicando() {
+        return publicador != null && activa;
+    }
+    
+    /**
+     * Asigna recursos del semestre y publica el delta. Un reenvío de una
+     * clave ya asignada recibe el mismo resultado sin volver a descontar
+     * recursos. Con clave null no se recuerda
+     */
+    public ResultadoAsignacion asignar(int semestreSolicitud, int salones, int labs, String clave) {
+        return unaVez(clave, previa -> {
+            System.out.println("[RÉPLICA] ♻️ Solicitud reenviada ya asignada: " + clave);
+            return new ResultadoAsignacion(previa.labs(), previa.aulasMoviles(), previa.salones());
+        }, () -> aplicarAsignacion(semestreSolicitud, salones, labs, clave));
+    }
+    
+    private ResultadoAsignacion aplicarAsignacion(int semestreSolicitud, int salones, int labs, String clave) {
+        candado.readLock().lock();
+        try {
+            ResultadoAsignacion resultado = libro.asignar(semestreSolicitud, salones, labs);
+            if (resultado.esExitoso()) {
+                registrar(new Transicion(BitacoraInstalaciones.ASIGNACION, 0, resultado.idReserva(),
+                        resultado.salonesAsignados(), resultado.labsAsignados(), resultado.aulaMovilAsignadas()),
+                        semestreSolicitud, clave);
+            }
+            return resultado;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Devuelve recursos rechazados al semestre y publica el delta. Un rechazo
+     * repetido de la misma clave no devuelve otra vez
+     */
+    public boolean devolver(int semestreSolicitud, int labs, int aulasMoviles, int salones, String clave) {
+        return unaVez(clave, previa -> true,
+                () -> aplicarDevolucion(semestreSolicitud, labs, aulasMoviles, salones, clave));
+    }
+    
+    private boolean aplicarDevolucion(int semestreSolicitud, int labs, int aulasMoviles, int salones, String clave) {
+        candado.readLock().lock();
+        try {
+            boolean devuelto = libro.devolver(semestreSolicitud, labs, aulasMoviles, salones);
+            if (devuelto) {
+                registrar(new Transicion(BitacoraInstalaciones.DEVOLUCION, 0, 0, salones, labs, aulasMoviles),
+                        semestreSolicitud, clave);
+            }
+            return devuelto;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Cierra y archiva el semestre y publica el cierre. Devuelve false si el
+     * semestre no estaba abierto
+     */
+    public boolean cerrarSemestre(int semestreCerrado) {
+        candado.readLock().lock();
+        try {
+            long estado = libro.cerrar(semestreCerrado);
+            if (estado < 0) {
+                return false;
+            }
+            Socket socket = publicador;
+            if (socket != null && activa) {
+                synchronized (socket) {
+                    secuencia++;
+                    ByteBuffer cuerpo = ByteBuffer.allocate(TAMANO_CIERRE)
+                            .putLong(secuencia)
+                            .putInt(semestreCerrado)
+                            .putLong(estado);
+                    socket.sendMore(CIERRE);
+                    socket.send(cuerpo.array());
+                }
+            }
+            return true;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Busca la clave y, si es nueva, aplica la acción (que la recuerda) sin
+     * que otra copia de la misma clave pueda colarse entre ambas cosas. Si la
+     * clave ya se aplicó devuelve lo que indique "repetida"
+     */
+    private <T> T unaVez(String clave, Function<Transicion, T> repetida, Supplier<T> accion) {
+        if (clave == null) {
+            return accion.get();
+        }
+        while (true) {
+            CompletableFuture<Void> propia = new CompletableFuture<>();
+            CompletableFuture<Void> otra = enCurso.putIfAbsent(clave, propia);
+            if (otra != null) {
+                // La original puede no haberse aplicado (sin recursos): se vuelve a mirar
+                otra.join();
+                continue;
+            }
+            try {
+                Transicion previa = transicionPrevia(clave);
+                return previa != null ? repetida.apply(previa) : accion.get();
+            } finally {
+                enCurso.remove(clave, propia);
+                propia.complete(null);
+            }
+        }
+    }
+    
+    /**
+     * Transición que ya se aplicó para esa clave (en este servidor o, antes de
+     * la promoción, en el principal), o null si la solicitud es nueva
+     */
+    private Transicion transicionPrevia(String clave) {
+        synchronized (recordadas) {
+            return recordadas.get(clave);
+        }
+    }
+    
+    private void registrar(Transicion transicion, int semestreTransicion, String clave) {
+        recordar(clave, transicion);
+        
+        Socket socket = publicador;
+        if (socket == null || !activa) {
+            return;
+        }
+        synchronized (socket) {
+            secuencia++;
+            ByteBuffer cuerpo = ByteBuffer.allocate(TAMANO_DELTA)
+                    .putLong(secuencia)
+                    .put(transicion.tipo())
+                    .putInt(transicion.salones())
+                    .putInt(transicion.labs())
+                    .putInt(transicion.aulasMoviles())
+                    .putInt(semestreTransicion);
+            socket.sendMore(DELTA);
+            socket.sendMore(cuerpo.array());
+            socket.send(clave != null ? clave.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+        }
+    }
+    
+    private void recordar(String clave, Transicion transicion) {
+        if (clave == null) {
+            return;
+        }
+        synchronized (recordadas) {
+            recordadas.put(clave, transicion);
+        }
+    }
+    
+    private void publicarHeartbeats() {
+        while (activa && !Thread.currentThread().isInterrupted()) {
+            candado.writeLock().lock();
+            try {
+                Socket socket = publicador;
+                NavigableMap<Integer, Long> estados = libro.getEstadosAbiertos();
+                synchronized (socket) {
+                    ByteBuffer cuerpo = ByteBuffer.allocate(TAMANO_ESTADO_BASE + estados.size() * TAMANO_ESTADO_SEMESTRE)
+                            .putLong(secuencia)
+                            .putInt(semestre.getAsInt())
+                            .putInt(estados.size());
+                    estados.forEach((s, estado) -> cuerpo.putInt(s).putLong(estado));
+                    socket.sendMore(ESTADO);
+                    socket.send(cuerpo.array());
+                }
+            } catch (Exception e) {
+                if (activa) {
+                    System.err.println("[RÉPLICA] ❌ Error publicando heartbeat: " + e.getMessage());
+                }
+            } finally {
+                candado.writeLock().unlock();
+            }
+            
+            try {
+                Thread.sleep(heartbeatMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    // ======================== RESPALDO ========================
+    
+    /**
+     * Se suscribe al principal y replica su estado hasta que deja de recibir
+     * mensajes durante timeoutMs (tras haberse sincronizado al menos una vez).
+     * Devuelve true al promoverse y false si se cerró antes
+     */
+    public boolean esperarPromocion(ZContext contexto, String endpointPrincipal) {
+        Socket suscriptor = contexto.createSocket(SocketType.SUB);
+        suscriptor.setRcvHWM(0);
+        suscriptor.subscribe(ZMQ.SUBSCRIPTION_ALL);
+        suscriptor.connect(endpointPrincipal);
+        System.out.println("[RÉPLICA] 🔁 Respaldo en caliente suscrito a " + endpointPrincipal);
+        
+        Poller poller = contexto.createPoller(1);
+        poller.register(suscriptor, Poller.POLLIN);
+        
+        boolean sincronizado = false;
+        long aplicada = 0;
+        long deltasAplicados = 0;
+        long ultimoMensaje = System.nanoTime();
+        
+        try {
+            while (activa && !Thread.currentThread().isInterrupted()) {
+                poller.poll(heartbeatMs);
+                
+                byte[] tipo;
+                while ((tipo = suscriptor.recv(ZMQ.DONTWAIT)) != null) {
+                    byte[] cuerpo = suscriptor.hasReceiveMore() ? suscriptor.recv() : new byte[0];
+                    byte[] clave = suscriptor.hasReceiveMore() ? suscriptor.recv() : new byte[0];
+                    while (suscriptor.hasReceiveMore()) {
+                        suscriptor.recv();
+                    }
+                    ultimoMensaje = System.nanoTime();
+                    
+                    if (tipo.length == 1 && tipo[0] == DELTA[0] && cuerpo.length == TAMANO_DELTA) {
+                        ByteBuffer datos = ByteBuffer.wrap(cuerpo);
+                        long numero = datos.getLong();
+                        Transicion transicion = new Transicion(datos.get(), numero, 0,
+                                datos.getInt(), datos.getInt(), datos.getInt());
+                        int semestreDelta = datos.getInt();
+                        
+                        // Con o sin sincronizar, el efecto de este delta queda
+                        // incluido en el estado que se adopte después
+                        recordar(clave.length > 0 ? new String(clave, StandardCharsets.UTF_8) : null, transicion);
+                        
+                        if (!sincronizado || numero <= aplicada) {
+                            continue;
+                        }
+                        if (numero != aplicada + 1) {
+                            System.out.printf("[RÉPLICA] ⚠️ Hueco en la secuencia (%d → %d), esperando el próximo estado%n",
+                                    aplicada, numero);
+                            sincronizado = false;
+                            continue;
+                        }
+                        libro.aplicarTransicion(semestreDelta, transicion);
+                        aplicada = numero;
+                        deltasAplicados++;
+                        
+                    } else if (tipo.length == 1 && tipo[0] == CIERRE[0] && cuerpo.length == TAMANO_CIERRE) {
+                        ByteBuffer datos = ByteBuffer.wrap(cuerpo);
+                        long numero = datos.getLong();
+                        int semestreCerrado = datos.getInt();
+                        libro.archivar(semestreCerrado, datos.getLong());
+                        System.out.println("[RÉPLICA] 📦 Semestre " + semestreCerrado + " archivado por el principal");
+                        
+                        if (!sincronizado || numero <= aplicada) {
+                            continue;
+                        }
+                        if (numero != aplicada + 1) {
+                            System.out.printf("[RÉPLICA] ⚠️ Hueco en la secuencia (%d → %d), esperando el próximo estado%n",
+                                    aplicada, numero);
+                            sincronizado = false;
+                            continue;
+                        }
+                        aplicada = numero;
+                        
+                    } else if (tipo.length == 1 && tipo[0] == ESTADO[0] && cuerpo.length >= TAMANO_ESTADO_BASE) {
+                        ByteBuffer datos = ByteBuffer.wrap(cuerpo);
+                        long numero = datos.getLong();
+                        semestreReplicado = datos.getInt();
+                        int semestres = datos.getInt();
+                        if (semestres < 0 || cuerpo.length != TAMANO_ESTADO_BASE + semestres * TAMANO_ESTADO_SEMESTRE) {
+                            continue;
+                        }
+                        NavigableMap<Integer, Long> estados = new TreeMap<>();
+                        for (int i = 0; i < semestres; i++) {
+                            estados.put(datos.getInt(), datos.getLong());
+                        }
+                        
+                        if (!sincronizado || numero != aplicada || difiere(estados)) {
+                            if (sincronizado) {
+                                System.out.printf("[RÉPLICA] ⚠️ Estado divergente en la secuencia %d, se adopta el del principal%n", numero);
+                            }
+                            for (int local : libro.getEstadosAbiertos().keySet()) {
+                                if (!estados.containsKey(local)) {
+                                    libro.descartar(local);
+                                }
+                            }
+                            estados.forEach(libro::restablecerEstado);
+                            aplicada = numero;
+                            if (!sincronizado) {
+                                System.out.println("[RÉPLICA] ✅ Sincronizado con el principal (secuencia " + numero + "): "
+                                        + estados.size() + " semestre(s) abierto(s)");
+                            }
+                            sincronizado = true;
+                        }
+                    }
+                }
+                
+                long silencioMs = (System.nanoTime() - ultimoMensaje) / 1_000_000;
+                if (sincronizado && silencioMs > timeoutMs) {
+                    System.out.printf("[RÉPLICA] 🚨 Principal sin heartbeat hace %d ms, promoviendo respaldo "
+                            + "(%d deltas aplicados, secuencia %d)%n", silencioMs, deltasAplicados, aplicada);
+                    // El principal promovido continúa la numeración
+                    secuencia = aplicada;
+                    return true;
+                }
+            }
+            return false;
+            
+        } finally {
+            poller.close();
+            suscriptor.close();
+        }
+    }
+    
+    /**
+     * Si los semestres abiertos aquí no son los del principal o alguno tiene
+     * otro estado (compara ambos conjuntos: uno abierto solo aquí también
+     * diverge)
+     */
+    private boolean difiere(NavigableMap<Integer, Long> estados) {
+        return !estados.equals(libro.getEstadosAbiertos());
+    }
+    
+    public int getSemestreReplicado() {
+        return semestreReplicado;
+    }
+    
+    /**
+     * Deja de publicar: el respaldo dejará de recibir heartbeats y se promoverá
+     */
+    @Override
+    public void close() {
+        if (!activa) {
+            return;
+        }
+        activa = false;
+        if (hiloHeartbeat != null) {
+            hiloHeartbeat.interrupt();
+            try {
+                hiloHeartbeat.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
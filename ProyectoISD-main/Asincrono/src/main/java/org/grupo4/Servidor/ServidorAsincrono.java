@@ -2,7 +2,6 @@ package org.grupo4.asincrono.servidor;
 
 // Imports de proyectos hermanos - REUTILIZACIÓN
 import org.grupo4.concurrencia.ContadorAtomico;
-import org.grupo4.entidades.AdministradorInstalaciones;
 import org.grupo4.entidades.ResultadoAsignacion;
 import org.grupo4proyecto.entidades.Solicitud;
 import org.grupo4proyecto.redes.ResultadoEnvio;
@@ -17,10 +16,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
 import org.zeromq.ZMQ.Socket;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -35,13 +36,17 @@ import java.util.concurrent.atomic.AtomicLong;
  * PATRÓN: Asynchronous Client/Server
  * CASOS DE PRUEBA SOPORTADOS:
  * - Caso 1: 1 Facultad, 2 programas (380 salones, 60 labs)
- * - Caso 2: Nuevo semestre con reset de recursos
+ * - Caso 2: Nuevo semestre con su propio pool de recursos
  * - Caso 3: 3 facultades, 6 programas (30 salones, 10 labs)
  * - Caso 4: 3 facultades, 7 programas con alertas (30 salones, 12 labs)
  * - Caso 5: Tolerancia a fallas con réplica
  */
 public class ServidorAsincrono {
     
+    // Espera máxima del poller entre revisiones de salud de clientes
+    private static final int INTERVALO_POLL_MS = 1000;
+    private static final DateTimeFormatter FORMATO_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    
     // Configuración del servidor
     private final ConfiguracionAsincrono configuracion;
     private final String ip;
@@ -50,13 +55,19 @@ public class ServidorAsincrono {
     private int maxLabs;
     private final int numHilos;
     
-    // Gestión de semestres para reset de recursos
-    private int semestreActual = 1;
-    private final Map<Integer, String> estadosPorSemestre = new ConcurrentHashMap<>();
+    // Un pool de recursos por semestre; semestreActual es el último abierto
+    // con RESET_SEMESTRE y solo se usa como valor por defecto y en reportes
+    private volatile int semestreActual = 1;
+    private final LibroSemestres libro;
     
     // Pool de hilos para procesamiento asíncrono
     private final ExecutorService poolHilos;
     
+    // Canal por el que el pool devuelve las respuestas al hilo de E/S, único
+    // dueño del socket ROUTER. El PUSH se comparte entre hilos con un lock
+    private Socket salidaRespuestas;
+    private long ultimaRevisionHealth = System.currentTimeMillis();
+    
     // Métricas y estado
     private final AtomicLong solicitudesProcesadas = new AtomicLong(0);
     private final AtomicLong solicitudesExitosas = new AtomicLong(0);
@@ -70,10 +81,14 @@ public class ServidorAsincrono {
     private volatile boolean modoReplica = false;
     private volatile boolean servidorPrincipalActivo = true;
     private Thread hiloHeartbeat;
+    // Réplica en caliente: publica los deltas (principal) o los aplica hasta promoverse (respaldo)
+    private final ReplicacionEstado replicacion;
     
     // Persistencia y logs
     private final String archivoLog;
     private final String archivoPersistencia;
+    private final BitacoraAsincrona bitacoraEventos;
+    private final BitacoraAsincrona bitacoraSolicitudes;
     private final ObjectMapper json = new ObjectMapper();
     
     /**
@@ -92,14 +107,44 @@ public class ServidorAsincrono {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         this.archivoLog = "dti_asincrono_" + timestamp + ".log";
         this.archivoPersistencia = "solicitudes_" + timestamp + ".json";
+        this.bitacoraEventos = abrirBitacora(archivoLog);
+        this.bitacoraSolicitudes = abrirBitacora(archivoPersistencia);
         
-        // Inicializar AdministradorInstalaciones
-        AdministradorInstalaciones.getInstance(maxSalones, maxLabs);
+        // Inicializar el libro de semestres
+        this.libro = new LibroSemestres(maxSalones, maxLabs, configuracion.getSemestreMinimo(),
+                configuracion.getSemestreMaximo(), configuracion.getSemestresMaximoAbiertos());
+        this.libro.abrir(semestreActual);
+        this.replicacion = crearReplicacion();
         
         mostrarBannerInicio();
         registrarEvento("SERVIDOR_INICIADO", String.format("Recursos: %d salones, %d labs", maxSalones, maxLabs));
     }
     
+    /**
+     * Abre la bitácora de escritura agrupada de un archivo según la configuración
+     */
+    private BitacoraAsincrona abrirBitacora(String archivo) {
+        try {
+            return new BitacoraAsincrona(archivo,
+                    configuracion.getBitacoraCapacidad(),
+                    BitacoraAsincrona.PoliticaSincronizacion.desde(configuracion.getBitacoraSincronizacion()),
+                    configuracion.getBitacoraIntervaloSyncMs(),
+                    configuracion.getBitacoraPreasignacionBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir la bitácora " + archivo, e);
+        }
+    }
+    
+    /**
+     * Inicializa la réplica que envuelve las transiciones del libro de semestres
+     */
+    private ReplicacionEstado crearReplicacion() {
+        return new ReplicacionEstado(libro,
+                configuracion.getReplicaHeartbeatMs(),
+                configuracion.getReplicaTimeoutMs(),
+                configuracion.getReplicaClavesRecordadas());
+    }
+    
     /**
      * Constructor para casos de prueba específicos
      */
@@ -129,8 +174,13 @@ public class ServidorAsincrono {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         this.archivoLog = "dti_asincrono_" + timestamp + ".log";
         this.archivoPersistencia = "solicitudes_" + timestamp + ".json";
+        this.bitacoraEventos = abrirBitacora(archivoLog);
+        this.bitacoraSolicitudes = abrirBitacora(archivoPersistencia);
         
-        AdministradorInstalaciones.getInstance(maxSalones, maxLabs);
+        this.libro = new LibroSemestres(maxSalones, maxLabs, configuracion.getSemestreMinimo(),
+                configuracion.getSemestreMaximo(), configuracion.getSemestresMaximoAbiertos());
+        this.libro.abrir(semestreActual);
+        this.replicacion = crearReplicacion();
         
         mostrarBannerInicio();
         registrarEvento("SERVIDOR_INICIADO", String.format("Recursos: %d salones, %d labs", maxSalones, maxLabs));
@@ -143,6 +193,17 @@ public class ServidorAsincrono {
         this(new ConfiguracionAsincrono());
     }
     
+    /**
+     * Arranca un servidor con el archivo de configuración indicado (o los
+     * valores por defecto). Principal y respaldo son dos procesos con este main
+     */
+    public static void main(String[] args) {
+        ConfiguracionAsincrono configuracion = args.length > 0
+                ? new ConfiguracionAsincrono(args[0])
+                : new ConfiguracionAsincrono();
+        new ServidorAsincrono(configuracion).iniciar();
+    }
+    
     /**
      * Muestra banner de inicio
      */
@@ -157,6 +218,7 @@ public class ServidorAsincrono {
         System.out.printf("║ Laboratorios iniciales: %-36d ║%n", maxLabs);
         System.out.printf("║ Hilos de procesamiento: %-36d ║%n", numHilos);
         System.out.printf("║ Réplica habilitada: %-40s ║%n", configuracion.isReplicaHabilitada() ? "SÍ" : "NO");
+        System.out.printf("║ Rol: %-55s ║%n", configuracion.isReplicaRespaldo() ? "RESPALDO EN CALIENTE" : "PRINCIPAL");
         System.out.println("╚══════════════════════════════════════════════════════════════╝");
     }
     
@@ -172,11 +234,23 @@ public class ServidorAsincrono {
         mostrarSocketsPattern();
         
         try (ZContext contexto = new ZContext()) {
+            // Respaldo en caliente: replicar al principal hasta perderlo y recién
+            // entonces abrir el puerto de clientes
+            if (configuracion.isReplicaRespaldo() && !esperarComoRespaldo(contexto)) {
+                return;
+            }
+            
             // Socket ROUTER para múltiples clientes asíncronos
             Socket servidor = contexto.createSocket(SocketType.ROUTER);
             String endpoint = "tcp://" + ip + ":" + puerto;
             
             servidor.bind(endpoint);
+            
+            // Publicar los deltas para un respaldo suscrito
+            String endpointReplica = configuracion.getReplicaEndpointPublicacion();
+            if (!endpointReplica.isEmpty()) {
+                replicacion.iniciarPublicacion(contexto, endpointReplica, () -> semestreActual);
+            }
             System.out.println("\n[DTI ASÍNCRONO] 🚀 Servidor iniciado en " + endpoint);
             System.out.println("[DTI ASÍNCRONO] 📡 Esperando conexiones de facultades...");
             System.out.println("[DTI ASÍNCRONO] 📄 Log guardándose en: " + archivoLog);
@@ -192,24 +266,51 @@ public class ServidorAsincrono {
                 iniciarHeartbeat();
             }
             
-            // Bucle principal - escuchar solicitudes asíncronas
+            // Respuestas del pool: PUSH compartido por los hilos → PULL del hilo de E/S
+            String endpointRespuestas = "inproc://respuestas-dti";
+            Socket entradaRespuestas = contexto.createSocket(SocketType.PULL);
+            entradaRespuestas.setRcvHWM(0);
+            entradaRespuestas.bind(endpointRespuestas);
+            salidaRespuestas = contexto.createSocket(SocketType.PUSH);
+            salidaRespuestas.setSndHWM(0);
+            salidaRespuestas.connect(endpointRespuestas);
+            
+            Poller poller = contexto.createPoller(2);
+            poller.register(servidor, Poller.POLLIN);
+            poller.register(entradaRespuestas, Poller.POLLIN);
+            
+            // Bucle principal - esperar solicitudes o respuestas sin espera activa
             while (ejecutandose && !Thread.currentThread().isInterrupted()) {
                 try {
-                    // Recibir mensaje de cliente (no bloqueante)
-                    String[] mensaje = recibirMensajeCliente(servidor);
-                    if (mensaje != null) {
-                        String clienteId = mensaje[0];
-                        String solicitudJson = mensaje[1];
-                        
-                        // Actualizar heartbeat del cliente
-                        ultimoHeartbeat.put(clienteId, System.currentTimeMillis());
-                        
-                        // Procesar de forma asíncrona
-                        procesarSolicitudAsincrona(servidor, clienteId, solicitudJson);
+                    poller.poll(INTERVALO_POLL_MS);
+                    
+                    // Respuestas terminadas por el pool: reenviarlas al cliente
+                    if (poller.pollin(1)) {
+                        reenviarRespuestas(entradaRespuestas, servidor);
                     }
                     
-                    // Verificar health de clientes conectados
-                    verificarHealthClientes();
+                    // Solicitudes de clientes: leer todas las disponibles
+                    if (poller.pollin(0)) {
+                        String[] mensaje;
+                        while ((mensaje = recibirMensajeCliente(servidor)) != null) {
+                            String clienteId = mensaje[0];
+                            String solicitudJson = mensaje[1];
+                            String idSolicitud = mensaje[2];
+                            
+                            // Actualizar heartbeat del cliente
+                            ultimoHeartbeat.put(clienteId, System.currentTimeMillis());
+                            
+                            // Procesar de forma asíncrona
+                            procesarSolicitudAsincrona(clienteId, idSolicitud, solicitudJson);
+                        }
+                    }
+                    
+                    // Verificar health de clientes conectados (a lo sumo una vez por intervalo)
+                    long ahora = System.currentTimeMillis();
+                    if (ahora - ultimaRevisionHealth >= INTERVALO_POLL_MS) {
+                        ultimaRevisionHealth = ahora;
+                        verificarHealthClientes();
+                    }
                     
                 } catch (Exception e) {
                     if (ejecutandose) {
@@ -217,11 +318,11 @@ public class ServidorAsincrono {
                         registrarEvento("ERROR", e.getMessage());
                     }
                 }
-                
-                // Pequeña pausa para evitar consumo excesivo de CPU
-                Thread.sleep(1);
             }
             
+            poller.close();
+            replicacion.close();
+            
         } catch (Exception e) {
             System.err.println("[DTI ASÍNCRONO] ❌ Error fatal: " + e.getMessage());
             registrarEvento("ERROR_FATAL", e.getMessage());
@@ -230,6 +331,27 @@ public class ServidorAsincrono {
         }
     }
     
+    /**
+     * Bloquea replicando al principal. Devuelve true cuando el respaldo se
+     * promueve (el principal dejó de enviar heartbeats)
+     */
+    private boolean esperarComoRespaldo(ZContext contexto) {
+        String endpointPrincipal = configuracion.getReplicaEndpointPrincipal();
+        System.out.println("[DTI ASÍNCRONO] 🔁 Iniciando como respaldo en caliente de " + endpointPrincipal);
+        registrarEvento("RESPALDO_INICIADO", "Principal: " + endpointPrincipal);
+        
+        if (!replicacion.esperarPromocion(contexto, endpointPrincipal)) {
+            return false;
+        }
+        
+        modoReplica = true;
+        semestreActual = replicacion.getSemestreReplicado();
+        String estado = libro.getEstadisticas(semestreActual);
+        System.out.println("[DTI ASÍNCRONO] 🔄 RÉPLICA PROMOVIDA - atendiendo con el estado replicado: " + estado);
+        registrarEvento("REPLICA_PROMOVIDA", "Semestre: " + semestreActual + ", Estado: " + estado);
+        return true;
+    }
+    
     /**
      * Muestra el patrón de sockets utilizado (requerido para casos de prueba)
      */
@@ -250,7 +372,9 @@ public class ServidorAsincrono {
     }
     
     /**
-     * Recibe mensaje de cliente con formato ZeroMQ
+     * Recibe mensaje de cliente con formato ZeroMQ:
+     * [clienteId][vacío][idSolicitud][mensaje], o [clienteId][vacío][mensaje]
+     * si el cliente no envía id de correlación
      */
     private String[] recibirMensajeCliente(Socket servidor) {
         try {
@@ -260,22 +384,44 @@ public class ServidorAsincrono {
             }
             
             servidor.recv(); // Frame vacío
+            String idSolicitud = null;
             String solicitud = servidor.recvStr();
+            if (servidor.hasReceiveMore()) {
+                idSolicitud = solicitud;
+                solicitud = servidor.recvStr();
+            }
+            while (servidor.hasReceiveMore()) {
+                servidor.recv();
+            }
             
             // Registrar cliente conectado
             clientesConectados.put(clienteId, System.currentTimeMillis());
             
-            return new String[]{clienteId, solicitud};
+            return new String[]{clienteId, solicitud, idSolicitud};
             
         } catch (Exception e) {
             return null;
         }
     }
     
+    /**
+     * Reenvía al ROUTER, tal cual, todas las respuestas que el pool dejó en el canal
+     */
+    private void reenviarRespuestas(Socket entrada, Socket servidor) {
+        byte[] trama;
+        while ((trama = entrada.recv(ZMQ.DONTWAIT)) != null) {
+            while (entrada.hasReceiveMore()) {
+                servidor.sendMore(trama);
+                trama = entrada.recv();
+            }
+            servidor.send(trama);
+        }
+    }
+    
     /**
      * Procesa solicitud usando pool de hilos (asíncrono)
      */
-    private void procesarSolicitudAsincrona(Socket servidor, String clienteId, String solicitudJson) {
+    private void procesarSolicitudAsincrona(String clienteId, String idSolicitud, String solicitudJson) {
         long inicioTiempo = System.nanoTime();
         
         poolHilos.submit(() -> {
@@ -283,10 +429,10 @@ public class ServidorAsincrono {
                 System.out.println("[DTI ASÍNCRONO] 📝 Procesando solicitud de: " + clienteId);
                 
                 // Determinar tipo de mensaje
-                String respuesta = procesarMensaje(solicitudJson, clienteId);
+                String respuesta = procesarMensaje(solicitudJson, clienteId, claveSolicitud(clienteId, idSolicitud));
                 
-                // Enviar respuesta asíncrona
-                enviarRespuestaAsincrona(servidor, clienteId, respuesta);
+                // Enviar respuesta asíncrona con el mismo id de la solicitud
+                enviarRespuestaAsincrona(clienteId, idSolicitud, respuesta);
                 
                 // Registrar métricas
                 long finTiempo = System.nanoTime();
@@ -302,16 +448,29 @@ public class ServidorAsincrono {
         });
     }
     
+    /**
+     * Clave que identifica una solicitud entre reenvíos: el cliente conserva su
+     * identidad y el id de la solicitud al conmutar al respaldo
+     */
+    private static String claveSolicitud(String clienteId, String idSolicitud) {
+        return idSolicitud != null ? clienteId + ":" + idSolicitud : null;
+    }
+    
     /**
      * Procesa diferentes tipos de mensajes
      */
-    private String procesarMensaje(String mensajeJson, String clienteId) throws JsonProcessingException {
+    private String procesarMensaje(String mensajeJson, String clienteId, String clave) throws JsonProcessingException {
         
         // Comando especial para reset de semestre (Caso 2)
         if (mensajeJson.startsWith("RESET_SEMESTRE")) {
             return procesarResetSemestre(mensajeJson);
         }
         
+        // Comando para cerrar y archivar un semestre
+        if (mensajeJson.startsWith("CERRAR_SEMESTRE")) {
+            return procesarCerrarSemestre(mensajeJson);
+        }
+        
         // Comando para simular falla del servidor (Caso 5)
         if (mensajeJson.startsWith("SIMULAR_FALLA")) {
             return procesarSimularFalla();
@@ -330,14 +489,14 @@ public class ServidorAsincrono {
         // Intentar como confirmación
         try {
             ConfirmacionAsignacion confirmacion = json.readValue(mensajeJson, ConfirmacionAsignacion.class);
-            return procesarConfirmacion(confirmacion, clienteId);
+            return procesarConfirmacion(confirmacion, clienteId, clave);
         } catch (JsonProcessingException e) {
             // No es confirmación, continuar
         }
         
         // Procesar como solicitud de recursos
         Solicitud solicitud = json.readValue(mensajeJson, Solicitud.class);
-        return procesarSolicitudRecursos(solicitud, clienteId);
+        return procesarSolicitudRecursos(solicitud, clienteId, clave);
     }
     
     /**
@@ -349,24 +508,23 @@ public class ServidorAsincrono {
     }
     
     /**
-     * Procesa reset de semestre (Caso 2)
+     * Procesa reset de semestre (Caso 2): abre el pool del semestre nuevo y
+     * lo toma como actual. Los semestres anteriores siguen abiertos con sus
+     * asignaciones hasta que se cierran
      */
     private String procesarResetSemestre(String comando) {
         try {
             String[] partes = comando.split(":");
             int nuevoSemestre = Integer.parseInt(partes[1]);
             
+            if (!abrirSemestre(nuevoSemestre)) {
+                return "ERROR_RESET_SEMESTRE:" + motivoRechazo(nuevoSemestre);
+            }
             if (nuevoSemestre != semestreActual) {
-                // Guardar estado del semestre anterior
-                String estadoAnterior = AdministradorInstalaciones.getInstance().getEstadisticas();
-                estadosPorSemestre.put(semestreActual, estadoAnterior);
-                
-                // Reset recursos para nuevo semestre
-                AdministradorInstalaciones.getInstance(maxSalones, maxLabs);
                 semestreActual = nuevoSemestre;
                 
-                String mensaje = String.format("Semestre cambiado a %d. Recursos reseteados: %d salones, %d labs", 
-                    nuevoSemestre, maxSalones, maxLabs);
+                String mensaje = String.format("Semestre actual: %d (%s). Semestres abiertos: %s",
+                    nuevoSemestre, libro.getEstadisticas(nuevoSemestre), libro.getEstadosAbiertos().keySet());
                 
                 System.out.println("[DTI ASÍNCRONO] 🔄 " + mensaje);
                 registrarEvento("RESET_SEMESTRE", mensaje);
@@ -382,6 +540,75 @@ public class ServidorAsincrono {
         }
     }
     
+    /**
+     * Abre el pool del semestre si aún no existe, archivando antes los que
+     * quedan fuera de la ventana de semestres abiertos (así liberan lugar).
+     * Devuelve false si el semestre está archivado, fuera del rango admitido
+     * o ya no hay lugar para otro pool
+     */
+    private boolean abrirSemestre(int semestre) {
+        if (libro.estaAbierto(semestre)) {
+            return true;
+        }
+        if (libro.estaArchivado(semestre) || !libro.enRango(semestre)) {
+            return false;
+        }
+        
+        int ventana = configuracion.getSemestresAbiertos();
+        if (ventana > 0) {
+            for (int antiguo : libro.getEstadosAbiertos().headMap(semestre - ventana, true).keySet()) {
+                cerrarSemestre(antiguo);
+            }
+        }
+        
+        if (!libro.abrir(semestre)) {
+            registrarEvento("SEMESTRE_RECHAZADO", "Semestre: " + semestre + ", " + motivoRechazo(semestre));
+            return false;
+        }
+        System.out.printf("[DTI ASÍNCRONO] 📗 Semestre %d abierto: %d salones, %d labs%n", semestre, maxSalones, maxLabs);
+        registrarEvento("SEMESTRE_ABIERTO", "Semestre: " + semestre);
+        return true;
+    }
+    
+    /**
+     * Por qué no se puede abrir el semestre
+     */
+    private String motivoRechazo(int semestre) {
+        if (libro.estaArchivado(semestre)) {
+            return "Semestre " + semestre + " cerrado";
+        }
+        if (!libro.enRango(semestre)) {
+            return String.format("Semestre %d fuera del rango admitido (%d-%d)", semestre,
+                    configuracion.getSemestreMinimo(), configuracion.getSemestreMaximo());
+        }
+        return String.format("Semestre %d sin lugar: ya hay %d semestres abiertos", semestre,
+                configuracion.getSemestresMaximoAbiertos());
+    }
+    
+    /**
+     * Procesa el cierre de un semestre: su pool se archiva y deja de aceptar
+     * asignaciones y devoluciones
+     */
+    private String procesarCerrarSemestre(String comando) {
+        try {
+            int semestre = Integer.parseInt(comando.split(":")[1]);
+            return cerrarSemestre(semestre) ? "SEMESTRE_CERRADO:" + semestre : "SEMESTRE_NO_ABIERTO:" + semestre;
+        } catch (Exception e) {
+            registrarEvento("ERROR_CERRAR_SEMESTRE", e.getMessage());
+            return "ERROR_CERRAR_SEMESTRE:" + e.getMessage();
+        }
+    }
+    
+    private boolean cerrarSemestre(int semestre) {
+        if (!replicacion.cerrarSemestre(semestre)) {
+            return false;
+        }
+        String estadoFinal = libro.getEstadisticas(semestre);
+        System.out.printf("[DTI ASÍNCRONO] 📦 Semestre %d archivado: %s%n", semestre, estadoFinal);
+        registrarEvento("SEMESTRE_ARCHIVADO", "Semestre: " + semestre + ", Estado: " + estadoFinal);
+        return true;
+    }
+    
     /**
      * Simula falla del servidor (Caso 5)
      */
@@ -391,6 +618,21 @@ public class ServidorAsincrono {
         
         servidorPrincipalActivo = false;
         
+        // Con un respaldo suscrito la falla es real: se dejan de publicar
+        // heartbeats y se cierra el puerto, y el respaldo toma el control
+        if (replicacion.isPublicando()) {
+            new Thread(() -> {
+                try {
+                    Thread.sleep(200); // Dejar salir la respuesta
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                replicacion.close();
+                ejecutandose = false;
+            }).start();
+            return "FALLA_SIMULADA";
+        }
+        
         // Simular caída por 5 segundos
         new Thread(() -> {
             try {
@@ -427,7 +669,7 @@ public class ServidorAsincrono {
     /**
      * Procesa solicitud de recursos con logging detallado
      */
-    private String procesarSolicitudRecursos(Solicitud solicitud, String clienteId) throws JsonProcessingException {
+    private String procesarSolicitudRecursos(Solicitud solicitud, String clienteId, String clave) throws JsonProcessingException {
         
         System.out.printf("[DTI ASÍNCRONO] 🏢 Procesando: %s (%s) - %d salones, %d labs (Semestre %d)%n",
                 solicitud.getPrograma(), 
@@ -436,14 +678,15 @@ public class ServidorAsincrono {
                 solicitud.getNumLaboratorios(),
                 solicitud.getSemestre());
         
-        // Verificar si necesitamos reset de semestre
-        if (solicitud.getSemestre() != semestreActual) {
-            procesarResetSemestre("RESET_SEMESTRE:" + solicitud.getSemestre());
-        }
+        // Cada semestre tiene su pool: la solicitud se asigna en el suyo sin
+        // afectar a los demás (un semestre archivado la rechaza)
+        int semestre = solicitud.getSemestre();
+        abrirSemestre(semestre);
         
-        // Procesar asignación
-        ResultadoAsignacion resultado = AdministradorInstalaciones.getInstance()
-                .asignar(solicitud.getNumSalones(), solicitud.getNumLaboratorios());
+        // Procesar asignación; un reenvío de una solicitud ya asignada recibe
+        // el mismo resultado sin volver a descontar recursos
+        ResultadoAsignacion resultado = replicacion.asignar(
+                semestre, solicitud.getNumSalones(), solicitud.getNumLaboratorios(), clave);
         
         // Generar respuesta
         String infoGeneral = generarInfoGeneral(resultado, solicitud);
@@ -455,7 +698,7 @@ public class ServidorAsincrono {
         );
         
         // Logging y métricas
-        String estadoRecursos = AdministradorInstalaciones.getInstance().getEstadisticas();
+        String estadoRecursos = "Semestre " + semestre + ": " + libro.getEstadisticas(semestre);
         String tipoResultado = resultado.esExitoso() ? "EXITOSA" : "FALLIDA";
         
         System.out.printf("[DTI ASÍNCRONO] %s Asignación %s para %s%n", 
@@ -487,7 +730,7 @@ public class ServidorAsincrono {
     /**
      * Procesa confirmación con logging
      */
-    private String procesarConfirmacion(ConfirmacionAsignacion confirmacion, String clienteId) {
+    private String procesarConfirmacion(ConfirmacionAsignacion confirmacion, String clienteId, String clave) {
         String tipoConfirmacion = confirmacion.getEncabezado().split(":")[0];
         
         switch (tipoConfirmacion) {
@@ -499,10 +742,12 @@ public class ServidorAsincrono {
             case "RECHAZAR_ASIGNACION":
                 System.out.println("[DTI ASÍNCRONO] ↩️ Rechazo de " + clienteId + ", devolviendo recursos");
                 
-                boolean exito = AdministradorInstalaciones.getInstance()
-                        .devolverRecursos(confirmacion.getResEnvio());
+                ResultadoEnvio devuelto = confirmacion.getResEnvio();
+                int semestre = semestreDe(confirmacion.getEncabezado());
+                boolean exito = replicacion.devolver(semestre, devuelto.getLabsAsignados(),
+                        devuelto.getAulaMovilAsignadas(), devuelto.getSalonesAsignados(), clave);
                         
-                String estadoFinal = AdministradorInstalaciones.getInstance().getEstadisticas();
+                String estadoFinal = "Semestre " + semestre + ": " + libro.getEstadisticas(semestre);
                 System.out.println("[DTI ASÍNCRONO] 📊 " + estadoFinal);
                 
                 registrarEvento("CONFIRMACION_RECHAZADA", 
@@ -517,13 +762,36 @@ public class ServidorAsincrono {
     }
     
     /**
-     * Envía respuesta asíncrona
+     * Semestre de una confirmación ("...:SEMESTRE=n" al final del
+     * encabezado); los clientes que no lo envían usan el semestre actual
      */
-    private synchronized void enviarRespuestaAsincrona(Socket servidor, String clienteId, String respuesta) {
+    private int semestreDe(String encabezado) {
+        int inicio = encabezado.lastIndexOf(":SEMESTRE=");
+        if (inicio >= 0) {
+            try {
+                return Integer.parseInt(encabezado.substring(inicio + ":SEMESTRE=".length()).trim());
+            } catch (NumberFormatException e) {
+                // Encabezado sin semestre válido
+            }
+        }
+        return semestreActual;
+    }
+    
+    /**
+     * Entrega la respuesta al hilo de E/S (con el id de correlación recibido);
+     * los hilos del pool nunca escriben en el ROUTER
+     */
+    private void enviarRespuestaAsincrona(String clienteId, String idSolicitud, String respuesta) {
         try {
-            servidor.sendMore(clienteId);
-            servidor.sendMore("");
-            servidor.send(respuesta);
+            // Formato: [clienteId][vacío][idSolicitud][respuesta], sin id si el cliente no lo envió
+            synchronized (salidaRespuestas) {
+                salidaRespuestas.sendMore(clienteId);
+                salidaRespuestas.sendMore("");
+                if (idSolicitud != null) {
+                    salidaRespuestas.sendMore(idSolicitud);
+                }
+                salidaRespuestas.send(respuesta);
+            }
         } catch (Exception e) {
             System.err.println("[DTI ASÍNCRONO] ❌ Error enviando respuesta a " + clienteId + ": " + e.getMessage());
             registrarEvento("ERROR_ENVIO", "Cliente: " + clienteId + ", Error: " + e.getMessage());
@@ -534,6 +802,9 @@ public class ServidorAsincrono {
      * Genera información general
      */
     private String generarInfoGeneral(ResultadoAsignacion resultado, Solicitud solicitud) {
+        if (resultado.rechazo() != null) {
+            return "[ERROR] " + motivoRechazo(solicitud.getSemestre());
+        }
         if (resultado.esExitoso()) {
             if (resultado.aulaMovilAsignadas() == 0) {
                 return String.format("Asignación exitosa de laboratorios y salones para %s", solicitud.getPrograma());
@@ -548,34 +819,30 @@ public class ServidorAsincrono {
      * Persiste solicitud en archivo JSON
      */
     private void persistirSolicitud(Solicitud solicitud, ResultadoAsignacion resultado, String clienteId) {
-        try (FileWriter writer = new FileWriter(archivoPersistencia, true)) {
+        try {
             Map<String, Object> registro = new HashMap<>();
             registro.put("timestamp", LocalDateTime.now().toString());
             registro.put("clienteId", clienteId);
             registro.put("solicitud", solicitud);
             registro.put("resultado", resultado);
-            registro.put("semestre", semestreActual);
+            registro.put("semestre", solicitud.getSemestre());
             registro.put("modoReplica", modoReplica);
             
+            // Solo se encola: el escritor de la bitácora lo agrupa con otros registros
             String linea = json.writeValueAsString(registro) + "\n";
-            writer.write(linea);
+            bitacoraSolicitudes.registrar(linea.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
             System.err.println("[DTI ASÍNCRONO] ❌ Error persistiendo solicitud: " + e.getMessage());
         }
     }
     
     /**
-     * Registra evento en archivo de log
+     * Registra evento en archivo de log (encolado en la bitácora, sin abrir el archivo)
      */
     private void registrarEvento(String tipo, String detalles) {
-        try (FileWriter writer = new FileWriter(archivoLog, true)) {
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            String linea = String.format("[%s] [%s] %s: %s%n", 
-                timestamp, modoReplica ? "REPLICA" : "PRINCIPAL", tipo, detalles);
-            writer.write(linea);
-        } catch (IOException e) {
-            System.err.println("Error escribiendo log: " + e.getMessage());
-        }
+        String timestamp = LocalDateTime.now().format(FORMATO_TIMESTAMP);
+        bitacoraEventos.registrar(String.format("[%s] [%s] %s: %s", 
+            timestamp, modoReplica ? "REPLICA" : "PRINCIPAL", tipo, detalles));
     }
     
     /**
@@ -667,9 +934,12 @@ public class ServidorAsincrono {
             System.out.println("\n[DTI ASÍNCRONO] 🛑 Cerrando servidor...");
             ejecutandose = false;
             detenerHeartbeat();
+            replicacion.close();
             poolHilos.shutdown();
             imprimirMetricasFinales();
             registrarEvento("SERVIDOR_CERRADO", "Shutdown limpio completado");
+            bitacoraEventos.close();
+            bitacoraSolicitudes.close();
         }));
     }
     
@@ -698,17 +968,21 @@ public class ServidorAsincrono {
         }
         
         // Estado final de recursos
-        String estadoFinal = AdministradorInstalaciones.getInstance().getEstadisticas();
+        String estadoFinal = libro.getEstadisticas(semestreActual);
         System.out.printf("║ Estado final: %-46s ║%n", estadoFinal);
         System.out.printf("║ Archivo de log: %-42s ║%n", archivoLog);
         System.out.printf("║ Persistencia: %-44s ║%n", archivoPersistencia);
         System.out.println("╚══════════════════════════════════════════════════════════════╝");
+        System.out.println("📄 Bitácora de eventos: " + bitacoraEventos.resumen());
+        System.out.println("💾 Bitácora de solicitudes: " + bitacoraSolicitudes.resumen());
         
-        // Mostrar historial de semestres si hay
-        if (estadosPorSemestre.size() > 0) {
-            System.out.println("\n📚 HISTORIAL DE SEMESTRES:");
-            estadosPorSemestre.forEach((semestre, estado) -> 
-                System.out.printf("   Semestre %d: %s%n", semestre, estado));
+        // Mostrar los semestres abiertos y el historial de archivados
+        if (libro.getEstadosAbiertos().size() > 1 || !libro.getArchivados().isEmpty()) {
+            System.out.println("\n📚 SEMESTRES:");
+            libro.getEstadosAbiertos().keySet().forEach(semestre ->
+                System.out.printf("   Semestre %d (abierto): %s%n", semestre, libro.getEstadisticas(semestre)));
+            libro.getArchivados().forEach((semestre, estado) ->
+                System.out.printf("   Semestre %d (archivado): %s%n", semestre, LibroSemestres.describir(estado)));
         }
     }
     
@@ -724,7 +998,9 @@ public class ServidorAsincrono {
         estado.put("clientesConectados", clientesConectados.size());
         estado.put("modoReplica", modoReplica);
         estado.put("servidorPrincipalActivo", servidorPrincipalActivo);
-        estado.put("estadoRecursos", AdministradorInstalaciones.getInstance().getEstadisticas());
+        estado.put("estadoRecursos", libro.getEstadisticas(semestreActual));
+        estado.put("semestresAbiertos", libro.getEstadosAbiertos().keySet());
+        estado.put("semestresArchivados", libro.getArchivados().keySet());
         estado.put("archivoLog", archivoLog);
         estado.put("archivoPersistencia", archivoPersistencia);
         estado.put("configuracion", configuracion.obtenerPropiedades());
@@ -4,6 +4,7 @@ package org.grupo4proyecto;
 import org.grupo4proyecto.entidades.Facultad;
 import org.grupo4proyecto.entidades.Solicitud;
 import org.grupo4proyecto.redes.ClienteFacultad;
+import org.grupo4proyecto.redes.EstadoAsignacion;
 import org.grupo4proyecto.redes.ResultadoEnvio;
 import org.grupo4proyecto.repositorio.ContenedorDatos;
 import org.grupo4proyecto.repositorio.RepositorioPrograma;
@@ -47,16 +48,40 @@ public class MainFacultad {
 
             try (ClienteFacultad clienteFacultad = new ClienteFacultad(datos.facultad)) {
 
+                // Modo segmentado: todas las solicitudes salen de una vez (con la
+                // ventana configurada); cada confirmación se envía apenas se
+                // responde su pregunta, así ninguna reserva espera a las demás
+                List<ResultadoEnvio> resultadosSegmentados = null;
+
+                if (clienteFacultad.esSegmentado()) {
+                    resultadosSegmentados = clienteFacultad.enviarSolicitudesServidor(solicitudes);
+                    for (long duracion : clienteFacultad.getTiemposUltimoLote()) {
+                        tiemposRespuesta.add(duracion);
+                    }
+                }
+
                 for (int i = 0; i < solicitudes.size(); i++) {
-                    long inicio = System.nanoTime();
-                    res = clienteFacultad.enviarSolicitudServidor(solicitudes.get(i));
-                    long fin = System.nanoTime();
-                    long duracion = fin - inicio;
-                    tiemposRespuesta.add(duracion);
-
-                    if (res.getInfoGeneral().equals("[ALERTA] No hay suficientes aulas o laboratorios para responder a la demanda")) {
-                        System.out.println(res.getInfoGeneral());
+                    if (resultadosSegmentados != null) {
+                        res = i < resultadosSegmentados.size() ? resultadosSegmentados.get(i) : null;
+                    } else {
+                        long inicio = System.nanoTime();
+                        res = clienteFacultad.enviarSolicitudServidor(solicitudes.get(i));
+                        long fin = System.nanoTime();
+                        long duracion = fin - inicio;
+                        tiemposRespuesta.add(duracion);
+                    }
+
+                    if (res == null || res.getEstado() == EstadoAsignacion.RECURSOS_INSUFICIENTES
+                            || res.getEstado() == EstadoAsignacion.ERROR_SERVIDOR
+                            || res.getEstado() == EstadoAsignacion.OCUPADO
+                            || res.getEstado() == EstadoAsignacion.LIMITE_TASA
+                            || res.getEstado() == EstadoAsignacion.CUOTA_EXCEDIDA) {
+                        System.out.println(res != null ? res.getInfoGeneral() : "[CLIENTE] Sin respuesta del servidor");
                         solicitudesNoAtendidas++;
+                        if (resultadosSegmentados != null) {
+                            // Las demás solicitudes ya fueron respondidas: seguir con ellas
+                            continue;
+                        }
                         return;
                     }
 
@@ -65,8 +90,11 @@ public class MainFacultad {
                     String opcion = scanner.nextLine();
 
                     if (opcion.trim().toLowerCase().equals("si")) {
-                        clienteFacultad.confirmarAsignacion(solicitudes.get(i), res, true);
-                        facultad.getProgramas().get(i).setNumLabs(res.getSalonesAsignados());
+                        String confirmacion = clienteFacultad.confirmarAsignacion(solicitudes.get(i), res, true);
+                        if ("RESERVA EXPIRADA".equals(confirmacion)) {
+                            System.out.println("La reserva venció antes de confirmarse, los recursos fueron liberados");
+                        }
+                        facultad.getProgramas().get(i).setNumSalones(res.getSalonesAsignados());
                         facultad.getProgramas().get(i).setNumLabs(res.getLabsAsignados());
                     } else if (opcion.trim().toLowerCase().equals("no")) {
                         clienteFacultad.confirmarAsignacion(solicitudes.get(i), res, false);
@@ -103,6 +131,7 @@ public class MainFacultad {
         // [2] Puerto
         // [3] Semestre (opcional)
         // [4] Archivo programas (opcional)
+        // [5] Ventana de solicitudes en vuelo (opcional, 1 = una a la vez)
 
         if (args.length >= 3) {
             try {
@@ -111,6 +140,9 @@ public class MainFacultad {
                 datos.facultad.setPuertoServidorCentral(Integer.parseInt(args[2]));
 
                 int semestre = args.length >= 4 ? Integer.parseInt(args[3]) : 1;
+                if (args.length >= 6) {
+                    datos.facultad.setVentanaSolicitudes(Integer.parseInt(args[5]));
+                }
 
                 if (args.length >= 5) {
                     RepositorioPrograma.inicializarCliente(datos, args[4], semestre);
@@ -143,7 +175,7 @@ public class MainFacultad {
         ==================================================================
         SISTEMA DE GESTIÓN DE RECURSOS PARA FACULTADES - USO DEL PROGRAMA
         ==================================================================
-        
+
         Modo de uso:
         1. Sin parámetros (valores por defecto):
            java -jar Facultad.jar
@@ -153,24 +185,26 @@ public class MainFacultad {
              - Puerto: 5555
              - Semestre: 1
              - Programas: programaDefecto.txt
-        
+
         2. Con parámetros personalizados:
-           java -jar Facultad.jar <nombre> <ip> <puerto> [semestre] [archivo_programas]
-           
+           java -jar Facultad.jar <nombre> <ip> <puerto> [semestre] [archivo_programas] [ventana]
+           * ventana > 1 envía las solicitudes segmentadas (varias en vuelo)
+
            Ejemplo completo:
            java -jar Facultad.jar "Facultad de Ciencias" 192.168.1.100 5555 2 misProgramas.txt
-        
+
         3. Parámetros mínimos requeridos:
            java -jar Facultad.jar <nombre> <ip> <puerto>
-           
+
            Ejemplo:
            java -jar Facultad.jar "Facultad de Medicina" 127.0.0.1 5556
-        
+
         ==================================================================
         ARCHIVOS DE CONFIGURACIÓN:
-        - configCliente.properties: Contiene IP/puerto por defecto
+        - configCliente.properties: Contiene IP/puerto/ventana por defecto
         - programaDefecto.txt: Listado de programas con formato:
-          Nombre Programa,salones,laboratorios
+          Nombre Programa,salones,laboratorios[,franjas]
+          (franjas opcionales, p. ej. LU1-2 MI1-2: días LU..SA, bloques 1..8)
         ==================================================================
         """;
 
@@ -215,6 +249,20 @@ public class MainFacultad {
                 facultad.setDirServidorCentral(InetAddress.getLoopbackAddress());
             }
 
+            // Ventana de solicitudes en vuelo (1 = una a la vez)
+            try {
+                facultad.setVentanaSolicitudes(Integer.parseInt(prop.getProperty("client.ventana", "1").trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ventana inválida en configuración, usando 1");
+            }
+
+            // Espera máxima por respuesta del servidor
+            try {
+                facultad.setTimeoutRespuestaMs(Integer.parseInt(prop.getProperty("client.timeoutMs", "60000").trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Timeout inválido en configuración, usando 60000 ms");
+            }
+
             // Obtener y validar puerto
             String puerto = prop.getProperty("server.port", "5555");
             try {
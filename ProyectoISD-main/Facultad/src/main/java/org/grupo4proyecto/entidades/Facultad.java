@@ -9,6 +9,10 @@ public class Facultad {
     private List<Programa> programas;
     private InetAddress dirServidorCentral;
     private int puertoServidorCentral;
+    // Solicitudes en vuelo por conexión (1 = una a la vez sobre REQ)
+    private int ventanaSolicitudes = 1;
+    // Espera máxima (ms) por cada respuesta del servidor
+    private int timeoutRespuestaMs = 60000;
 
     public Facultad (String nombre, List<Programa> programas, InetAddress dirServidorCentral, int puertoServidorCentral) {
         this.nombre = nombre;
@@ -56,6 +60,22 @@ public class Facultad {
         this.puertoServidorCentral = puertoServidorCentral;
     }
 
+    public int getVentanaSolicitudes () {
+        return ventanaSolicitudes;
+    }
+
+    public void setVentanaSolicitudes (int ventanaSolicitudes) {
+        this.ventanaSolicitudes = ventanaSolicitudes;
+    }
+
+    public int getTimeoutRespuestaMs () {
+        return timeoutRespuestaMs;
+    }
+
+    public void setTimeoutRespuestaMs (int timeoutRespuestaMs) {
+        this.timeoutRespuestaMs = timeoutRespuestaMs;
+    }
+
     @Override
     public String toString () {
         return "Facultad{" +
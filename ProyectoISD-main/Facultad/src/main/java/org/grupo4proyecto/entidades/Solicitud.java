@@ -6,6 +6,8 @@ public class Solicitud {
     private int semestre;
     private int numSalones;
     private int numLaboratorios;
+    // Franjas horarias pedidas, p. ej. "LU1-2 MI1-2" (null = todo el semestre)
+    private String franjas;
 
     public Solicitud (String facultad, String programa, int semestre, int numSalones, int numLaboratorios) {
         this.facultad = facultad;
@@ -15,6 +17,11 @@ public class Solicitud {
         this.numLaboratorios = numLaboratorios;
     }
 
+    public Solicitud (String facultad, String programa, int semestre, int numSalones, int numLaboratorios, String franjas) {
+        this(facultad, programa, semestre, numSalones, numLaboratorios);
+        this.franjas = franjas;
+    }
+
     public Solicitud() {}
 
     public String getFacultad () {
@@ -57,6 +64,14 @@ public class Solicitud {
         this.numLaboratorios = numLaboratorios;
     }
 
+    public String getFranjas () {
+        return franjas;
+    }
+
+    public void setFranjas (String franjas) {
+        this.franjas = franjas;
+    }
+
     @Override
     public String toString () {
         return "Solicitud{" +
@@ -65,6 +80,7 @@ public class Solicitud {
                 ", semestre=" + semestre +
                 ", numSalones=" + numSalones +
                 ", numLaboratorios=" + numLaboratorios +
+                (franjas != null ? ", franjas='" + franjas + '\'' : "") +
                 '}';
     }
 }
@@ -8,78 +8,353 @@ import org.zeromq.ZContext;
 import org.zeromq.ZMQ.Socket;
 import zmq.ZMQ;
 
-import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/*
+Cliente de la facultad hacia el broker del servidor central.
 
+Con ventana 1 usa un socket REQ: una solicitud en vuelo por vez. Con ventana
+mayor usa un socket DEALER segmentado: cada mensaje lleva un id de
+correlación ([empty][tipo][correlación][payload]), se mantienen hasta
+"ventana" mensajes sin respuesta y las respuestas, que el broker devuelve con
+el mismo id, se asocian aunque lleguen en otro orden.
+ */
 public class ClienteFacultad implements AutoCloseable {
+    // Tiempo máximo de espera de la negociación; un servidor sin soporte no responde
+    private static final int TIMEOUT_NEGOCIACION_MS = 2000;
+    // Veces que se reenvía una solicitud rechazada con OCUPADO o LIMITE_TASA
+    private static final int REINTENTOS_OCUPADO = 3;
+    private static final byte[] VACIO = new byte[0];
+
     private final ZContext contexto;
-    private final Socket cliente;
+    private Socket cliente;
     private final Facultad facultad;
     private final ObjectMapper json = new ObjectMapper();
+    // true si el servidor aceptó el formato binario para esta conexión
+    private boolean binario = false;
+
+    private final int ventana;
+    private final boolean segmentado;
+    // Sin respuesta en este plazo el intercambio termina con error
+    private final int timeoutRespuestaMs;
+    private long siguienteCorrelacion = 1;
+    // Tiempo de respuesta (ns) de cada mensaje del último intercambio
+    private long[] tiemposUltimoLote = new long[0];
 
     public ClienteFacultad(Facultad facultad) {
+        this(facultad, true);
+    }
+
+    /**
+     * @param formatoBinario intenta negociar el formato binario; si el servidor
+     *                       no lo soporta se usa JSON
+     */
+    public ClienteFacultad(Facultad facultad, boolean formatoBinario) {
+        this(facultad, formatoBinario, facultad.getVentanaSolicitudes());
+    }
+
+    /**
+     * @param ventana mensajes en vuelo permitidos; mayor que 1 activa el modo
+     *                segmentado sobre DEALER
+     */
+    public ClienteFacultad(Facultad facultad, boolean formatoBinario, int ventana) {
         this.contexto = new ZContext();
         this.facultad = facultad;
+        this.ventana = Math.max(1, ventana);
+        this.segmentado = this.ventana > 1;
+        this.timeoutRespuestaMs = facultad.getTimeoutRespuestaMs();
 
-        InetAddress dirServidor = facultad.getDirServidorCentral();
-        int puertoServidor = facultad.getPuertoServidorCentral();
+        System.out.println("[CLIENTE " + facultad.getNombre() + "] Conectando a broker"
+                + (segmentado ? " (modo segmentado, ventana " + this.ventana + ")" : "") + "...");
+        this.cliente = conectar();
 
-        this.cliente = contexto.createSocket(SocketType.REQ);
+        if (formatoBinario) {
+            negociarFormato();
+        }
+    }
 
-        String idCliente = facultad.getNombre();
-        cliente.setIdentity(idCliente.getBytes(ZMQ.CHARSET));
+    private Socket conectar() {
+        Socket socket = contexto.createSocket(segmentado ? SocketType.DEALER : SocketType.REQ);
 
-        System.out.println("[CLIENTE " + idCliente + "] Conectando a broker...");
-        cliente.connect(
+        String idCliente = facultad.getNombre();
+        socket.setIdentity(idCliente.getBytes(ZMQ.CHARSET));
+        socket.setReceiveTimeOut(timeoutRespuestaMs);
+        socket.connect(
                 "tcp://"+facultad.getDirServidorCentral().getHostAddress()
                         +":"+facultad.getPuertoServidorCentral());
+        return socket;
+    }
+
+    private void negociarFormato() {
+        cliente.setReceiveTimeOut(TIMEOUT_NEGOCIACION_MS);
+        long id = siguienteCorrelacion++;
+        enviar(TipoMensaje.NEGOCIAR, id, new byte[]{CodecBinario.VERSION});
+        Respuesta respuesta = recibir(id);
+
+        if (respuesta == null) {
+            System.out.println("[CLIENTE " + facultad.getNombre() + "] El servidor no negoció formato, usando JSON");
+            if (!segmentado) {
+                // El socket REQ queda esperando respuesta: se reemplaza por uno nuevo
+                cliente.close();
+                cliente = conectar();
+            }
+            cliente.setReceiveTimeOut(timeoutRespuestaMs);
+            return;
+        }
+
+        cliente.setReceiveTimeOut(timeoutRespuestaMs);
+        byte[] carga = respuesta.carga();
+        binario = respuesta.idCorrelacion() == id && carga.length == 1 && carga[0] == CodecBinario.VERSION;
+        System.out.println("[CLIENTE " + facultad.getNombre() + "] Formato de mensajes: " + (binario ? "binario" : "JSON"));
+    }
+
+    public boolean usaFormatoBinario() {
+        return binario;
+    }
+
+    public boolean esSegmentado() {
+        return segmentado;
+    }
+
+    public long[] getTiemposUltimoLote() {
+        return tiemposUltimoLote;
     }
 
     //Metodos para comunicarse con el servidor central
     public ResultadoEnvio enviarSolicitudServidor(Solicitud solicitud) {
+        List<ResultadoEnvio> resultados = enviarSolicitudesServidor(List.of(solicitud));
+        return resultados.isEmpty() ? null : resultados.get(0);
+    }
+
+    /**
+     * Envía todas las solicitudes manteniendo hasta "ventana" en vuelo y
+     * devuelve los resultados en el mismo orden de la lista (null en las
+     * posiciones cuya respuesta no se pudo leer).
+     */
+    public List<ResultadoEnvio> enviarSolicitudesServidor(List<Solicitud> solicitudes) {
         try {
-            String payload = json.writeValueAsString(solicitud);
-            System.out.println("[CLIENTE " + facultad.getNombre() + "] Enviando solicitud: " + payload);
+            List<byte[]> payloads = new ArrayList<>(solicitudes.size());
+            for (Solicitud solicitud : solicitudes) {
+                System.out.println("[CLIENTE " + facultad.getNombre() + "] Enviando solicitud: " + solicitud);
+                payloads.add(binario
+                        ? CodecBinario.codificarSolicitud(solicitud)
+                        : json.writeValueAsBytes(solicitud));
+            }
 
-            cliente.send(payload);
-            System.out.println("[CLIENTE] Solicitud enviada, esperando respuesta...");
+            List<byte[]> respuestas = intercambiar(TipoMensaje.SOLICITUD, payloads);
 
-            String respuesta = cliente.recvStr();
+            List<ResultadoEnvio> resultados = new ArrayList<>(respuestas.size());
+            for (byte[] respuesta : respuestas) {
+                resultados.add(leerResultado(respuesta));
+            }
+            reintentarOcupadas(payloads, resultados);
+            return resultados;
 
-            System.out.println("[CLIENTE] Respuesta recibida: " + respuesta);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Reenvía las solicitudes que el servidor rechazó por saturación o por la
+     * tasa de la facultad, tras la espera que sugirió. El tiempo de respuesta
+     * de cada una incluye esperas y reintentos
+     */
+    private void reintentarOcupadas(List<byte[]> payloads, List<ResultadoEnvio> resultados) throws InterruptedException {
+        long[] tiempos = tiemposUltimoLote;
+        for (int intento = 0; intento < REINTENTOS_OCUPADO; intento++) {
+            List<Integer> ocupadas = new ArrayList<>();
+            long espera = 0;
+            for (int i = 0; i < resultados.size(); i++) {
+                ResultadoEnvio resultado = resultados.get(i);
+                if (resultado != null && (resultado.getEstado() == EstadoAsignacion.OCUPADO
+                        || resultado.getEstado() == EstadoAsignacion.LIMITE_TASA)) {
+                    ocupadas.add(i);
+                    espera = Math.max(espera, resultado.getReintentarEnMs());
+                }
+            }
+            if (ocupadas.isEmpty()) {
+                break;
+            }
 
-            return json.readValue(respuesta, ResultadoEnvio.class);
+            System.out.println("[CLIENTE " + facultad.getNombre() + "] Solicitudes diferidas por el servidor, reintentando "
+                    + ocupadas.size() + " solicitudes en " + espera + " ms");
+            Thread.sleep(espera);
+            List<byte[]> reenvio = new ArrayList<>(ocupadas.size());
+            for (int indice : ocupadas) {
+                reenvio.add(payloads.get(indice));
+            }
+            List<byte[]> respuestas = intercambiar(TipoMensaje.SOLICITUD, reenvio);
+            for (int j = 0; j < ocupadas.size(); j++) {
+                int indice = ocupadas.get(j);
+                resultados.set(indice, leerResultado(respuestas.get(j)));
+                if (indice < tiempos.length) {
+                    tiempos[indice] += espera * 1_000_000L + tiemposUltimoLote[j];
+                }
+            }
+        }
+        tiemposUltimoLote = tiempos;
+    }
 
+    private ResultadoEnvio leerResultado(byte[] respuesta) {
+        try {
+            ResultadoEnvio resultado = CodecBinario.esBinario(respuesta, respuesta.length)
+                    ? CodecBinario.decodificarResultado(respuesta, respuesta.length)
+                    : json.readValue(respuesta, ResultadoEnvio.class);
+            System.out.println("[CLIENTE] Respuesta recibida: " + resultado.getInfoGeneral());
+            return resultado;
         } catch (Exception e) {
-            e.printStackTrace();
+            System.err.println("[CLIENTE] Respuesta inválida: " + e.getMessage());
             return null;
         }
     }
 
     public String confirmarAsignacion(Solicitud solicitud, ResultadoEnvio resultadoEnvio, boolean aceptado) {
+        List<String> respuestas = confirmarAsignaciones(List.of(solicitud), List.of(resultadoEnvio), List.of(aceptado));
+        return respuestas.isEmpty() ? "[CLIENTE] Error en la recepcion de la confirmacion" : respuestas.get(0);
+    }
+
+    /**
+     * Confirma o rechaza varias asignaciones con la misma ventana que las
+     * solicitudes. Las respuestas se devuelven en el orden de la lista.
+     */
+    public List<String> confirmarAsignaciones(List<Solicitud> solicitudes, List<ResultadoEnvio> resultados,
+                                              List<Boolean> aceptados) {
         try {
-            String mensaje;
-            if (aceptado) {
-                mensaje = "CONFIRMAR_ASIGNACION:" + solicitud.getPrograma();
-            } else {
-                mensaje = "RECHAZAR_ASIGNACION:" + solicitud.getPrograma();
-            }
+            // Aceptaciones y rechazos pueden mezclarse: cada mensaje lleva su propio tipo
+            List<byte[]> payloads = new ArrayList<>(solicitudes.size());
+            List<TipoMensaje> tipos = new ArrayList<>(solicitudes.size());
+
+            for (int i = 0; i < solicitudes.size(); i++) {
+                boolean aceptado = aceptados.get(i);
+                String mensaje = (aceptado ? "CONFIRMAR_ASIGNACION:" : "RECHAZAR_ASIGNACION:")
+                        + solicitudes.get(i).getPrograma();
+                TipoMensaje tipo = aceptado ? TipoMensaje.CONFIRMAR_ASIGNACION : TipoMensaje.RECHAZAR_ASIGNACION;
+
+                ConfirmacionAsignacion ack = new ConfirmacionAsignacion(mensaje, resultados.get(i));
+                payloads.add(binario
+                        ? CodecBinario.codificarConfirmacion(ack)
+                        : json.writeValueAsBytes(ack));
+                tipos.add(tipo);
 
-            ConfirmacionAsignacion ack = new ConfirmacionAsignacion(mensaje, resultadoEnvio);
-            String payload = json.writeValueAsString(ack);
-            cliente.send(payload);
+                System.out.println("[CLIENTE " + facultad.getNombre() + "] Enviando confirmación: " + mensaje);
+            }
 
-            System.out.println("[CLIENTE " + facultad.getNombre() + "] Enviando confirmación: " + payload);
+            List<byte[]> respuestas = intercambiar(tipos, payloads);
 
-            return cliente.recvStr();
+            List<String> textos = new ArrayList<>(respuestas.size());
+            for (byte[] respuesta : respuestas) {
+                textos.add(respuesta != null
+                        ? new String(respuesta, ZMQ.CHARSET)
+                        : "[CLIENTE] Error en la recepcion de la confirmacion");
+            }
+            return textos;
 
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        return "[CLIENTE] Error en la recepcion de la confirmacion";
+        return new ArrayList<>();
     }
 
+    private List<byte[]> intercambiar(TipoMensaje tipo, List<byte[]> payloads) {
+        return intercambiar(Collections.nCopies(payloads.size(), tipo), payloads);
+    }
+
+    /**
+     * Núcleo del modo segmentado: mantiene hasta "ventana" mensajes en vuelo y
+     * ubica cada respuesta por su id de correlación. Con REQ (ventana 1) el
+     * recorrido es el mismo, de a un mensaje.
+     */
+    private List<byte[]> intercambiar(List<TipoMensaje> tipos, List<byte[]> payloads) {
+        int total = payloads.size();
+        byte[][] respuestas = new byte[total][];
+        long[] inicios = new long[total];
+        long[] tiempos = new long[total];
+        Map<Long, Integer> pendientes = new HashMap<>();
+
+        int enviados = 0;
+        int recibidos = 0;
+        while (recibidos < total) {
+            while (enviados < total && pendientes.size() < ventana) {
+                long id = siguienteCorrelacion++;
+                pendientes.put(id, enviados);
+                inicios[enviados] = System.nanoTime();
+                enviar(tipos.get(enviados), id, payloads.get(enviados));
+                enviados++;
+            }
+
+            Respuesta respuesta = recibir(segmentado ? 0 : siguienteCorrelacion - 1);
+            if (respuesta == null) {
+                System.err.println("[CLIENTE] Sin respuesta del servidor en " + timeoutRespuestaMs + " ms");
+                if (!segmentado) {
+                    // El socket REQ queda esperando respuesta: se reemplaza por uno nuevo
+                    cliente.close();
+                    cliente = conectar();
+                }
+                break;
+            }
+
+            Integer indice = pendientes.remove(respuesta.idCorrelacion());
+            if (indice == null) {
+                System.out.println("[CLIENTE] Respuesta con correlación desconocida descartada: " + respuesta.idCorrelacion());
+                continue;
+            }
+            respuestas[indice] = respuesta.carga();
+            tiempos[indice] = System.nanoTime() - inicios[indice];
+            recibidos++;
+        }
+
+        tiemposUltimoLote = tiempos;
+        return Arrays.asList(respuestas);
+    }
+
+    private void enviar(TipoMensaje tipo, long idCorrelacion, byte[] payload) {
+        if (segmentado) {
+            cliente.sendMore(VACIO);
+            cliente.sendMore(tipo.comoTrama());
+            cliente.sendMore(ByteBuffer.allocate(Long.BYTES).putLong(idCorrelacion).array());
+        } else {
+            cliente.sendMore(tipo.comoTrama());
+        }
+        cliente.send(payload, 0);
+    }
+
+    /**
+     * Recibe la siguiente respuesta. Con REQ no viaja correlación y la
+     * respuesta corresponde siempre al único mensaje en vuelo (idEsperado).
+     */
+    private Respuesta recibir(long idEsperado) {
+        if (!segmentado) {
+            byte[] carga = cliente.recv();
+            return carga == null ? null : new Respuesta(idEsperado, carga);
+        }
+
+        if (cliente.recv() == null) { // Frame vacío
+            return null;
+        }
+        byte[] trama = cliente.recv();
+        if (!cliente.hasReceiveMore()) {
+            // Respuesta sin correlación (servidor antiguo)
+            return new Respuesta(0, trama);
+        }
+        long id = trama.length == Long.BYTES ? ByteBuffer.wrap(trama).getLong() : 0;
+        byte[] carga = cliente.recv();
+        while (cliente.hasReceiveMore()) {
+            cliente.recv();
+        }
+        return new Respuesta(id, carga);
+    }
+
+    private record Respuesta(long idCorrelacion, byte[] carga) {}
+
     @Override
     public void close() {
         contexto.close();
@@ -0,0 +1,44 @@
+package org.grupo4proyecto.redes;
+
+/*
+    Código de estado de una respuesta de asignación. Viaja como un byte en
+    el formato binario; la descripción solo se arma del lado que la muestra.
+ */
+public enum EstadoAsignacion {
+    EXITOSA((byte) 0, "Asignacion exitosa de laboratorios y salones"),
+    EXITOSA_AULAS_MOVILES((byte) 1, "Asignacion exitosa, algunos laboratorios se asignaron como aulas moviles"),
+    RECURSOS_INSUFICIENTES((byte) 2, "[ALERTA] No hay suficientes aulas o laboratorios para responder a la demanda"),
+    SOLICITUD_INVALIDA((byte) 3, "[ERROR] Solicitud inválida"),
+    // El trabajador que la atendía falló o dejó de responder
+    ERROR_SERVIDOR((byte) 4, "[ERROR] El servidor no pudo atender la solicitud, reintente"),
+    // El broker está saturado; la respuesta sugiere cuánto esperar antes de reintentar
+    OCUPADO((byte) 5, "[OCUPADO] El servidor está saturado, reintente más tarde"),
+    // Control de admisión por facultad (ver CuotasFacultades en el servidor)
+    LIMITE_TASA((byte) 6, "[LIMITADO] La facultad superó su tasa de solicitudes, reintente más tarde"),
+    CUOTA_EXCEDIDA((byte) 7, "[CUOTA] La facultad agotó su cuota de salones o laboratorios del semestre");
+
+    private static final EstadoAsignacion[] POR_CODIGO = values();
+
+    private final byte codigo;
+    private final String descripcion;
+
+    EstadoAsignacion(byte codigo, String descripcion) {
+        this.codigo = codigo;
+        this.descripcion = descripcion;
+    }
+
+    public byte getCodigo() {
+        return codigo;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    public static EstadoAsignacion desdeCodigo(int codigo) {
+        if (codigo < 0 || codigo >= POR_CODIGO.length) {
+            throw new IllegalArgumentException("Código de estado desconocido: " + codigo);
+        }
+        return POR_CODIGO[codigo];
+    }
+}
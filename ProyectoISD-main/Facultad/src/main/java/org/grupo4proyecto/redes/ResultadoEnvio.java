@@ -1,10 +1,21 @@
 package org.grupo4proyecto.redes;
 
+import java.util.Arrays;
+
 public class ResultadoEnvio {
     private String infoGeneral;
     private int labsAsignados;
     private int aulaMovilAsignadas;
     private int salonesAsignados;
+    // Reserva pendiente de confirmación (0 si el servidor no usa reservas)
+    private long idReserva;
+    // Código de estado; infoGeneral es su descripción legible
+    private EstadoAsignacion estado;
+    // Solo con estado OCUPADO: espera sugerida antes de reintentar
+    private long reintentarEnMs;
+    // Ids de las aulas asignadas (salones, aulas móviles y laboratorios) si
+    // el servidor lleva inventario; se devuelven tal cual al rechazar
+    private int[] idsAulas;
 
     public ResultadoEnvio(String infoGeneral, int labsAsignados, int aulaMovilAsignadas, int salonesAsignados) {
         this.infoGeneral = infoGeneral;
@@ -13,6 +24,11 @@ public class ResultadoEnvio {
         this.salonesAsignados = salonesAsignados;
     }
 
+    public ResultadoEnvio(String infoGeneral, int labsAsignados, int aulaMovilAsignadas, int salonesAsignados, long idReserva) {
+        this(infoGeneral, labsAsignados, aulaMovilAsignadas, salonesAsignados);
+        this.idReserva = idReserva;
+    }
+
     public ResultadoEnvio() {}
 
     public String getInfoGeneral() {
@@ -47,6 +63,38 @@ public class ResultadoEnvio {
         this.salonesAsignados = salonesAsignados;
     }
 
+    public long getIdReserva() {
+        return idReserva;
+    }
+
+    public void setIdReserva(long idReserva) {
+        this.idReserva = idReserva;
+    }
+
+    public EstadoAsignacion getEstado() {
+        return estado;
+    }
+
+    public void setEstado(EstadoAsignacion estado) {
+        this.estado = estado;
+    }
+
+    public long getReintentarEnMs() {
+        return reintentarEnMs;
+    }
+
+    public void setReintentarEnMs(long reintentarEnMs) {
+        this.reintentarEnMs = reintentarEnMs;
+    }
+
+    public int[] getIdsAulas() {
+        return idsAulas;
+    }
+
+    public void setIdsAulas(int[] idsAulas) {
+        this.idsAulas = idsAulas;
+    }
+
     @Override
     public String toString() {
         return "==== RESULTADO ENVIO ====\n" +
@@ -54,6 +102,7 @@ public class ResultadoEnvio {
                 "Laboratorios Asignados = " + labsAsignados + "\n" +
                 "Aulas Moviles Asignadas = " + aulaMovilAsignadas + "\n" +
                 "Salones Asignados = " + salonesAsignados + "\n" +
+                (idsAulas != null ? "Aulas Asignadas (ids) = " + Arrays.toString(idsAulas) + "\n" : "") +
                 "======================";
     }
 }
\ No newline at end of file
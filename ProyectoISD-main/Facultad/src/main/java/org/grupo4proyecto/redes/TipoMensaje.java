@@ -0,0 +1,42 @@
+package org.grupo4proyecto.redes;
+
+/*
+    Tipo de mensaje que viaja en el primer frame del sobre:
+        [tipo (1 byte)][payload]
+    El broker despacha leyendo un solo byte y reenvía el payload sin
+    deserializarlo.
+ */
+public enum TipoMensaje {
+    SOLICITUD((byte) 1),
+    CONFIRMAR_ASIGNACION((byte) 2),
+    RECHAZAR_ASIGNACION((byte) 3),
+    // Negociación del formato del payload: [versión máxima del cliente] -> [versión elegida]
+    NEGOCIAR((byte) 4);
+
+    private static final TipoMensaje[] POR_CODIGO = new TipoMensaje[5];
+
+    static {
+        for (TipoMensaje tipo : values()) {
+            POR_CODIGO[tipo.codigo] = tipo;
+        }
+    }
+
+    private final byte codigo;
+
+    TipoMensaje(byte codigo) {
+        this.codigo = codigo;
+    }
+
+    public byte getCodigo() {
+        return codigo;
+    }
+
+    public byte[] comoTrama() {
+        return new byte[]{codigo};
+    }
+
+    // Devuelve null si el código no corresponde a ningún tipo conocido
+    public static TipoMensaje desdeCodigo(int codigo) {
+        return codigo >= 0 && codigo < POR_CODIGO.length ? POR_CODIGO[codigo] : null;
+    }
+}
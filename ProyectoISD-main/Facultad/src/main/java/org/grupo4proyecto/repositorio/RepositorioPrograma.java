@@ -10,7 +10,7 @@ public class RepositorioPrograma {
             String linea;
             while ((linea = br.readLine()) != null) {
                 String[] partes = linea.split("\\s*,\\s*");
-                if (partes.length == 3) {
+                if (partes.length == 3 || partes.length == 4) {
                     datos.solicitudes.add(crearSolicitud(datos, partes, semestre));
                 }
             }
@@ -22,13 +22,15 @@ public class RepositorioPrograma {
             String linea;
             while ((linea = br.readLine()) != null) {
                 String[] partes = linea.split("\\s*,\\s*");
-                if (partes.length == 3) {
+                if (partes.length == 3 || partes.length == 4) {
                     datos.solicitudes.add(crearSolicitud(datos, partes, semestre));
                 }
             }
         }
     }
 
+    // Formato de línea: Nombre Programa,salones,laboratorios[,franjas]
+    // donde franjas es p. ej. "LU1-2 MI1-2" (sin ellas, todo el semestre)
     private static Solicitud crearSolicitud(ContenedorDatos datos, String[] partes, int semestre) {
         datos.facultad.getProgramas().add(new Programa(partes[0].trim()));
         return new Solicitud(
@@ -36,7 +38,8 @@ public class RepositorioPrograma {
                 partes[0].trim(),
                 semestre,
                 Integer.parseInt(partes[1].trim()),
-                Integer.parseInt(partes[2].trim())
+                Integer.parseInt(partes[2].trim()),
+                partes.length == 4 && !partes[3].isBlank() ? partes[3].trim() : null
         );
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package org.grupo4;
 
+import org.grupo4.redes.RouterShards;
 import org.grupo4.redes.ServidorCentral;
 import java.io.InputStream;
 
@@ -11,11 +12,21 @@ public class MainServidorCentral {
     private static final String DEFAULT_PORT = "5555";
     private static final String DEFAULT_INPROC = "backend";
 
+    /**
+     * Sin argumentos arranca un broker con configServidor.properties.
+     *   [archivo.properties]          broker (shard) con esa configuración
+     *   router [archivo.properties]   router delante de los shards (router.*)
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && "router".equalsIgnoreCase(args[0])) {
+            new RouterShards(args.length > 1 ? args[1] : "configServidor.properties").iniciar();
+            return;
+        }
+
         ServidorCentral servidor;
 
 
-        servidor = crearServidorConConfigPorDefecto();
+        servidor = args.length > 0 ? new ServidorCentral(args[0]) : crearServidorConConfigPorDefecto();
 
 
         servidor.loadBalancingBroker();
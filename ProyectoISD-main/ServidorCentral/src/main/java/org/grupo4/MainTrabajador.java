@@ -0,0 +1,59 @@
+package org.grupo4;
+
+import org.grupo4.redes.AsignadorRemoto;
+import org.grupo4.redes.ProcesadorSolicitudes;
+import org.grupo4.redes.TrabajadorPeticion;
+import org.zeromq.ZContext;
+
+import java.net.InetAddress;
+
+/**
+ * Lanza trabajadores en otro proceso (u otra máquina) que se registran en el
+ * backend TCP del broker (server.backendTcp) y asignan a través de su
+ * servicio de asignación (server.asignacionTcp).
+ *
+ * latidoMs debe coincidir con server.latidoMs del broker.
+ *
+ * Uso: java -cp ServidorCentral.jar org.grupo4.MainTrabajador [backend] [asignacion] [hilos] [nodo] [latidoMs]
+ */
+public class MainTrabajador {
+    // Valores por defecto
+    private static final String DEFAULT_BACKEND = "tcp://localhost:5560";
+    private static final String DEFAULT_ASIGNACION = "tcp://localhost:5561";
+    private static final int DEFAULT_HILOS = 4;
+    private static final long DEFAULT_LATIDO_MS = 1000;
+    private static final int TIMEOUT_ASIGNACION_MS = 5000;
+
+    public static void main(String[] args) {
+        String backend = args.length > 0 ? args[0] : DEFAULT_BACKEND;
+        String asignacion = args.length > 1 ? args[1] : DEFAULT_ASIGNACION;
+        int hilos = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HILOS;
+        // Las identidades deben ser únicas en el backend del broker
+        String nodo = args.length > 3 ? args[3] : nombreNodo();
+        long latidoMs = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_LATIDO_MS;
+
+        ZContext contexto = new ZContext();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\nProceso Trabajadores " + nodo + " Finalizado");
+            contexto.close();
+        }));
+
+        System.out.println("[NODO " + nodo + "] Lanzando " + hilos + " trabajadores contra " + backend);
+        for (int i = 1; i <= hilos; i++) {
+            String id = nodo + "-" + i;
+            ProcesadorSolicitudes procesador = new ProcesadorSolicitudes("[TRABAJADOR " + id + "]",
+                    new AsignadorRemoto(contexto, asignacion, TIMEOUT_ASIGNACION_MS));
+            new TrabajadorPeticion(contexto, id, backend, procesador, latidoMs).start();
+        }
+    }
+
+    private static String nombreNodo() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "nodo";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+}
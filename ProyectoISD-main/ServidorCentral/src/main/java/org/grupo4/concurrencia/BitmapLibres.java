@@ -0,0 +1,139 @@
+package org.grupo4.concurrencia;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Lista de libres como mapa de bits: el bit i en 1 significa que el elemento i
+está libre. Los bits se guardan de a 64 por palabra en un AtomicLongArray.
+
+Tomar recorre palabras buscando bits en 1 (como nextSetBit) y reclama con un
+solo compareAndSet todos los que necesita de esa palabra, así que pedir k
+elementos cuesta O(N/64) en el peor caso y no crea objetos. El recorrido
+empieza en la última palabra donde se encontró algo para no revisar una y
+otra vez el prefijo ya ocupado.
+
+Ninguna operación toma candados. Quien necesite verificar un grupo de
+elementos antes de liberarlo debe serializar sus liberaciones: solo liberar
+pone bits en 1, así que entre esas liberaciones un bit verificado como
+ocupado sigue ocupado.
+ */
+public final class BitmapLibres {
+    private final AtomicLongArray palabras;
+    private final int capacidad;
+    // Palabra donde conviene empezar a buscar
+    private final AtomicInteger pista = new AtomicInteger();
+
+    public BitmapLibres(int capacidad) {
+        if (capacidad < 0) {
+            throw new IllegalArgumentException("Capacidad negativa: " + capacidad);
+        }
+        this.capacidad = capacidad;
+        this.palabras = new AtomicLongArray(Math.max(1, (capacidad + 63) >>> 6));
+        reiniciar(0);
+    }
+
+    public int capacidad() {
+        return capacidad;
+    }
+
+    /**
+     * Toma hasta n elementos libres y escribe sus índices en destino a partir
+     * de desde. Devuelve cuántos tomó: menos de n solo si en la pasada no
+     * encontró más libres
+     */
+    public int tomar(int n, int[] destino, int desde) {
+        int tomados = 0;
+        int numPalabras = palabras.length();
+        int inicio = pista.get();
+        for (int recorridas = 0; recorridas < numPalabras && tomados < n; recorridas++) {
+            int p = inicio + recorridas;
+            if (p >= numPalabras) {
+                p -= numPalabras;
+            }
+            while (tomados < n) {
+                long actual = palabras.get(p);
+                if (actual == 0) {
+                    break;
+                }
+                // Los bits más bajos en 1, hasta completar lo que falta
+                long elegidos = 0;
+                long resto = actual;
+                for (int k = n - tomados; k > 0 && resto != 0; k--) {
+                    long bajo = resto & -resto;
+                    elegidos |= bajo;
+                    resto ^= bajo;
+                }
+                if (palabras.compareAndSet(p, actual, resto)) {
+                    int base = p << 6;
+                    for (long m = elegidos; m != 0; m &= m - 1) {
+                        destino[desde + tomados++] = base + Long.numberOfTrailingZeros(m);
+                    }
+                    if (p != inicio) {
+                        pista.set(p);
+                    }
+                }
+            }
+        }
+        return tomados;
+    }
+
+    /**
+     * Marca libre el elemento dado. Devuelve false si ya estaba libre
+     */
+    public boolean liberar(int indice) {
+        int p = indice >>> 6;
+        long bit = 1L << indice;
+        while (true) {
+            long actual = palabras.get(p);
+            if ((actual & bit) != 0) {
+                return false;
+            }
+            if (palabras.compareAndSet(p, actual, actual | bit)) {
+                if (p < pista.get()) {
+                    pista.set(p);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Deja ocupados exactamente los primeros "ocupados" elementos y libres
+     * los demás. No debe llamarse mientras otros hilos toman o liberan
+     */
+    public void reiniciar(int ocupados) {
+        for (int p = 0; p < palabras.length(); p++) {
+            long libres = mascaraValida(p);
+            int primero = p << 6;
+            if (ocupados >= primero + 64) {
+                libres = 0;
+            } else if (ocupados > primero) {
+                libres &= -1L << (ocupados - primero);
+            }
+            palabras.set(p, libres);
+        }
+        pista.set(Math.min(palabras.length() - 1, ocupados >>> 6));
+    }
+
+    public boolean estaLibre(int indice) {
+        return (palabras.get(indice >>> 6) & (1L << indice)) != 0;
+    }
+
+    public int libres() {
+        int libres = 0;
+        for (int p = 0; p < palabras.length(); p++) {
+            libres += Long.bitCount(palabras.get(p));
+        }
+        return libres;
+    }
+
+    // Bits de la palabra p que corresponden a elementos existentes
+    private long mascaraValida(int p) {
+        int restantes = capacidad - (p << 6);
+        if (restantes >= 64) {
+            return -1L;
+        }
+        return restantes <= 0 ? 0 : (1L << restantes) - 1;
+    }
+}
@@ -0,0 +1,45 @@
+package org.grupo4.concurrencia;
+
+// Empaqueta salones, laboratorios y aulas móviles en un único long para que
+// el estado completo de las instalaciones se actualice con un solo compareAndSet.
+//
+// Distribución de bits (21 bits por campo, el bit de signo queda libre):
+//   [ aulas móviles | laboratorios | salones ]
+//      bits 42-62      bits 21-41    bits 0-20
+public final class RecursosEmpaquetados {
+    public static final int BITS_CAMPO = 21;
+    public static final int MAX_VALOR = (1 << BITS_CAMPO) - 1;
+
+    private static final long MASCARA = MAX_VALOR;
+    private static final int DESPLAZAMIENTO_LABS = BITS_CAMPO;
+    private static final int DESPLAZAMIENTO_AULAS = BITS_CAMPO * 2;
+
+    private RecursosEmpaquetados() {}
+
+    public static long empaquetar(int salones, int labs, int aulasMoviles) {
+        if (!enRango(salones) || !enRango(labs) || !enRango(aulasMoviles)) {
+            throw new IllegalArgumentException(String.format(
+                    "Valores fuera de rango [0, %d]: salones=%d, labs=%d, aulasMoviles=%d",
+                    MAX_VALOR, salones, labs, aulasMoviles));
+        }
+        return ((long) aulasMoviles << DESPLAZAMIENTO_AULAS)
+                | ((long) labs << DESPLAZAMIENTO_LABS)
+                | salones;
+    }
+
+    public static int salones(long estado) {
+        return (int) (estado & MASCARA);
+    }
+
+    public static int labs(long estado) {
+        return (int) ((estado >>> DESPLAZAMIENTO_LABS) & MASCARA);
+    }
+
+    public static int aulasMoviles(long estado) {
+        return (int) ((estado >>> DESPLAZAMIENTO_AULAS) & MASCARA);
+    }
+
+    public static boolean enRango(int valor) {
+        return valor >= 0 && valor <= MAX_VALOR;
+    }
+}
@@ -0,0 +1,132 @@
+package org.grupo4.concurrencia;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/*
+Rueda de tiempo con hash (hashed timing wheel) para vencimientos masivos.
+
+Cada ranura de la rueda agrupa los identificadores que vencen en el mismo
+tick (módulo el número de ranuras); las entradas que vencen más allá de una
+vuelta completa llevan un contador de rondas pendientes. Programar y vencer
+una entrada cuesta O(1) sin importar cuántas haya activas.
+
+Los productores solo escriben en una cola concurrente; las ranuras las toca
+exclusivamente el hilo de la rueda, por lo que no necesitan sincronización.
+La cancelación es perezosa: quien recibe el vencimiento decide si el
+identificador sigue vigente.
+ */
+public class RuedaTemporizadora implements AutoCloseable {
+    private final long tickNanos;
+    private final int mascara;
+    private final Entrada[] ranuras;
+    private final ConcurrentLinkedQueue<Entrada> nuevas = new ConcurrentLinkedQueue<>();
+    private final LongConsumer alVencer;
+    private final long inicio = System.nanoTime();
+    private final Thread hilo;
+
+    private volatile boolean activa = true;
+    // Solo lo modifica el hilo de la rueda
+    private long tickActual = 0;
+
+    public RuedaTemporizadora(String nombre, long tickMs, int numRanuras, LongConsumer alVencer) {
+        if (tickMs <= 0 || numRanuras <= 0) {
+            throw new IllegalArgumentException("tickMs y numRanuras deben ser positivos");
+        }
+        // Redondear a potencia de dos para reemplazar el módulo por una máscara
+        int tamano = numRanuras == 1 ? 1 : Integer.highestOneBit(numRanuras - 1) << 1;
+
+        this.tickNanos = tickMs * 1_000_000L;
+        this.mascara = tamano - 1;
+        this.ranuras = new Entrada[mascara + 1];
+        this.alVencer = alVencer;
+
+        this.hilo = new Thread(this::ejecutar, nombre);
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Programa el vencimiento de un identificador dentro de retrasoMs milisegundos
+     */
+    public void programar(long id, long retrasoMs) {
+        long plazo = System.nanoTime() - inicio + Math.max(0, retrasoMs) * 1_000_000L;
+        nuevas.add(new Entrada(id, plazo));
+    }
+
+    private void ejecutar() {
+        while (activa) {
+            esperarSiguienteTick();
+            if (!activa) break;
+
+            transferirNuevas();
+            vencerRanura((int) (tickActual & mascara));
+            tickActual++;
+        }
+    }
+
+    private void esperarSiguienteTick() {
+        long limite = (tickActual + 1) * tickNanos;
+        long restante;
+        while (activa && (restante = limite - (System.nanoTime() - inicio)) > 0) {
+            LockSupport.parkNanos(this, restante);
+        }
+    }
+
+    private void transferirNuevas() {
+        Entrada entrada;
+        while ((entrada = nuevas.poll()) != null) {
+            long tickVencimiento = Math.max(tickActual, entrada.plazo / tickNanos);
+            entrada.rondas = (tickVencimiento - tickActual) / ranuras.length;
+
+            int indice = (int) (tickVencimiento & mascara);
+            entrada.siguiente = ranuras[indice];
+            ranuras[indice] = entrada;
+        }
+    }
+
+    private void vencerRanura(int indice) {
+        Entrada anterior = null;
+        Entrada entrada = ranuras[indice];
+
+        while (entrada != null) {
+            Entrada siguiente = entrada.siguiente;
+            if (entrada.rondas <= 0) {
+                // Desenlazar y notificar
+                if (anterior == null) {
+                    ranuras[indice] = siguiente;
+                } else {
+                    anterior.siguiente = siguiente;
+                }
+                try {
+                    alVencer.accept(entrada.id);
+                } catch (Exception e) {
+                    System.err.println("[RUEDA] Error procesando vencimiento " + entrada.id + ": " + e.getMessage());
+                }
+            } else {
+                entrada.rondas--;
+                anterior = entrada;
+            }
+            entrada = siguiente;
+        }
+    }
+
+    @Override
+    public void close() {
+        activa = false;
+        LockSupport.unpark(hilo);
+    }
+
+    private static final class Entrada {
+        final long id;
+        final long plazo;
+        long rondas;
+        Entrada siguiente;
+
+        Entrada(long id, long plazo) {
+            this.id = id;
+            this.plazo = plazo;
+        }
+    }
+}
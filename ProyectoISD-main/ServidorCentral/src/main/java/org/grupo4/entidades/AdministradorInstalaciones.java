@@ -1,19 +1,69 @@
 package org.grupo4.entidades;
 
-import org.grupo4.concurrencia.ContadorAtomico;
+import org.grupo4.concurrencia.RecursosEmpaquetados;
+import org.grupo4.concurrencia.RuedaTemporizadora;
+import org.grupo4.redes.EstadoAsignacion;
+import org.grupo4.redes.ListaEspera;
 import org.grupo4.redes.ResultadoEnvio;
+import org.grupo4.repositorio.BitacoraInstalaciones;
+import org.grupo4.repositorio.BitacoraInstalaciones.Instantanea;
+import org.grupo4.repositorio.BitacoraInstalaciones.Transicion;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.grupo4.repositorio.Configuracion.cargarConfiguracionServidor;
 
 public class AdministradorInstalaciones {
     private static volatile AdministradorInstalaciones singleton;
-    private final ContadorAtomico salones;
-    private final ContadorAtomico labs;
-    private final ContadorAtomico aulasMoviles;
+    // Los bits altos del id de reserva identifican al shard que la emitió
+    private static final int BITS_RESERVA_POR_SHARD = 48;
+    // Salones, labs y aulas móviles empaquetados en una sola palabra atómica
+    private final AtomicLong estado;
+
+    // Reservas pendientes de CONFIRMAR_ASIGNACION (deshabilitadas si timeoutReservaMs == 0,
+    // salvo las asignaciones que consumen cuota, que se registran sin plazo)
+    private final ConcurrentHashMap<Long, Reserva> reservas = new ConcurrentHashMap<>();
+    private final AtomicLong secuenciaReservas = new AtomicLong(0);
+    private volatile long timeoutReservaMs = 0;
+    private volatile RuedaTemporizadora ruedaReservas;
+
+    // Tasa y cuotas por facultad (null = sin control de admisión)
+    private volatile CuotasFacultades cuotas;
+
+    // Aulas concretas (null = solo contadores). Los contadores siguen siendo
+    // la puerta de entrada; el inventario solo dice qué aulas se entregan
+    private volatile InventarioAulas inventario;
+
+    // Ocupación de las aulas por franja horaria (null = cada asignación ocupa
+    // el aula todo el semestre). Reemplaza a contadores e inventario
+    private volatile HorarioAulas horario;
+
+    // Con escasez, asignarLote elige qué solicitudes atender en vez de ir en
+    // orden de llegada (ver EmpaquetadoLote)
+    private volatile boolean empaquetadoOptimo = false;
+
+    // Solicitudes que esperan recursos (null = se responde Caso 3 al momento).
+    // Cada devolución al pool le avisa para que empareje
+    private volatile ListaEspera listaEspera;
+
+    // Bitácora de escritura anticipada (null = sin persistencia). Con bitácora,
+    // cada transición toma el candado de lectura para publicar y registrarse;
+    // la instantánea toma el de escritura, así captura un estado que coincide
+    // exactamente con un LSN de la bitácora. Sin bitácora no hay instantánea
+    // que coordinar y el CAS alcanza: el candado no se toma
+    private volatile BitacoraInstalaciones bitacora;
+    private final ReentrantReadWriteLock candado = new ReentrantReadWriteLock();
+    private ScheduledExecutorService programadorInstantaneas;
+    private long lsnUltimaInstantanea = -1;
 
     // Valores maximos parametrizables
     public AdministradorInstalaciones() {
@@ -22,15 +72,11 @@ public class AdministradorInstalaciones {
         int maxSalones = Integer.parseInt(valores.get(0));
         int maxLabs = Integer.parseInt(valores.get(1));
 
-        this.salones = new ContadorAtomico(maxSalones);
-        this.labs = new ContadorAtomico(maxLabs);
-        this.aulasMoviles = new ContadorAtomico(0);
+        this.estado = new AtomicLong(RecursosEmpaquetados.empaquetar(maxSalones, maxLabs, 0));
     }
 
     public AdministradorInstalaciones(int salones, int labs) {
-        this.salones = new ContadorAtomico(salones);
-        this.labs = new ContadorAtomico(labs);
-        this.aulasMoviles = new ContadorAtomico(0);
+        this.estado = new AtomicLong(RecursosEmpaquetados.empaquetar(salones, labs, 0));
     }
 
 
@@ -56,65 +102,869 @@ public class AdministradorInstalaciones {
         return singleton;
     }
 
+    /*
+    Toda la asignación es una única transición atómica: se lee una instantánea
+    del estado empaquetado, se calcula el estado resultante (Caso 1, 2 o 3) y se
+    publica con compareAndSet. Si otro hilo modificó el estado entre la lectura
+    y la escritura, se reintenta con la nueva instantánea.
+     */
     public ResultadoAsignacion asignar(int salonesNecesitados, int labsNecesitados) {
-        synchronized(this) {
-            // Caso 1: Hay suficientes salones y labs disponibles
-            if (labs.get() >= labsNecesitados && salones.get() >= salonesNecesitados) {
-                labs.decrementar(labsNecesitados);
-                salones.decrementar(salonesNecesitados);
-                return new ResultadoAsignacion(labsNecesitados, 0, salonesNecesitados);
+        return asignar(salonesNecesitados, labsNecesitados, null);
+    }
+
+    /**
+     * Igual que asignar(salones, labs), pasando antes por el control de
+     * admisión de la facultad si está configurado
+     */
+    public ResultadoAsignacion asignar(Solicitud solicitud) {
+        return asignar(solicitud, true);
+    }
+
+    /**
+     * Vuelve a intentar una solicitud de la lista de espera: ya pagó su ficha
+     * de la tasa al llegar, así que solo pasa por la cuota
+     */
+    public ResultadoAsignacion reintentar(Solicitud solicitud) {
+        return asignar(solicitud, false);
+    }
+
+    private ResultadoAsignacion asignar(Solicitud solicitud, boolean consumirTasa) {
+        HorarioAulas franjas = horario;
+        if (franjas != null) {
+            return asignarEnHorario(franjas, solicitud, consumirTasa);
+        }
+        CuotasFacultades control = cuotas;
+        if (control == null) {
+            return asignar(solicitud.getNumSalones(), solicitud.getNumLaboratorios(), null);
+        }
+        CuotasFacultades.Consumo[] consumo = new CuotasFacultades.Consumo[1];
+        ResultadoAsignacion rechazo = admitir(control, solicitud, consumo, 0, consumirTasa);
+        if (rechazo != null) {
+            return rechazo;
+        }
+        ResultadoAsignacion resultado = asignar(solicitud.getNumSalones(), solicitud.getNumLaboratorios(), consumo[0]);
+        if (!resultado.esExitoso()) {
+            liberarCuota(consumo[0], solicitud);
+        }
+        return resultado;
+    }
+
+    private ResultadoAsignacion asignar(int salonesNecesitados, int labsNecesitados, CuotasFacultades.Consumo cuota) {
+        ResultadoAsignacion[] resultado = new ResultadoAsignacion[1];
+
+        BitacoraInstalaciones wal = bitacora;
+        if (wal != null) {
+            candado.readLock().lock();
+        }
+        try {
+            while (true) {
+                long actual = estado.get();
+                long nuevo = calcularAsignacion(actual, salonesNecesitados, labsNecesitados, resultado, 0);
+                if (nuevo == actual || estado.compareAndSet(actual, nuevo)) {
+                    ResultadoAsignacion asignado = reservar(tomarAulas(resultado[0]), cuota, 0);
+                    if (wal != null && asignado.esExitoso()) {
+                        wal.registrar(BitacoraInstalaciones.ASIGNACION, asignado.idReserva(),
+                                asignado.salonesAsignados(), asignado.labsAsignados(), asignado.aulaMovilAsignadas());
+                    }
+                    return asignado;
+                }
+            }
+        } finally {
+            if (wal != null) {
+                candado.readLock().unlock();
             }
+        }
+    }
 
-            // Caso 2: Faltan labs pero podemos convertir salones en aulas móviles
-            int labsDisponibles = labs.get();
-            int labsFaltantes = labsNecesitados - labsDisponibles;
-            int salonesRequeridos = salonesNecesitados + labsFaltantes;
+    /*
+    Asigna una ventana completa de solicitudes con un solo compareAndSet.
+    Las solicitudes se evalúan en orden sobre una copia local del estado, de
+    modo que el resultado es el mismo que llamar asignar() una por una, pero
+    pagando una sola publicación por lote. Si hay contención se recalcula el
+    lote entero sobre la nueva instantánea.
 
-            if (salones.get() >= salonesRequeridos) {
-                labs.decrementar(labsDisponibles);
-                salones.decrementar(salonesRequeridos);
-                aulasMoviles.incrementar(labsFaltantes);
+    Con control de admisión, las solicitudes rechazadas por tasa o cuota
+    quedan fuera del cálculo y la cuota de las que el pool no puede atender
+    se devuelve después de publicar.
+
+    Con empaquetado óptimo, si el lote no cabe entero se eligen primero las
+    solicitudes a atender sobre la misma instantánea (la mayor cantidad, con
+    las menos aulas móviles) y las demás quedan en Caso 3.
+     */
+    public List<ResultadoAsignacion> asignarLote(List<Solicitud> solicitudes) {
+        ResultadoAsignacion[] resultados = new ResultadoAsignacion[solicitudes.size()];
+        HorarioAulas franjas = horario;
+        if (franjas != null) {
+            // Cada aula se reclama con su propio compareAndSet: no hay publicación por lote
+            for (int i = 0; i < resultados.length; i++) {
+                resultados[i] = asignarEnHorario(franjas, solicitudes.get(i), true);
+            }
+            return Arrays.asList(resultados);
+        }
+
+        CuotasFacultades control = cuotas;
+        ResultadoAsignacion[] rechazos = null;
+        CuotasFacultades.Consumo[] consumos = null;
+        if (control != null) {
+            rechazos = new ResultadoAsignacion[resultados.length];
+            consumos = new CuotasFacultades.Consumo[resultados.length];
+            for (int i = 0; i < resultados.length; i++) {
+                rechazos[i] = admitir(control, solicitudes.get(i), consumos, i, true);
+            }
+        }
+
+        BitacoraInstalaciones wal = bitacora;
+        if (wal != null) {
+            candado.readLock().lock();
+        }
+        try {
+            while (true) {
+                long actual = estado.get();
+                long nuevo = actual;
+                boolean[] seleccion = empaquetadoOptimo && resultados.length > 1
+                        ? EmpaquetadoLote.elegir(RecursosEmpaquetados.salones(actual),
+                                RecursosEmpaquetados.labs(actual), solicitudes, rechazos)
+                        : null;
+                for (int i = 0; i < resultados.length; i++) {
+                    if (rechazos != null && rechazos[i] != null) {
+                        resultados[i] = rechazos[i];
+                        continue;
+                    }
+                    if (seleccion != null && !seleccion[i]) {
+                        resultados[i] = new ResultadoAsignacion(0, 0, 0);
+                        continue;
+                    }
+                    Solicitud solicitud = solicitudes.get(i);
+                    nuevo = calcularAsignacion(nuevo,
+                            solicitud.getNumSalones(), solicitud.getNumLaboratorios(), resultados, i);
+                }
+                if (nuevo == actual || estado.compareAndSet(actual, nuevo)) {
+                    for (int i = 0; i < resultados.length; i++) {
+                        CuotasFacultades.Consumo cuota = consumos != null ? consumos[i] : null;
+                        if (cuota != null && !resultados[i].esExitoso()) {
+                            liberarCuota(cuota, solicitudes.get(i));
+                            cuota = null;
+                        }
+                        resultados[i] = reservar(tomarAulas(resultados[i]), cuota, 0);
+                    }
+                    registrarAsignaciones(wal, resultados);
+                    return Arrays.asList(resultados);
+                }
+            }
+        } finally {
+            if (wal != null) {
+                candado.readLock().unlock();
+            }
+        }
+    }
+
+    // El lote entero va a la bitácora en una sola escritura
+    private void registrarAsignaciones(BitacoraInstalaciones wal, ResultadoAsignacion[] resultados) {
+        if (wal == null) {
+            return;
+        }
+        List<Transicion> transiciones = new ArrayList<>(resultados.length);
+        for (ResultadoAsignacion r : resultados) {
+            if (r.esExitoso()) {
+                transiciones.add(new Transicion(BitacoraInstalaciones.ASIGNACION, 0, r.idReserva(),
+                        r.salonesAsignados(), r.labsAsignados(), r.aulaMovilAsignadas()));
+            }
+        }
+        if (!transiciones.isEmpty()) {
+            wal.registrarLote(transiciones);
+        }
+    }
+
+    /*
+    Control de admisión de una solicitud: consume una ficha de la tasa de su
+    facultad (si consumirTasa) y reserva lo pedido de su cuota del semestre
+    (consumos[indice]).
+    Devuelve el resultado de rechazo, o null si la solicitud pasa al pool.
+    Una solicitud inválida pasa sin consumir: el pool la rechaza igual.
+     */
+    private static ResultadoAsignacion admitir(CuotasFacultades control, Solicitud solicitud,
+                                               CuotasFacultades.Consumo[] consumos, int indice,
+                                               boolean consumirTasa) {
+        if (solicitud.getFacultad() == null || solicitud.getNumSalones() < 0 || solicitud.getNumLaboratorios() < 0) {
+            return null;
+        }
+        long espera = consumirTasa ? control.admitirTasa(solicitud.getFacultad()) : 0;
+        if (espera > 0) {
+            return ResultadoAsignacion.rechazada(EstadoAsignacion.LIMITE_TASA, espera);
+        }
+        CuotasFacultades.Consumo consumo = control.reservarCuota(solicitud.getFacultad(), solicitud.getSemestre(),
+                solicitud.getNumSalones(), solicitud.getNumLaboratorios());
+        if (consumo == null) {
+            return ResultadoAsignacion.rechazada(EstadoAsignacion.CUOTA_EXCEDIDA, 0);
+        }
+        consumos[indice] = consumo;
+        return null;
+    }
+
+    private static void liberarCuota(CuotasFacultades.Consumo cuota, Solicitud solicitud) {
+        if (cuota != null) {
+            cuota.liberar(solicitud.getNumSalones(), solicitud.getNumLaboratorios());
+        }
+    }
+
+    /*
+    Asignación por franjas horarias: pasa por el control de admisión igual
+    que asignar(Solicitud) y después busca aulas libres en todas las franjas
+    pedidas. No toca los contadores ni la bitácora.
+     */
+    private ResultadoAsignacion asignarEnHorario(HorarioAulas franjas, Solicitud solicitud, boolean consumirTasa) {
+        long mascara;
+        try {
+            mascara = Franjas.parsear(solicitud.getFranjas());
+        } catch (IllegalArgumentException e) {
+            return ResultadoAsignacion.rechazada(EstadoAsignacion.SOLICITUD_INVALIDA, 0);
+        }
 
-                return new ResultadoAsignacion(labsDisponibles, salonesNecesitados, labsFaltantes);
+        CuotasFacultades control = cuotas;
+        CuotasFacultades.Consumo[] consumo = new CuotasFacultades.Consumo[1];
+        if (control != null) {
+            ResultadoAsignacion rechazo = admitir(control, solicitud, consumo, 0, consumirTasa);
+            if (rechazo != null) {
+                return rechazo;
             }
+        }
+
+        ResultadoAsignacion resultado = franjas.asignar(
+                solicitud.getNumSalones(), solicitud.getNumLaboratorios(), mascara);
+        if (!resultado.esExitoso()) {
+            liberarCuota(consumo[0], solicitud);
+            return resultado;
+        }
+        return reservar(resultado, consumo[0], mascara);
+    }
+
+    // Con inventario, elige las aulas concretas de lo que ya se descontó del contador
+    private ResultadoAsignacion tomarAulas(ResultadoAsignacion resultado) {
+        InventarioAulas aulas = inventario;
+        if (aulas == null || !resultado.esExitoso()) {
+            return resultado;
+        }
+        return resultado.conAulas(aulas.tomar(
+                resultado.salonesAsignados() + resultado.aulaMovilAsignadas(), resultado.labsAsignados()));
+    }
+
+    /**
+     * Asigna salones y laboratorios concretos del inventario. Debe llamarse
+     * después de habilitarPersistencia: las aulas ocupadas se deducen de los
+     * contadores recuperados. Desactiva los préstamos entre shards, que
+     * mueven capacidad sin aulas concretas
+     */
+    public synchronized void configurarInventario(InventarioAulas inventario) {
+        if (inventario != null) {
+            long actual = estado.get();
+            inventario.reconstruir(RecursosEmpaquetados.salones(actual), RecursosEmpaquetados.labs(actual));
+        }
+        this.inventario = inventario;
+    }
+
+    public InventarioAulas getInventario() {
+        return inventario;
+    }
+
+    /**
+     * Asigna las aulas por franja horaria (ver HorarioAulas). Las solicitudes
+     * sin franjas ocupan sus aulas toda la semana. El horario vive en memoria:
+     * no pasa por la bitácora, así que no debe combinarse con la persistencia
+     */
+    public void configurarHorario(HorarioAulas horario) {
+        this.horario = horario;
+    }
 
-            // Caso 3: No hay recursos suficientes
-            return new ResultadoAsignacion(0, 0, 0);
+    public HorarioAulas getHorario() {
+        return horario;
+    }
+
+    /**
+     * Activa el control de admisión por facultad (null lo desactiva)
+     */
+    public void configurarCuotas(CuotasFacultades cuotas) {
+        this.cuotas = cuotas;
+    }
+
+    public CuotasFacultades getCuotas() {
+        return cuotas;
+    }
+
+    /**
+     * Con escasez, asignarLote atiende la mayor cantidad de solicitudes del
+     * lote en vez de ir en orden de llegada (no aplica al horario por franjas)
+     */
+    public void configurarEmpaquetadoOptimo(boolean empaquetadoOptimo) {
+        this.empaquetadoOptimo = empaquetadoOptimo;
+    }
+
+    /**
+     * Activa la lista de espera para las solicitudes que el pool no puede
+     * atender (null la desactiva)
+     */
+    public void configurarListaEspera(ListaEspera listaEspera) {
+        this.listaEspera = listaEspera;
+    }
+
+    public ListaEspera getListaEspera() {
+        return listaEspera;
+    }
+
+    // Volvieron recursos al pool: se ofrecen a la lista de espera
+    private boolean avisarDevolucion(boolean devuelto) {
+        ListaEspera espera = listaEspera;
+        if (devuelto && espera != null) {
+            espera.emparejar();
         }
+        return devuelto;
     }
 
+    /*
+    Calcula el estado que resulta de atender una solicitud sobre la instantánea
+    dada y deja el resultado en resultados[indice]. No publica nada: quien llama
+    decide cuándo hacer el compareAndSet.
+     */
+    private static long calcularAsignacion(long actual, int salonesNecesitados, int labsNecesitados,
+                                           ResultadoAsignacion[] resultados, int indice) {
+        if (salonesNecesitados < 0 || labsNecesitados < 0) {
+            resultados[indice] = new ResultadoAsignacion(0, 0, 0);
+            return actual;
+        }
+
+        int salones = RecursosEmpaquetados.salones(actual);
+        int labs = RecursosEmpaquetados.labs(actual);
+        int aulasMoviles = RecursosEmpaquetados.aulasMoviles(actual);
+
+        // Caso 1: Hay suficientes salones y labs disponibles
+        if (labs >= labsNecesitados && salones >= salonesNecesitados) {
+            resultados[indice] = new ResultadoAsignacion(labsNecesitados, 0, salonesNecesitados);
+            return RecursosEmpaquetados.empaquetar(
+                    salones - salonesNecesitados, labs - labsNecesitados, aulasMoviles);
+        }
+
+        // Caso 2: Faltan labs pero podemos convertir salones en aulas móviles
+        int labsFaltantes = labsNecesitados - labs;
+        int salonesRequeridos = salonesNecesitados + labsFaltantes;
+
+        if (labsFaltantes > 0 && salones >= salonesRequeridos
+                && RecursosEmpaquetados.enRango(aulasMoviles + labsFaltantes)) {
+            resultados[indice] = new ResultadoAsignacion(labs, labsFaltantes, salonesNecesitados);
+            return RecursosEmpaquetados.empaquetar(
+                    salones - salonesRequeridos, 0, aulasMoviles + labsFaltantes);
+        }
+
+        // Caso 3: No hay recursos suficientes
+        resultados[indice] = new ResultadoAsignacion(0, 0, 0);
+        return actual;
+    }
+
+    /**
+     * Devuelve al pool una asignación sin reserva. Con inventario la
+     * asignación debe traer los ids que recibió: las aulas se liberan antes
+     * de sumarlas al contador
+     */
     public boolean devolverRecursos(ResultadoEnvio asignacion) {
-        // 1. Calcular valores futuros
-        int labsFuturos = labs.get() + asignacion.getLabsAsignados();
-        int salonesFuturos = salones.get() + asignacion.getSalonesAsignados() + asignacion.getAulaMovilAsignadas();
-        int aulasMovilesFuturas = aulasMoviles.get() - asignacion.getAulaMovilAsignadas();
-
-        // 2. Validar integridad
-        boolean operacionValida =
-                labsFuturos >= 0 &&
-                        salonesFuturos >= 0 &&
-                        aulasMovilesFuturas >= 0 &&
-                        asignacion.getAulaMovilAsignadas() <= aulasMoviles.get();
-
-        if (!operacionValida) {
+        return avisarDevolucion(devolverAlPool(asignacion));
+    }
+
+    private boolean devolverAlPool(ResultadoEnvio asignacion) {
+        if (horario != null) {
+            // La respuesta no trae las franjas: con horarios solo se devuelven reservas
+            return false;
+        }
+        InventarioAulas aulas = inventario;
+        if (aulas != null && (asignacion.getLabsAsignados() < 0 || asignacion.getSalonesAsignados() < 0
+                || asignacion.getAulaMovilAsignadas() < 0
+                || !aulas.liberar(asignacion.getIdsAulas(),
+                        asignacion.getSalonesAsignados() + asignacion.getAulaMovilAsignadas(),
+                        asignacion.getLabsAsignados()))) {
+            return false;
+        }
+
+        BitacoraInstalaciones wal = bitacora;
+        if (wal != null) {
+            candado.readLock().lock();
+        }
+        try {
+            boolean devuelto = devolver(
+                    asignacion.getLabsAsignados(),
+                    asignacion.getSalonesAsignados(),
+                    asignacion.getAulaMovilAsignadas());
+            if (devuelto && wal != null) {
+                wal.registrar(BitacoraInstalaciones.DEVOLUCION, 0,
+                        asignacion.getSalonesAsignados(), asignacion.getLabsAsignados(), asignacion.getAulaMovilAsignadas());
+            }
+            return devuelto;
+        } finally {
+            if (wal != null) {
+                candado.readLock().unlock();
+            }
+        }
+    }
+
+    private boolean devolver(int labsDevueltos, int salonesDevueltos, int aulasDevueltas) {
+        if (labsDevueltos < 0 || salonesDevueltos < 0 || aulasDevueltas < 0) {
+            return false;
+        }
+
+        while (true) {
+            long actual = estado.get();
+
+            // 1. Calcular valores futuros sobre la misma instantánea
+            int labsFuturos = RecursosEmpaquetados.labs(actual) + labsDevueltos;
+            int salonesFuturos = RecursosEmpaquetados.salones(actual) + salonesDevueltos + aulasDevueltas;
+            int aulasMovilesFuturas = RecursosEmpaquetados.aulasMoviles(actual) - aulasDevueltas;
+
+            // 2. Validar integridad
+            boolean operacionValida =
+                    RecursosEmpaquetados.enRango(labsFuturos) &&
+                            RecursosEmpaquetados.enRango(salonesFuturos) &&
+                            RecursosEmpaquetados.enRango(aulasMovilesFuturas);
+
+            if (!operacionValida) {
+                return false;
+            }
+
+            // 3. Publicar los tres campos en una sola transición
+            long nuevo = RecursosEmpaquetados.empaquetar(salonesFuturos, labsFuturos, aulasMovilesFuturas);
+            if (estado.compareAndSet(actual, nuevo)) {
+                return true;
+            }
+        }
+    }
+
+    /*
+    Activa las reservas: cada asignación exitosa queda pendiente hasta que la
+    facultad la confirme. Si no llega CONFIRMAR_ASIGNACION ni RECHAZAR_ASIGNACION
+    antes de timeoutMs, la rueda de tiempo la vence y los recursos vuelven al pool.
+     */
+    public synchronized void configurarReservas(long timeoutMs, long tickMs) {
+        if (ruedaReservas != null) {
+            ruedaReservas.close();
+            ruedaReservas = null;
+        }
+        if (timeoutMs > 0) {
+            int ranuras = (int) Math.min(4096, Math.max(64, timeoutMs / tickMs));
+            ruedaReservas = new RuedaTemporizadora("rueda-reservas", tickMs, ranuras, this::vencerReserva);
+        }
+        this.timeoutReservaMs = timeoutMs;
+    }
+
+    /*
+    Sin reservas una asignación es definitiva, salvo que consuma cuota: el
+    rechazo no dice de qué facultad ni de qué semestre es, así que sin un id
+    no habría cómo devolverle la cuota. Esas se registran igual como reserva,
+    sin plazo, y el rechazo las libera como a cualquier otra
+     */
+    private ResultadoAsignacion reservar(ResultadoAsignacion resultado, CuotasFacultades.Consumo cuota, long franjas) {
+        RuedaTemporizadora rueda = ruedaReservas;
+        if (!resultado.esExitoso() || (rueda == null && (cuota == null || !cuota.limitada()))) {
+            return resultado;
+        }
+
+        long id = secuenciaReservas.incrementAndGet();
+        reservas.put(id, new Reserva(id, resultado.labsAsignados(), resultado.aulaMovilAsignadas(),
+                resultado.salonesAsignados(), cuota, resultado.idsAulas(), franjas));
+        if (rueda != null) {
+            rueda.programar(id, timeoutReservaMs);
+        }
+        return resultado.conReserva(id);
+    }
+
+    /**
+     * Confirma una reserva: los recursos quedan asignados de forma definitiva.
+     * Devuelve false si la reserva no existe (ya venció o ya fue resuelta).
+     */
+    public boolean confirmarReserva(long idReserva) {
+        BitacoraInstalaciones wal = bitacora;
+        if (wal != null) {
+            candado.readLock().lock();
+        }
+        try {
+            boolean confirmada = reservas.remove(idReserva) != null;
+            if (confirmada && wal != null) {
+                wal.registrar(BitacoraInstalaciones.CONFIRMACION, idReserva, 0, 0, 0);
+            }
+            return confirmada;
+        } finally {
+            if (wal != null) {
+                candado.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Libera una reserva rechazada devolviendo exactamente lo que se descontó.
+     * Solo el primero que la retira del mapa devuelve recursos, así que un
+     * rechazo duplicado o tardío no puede inflar los contadores.
+     */
+    public boolean liberarReserva(long idReserva) {
+        return avisarDevolucion(liberar(idReserva));
+    }
+
+    private boolean liberar(long idReserva) {
+        BitacoraInstalaciones wal = bitacora;
+        if (wal != null) {
+            candado.readLock().lock();
+        }
+        try {
+            Reserva reserva = reservas.get(idReserva);
+            if (reserva == null) {
+                return false;
+            }
+            // Las aulas se revisan antes de retirar la reserva; solo quien la
+            // retira devuelve recursos
+            boolean aulasValidas = reserva.franjas() != 0 || aulasCoinciden(reserva);
+            if (!reservas.remove(idReserva, reserva)) {
+                return false;
+            }
+            if (reserva.franjas() != 0) {
+                return liberarEnHorario(reserva);
+            }
+            if (aulasValidas) {
+                liberarAulas(reserva);
+            }
+            boolean liberada = devolver(
+                    reserva.labsAsignados(), reserva.salonesAsignados(), reserva.aulaMovilAsignadas());
+            if (liberada && reserva.cuota() != null) {
+                // Las aulas móviles cuentan como los laboratorios que reemplazan
+                reserva.cuota().liberar(reserva.salonesAsignados(),
+                        reserva.labsAsignados() + reserva.aulaMovilAsignadas());
+            }
+            if (liberada && wal != null) {
+                wal.registrar(BitacoraInstalaciones.LIBERACION, idReserva, 0, 0, 0);
+            }
+            if (liberada && !aulasValidas) {
+                // Los contadores y la cuota vuelven igual, pero el rechazo no
+                // se da por bueno: el inventario ya no coincide
+                avisarDevolucion(true);
+                return false;
+            }
+            return liberada;
+        } finally {
+            if (wal != null) {
+                candado.readLock().unlock();
+            }
+        }
+    }
+
+    private boolean liberarEnHorario(Reserva reserva) {
+        HorarioAulas franjas = horario;
+        boolean liberada = franjas != null && franjas.liberar(reserva.idsAulas(),
+                reserva.salonesAsignados() + reserva.aulaMovilAsignadas(), reserva.labsAsignados(), reserva.franjas());
+        if (liberada && reserva.cuota() != null) {
+            reserva.cuota().liberar(reserva.salonesAsignados(),
+                    reserva.labsAsignados() + reserva.aulaMovilAsignadas());
+        }
+        return liberada;
+    }
+
+    // Con inventario toda reserva trae los ids que se le entregaron: si no
+    // coinciden, el inventario y los contadores ya no están de acuerdo. Se
+    // informa sin lanzar: esto corre en el hilo del broker
+    private boolean aulasCoinciden(Reserva reserva) {
+        InventarioAulas aulas = inventario;
+        int salones = reserva.salonesAsignados() + reserva.aulaMovilAsignadas();
+        if (aulas == null || aulas.coinciden(reserva.idsAulas(), salones, reserva.labsAsignados())) {
+            return true;
+        }
+        System.err.println("[RESERVAS] La reserva " + reserva.id() + " tiene aulas desconocidas o ya libres: "
+                + Arrays.toString(reserva.idsAulas()) + "; se devuelven solo sus contadores");
+        return false;
+    }
+
+    private void liberarAulas(Reserva reserva) {
+        InventarioAulas aulas = inventario;
+        if (aulas != null) {
+            aulas.liberar(reserva.idsAulas(),
+                    reserva.salonesAsignados() + reserva.aulaMovilAsignadas(), reserva.labsAsignados());
+        }
+    }
+
+    private void vencerReserva(long idReserva) {
+        if (liberarReserva(idReserva)) {
+            System.out.println("[RESERVAS] Reserva " + idReserva + " vencida sin confirmación, recursos devueltos");
+        }
+    }
+
+    // ======================== PERSISTENCIA ========================
+
+    /**
+     * Recupera el estado desde la bitácora (última instantánea + transiciones
+     * posteriores) y deja registrando cada transición nueva. Debe llamarse al
+     * arrancar, antes de atender solicitudes y después de configurarReservas.
+     */
+    public synchronized void habilitarPersistencia(BitacoraInstalaciones wal, long intervaloInstantaneaMs) throws IOException {
+        long inicio = System.nanoTime();
+
+        Instantanea instantanea = wal.leerInstantanea();
+        long desdeLsn = 0;
+        if (instantanea != null) {
+            estado.set(instantanea.estado());
+            reservas.clear();
+            for (Reserva reserva : instantanea.reservas()) {
+                reservas.put(reserva.id(), reserva);
+            }
+            secuenciaReservas.set(instantanea.secuenciaReservas());
+            desdeLsn = instantanea.lsn();
+        }
+
+        List<Transicion> transiciones = wal.leerTransiciones(desdeLsn);
+        reaplicar(transiciones);
+
+        // Las reservas recuperadas vuelven a tener el plazo completo para confirmarse
+        RuedaTemporizadora rueda = ruedaReservas;
+        if (rueda != null) {
+            for (Long id : reservas.keySet()) {
+                rueda.programar(id, timeoutReservaMs);
+            }
+        } else if (!reservas.isEmpty()) {
+            // Sin reservas configuradas las asignaciones son definitivas (el
+            // consumo de cuota que esperaba un rechazo se perdió al reiniciar)
+            reservas.clear();
+        }
+
+        if (instantanea != null || !transiciones.isEmpty()) {
+            System.out.printf("[BITÁCORA] Estado recuperado en %.1f ms: instantánea %s + %d transiciones. %s%n",
+                    (System.nanoTime() - inicio) / 1_000_000.0,
+                    instantanea != null ? "LSN " + instantanea.lsn() : "inexistente",
+                    transiciones.size(), getEstadisticas());
+        }
+
+        // Empezar limpio: segmento nuevo e instantánea del estado recuperado,
+        // que además descarta los segmentos viejos (incluido un final cortado)
+        wal.abrirSegmento();
+        this.bitacora = wal;
+        tomarInstantanea();
+
+        if (intervaloInstantaneaMs > 0) {
+            programadorInstantaneas = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "instantaneas-instalaciones");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            programadorInstantaneas.scheduleWithFixedDelay(() -> {
+                try {
+                    tomarInstantanea();
+                } catch (IOException e) {
+                    System.err.println("[BITÁCORA] Error escribiendo instantánea: " + e.getMessage());
+                }
+            }, intervaloInstantaneaMs, intervaloInstantaneaMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+    Reaplica las transiciones sobre el estado cargado. Los deltas se suman sin
+    validar rangos intermedios: en la ejecución original pudieron registrarse
+    en un orden distinto al de sus compareAndSet, pero el resultado final es
+    el mismo porque las sumas conmutan.
+     */
+    private void reaplicar(List<Transicion> transiciones) {
+        long actual = estado.get();
+        int salones = RecursosEmpaquetados.salones(actual);
+        int labs = RecursosEmpaquetados.labs(actual);
+        int aulas = RecursosEmpaquetados.aulasMoviles(actual);
+
+        for (Transicion t : transiciones) {
+            switch (t.tipo()) {
+                case BitacoraInstalaciones.ASIGNACION -> {
+                    salones -= t.salones() + t.aulasMoviles();
+                    labs -= t.labs();
+                    aulas += t.aulasMoviles();
+                    if (t.idReserva() > 0) {
+                        reservas.put(t.idReserva(), new Reserva(t.idReserva(), t.labs(), t.aulasMoviles(), t.salones()));
+                        secuenciaReservas.accumulateAndGet(t.idReserva(), Math::max);
+                    }
+                }
+                case BitacoraInstalaciones.DEVOLUCION -> {
+                    salones += t.salones() + t.aulasMoviles();
+                    labs += t.labs();
+                    aulas -= t.aulasMoviles();
+                }
+                case BitacoraInstalaciones.CONFIRMACION -> reservas.remove(t.idReserva());
+                case BitacoraInstalaciones.LIBERACION -> {
+                    Reserva reserva = reservas.remove(t.idReserva());
+                    if (reserva != null) {
+                        salones += reserva.salonesAsignados() + reserva.aulaMovilAsignadas();
+                        labs += reserva.labsAsignados();
+                        aulas -= reserva.aulaMovilAsignadas();
+                    }
+                }
+                default -> { }
+            }
+        }
+
+        estado.set(RecursosEmpaquetados.empaquetar(salones, labs, aulas));
+    }
+
+    /**
+     * Captura contadores y reservas abiertas junto con el LSN que cubren, rota
+     * el segmento y escribe la instantánea. Sin transiciones nuevas no hace nada.
+     */
+    public synchronized void tomarInstantanea() throws IOException {
+        BitacoraInstalaciones wal = bitacora;
+        if (wal == null) {
+            return;
+        }
+
+        Instantanea instantanea;
+        candado.writeLock().lock();
+        try {
+            if (wal.getUltimoLsn() == lsnUltimaInstantanea) {
+                return;
+            }
+            long lsn = wal.rotar();
+            instantanea = new Instantanea(lsn, estado.get(), secuenciaReservas.get(),
+                    new ArrayList<>(reservas.values()));
+            lsnUltimaInstantanea = lsn;
+        } finally {
+            candado.writeLock().unlock();
+        }
+
+        // La escritura del archivo ocurre fuera del candado
+        wal.escribirInstantanea(instantanea);
+    }
+
+    /**
+     * Escribe una última instantánea y cierra la bitácora
+     */
+    public synchronized void cerrarPersistencia() {
+        if (bitacora == null) {
+            return;
+        }
+        if (programadorInstantaneas != null) {
+            programadorInstantaneas.shutdownNow();
+        }
+        try {
+            tomarInstantanea();
+        } catch (IOException e) {
+            System.err.println("[BITÁCORA] Error escribiendo instantánea final: " + e.getMessage());
+        }
+        bitacora.close();
+        bitacora = null;
+    }
+
+    // ======================== SHARDS ========================
+
+    /**
+     * Usa un rango propio de identificadores de reserva para el shard dado,
+     * así el router dirige cada confirmación a su shard leyendo solo el id.
+     * Debe llamarse después de recuperar el estado
+     */
+    public void configurarShard(int shardId) {
+        secuenciaReservas.accumulateAndGet((long) shardId << BITS_RESERVA_POR_SHARD, Math::max);
+    }
+
+    public static int shardDeReserva(long idReserva) {
+        return (int) (idReserva >>> BITS_RESERVA_POR_SHARD);
+    }
+
+    /**
+     * Cede capacidad libre a otro shard: descuenta los salones y laboratorios
+     * pedidos solo si están todos disponibles (las aulas móviles no se
+     * prestan). Devuelve false sin tocar el estado si no alcanzan o si el
+     * shard lleva inventario de aulas concretas
+     */
+    public boolean prestar(int salones, int labs) {
+        if (salones < 0 || labs < 0 || inventario != null || horario != null) {
             return false;
         }
 
-        // 3. Aplicar cambios con incrementar/decrementar (sin usar set)
-        labs.incrementar(asignacion.getLabsAsignados());
-        salones.incrementar(asignacion.getSalonesAsignados() + asignacion.getAulaMovilAsignadas());
+        BitacoraInstalaciones wal = bitacora;
+        if (wal != null) {
+            candado.readLock().lock();
+        }
+        try {
+            while (true) {
+                long actual = estado.get();
+                int salonesLibres = RecursosEmpaquetados.salones(actual);
+                int labsLibres = RecursosEmpaquetados.labs(actual);
+                if (salonesLibres < salones || labsLibres < labs) {
+                    return false;
+                }
+                long nuevo = RecursosEmpaquetados.empaquetar(
+                        salonesLibres - salones, labsLibres - labs, RecursosEmpaquetados.aulasMoviles(actual));
+                if (estado.compareAndSet(actual, nuevo)) {
+                    if (wal != null) {
+                        wal.registrar(BitacoraInstalaciones.ASIGNACION, 0, salones, labs, 0);
+                    }
+                    return true;
+                }
+            }
+        } finally {
+            if (wal != null) {
+                candado.readLock().unlock();
+            }
+        }
+    }
 
-        if (asignacion.getAulaMovilAsignadas() > 0) {
-            aulasMoviles.decrementar(asignacion.getAulaMovilAsignadas());
+    /**
+     * Suma al pool la capacidad que cedió otro shard (no con inventario)
+     */
+    public boolean recibirPrestamo(int salones, int labs) {
+        if (inventario != null || horario != null) {
+            return false;
         }
+        boolean recibido;
+        BitacoraInstalaciones wal = bitacora;
+        if (wal != null) {
+            candado.readLock().lock();
+        }
+        try {
+            recibido = devolver(labs, salones, 0);
+            if (recibido && wal != null) {
+                wal.registrar(BitacoraInstalaciones.DEVOLUCION, 0, salones, labs, 0);
+            }
+        } finally {
+            if (wal != null) {
+                candado.readLock().unlock();
+            }
+        }
+        return avisarDevolucion(recibido);
+    }
+
+    // ======================== RÉPLICA ========================
 
-        return true;
+    /**
+     * Estado empaquetado actual (salones, labs y aulas móviles en un long)
+     */
+    public long getEstadoEmpaquetado() {
+        return estado.get();
+    }
+
+    /**
+     * Adopta un estado empaquetado recibido de otro servidor (sincronización
+     * de una réplica). No debe llamarse mientras se atienden solicitudes, y
+     * la réplica no lleva inventario de aulas concretas
+     */
+    public void restablecerEstado(long estadoEmpaquetado) {
+        estado.set(estadoEmpaquetado);
+    }
+
+    /**
+     * Aplica una transición recibida de otro servidor, igual que al reaplicar
+     * la bitácora
+     */
+    public void aplicarTransicion(Transicion transicion) {
+        reaplicar(List.of(transicion));
+    }
+
+    public int getReservasPendientes() {
+        return reservas.size();
     }
 
     // Método para obtener estadísticas actuales
     public String getEstadisticas() {
-        return String.format("Salones disponibles: %d, Laboratorios disponibles: %d, Aulas móviles: %d",
-                salones.get(), labs.get(), aulasMoviles.get());
+        HorarioAulas franjas = horario;
+        if (franjas != null) {
+            return franjas.getEstadisticas() + ", Reservas pendientes: " + reservas.size();
+        }
+        long actual = estado.get();
+        return String.format("Salones disponibles: %d, Laboratorios disponibles: %d, Aulas móviles: %d, Reservas pendientes: %d",
+                RecursosEmpaquetados.salones(actual),
+                RecursosEmpaquetados.labs(actual),
+                RecursosEmpaquetados.aulasMoviles(actual),
+                reservas.size());
     }
 
 }
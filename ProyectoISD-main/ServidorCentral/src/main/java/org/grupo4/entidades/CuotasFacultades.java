@@ -0,0 +1,197 @@
+package org.grupo4.entidades;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Control de admisión por facultad, previo a la asignación sobre el pool:
+
+  - Tasa: cada facultad tiene una cubeta de fichas (tasaPorSegundo fichas por
+    segundo, hasta "rafaga" acumuladas) y cada solicitud consume una.
+  - Cuota: máximo de salones y de laboratorios (contando las aulas móviles
+    que los reemplazan) que una facultad puede tener asignados por semestre.
+    Sirve para guardar capacidad para las facultades que llegan tarde.
+
+Nada toma candados: la cubeta de cada facultad y el consumo de cada
+(facultad, semestre) son un AtomicLong que se actualiza con compareAndSet.
+Admitir solo toca la palabra de esa facultad, nunca el estado global, así
+que una facultad que agota su cuota no obliga a recalcular nada ni frena a
+las demás.
+
+La cubeta se lleva como GCRA: en vez del número de fichas se guarda el
+instante teórico en que la cubeta vuelve a estar llena. Admitir adelanta ese
+instante un intervalo (1 / tasa); si quedaría más de "rafaga" intervalos por
+delante del reloj, la solicitud se rechaza y el exceso es la espera sugerida
+para reintentar.
+
+El consumo de cuotas vive en memoria: no se registra en la bitácora, así que
+al reiniciar el servidor se cuenta desde cero.
+
+La facultad y el semestre los envía el cliente, así que las cubetas y los
+consumos se siguen por separado solo hasta maximoEntradas cada uno; los que
+llegan después comparten una cubeta y un consumo por límite. Nunca se quita
+una entrada: hacerlo pondría en cero la cuota de esa facultad.
+ */
+public class CuotasFacultades {
+    // Cuota de una facultad; 0 en un recurso = sin límite para ese recurso
+    public record Limite(int salones, int labs) {
+        boolean ilimitado() {
+            return salones <= 0 && labs <= 0;
+        }
+    }
+
+    /**
+     * Consumo de cuota de una facultad en un semestre: salones en los 32 bits
+     * altos, laboratorios en los bajos. Se guarda en cada reserva para poder
+     * devolverlo si la reserva se rechaza o vence
+     */
+    public static final class Consumo {
+        private final AtomicLong usado = new AtomicLong();
+        private final Limite limite;
+
+        private Consumo(Limite limite) {
+            this.limite = limite;
+        }
+
+        private boolean reservar(int salones, int labs) {
+            while (true) {
+                long actual = usado.get();
+                int salonesUsados = (int) (actual >>> 32) + salones;
+                int labsUsados = (int) actual + labs;
+                if ((limite.salones() > 0 && salonesUsados > limite.salones())
+                        || (limite.labs() > 0 && labsUsados > limite.labs())) {
+                    return false;
+                }
+                if (usado.compareAndSet(actual, empaquetar(salonesUsados, labsUsados))) {
+                    return true;
+                }
+            }
+        }
+
+        // SIN_CUOTA y las cuotas sin límite no llevan cuenta
+        boolean limitada() {
+            return !limite.ilimitado();
+        }
+
+        /**
+         * Devuelve a la cuota lo que se había reservado
+         */
+        public void liberar(int salones, int labs) {
+            if (limite.ilimitado()) {
+                return;
+            }
+            while (true) {
+                long actual = usado.get();
+                int salonesUsados = Math.max(0, (int) (actual >>> 32) - salones);
+                int labsUsados = Math.max(0, (int) actual - labs);
+                if (usado.compareAndSet(actual, empaquetar(salonesUsados, labsUsados))) {
+                    return;
+                }
+            }
+        }
+
+        private static long empaquetar(int salones, int labs) {
+            return ((long) salones << 32) | (labs & 0xFFFFFFFFL);
+        }
+    }
+
+    private record ClaveCuota(String facultad, int semestre) {}
+
+    // Para facultades sin cuota: reservar y liberar no hacen nada
+    private static final Consumo SIN_CUOTA = new Consumo(new Limite(0, 0));
+
+    private final long intervaloNs;
+    private final long toleranciaNs;
+    private final Limite cuotaPorDefecto;
+    private final Map<String, Limite> cuotasPorFacultad;
+
+    private final int maximoEntradas;
+    private final ConcurrentHashMap<String, AtomicLong> cubetas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ClaveCuota, Consumo> consumos = new ConcurrentHashMap<>();
+    // Para lo que llega con los mapas llenos
+    private final AtomicLong cubetaCompartida = new AtomicLong(Long.MIN_VALUE);
+    private final ConcurrentHashMap<Limite, Consumo> consumosCompartidos = new ConcurrentHashMap<>();
+    private final AtomicLong rechazadasPorTasa = new AtomicLong();
+    private final AtomicLong rechazadasPorCuota = new AtomicLong();
+
+    /**
+     * @param tasaPorSegundo    solicitudes por segundo de cada facultad (0 = sin límite de tasa)
+     * @param rafaga            solicitudes que una facultad puede enviar de golpe
+     * @param cuotaPorDefecto   cuota de las facultades que no figuran en cuotasPorFacultad
+     * @param cuotasPorFacultad cuota por nombre de facultad
+     * @param maximoEntradas    cubetas y consumos (facultad, semestre) que se siguen por separado
+     */
+    public CuotasFacultades(double tasaPorSegundo, int rafaga, Limite cuotaPorDefecto, Map<String, Limite> cuotasPorFacultad,
+                            int maximoEntradas) {
+        this.intervaloNs = tasaPorSegundo > 0 ? (long) (1_000_000_000L / tasaPorSegundo) : 0;
+        this.toleranciaNs = intervaloNs * Math.max(0, rafaga - 1);
+        this.cuotaPorDefecto = cuotaPorDefecto;
+        this.cuotasPorFacultad = Map.copyOf(cuotasPorFacultad);
+        this.maximoEntradas = Math.max(1, maximoEntradas);
+    }
+
+    /**
+     * Consume una ficha de la facultad. Devuelve 0 si la solicitud se admite,
+     * o la espera sugerida en ms antes de reintentar
+     */
+    public long admitirTasa(String facultad) {
+        if (intervaloNs == 0) {
+            return 0;
+        }
+        AtomicLong cubeta = cubetas.get(facultad);
+        if (cubeta == null) {
+            cubeta = cubetas.size() < maximoEntradas
+                    ? cubetas.computeIfAbsent(facultad, f -> new AtomicLong(Long.MIN_VALUE))
+                    : cubetaCompartida;
+        }
+
+        while (true) {
+            long ahora = System.nanoTime();
+            long teorico = cubeta.get();
+            // Long.MIN_VALUE: facultad nueva, cubeta llena
+            long base = teorico == Long.MIN_VALUE || teorico - ahora < 0 ? ahora : teorico;
+            long adelanto = base - ahora;
+            if (adelanto > toleranciaNs) {
+                rechazadasPorTasa.incrementAndGet();
+                return Math.max(1, (adelanto - toleranciaNs + 999_999) / 1_000_000);
+            }
+            if (cubeta.compareAndSet(teorico, base + intervaloNs)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Reserva salones y laboratorios de la cuota de la facultad en el
+     * semestre. Devuelve el consumo a liberar si luego no se asignan, o null
+     * si la solicitud excede la cuota
+     */
+    public Consumo reservarCuota(String facultad, int semestre, int salones, int labs) {
+        Limite limite = cuotasPorFacultad.getOrDefault(facultad, cuotaPorDefecto);
+        if (limite.ilimitado()) {
+            return SIN_CUOTA;
+        }
+
+        ClaveCuota clave = new ClaveCuota(facultad, semestre);
+        Consumo consumo = consumos.get(clave);
+        if (consumo == null) {
+            consumo = consumos.size() < maximoEntradas
+                    ? consumos.computeIfAbsent(clave, c -> new Consumo(limite))
+                    : consumosCompartidos.computeIfAbsent(limite, Consumo::new);
+        }
+        if (!consumo.reservar(salones, labs)) {
+            rechazadasPorCuota.incrementAndGet();
+            return null;
+        }
+        return consumo;
+    }
+
+    public long getRechazadasPorTasa() {
+        return rechazadasPorTasa.get();
+    }
+
+    public long getRechazadasPorCuota() {
+        return rechazadasPorCuota.get();
+    }
+}
@@ -0,0 +1,137 @@
+package org.grupo4.entidades;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Elección óptima de qué solicitudes de un lote atender cuando no alcanzan los
+recursos para todas. La asignación en orden (asignarLote) atiende por orden
+de llegada: con escasez, el orden decide qué programas se quedan sin aulas.
+
+Un subconjunto de solicitudes (s_i salones, l_i laboratorios) cabe en
+S salones y L laboratorios libres si y solo si
+
+    Σ s_i <= S   y   Σ (s_i + l_i) <= S + L
+
+porque los laboratorios que faltan se cubren con salones (aulas móviles), y
+entonces las aulas móviles del subconjunto son max(0, Σ l_i - L) sin importar
+el orden. Además, recorrer en orden de llegada un subconjunto que cabe nunca
+cae en Caso 3: calcularAsignacion puede aplicarse tal cual sobre él.
+
+Es una mochila de dos dimensiones en la que se maximiza la cantidad de
+programas atendidos y, a igual cantidad, se minimizan las aulas móviles. Se
+resuelve con programación dinámica sobre (cantidad elegida, salones usados)
+guardando el mínimo de Σ (s_i + l_i): para un mismo Σ s_i, minimizarlo es
+minimizar los laboratorios pedidos y con ellos las aulas móviles. Cuesta
+O(n² × S) con n solicitudes en el lote; si eso supera MAXIMO_CELDAS se
+devuelve null y se asigna en orden. Ante empates queda la primera solución
+encontrada en orden de llegada.
+ */
+final class EmpaquetadoLote {
+    // Tope de n² × S: con lotes de 64 y 380 salones son ~1,6 millones
+    private static final long MAXIMO_CELDAS = 8_000_000L;
+    private static final int INALCANZABLE = Integer.MAX_VALUE;
+
+    private EmpaquetadoLote() {}
+
+    /**
+     * Elige las solicitudes a atender con los salones y laboratorios libres.
+     * Las que tienen rechazo (rechazos[i] != null) o piden cantidades
+     * negativas quedan fuera. Devuelve null si el lote es demasiado grande
+     * para resolverlo o si todo lo que pide cabe (no hace falta elegir)
+     */
+    static boolean[] elegir(int salones, int labs, List<Solicitud> solicitudes, ResultadoAsignacion[] rechazos) {
+        int n = solicitudes.size();
+        int[] pedidosSalones = new int[n];
+        int[] pedidosTotal = new int[n];
+        boolean[] candidata = new boolean[n];
+        long salonesPedidos = 0;
+        long totalPedido = 0;
+        int candidatas = 0;
+        for (int i = 0; i < n; i++) {
+            Solicitud solicitud = solicitudes.get(i);
+            int s = solicitud.getNumSalones();
+            int l = solicitud.getNumLaboratorios();
+            if ((rechazos != null && rechazos[i] != null) || s < 0 || l < 0
+                    || s > salones || (long) s + l > (long) salones + labs) {
+                continue;
+            }
+            candidata[i] = true;
+            pedidosSalones[i] = s;
+            pedidosTotal[i] = s + l;
+            salonesPedidos += s;
+            totalPedido += s + l;
+            candidatas++;
+        }
+        if (salonesPedidos <= salones && totalPedido <= (long) salones + labs) {
+            return null;
+        }
+
+        int maximoSalones = (int) Math.min(salones, salonesPedidos);
+        int columnas = maximoSalones + 1;
+        if ((long) candidatas * (candidatas + 1) * columnas > MAXIMO_CELDAS) {
+            return null;
+        }
+        int capacidad = salones + labs;
+
+        // mejor[k][a]: mínimo Σ (s + l) eligiendo k solicitudes con Σ s = a
+        int[][] mejor = new int[candidatas + 1][columnas];
+        for (int[] fila : mejor) {
+            Arrays.fill(fila, INALCANZABLE);
+        }
+        mejor[0][0] = 0;
+        // tomada[j][k] (bits por a): la solicitud candidata j mejoró mejor[k][a]
+        int palabras = (columnas + 63) >>> 6;
+        long[][][] tomada = new long[candidatas][candidatas + 1][palabras];
+        int[] indices = new int[candidatas];
+
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (!candidata[i]) {
+                continue;
+            }
+            indices[j] = i;
+            int s = pedidosSalones[i];
+            int w = pedidosTotal[i];
+            for (int k = j + 1; k >= 1; k--) {
+                int[] anterior = mejor[k - 1];
+                int[] fila = mejor[k];
+                for (int a = maximoSalones; a >= s; a--) {
+                    int base = anterior[a - s];
+                    if (base != INALCANZABLE && base + w <= capacidad && base + w < fila[a]) {
+                        fila[a] = base + w;
+                        tomada[j][k][a >>> 6] |= 1L << a;
+                    }
+                }
+            }
+            j++;
+        }
+
+        // Mayor cantidad de programas; a igual cantidad, menos aulas móviles
+        int elegidas = 0;
+        int columna = 0;
+        for (int k = candidatas; k > 0 && elegidas == 0; k--) {
+            int menosMoviles = Integer.MAX_VALUE;
+            for (int a = 0; a < columnas; a++) {
+                if (mejor[k][a] != INALCANZABLE) {
+                    int moviles = Math.max(0, mejor[k][a] - a - labs);
+                    if (moviles < menosMoviles) {
+                        menosMoviles = moviles;
+                        elegidas = k;
+                        columna = a;
+                    }
+                }
+            }
+        }
+
+        boolean[] seleccion = new boolean[n];
+        for (int c = candidatas - 1, k = elegidas; c >= 0 && k > 0; c--) {
+            if ((tomada[c][k][columna >>> 6] & (1L << columna)) != 0) {
+                seleccion[indices[c]] = true;
+                columna -= pedidosSalones[indices[c]];
+                k--;
+            }
+        }
+        return seleccion;
+    }
+}
@@ -0,0 +1,77 @@
+package org.grupo4.entidades;
+
+/*
+Franjas horarias de la semana empaquetadas en un long: 6 días (lunes a
+sábado) por 8 bloques de dos horas (bloque 1 = 06:00-08:00 ... bloque
+8 = 20:00-22:00). El bit (día * 8 + bloque - 1) indica la franja.
+
+Formato de texto: franjas separadas por espacios, ';' o '+', cada una con
+el día (LU, MA, MI, JU, VI, SA) y un bloque o un rango de bloques:
+"LU1-2 MI1-2 VI4". Un texto vacío o "TODAS" pide el semestre completo.
+ */
+public final class Franjas {
+    public static final int BLOQUES_POR_DIA = 8;
+    public static final String[] DIAS = {"LU", "MA", "MI", "JU", "VI", "SA"};
+    public static final int TOTAL = DIAS.length * BLOQUES_POR_DIA;
+    public static final long TODAS = (1L << TOTAL) - 1;
+
+    private Franjas() {}
+
+    /**
+     * Máscara de las franjas del texto; lanza IllegalArgumentException si
+     * el texto no respeta el formato
+     */
+    public static long parsear(String texto) {
+        if (texto == null || texto.isBlank() || texto.trim().equalsIgnoreCase("TODAS")) {
+            return TODAS;
+        }
+
+        long mascara = 0;
+        for (String franja : texto.trim().split("[\\s;+]+")) {
+            if (franja.length() < 3) {
+                throw new IllegalArgumentException("Franja inválida: " + franja);
+            }
+            int dia = indiceDia(franja.substring(0, 2));
+            int guion = franja.indexOf('-', 2);
+            int desde;
+            int hasta;
+            try {
+                desde = Integer.parseInt(franja.substring(2, guion < 0 ? franja.length() : guion));
+                hasta = guion < 0 ? desde : Integer.parseInt(franja.substring(guion + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Franja inválida: " + franja);
+            }
+            if (desde < 1 || hasta > BLOQUES_POR_DIA || desde > hasta) {
+                throw new IllegalArgumentException("Bloques fuera de rango [1, " + BLOQUES_POR_DIA + "]: " + franja);
+            }
+            for (int bloque = desde; bloque <= hasta; bloque++) {
+                mascara |= 1L << (dia * BLOQUES_POR_DIA + bloque - 1);
+            }
+        }
+        return mascara;
+    }
+
+    public static String describir(long mascara) {
+        if (mascara == TODAS) {
+            return "TODAS";
+        }
+        StringBuilder texto = new StringBuilder();
+        for (long m = mascara; m != 0; m &= m - 1) {
+            int franja = Long.numberOfTrailingZeros(m);
+            if (texto.length() > 0) {
+                texto.append(' ');
+            }
+            texto.append(DIAS[franja / BLOQUES_POR_DIA]).append(franja % BLOQUES_POR_DIA + 1);
+        }
+        return texto.toString();
+    }
+
+    private static int indiceDia(String codigo) {
+        for (int i = 0; i < DIAS.length; i++) {
+            if (DIAS[i].equalsIgnoreCase(codigo)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Día desconocido: " + codigo);
+    }
+}
@@ -0,0 +1,225 @@
+package org.grupo4.entidades;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Ocupación de las aulas del inventario por franja horaria (ver Franjas): un
+aula asignada a un programa en "LU1-2 MI1-2" sigue disponible para otros
+en el resto de la semana.
+
+Cada aula lleva un long con las franjas que tiene ocupadas; esa palabra es
+la fuente de verdad y se reclama con compareAndSet (solo si ninguna de las
+franjas pedidas está ocupada). Como índice hay un mapa de bits por franja
+con las aulas libres en ella: para encontrar aulas libres en todas las
+franjas pedidas se hace el AND de esos mapas de a 64 aulas, así que buscar
+o contar cuesta O(N/64 × franjas pedidas).
+
+El índice se actualiza después de la palabra del aula: al ocupar se limpian
+sus bits y al liberar se ponen. Entre medio puede mostrar libre un aula que
+ya se tomó (el compareAndSet falla y se sigue buscando), pero nunca oculta
+de forma permanente un aula libre.
+
+Las asignaciones son todo o nada: si no alcanzan las aulas se devuelven las
+que se llegaron a tomar. Igual que con los contadores, los laboratorios que
+faltan se cubren con salones como aulas móviles.
+ */
+public class HorarioAulas {
+    // Aulas de un tipo (salones o laboratorios), con ids locales [0, cantidad)
+    private static final class Tipo {
+        final int base;
+        final int cantidad;
+        final AtomicLongArray ocupacion;
+        final AtomicLongArray[] libres = new AtomicLongArray[Franjas.TOTAL];
+
+        Tipo(int base, int cantidad) {
+            this.base = base;
+            this.cantidad = cantidad;
+            this.ocupacion = new AtomicLongArray(Math.max(1, cantidad));
+            int palabras = Math.max(1, (cantidad + 63) >>> 6);
+            for (int franja = 0; franja < Franjas.TOTAL; franja++) {
+                libres[franja] = new AtomicLongArray(palabras);
+                for (int p = 0; p < palabras; p++) {
+                    libres[franja].set(p, mascaraValida(p));
+                }
+            }
+        }
+
+        int palabras() {
+            return libres[0].length();
+        }
+
+        // Bits de la palabra p que corresponden a aulas existentes
+        long mascaraValida(int p) {
+            int restantes = cantidad - (p << 6);
+            if (restantes >= 64) {
+                return -1L;
+            }
+            return restantes <= 0 ? 0 : (1L << restantes) - 1;
+        }
+
+        // Aulas de la palabra p libres en todas las franjas pedidas
+        long libresEn(int p, long franjas) {
+            long candidatas = mascaraValida(p);
+            for (long f = franjas; f != 0 && candidatas != 0; f &= f - 1) {
+                candidatas &= libres[Long.numberOfTrailingZeros(f)].get(p);
+            }
+            return candidatas;
+        }
+    }
+
+    private final InventarioAulas inventario;
+    private final Tipo salones;
+    private final Tipo labs;
+
+    public HorarioAulas(InventarioAulas inventario) {
+        this.inventario = inventario;
+        this.salones = new Tipo(0, inventario.getNumSalones());
+        this.labs = new Tipo(inventario.getNumSalones(), inventario.getNumLabs());
+    }
+
+    public InventarioAulas getInventario() {
+        return inventario;
+    }
+
+    /**
+     * Cuántos salones o laboratorios están libres en todas las franjas dadas
+     */
+    public int contarLibres(boolean laboratorio, long franjas) {
+        Tipo tipo = laboratorio ? labs : salones;
+        int libres = 0;
+        for (int p = 0; p < tipo.palabras(); p++) {
+            libres += Long.bitCount(tipo.libresEn(p, franjas));
+        }
+        return libres;
+    }
+
+    /**
+     * Asigna salones y laboratorios libres en todas las franjas pedidas. Los
+     * ids quedan como en InventarioAulas: salones, aulas móviles y después
+     * laboratorios. Si no alcanzan no ocupa nada y devuelve un resultado vacío
+     */
+    public ResultadoAsignacion asignar(int salonesNecesitados, int labsNecesitados, long franjas) {
+        if (salonesNecesitados < 0 || labsNecesitados < 0 || franjas == 0) {
+            return new ResultadoAsignacion(0, 0, 0);
+        }
+
+        int[] ids = new int[salonesNecesitados + labsNecesitados];
+        // Primero los laboratorios, provisoriamente a partir de salonesNecesitados
+        int labsTomados = tomar(labs, labsNecesitados, franjas, ids, salonesNecesitados);
+        int aulasMoviles = labsNecesitados - labsTomados;
+        if (aulasMoviles > 0) {
+            System.arraycopy(ids, salonesNecesitados, ids, salonesNecesitados + aulasMoviles, labsTomados);
+        }
+
+        int salonesRequeridos = salonesNecesitados + aulasMoviles;
+        int salonesTomados = tomar(salones, salonesRequeridos, franjas, ids, 0);
+        if (salonesTomados < salonesRequeridos) {
+            for (int i = 0; i < salonesTomados; i++) {
+                desocupar(salones, ids[i], franjas);
+            }
+            for (int i = salonesRequeridos; i < ids.length; i++) {
+                desocupar(labs, ids[i] - labs.base, franjas);
+            }
+            return new ResultadoAsignacion(0, 0, 0);
+        }
+        return new ResultadoAsignacion(labsTomados, aulasMoviles, salonesNecesitados).conAulas(ids);
+    }
+
+    // Una pasada por las aulas del tipo; devuelve cuántas tomó (a lo sumo n)
+    private static int tomar(Tipo tipo, int n, long franjas, int[] destino, int desde) {
+        int tomados = 0;
+        for (int p = 0; p < tipo.palabras() && tomados < n; p++) {
+            for (long candidatas = tipo.libresEn(p, franjas); candidatas != 0 && tomados < n;
+                 candidatas &= candidatas - 1) {
+                int aula = (p << 6) + Long.numberOfTrailingZeros(candidatas);
+                if (ocupar(tipo, aula, franjas)) {
+                    destino[desde + tomados++] = tipo.base + aula;
+                }
+            }
+        }
+        return tomados;
+    }
+
+    private static boolean ocupar(Tipo tipo, int aula, long franjas) {
+        while (true) {
+            long actual = tipo.ocupacion.get(aula);
+            if ((actual & franjas) != 0) {
+                return false;
+            }
+            if (tipo.ocupacion.compareAndSet(aula, actual, actual | franjas)) {
+                actualizarIndice(tipo, aula, franjas, false);
+                return true;
+            }
+        }
+    }
+
+    private static void desocupar(Tipo tipo, int aula, long franjas) {
+        while (true) {
+            long actual = tipo.ocupacion.get(aula);
+            if (tipo.ocupacion.compareAndSet(aula, actual, actual & ~franjas)) {
+                actualizarIndice(tipo, aula, franjas, true);
+                return;
+            }
+        }
+    }
+
+    private static void actualizarIndice(Tipo tipo, int aula, long franjas, boolean libre) {
+        int p = aula >>> 6;
+        long bit = 1L << aula;
+        for (long f = franjas; f != 0; f &= f - 1) {
+            AtomicLongArray indice = tipo.libres[Long.numberOfTrailingZeros(f)];
+            long actual;
+            do {
+                actual = indice.get(p);
+            } while (!indice.compareAndSet(p, actual, libre ? actual | bit : actual & ~bit));
+        }
+    }
+
+    /**
+     * Libera las aulas de una asignación en las franjas dadas. Igual que en
+     * InventarioAulas, los ids deben ser "salones" salones seguidos de "labs"
+     * laboratorios, sin repetir y ocupados en todas esas franjas; si no, no
+     * libera nada y devuelve false
+     */
+    public synchronized boolean liberar(int[] ids, int salonesAsignados, int labsAsignados, long franjas) {
+        if (ids == null || ids.length != salonesAsignados + labsAsignados || franjas == 0) {
+            return false;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            Tipo tipo = i < salonesAsignados ? salones : labs;
+            int aula = ids[i] - tipo.base;
+            if (aula < 0 || aula >= tipo.cantidad || (tipo.ocupacion.get(aula) & franjas) != franjas) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (ids[j] == ids[i]) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            Tipo tipo = i < salonesAsignados ? salones : labs;
+            desocupar(tipo, ids[i] - tipo.base, franjas);
+        }
+        return true;
+    }
+
+    public String getEstadisticas() {
+        return String.format("Salones libres toda la semana: %d de %d, Laboratorios libres toda la semana: %d de %d, Ocupación por franja: %.1f%%",
+                contarLibres(false, Franjas.TODAS), salones.cantidad,
+                contarLibres(true, Franjas.TODAS), labs.cantidad,
+                ocupacion());
+    }
+
+    // Porcentaje de pares (aula, franja) ocupados
+    private double ocupacion() {
+        long ocupadas = 0;
+        for (Tipo tipo : new Tipo[]{salones, labs}) {
+            for (int aula = 0; aula < tipo.cantidad; aula++) {
+                ocupadas += Long.bitCount(tipo.ocupacion.get(aula));
+            }
+        }
+        long total = (long) (salones.cantidad + labs.cantidad) * Franjas.TOTAL;
+        return total == 0 ? 0 : 100.0 * ocupadas / total;
+    }
+}
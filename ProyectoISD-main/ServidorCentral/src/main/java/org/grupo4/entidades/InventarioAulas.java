@@ -0,0 +1,220 @@
+package org.grupo4.entidades;
+
+import org.grupo4.concurrencia.BitmapLibres;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Inventario de salones y laboratorios concretos. Cada aula tiene un id
+numérico, un código y sus atributos; los salones ocupan los ids [0, S) y
+los laboratorios [S, S + L). Las aulas libres de cada tipo se llevan en un
+BitmapLibres.
+
+Los contadores empaquetados de AdministradorInstalaciones siguen siendo la
+puerta de entrada: una solicitud solo toma aulas del inventario después de
+descontarlas del contador, y al devolver se liberan las aulas antes de
+sumarlas al contador. Así siempre hay al menos tantas aulas libres como
+indica el contador y tomar nunca se queda sin aulas.
+
+Las aulas móviles salen de los salones: una solicitud atendida con k aulas
+móviles recibe los ids de salones + k salones y luego los de laboratorios.
+
+Tomar no usa candados; liberar verifica todos los ids y los libera dentro
+del monitor del inventario, así una devolución duplicada o con ids ajenos
+se rechaza entera sin tocar el mapa de bits.
+ */
+public class InventarioAulas {
+    public record Aula(int id, String codigo, boolean laboratorio, String edificio, int capacidad) {}
+
+    private final Aula[] aulas;
+    private final int numSalones;
+    private final BitmapLibres salonesLibres;
+    private final BitmapLibres labsLibres;
+
+    private InventarioAulas(List<Aula> salones, List<Aula> labs) {
+        this.numSalones = salones.size();
+        this.aulas = new Aula[salones.size() + labs.size()];
+        int id = 0;
+        for (Aula aula : salones) {
+            aulas[id] = new Aula(id, aula.codigo(), false, aula.edificio(), aula.capacidad());
+            id++;
+        }
+        for (Aula aula : labs) {
+            aulas[id] = new Aula(id, aula.codigo(), true, aula.edificio(), aula.capacidad());
+            id++;
+        }
+        this.salonesLibres = new BitmapLibres(salones.size());
+        this.labsLibres = new BitmapLibres(labs.size());
+    }
+
+    /**
+     * Inventario con códigos generados (S-0001..., L-0001...) para la
+     * capacidad configurada
+     */
+    public static InventarioAulas generar(int salones, int labs) {
+        List<Aula> listaSalones = new ArrayList<>(salones);
+        for (int i = 1; i <= salones; i++) {
+            listaSalones.add(new Aula(0, String.format("S-%04d", i), false, "", 0));
+        }
+        List<Aula> listaLabs = new ArrayList<>(labs);
+        for (int i = 1; i <= labs; i++) {
+            listaLabs.add(new Aula(0, String.format("L-%04d", i), true, "", 0));
+        }
+        return new InventarioAulas(listaSalones, listaLabs);
+    }
+
+    /**
+     * Carga el inventario de un archivo con una línea por aula:
+     *   codigo,tipo,edificio,capacidad
+     * tipo es "salon" o "laboratorio"; las líneas vacías o que empiezan con #
+     * se ignoran
+     */
+    public static InventarioAulas cargar(Path archivo) throws IOException {
+        List<Aula> salones = new ArrayList<>();
+        List<Aula> labs = new ArrayList<>();
+        int numeroLinea = 0;
+        for (String linea : Files.readAllLines(archivo, StandardCharsets.UTF_8)) {
+            numeroLinea++;
+            linea = linea.trim();
+            if (linea.isEmpty() || linea.startsWith("#")) {
+                continue;
+            }
+            String[] campos = linea.split(",");
+            if (campos.length < 2) {
+                throw new IOException("Línea " + numeroLinea + " del inventario inválida: " + linea);
+            }
+            String tipo = campos[1].trim().toLowerCase();
+            boolean laboratorio = tipo.startsWith("lab");
+            if (!laboratorio && !tipo.startsWith("salon") && !tipo.startsWith("salón")) {
+                throw new IOException("Línea " + numeroLinea + " del inventario con tipo desconocido: " + campos[1]);
+            }
+            int capacidad = 0;
+            if (campos.length > 3 && !campos[3].trim().isEmpty()) {
+                try {
+                    capacidad = Integer.parseInt(campos[3].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Línea " + numeroLinea + " del inventario con capacidad inválida: " + campos[3]);
+                }
+            }
+            Aula aula = new Aula(0, campos[0].trim(), laboratorio, campos.length > 2 ? campos[2].trim() : "", capacidad);
+            (laboratorio ? labs : salones).add(aula);
+        }
+        return new InventarioAulas(salones, labs);
+    }
+
+    public int getNumSalones() {
+        return numSalones;
+    }
+
+    public int getNumLabs() {
+        return aulas.length - numSalones;
+    }
+
+    public Aula getAula(int id) {
+        return aulas[id];
+    }
+
+    /**
+     * Toma salones y laboratorios que el llamador ya descontó del contador.
+     * Devuelve sus ids: primero los salones y después los laboratorios
+     */
+    public int[] tomar(int salones, int labs) {
+        int[] ids = new int[salones + labs];
+        tomarTodos(salonesLibres, salones, ids, 0);
+        tomarTodos(labsLibres, labs, ids, salones);
+        for (int i = salones; i < ids.length; i++) {
+            ids[i] += numSalones;
+        }
+        return ids;
+    }
+
+    /*
+    Una pasada puede volver corta si otros hilos toman y liberan aulas a la
+    vez, pero el contador garantiza que las que faltan existen: se insiste
+    hasta completarlas.
+     */
+    private static void tomarTodos(BitmapLibres libres, int cantidad, int[] destino, int desde) {
+        int tomados = 0;
+        while (tomados < cantidad) {
+            int nuevos = libres.tomar(cantidad - tomados, destino, desde + tomados);
+            if (nuevos == 0) {
+                Thread.onSpinWait();
+            }
+            tomados += nuevos;
+        }
+    }
+
+    /**
+     * Libera las aulas dadas, que deben ser exactamente "salones" ids de
+     * salones seguidos de "labs" ids de laboratorios, todos ocupados y sin
+     * repetir. Devuelve false sin liberar nada si no se cumple
+     */
+    public synchronized boolean liberar(int[] ids, int salones, int labs) {
+        if (!coinciden(ids, salones, labs)) {
+            return false;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (i < salones) {
+                salonesLibres.liberar(ids[i]);
+            } else {
+                labsLibres.liberar(ids[i] - numSalones);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Si los ids son aulas tomadas, distintas y del tipo indicado (sin
+     * liberarlas)
+     */
+    public synchronized boolean coinciden(int[] ids, int salones, int labs) {
+        if (ids == null || ids.length != salones + labs) {
+            return false;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            int id = ids[i];
+            boolean esSalon = i < salones;
+            if (esSalon ? id < 0 || id >= numSalones : id < numSalones || id >= aulas.length) {
+                return false;
+            }
+            if (esSalon ? salonesLibres.estaLibre(id) : labsLibres.estaLibre(id - numSalones)) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (ids[j] == id) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ajusta el inventario a los contadores del pool al configurarlo: quedan
+     * ocupadas las primeras aulas de cada tipo hasta completar lo que indica
+     * el contador. El inventario no se combina con la bitácora, así que al
+     * arrancar el pool está completo y no queda ninguna ocupada
+     */
+    public synchronized void reconstruir(int salonesDisponibles, int labsDisponibles) {
+        if (salonesDisponibles > numSalones || labsDisponibles > getNumLabs()) {
+            throw new IllegalStateException(String.format(
+                    "El estado tiene %d salones y %d laboratorios libres pero el inventario solo %d y %d",
+                    salonesDisponibles, labsDisponibles, numSalones, getNumLabs()));
+        }
+        salonesLibres.reiniciar(numSalones - salonesDisponibles);
+        labsLibres.reiniciar(getNumLabs() - labsDisponibles);
+    }
+
+    public int getSalonesLibres() {
+        return salonesLibres.libres();
+    }
+
+    public int getLabsLibres() {
+        return labsLibres.libres();
+    }
+}
@@ -0,0 +1,23 @@
+package org.grupo4.entidades;
+
+/*
+    Asignación pendiente de confirmación por parte de la facultad.
+    Guarda exactamente lo que se descontó para poder devolverlo
+    si la facultad rechaza o si la reserva vence, incluida la cuota
+    de la facultad y las aulas concretas del inventario (null si no
+    hay cuotas o inventario; el inventario no se combina con la bitácora)
+    y, con horarios, las franjas que ocupa (0 = reserva de los contadores).
+ */
+public record Reserva(
+        long id,
+        int labsAsignados,
+        int aulaMovilAsignadas,
+        int salonesAsignados,
+        CuotasFacultades.Consumo cuota,
+        int[] idsAulas,
+        long franjas
+) {
+    public Reserva(long id, int labsAsignados, int aulaMovilAsignadas, int salonesAsignados) {
+        this(id, labsAsignados, aulaMovilAsignadas, salonesAsignados, null, null, 0L);
+    }
+}
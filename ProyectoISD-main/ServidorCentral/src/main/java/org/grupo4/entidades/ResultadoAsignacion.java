@@ -1,4 +1,7 @@
 package org.grupo4.entidades;
+
+import org.grupo4.redes.EstadoAsignacion;
+
 /*
     garantiza que una vez creados, no cambien, esto
     previene efectos secundarios no deseados
@@ -7,11 +10,41 @@ package org.grupo4.entidades;
 public record ResultadoAsignacion(
         int labsAsignados,
         int aulaMovilAsignadas,
-        int salonesAsignados
+        int salonesAsignados,
+        long idReserva,
+        // Rechazo del control de admisión (null si se evaluó contra el pool)
+        EstadoAsignacion rechazo,
+        long reintentarEnMs,
+        // Ids de las aulas del inventario: salones, aulas móviles y después
+        // laboratorios (null si el servidor no lleva inventario)
+        int[] idsAulas
 ) {
+    // Resultado sin reserva asociada (asignación definitiva o fallida)
+    public ResultadoAsignacion(int labsAsignados, int aulaMovilAsignadas, int salonesAsignados) {
+        this(labsAsignados, aulaMovilAsignadas, salonesAsignados, 0L);
+    }
+
+    public ResultadoAsignacion(int labsAsignados, int aulaMovilAsignadas, int salonesAsignados, long idReserva) {
+        this(labsAsignados, aulaMovilAsignadas, salonesAsignados, idReserva, null, 0L, null);
+    }
+
+    public static ResultadoAsignacion rechazada(EstadoAsignacion motivo, long reintentarEnMs) {
+        return new ResultadoAsignacion(0, 0, 0, 0L, motivo, reintentarEnMs, null);
+    }
+
     // Inmutabilidad garantizada por el record
     // Métodos autogenerados: toString(), equals(), hashCode()
     public boolean esExitoso() {
         return labsAsignados > 0 || aulaMovilAsignadas > 0 || salonesAsignados > 0;
     }
+
+    public ResultadoAsignacion conReserva(long idReserva) {
+        return new ResultadoAsignacion(labsAsignados, aulaMovilAsignadas, salonesAsignados, idReserva,
+                rechazo, reintentarEnMs, idsAulas);
+    }
+
+    public ResultadoAsignacion conAulas(int[] idsAulas) {
+        return new ResultadoAsignacion(labsAsignados, aulaMovilAsignadas, salonesAsignados, idReserva,
+                rechazo, reintentarEnMs, idsAulas);
+    }
 }
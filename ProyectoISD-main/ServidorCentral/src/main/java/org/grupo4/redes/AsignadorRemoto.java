@@ -0,0 +1,108 @@
+package org.grupo4.redes;
+
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.entidades.Solicitud;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/*
+Lado del trabajador remoto del servicio de asignación (ver
+ServicioAsignacion): envía el lote ya deserializado y recibe un resultado
+por solicitud, en el mismo orden.
+
+Un socket REQ por trabajador (los sockets no son seguros para hilos). Si el
+broker no responde a tiempo se descarta el socket y se abre otro, porque un
+REQ que no recibió respuesta queda bloqueado.
+
+Cada pedido lleva una clave (id de este asignador + correlación). Tras un
+timeout el lote no se informa como no asignado a ciegas: el broker pudo
+haberlo asignado igual. Se reclama el pedido por su clave, una vez por
+timeout hasta que el broker responda, y el broker devuelve sus asignaciones
+o, si aún no le llegó, lo anula. Mientras tanto el trabajador sigue latiendo
+(ver TrabajadorPeticion), así que el broker no lo da por caído.
+ */
+public class AsignadorRemoto implements Function<List<Solicitud>, List<ResultadoAsignacion>> {
+    private final ZContext contexto;
+    private final String endpoint;
+    private final int timeoutMs;
+    private final long id = ThreadLocalRandom.current().nextLong();
+    private long correlacion = 0;
+    private Socket socket;
+
+    public AsignadorRemoto(ZContext contexto, String endpoint, int timeoutMs) {
+        this.contexto = contexto;
+        this.endpoint = endpoint;
+        this.timeoutMs = timeoutMs;
+        conectar();
+    }
+
+    private void conectar() {
+        socket = contexto.createSocket(SocketType.REQ);
+        socket.setReceiveTimeOut(timeoutMs);
+        socket.setLinger(0);
+        socket.connect(endpoint);
+    }
+
+    private void reconectar() {
+        socket.close();
+        conectar();
+    }
+
+    @Override
+    public List<ResultadoAsignacion> apply(List<Solicitud> solicitudes) {
+        byte[] clave = ByteBuffer.allocate(ServicioAsignacion.LONGITUD_CLAVE)
+                .putLong(id).putLong(++correlacion).array();
+        byte[] respuesta = intercambiar(clave, CodecBinario.codificarPedidoAsignacion(solicitudes));
+
+        while (respuesta == null && !Thread.currentThread().isInterrupted()) {
+            System.err.println("[TRABAJADOR] Sin respuesta del servicio de asignación en " + endpoint
+                    + " tras " + timeoutMs + " ms, reconectando y reclamando el pedido " + correlacion);
+            reconectar();
+            respuesta = intercambiar(clave, ServicioAsignacion.RECLAMO);
+        }
+
+        if (respuesta != null) {
+            try {
+                List<ResultadoAsignacion> resultados = CodecBinario.decodificarAsignaciones(respuesta, respuesta.length);
+                if (resultados.size() == solicitudes.size()) {
+                    return resultados;
+                }
+                if (resultados.isEmpty()) {
+                    // Anulado antes de asignarse: no quedó nada tomado
+                    return sinAsignar(solicitudes.size());
+                }
+            } catch (IllegalArgumentException e) {
+                // Se trata igual que una respuesta con otra cantidad de resultados
+            }
+            System.err.println("[TRABAJADOR] Respuesta de asignación inválida de " + endpoint);
+        } else {
+            // Solo al detener el trabajador
+            System.err.println("[TRABAJADOR] Interrumpido reclamando el pedido " + correlacion
+                    + ": si llegó a asignarse, sus aulas quedan tomadas");
+            reconectar();
+        }
+        return sinAsignar(solicitudes.size());
+    }
+
+    private byte[] intercambiar(byte[] clave, byte[] cuerpo) {
+        socket.send(clave, ZMQ.SNDMORE);
+        socket.send(cuerpo, 0);
+        return socket.recv();
+    }
+
+    private static List<ResultadoAsignacion> sinAsignar(int cantidad) {
+        List<ResultadoAsignacion> sinAsignar = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            sinAsignar.add(new ResultadoAsignacion(0, 0, 0));
+        }
+        return sinAsignar;
+    }
+}
@@ -0,0 +1,329 @@
+package org.grupo4.redes;
+
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.entidades.Solicitud;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Codificación binaria de longitud fija para los mensajes de asignación.
+
+    Todo payload binario empieza con el byte de versión; como un JSON siempre
+    empieza con '{', el receptor distingue ambos formatos mirando el primer
+    byte y responde en el mismo formato en que recibió la petición.
+
+    Solicitud:     [ver][semestre i32][salones i32][labs i32][facultad txt][programa txt][franjas txt]
+                   (franjas es opcional: sin él se pide el semestre completo)
+    Resultado:     [ver][estado u8][labs i32][aulasMoviles i32][salones i32][idReserva i64][aulas]
+                   (con OCUPADO o LIMITE_TASA, idReserva lleva la espera sugerida en ms)
+    Confirmación:  [ver][encabezado txt][estado u8][labs i32][aulasMoviles i32][salones i32][idReserva i64][aulas]
+
+    [aulas] es opcional: [n i32]([id i32])* con los ids de las aulas del
+    inventario. Un receptor que no lo espera ignora los bytes sobrantes y uno
+    que lo espera lo trata como ausente si el mensaje termina antes.
+    Préstamo:      [ver][salones i32][labs i32]
+
+    Entre trabajadores remotos y el servicio de asignación del broker:
+    Pedido:        [ver][n u16]([longitud u16][solicitud sin byte de versión])*
+    Asignaciones:  [ver][n u16]([labs i32][aulasMoviles i32][salones i32][idReserva i64][rechazo u8][k i32]([id i32])*)*
+                   (rechazo: código de EstadoAsignacion o 0xFF si no hubo; con
+                   LIMITE_TASA, idReserva lleva la espera sugerida en ms; k = -1
+                   si el resultado no trae ids de aulas)
+
+    Los enteros van en big-endian y los textos como [longitud u16][UTF-8].
+ */
+public final class CodecBinario {
+    public static final byte VERSION = 1;
+    public static final int LONGITUD_RESULTADO = 1 + 1 + 4 * 3 + 8;
+    public static final int LONGITUD_PRESTAMO = 1 + 4 * 2;
+
+    private static final int LONGITUD_MAXIMA_TEXTO = 0xFFFF;
+    private static final byte SIN_RECHAZO = (byte) 0xFF;
+
+    private CodecBinario() {}
+
+    public static boolean esBinario(byte[] datos, int longitud) {
+        return longitud > 0 && datos[0] == VERSION;
+    }
+
+    public static byte[] codificarSolicitud(Solicitud solicitud) {
+        byte[] facultad = texto(solicitud.getFacultad());
+        byte[] programa = texto(solicitud.getPrograma());
+        byte[] franjas = solicitud.getFranjas() != null ? texto(solicitud.getFranjas()) : null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 * 3 + 2 + facultad.length + 2 + programa.length
+                + (franjas != null ? 2 + franjas.length : 0));
+        buffer.put(VERSION)
+                .putInt(solicitud.getSemestre())
+                .putInt(solicitud.getNumSalones())
+                .putInt(solicitud.getNumLaboratorios());
+        escribirTexto(buffer, facultad);
+        escribirTexto(buffer, programa);
+        if (franjas != null) {
+            escribirTexto(buffer, franjas);
+        }
+        return buffer.array();
+    }
+
+    public static Solicitud decodificarSolicitud(byte[] datos, int longitud) {
+        ByteBuffer buffer = abrir(datos, longitud);
+        try {
+            int semestre = buffer.getInt();
+            int numSalones = buffer.getInt();
+            int numLaboratorios = buffer.getInt();
+            String facultad = leerTexto(buffer);
+            String programa = leerTexto(buffer);
+            String franjas = buffer.remaining() >= 2 ? leerTexto(buffer) : null;
+            return new Solicitud(facultad, programa, semestre, numSalones, numLaboratorios, franjas);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Solicitud binaria truncada");
+        }
+    }
+
+    public static byte[] codificarResultado(EstadoAsignacion estado, int labs, int aulasMoviles, int salones, long idReserva) {
+        return codificarResultado(estado, labs, aulasMoviles, salones, idReserva, null);
+    }
+
+    public static byte[] codificarResultado(EstadoAsignacion estado, int labs, int aulasMoviles, int salones,
+                                            long idReserva, int[] idsAulas) {
+        ByteBuffer buffer = ByteBuffer.allocate(LONGITUD_RESULTADO + longitudAulas(idsAulas));
+        buffer.put(VERSION);
+        escribirResultado(buffer, estado, labs, aulasMoviles, salones, idReserva);
+        escribirAulas(buffer, idsAulas);
+        return buffer.array();
+    }
+
+    public static ResultadoEnvio decodificarResultado(byte[] datos, int longitud) {
+        ByteBuffer buffer = abrir(datos, longitud);
+        try {
+            return leerResultado(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Resultado binario truncado");
+        }
+    }
+
+    public static byte[] codificarConfirmacion(ConfirmacionAsignacion confirmacion) {
+        byte[] encabezado = texto(confirmacion.getEncabezado());
+        ResultadoEnvio resultado = confirmacion.getResEnvio() != null ? confirmacion.getResEnvio() : new ResultadoEnvio();
+        EstadoAsignacion estado = resultado.getEstado() != null ? resultado.getEstado() : EstadoAsignacion.EXITOSA;
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + encabezado.length + LONGITUD_RESULTADO - 1
+                + longitudAulas(resultado.getIdsAulas()));
+        buffer.put(VERSION);
+        escribirTexto(buffer, encabezado);
+        escribirResultado(buffer, estado, resultado.getLabsAsignados(), resultado.getAulaMovilAsignadas(),
+                resultado.getSalonesAsignados(), resultado.getIdReserva());
+        escribirAulas(buffer, resultado.getIdsAulas());
+        return buffer.array();
+    }
+
+    public static ConfirmacionAsignacion decodificarConfirmacion(byte[] datos, int longitud) {
+        ByteBuffer buffer = abrir(datos, longitud);
+        try {
+            String encabezado = leerTexto(buffer);
+            return new ConfirmacionAsignacion(encabezado, leerResultado(buffer));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Confirmación binaria truncada");
+        }
+    }
+
+    public static byte[] codificarPrestamo(int salones, int labs) {
+        return ByteBuffer.allocate(LONGITUD_PRESTAMO).put(VERSION).putInt(salones).putInt(labs).array();
+    }
+
+    /**
+     * Devuelve {salones, labs} de un pedido o respuesta de préstamo
+     */
+    public static int[] decodificarPrestamo(byte[] datos, int longitud) {
+        ByteBuffer buffer = abrir(datos, longitud);
+        try {
+            return new int[]{buffer.getInt(), buffer.getInt()};
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Préstamo binario truncado");
+        }
+    }
+
+    public static byte[] codificarPedidoAsignacion(List<Solicitud> solicitudes) {
+        List<byte[]> codificadas = new ArrayList<>(solicitudes.size());
+        int longitud = 1 + 2;
+        for (Solicitud solicitud : solicitudes) {
+            byte[] codificada = codificarSolicitud(solicitud);
+            codificadas.add(codificada);
+            longitud += 2 + codificada.length - 1;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(longitud);
+        buffer.put(VERSION).putShort((short) codificadas.size());
+        for (byte[] codificada : codificadas) {
+            buffer.putShort((short) (codificada.length - 1)).put(codificada, 1, codificada.length - 1);
+        }
+        return buffer.array();
+    }
+
+    public static List<Solicitud> decodificarPedidoAsignacion(byte[] datos, int longitud) {
+        ByteBuffer buffer = abrir(datos, longitud);
+        try {
+            int cantidad = buffer.getShort() & 0xFFFF;
+            List<Solicitud> solicitudes = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                int fin = (buffer.getShort() & 0xFFFF) + buffer.position();
+                if (fin > buffer.limit()) {
+                    throw new BufferUnderflowException();
+                }
+                int semestre = buffer.getInt();
+                int numSalones = buffer.getInt();
+                int numLaboratorios = buffer.getInt();
+                String facultad = leerTexto(buffer);
+                String programa = leerTexto(buffer);
+                String franjas = fin - buffer.position() >= 2 ? leerTexto(buffer) : null;
+                solicitudes.add(new Solicitud(facultad, programa, semestre, numSalones, numLaboratorios, franjas));
+                buffer.position(fin);
+            }
+            return solicitudes;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Pedido de asignación truncado");
+        }
+    }
+
+    public static byte[] codificarAsignaciones(List<ResultadoAsignacion> resultados) {
+        int longitud = 1 + 2;
+        for (ResultadoAsignacion resultado : resultados) {
+            longitud += 4 * 3 + 8 + 1 + Math.max(4, longitudAulas(resultado.idsAulas()));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(longitud);
+        buffer.put(VERSION).putShort((short) resultados.size());
+        for (ResultadoAsignacion resultado : resultados) {
+            EstadoAsignacion rechazo = resultado.rechazo();
+            buffer.putInt(resultado.labsAsignados())
+                    .putInt(resultado.aulaMovilAsignadas())
+                    .putInt(resultado.salonesAsignados())
+                    .putLong(rechazo != null ? resultado.reintentarEnMs() : resultado.idReserva())
+                    .put(rechazo != null ? rechazo.getCodigo() : SIN_RECHAZO);
+            if (resultado.idsAulas() == null) {
+                buffer.putInt(-1);
+            } else {
+                escribirAulas(buffer, resultado.idsAulas());
+            }
+        }
+        return buffer.array();
+    }
+
+    public static List<ResultadoAsignacion> decodificarAsignaciones(byte[] datos, int longitud) {
+        ByteBuffer buffer = abrir(datos, longitud);
+        try {
+            int cantidad = buffer.getShort() & 0xFFFF;
+            List<ResultadoAsignacion> resultados = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                int labs = buffer.getInt();
+                int aulasMoviles = buffer.getInt();
+                int salones = buffer.getInt();
+                long idReserva = buffer.getLong();
+                byte rechazo = buffer.get();
+                int cantidadAulas = buffer.getInt();
+                int[] idsAulas = cantidadAulas < 0 ? null : leerIds(buffer, cantidadAulas);
+                resultados.add(rechazo == SIN_RECHAZO
+                        ? new ResultadoAsignacion(labs, aulasMoviles, salones, idReserva).conAulas(idsAulas)
+                        : ResultadoAsignacion.rechazada(EstadoAsignacion.desdeCodigo(rechazo), idReserva));
+            }
+            return resultados;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Asignaciones binarias truncadas");
+        }
+    }
+
+    private static void escribirResultado(ByteBuffer buffer, EstadoAsignacion estado,
+                                          int labs, int aulasMoviles, int salones, long idReserva) {
+        buffer.put(estado.getCodigo())
+                .putInt(labs)
+                .putInt(aulasMoviles)
+                .putInt(salones)
+                .putLong(idReserva);
+    }
+
+    private static ResultadoEnvio leerResultado(ByteBuffer buffer) {
+        EstadoAsignacion estado = EstadoAsignacion.desdeCodigo(buffer.get());
+        int labs = buffer.getInt();
+        int aulasMoviles = buffer.getInt();
+        int salones = buffer.getInt();
+        long idReserva = buffer.getLong();
+
+        // OCUPADO y LIMITE_TASA no tienen reserva: el campo lleva la espera sugerida
+        if (estado == EstadoAsignacion.OCUPADO || estado == EstadoAsignacion.LIMITE_TASA) {
+            ResultadoEnvio ocupado = new ResultadoEnvio(estado.getDescripcion(), 0, 0, 0);
+            ocupado.setEstado(estado);
+            ocupado.setReintentarEnMs(idReserva);
+            return ocupado;
+        }
+
+        ResultadoEnvio resultado = new ResultadoEnvio(estado.getDescripcion(), labs, aulasMoviles, salones, idReserva);
+        resultado.setEstado(estado);
+        resultado.setIdsAulas(leerAulas(buffer));
+        return resultado;
+    }
+
+    private static int longitudAulas(int[] idsAulas) {
+        return idsAulas == null ? 0 : 4 + 4 * idsAulas.length;
+    }
+
+    private static void escribirAulas(ByteBuffer buffer, int[] idsAulas) {
+        if (idsAulas == null) {
+            return;
+        }
+        buffer.putInt(idsAulas.length);
+        for (int id : idsAulas) {
+            buffer.putInt(id);
+        }
+    }
+
+    // null si el mensaje no trae la lista de aulas
+    private static int[] leerAulas(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        return leerIds(buffer, buffer.getInt());
+    }
+
+    private static int[] leerIds(ByteBuffer buffer, int cantidad) {
+        if (cantidad < 0 || cantidad > buffer.remaining() / 4) {
+            throw new BufferUnderflowException();
+        }
+        int[] idsAulas = new int[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            idsAulas[i] = buffer.getInt();
+        }
+        return idsAulas;
+    }
+
+    private static ByteBuffer abrir(byte[] datos, int longitud) {
+        if (longitud < 1 || datos[0] != VERSION) {
+            throw new IllegalArgumentException("Versión de formato binario no soportada");
+        }
+        return ByteBuffer.wrap(datos, 1, longitud - 1);
+    }
+
+    private static byte[] texto(String valor) {
+        byte[] bytes = valor == null ? new byte[0] : valor.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > LONGITUD_MAXIMA_TEXTO) {
+            throw new IllegalArgumentException("Texto demasiado largo para el formato binario");
+        }
+        return bytes;
+    }
+
+    private static void escribirTexto(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String leerTexto(ByteBuffer buffer) {
+        int longitud = buffer.getShort() & 0xFFFF;
+        if (longitud > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String valor = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), longitud, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + longitud);
+        return valor;
+    }
+}
@@ -0,0 +1,129 @@
+package org.grupo4.redes;
+
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+
+import java.util.Arrays;
+
+/*
+Cola FIFO de trabajadores disponibles (los que enviaron READY o acaban de
+responder) implementada como buffer circular de identidades en bytes.
+
+Las ranuras se reservan una sola vez y se reutilizan: encolar copia la
+identidad recibida en la ranura libre y desencolar la envía directamente
+como frame de enrutamiento, sin crear Strings ni nodos de lista. Solo se
+reserva memoria cuando la cola tiene que crecer.
+
+No es segura para hilos: la usa únicamente el hilo del broker.
+ */
+public class ColaTrabajadores {
+    // Las identidades de ZeroMQ tienen como máximo 255 bytes
+    public static final int LONGITUD_MAXIMA_IDENTIDAD = 255;
+
+    private byte[][] identidades;
+    private int[] longitudes;
+    private int mascara;
+    private int cabeza = 0;
+    private int tamano = 0;
+
+    public ColaTrabajadores(int capacidadInicial) {
+        int capacidad = Integer.highestOneBit(Math.max(2, capacidadInicial) - 1) << 1;
+        this.identidades = new byte[capacidad][LONGITUD_MAXIMA_IDENTIDAD];
+        this.longitudes = new int[capacidad];
+        this.mascara = capacidad - 1;
+    }
+
+    /**
+     * Encola una identidad copiándola desde el buffer de recepción
+     */
+    public void agregar(byte[] origen, int longitud) {
+        if (tamano == identidades.length) {
+            crecer();
+        }
+        int indice = (cabeza + tamano) & mascara;
+        System.arraycopy(origen, 0, identidades[indice], 0, longitud);
+        longitudes[indice] = longitud;
+        tamano++;
+    }
+
+    /**
+     * Envía la identidad del primer trabajador como frame de enrutamiento
+     * (con SNDMORE) y lo retira de la cola.
+     */
+    public void enviarPrimero(Socket socket) {
+        enviarPrimero(socket, null);
+    }
+
+    /**
+     * Igual que enviarPrimero(socket), copiando además la identidad enviada en
+     * destino (si no es null). Devuelve su longitud
+     */
+    public int enviarPrimero(Socket socket, byte[] destino) {
+        if (tamano == 0) {
+            throw new IllegalStateException("No hay trabajadores disponibles");
+        }
+        int longitud = longitudes[cabeza];
+        socket.send(identidades[cabeza], 0, longitud, ZMQ.SNDMORE);
+        if (destino != null) {
+            System.arraycopy(identidades[cabeza], 0, destino, 0, longitud);
+        }
+        cabeza = (cabeza + 1) & mascara;
+        tamano--;
+        return longitud;
+    }
+
+    /**
+     * Retira todas las entradas de un trabajador (declarado caído). Recorre
+     * la cola completa, así que no es para el camino de cada mensaje.
+     * Devuelve cuántas entradas retiró
+     */
+    public int quitar(byte[] identidad) {
+        int conservados = 0;
+        for (int i = 0; i < tamano; i++) {
+            int origen = (cabeza + i) & mascara;
+            if (longitudes[origen] == identidad.length
+                    && Arrays.equals(identidades[origen], 0, longitudes[origen], identidad, 0, identidad.length)) {
+                continue;
+            }
+            int destino = (cabeza + conservados) & mascara;
+            if (destino != origen) {
+                byte[] ranura = identidades[destino];
+                identidades[destino] = identidades[origen];
+                identidades[origen] = ranura;
+                longitudes[destino] = longitudes[origen];
+            }
+            conservados++;
+        }
+        int retirados = tamano - conservados;
+        tamano = conservados;
+        return retirados;
+    }
+
+    public boolean vacia() {
+        return tamano == 0;
+    }
+
+    public int tamano() {
+        return tamano;
+    }
+
+    private void crecer() {
+        int capacidad = identidades.length;
+        byte[][] nuevasIdentidades = new byte[capacidad * 2][];
+        int[] nuevasLongitudes = new int[capacidad * 2];
+
+        for (int i = 0; i < capacidad; i++) {
+            int indice = (cabeza + i) & mascara;
+            nuevasIdentidades[i] = identidades[indice];
+            nuevasLongitudes[i] = longitudes[indice];
+        }
+        for (int i = capacidad; i < nuevasIdentidades.length; i++) {
+            nuevasIdentidades[i] = new byte[LONGITUD_MAXIMA_IDENTIDAD];
+        }
+
+        identidades = nuevasIdentidades;
+        longitudes = nuevasLongitudes;
+        mascara = nuevasIdentidades.length - 1;
+        cabeza = 0;
+    }
+}
@@ -0,0 +1,193 @@
+package org.grupo4.redes;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+import org.zeromq.ZMQ.Socket;
+import org.zeromq.ZMQException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+Modo de trabajadores con hilos virtuales.
+
+En lugar de un hilo de plataforma bloqueado en recv por cada trabajador, un
+único despachador se conecta al backend con un socket DEALER y anuncia N
+créditos enviando N veces READY; el broker ve N trabajadores disponibles con
+la misma identidad. Cada lote recibido se atiende en una tarea propia (un
+hilo virtual por tarea en Java 21+) y, al responder, el broker devuelve el
+crédito a la cola como con cualquier trabajador.
+
+Los sockets de ZeroMQ no son seguros para hilos: las tareas entregan sus
+respuestas por un canal inproc PUSH compartido (serializado con un lock) y
+el despachador las reenvía al broker desde su propio hilo.
+
+En JVM sin hilos virtuales se usa un pool fijo de hilos de plataforma.
+ */
+public class DespachadorVirtual implements Runnable {
+    private final String id;
+    private final ZContext contexto;
+    private final String endpointBackend;
+    private final int creditos;
+    private final int hilosRespaldo;
+    // Latidos hacia el broker (0 = sin latidos); los del broker se ignoran
+    private final long intervaloLatidoMs;
+
+    public DespachadorVirtual(ZContext contexto, String id, String endpointBackend, int creditos,
+                              int hilosRespaldo, long intervaloLatidoMs) {
+        this.id = id;
+        this.contexto = contexto;
+        this.endpointBackend = endpointBackend;
+        this.creditos = creditos;
+        this.hilosRespaldo = hilosRespaldo;
+        this.intervaloLatidoMs = intervaloLatidoMs;
+    }
+
+    @Override
+    public void run() {
+        Socket backend = contexto.createSocket(SocketType.DEALER);
+        backend.setIdentity(id.getBytes(ZMQ.CHARSET));
+        backend.setSndHWM(0);
+        backend.setRcvHWM(0);
+        backend.connect(endpointBackend);
+
+        String endpointRespuestas = "inproc://respuestas-" + id;
+        Socket entrada = contexto.createSocket(SocketType.PULL);
+        entrada.setRcvHWM(0);
+        entrada.bind(endpointRespuestas);
+        Socket salida = contexto.createSocket(SocketType.PUSH);
+        salida.setSndHWM(0);
+        salida.connect(endpointRespuestas);
+
+        ProcesadorSolicitudes procesador = new ProcesadorSolicitudes("[VIRTUAL " + id + "]");
+        ExecutorService ejecutor = crearEjecutor();
+
+        System.out.println("[VIRTUAL " + id + "] Anunciando " + creditos + " créditos READY");
+        // Todos los créditos con la misma sesión: el broker los suma en vez de
+        // tomar cada READY como una reconexión
+        byte[] ready = intervaloLatidoMs > 0
+                ? TrabajadorPeticion.ready(TrabajadorPeticion.nuevaSesion()) : TrabajadorPeticion.READY;
+        for (int i = 0; i < creditos; i++) {
+            backend.sendMore("");
+            backend.send(ready, 0);
+        }
+
+        Poller poller = contexto.createPoller(2);
+        poller.register(backend, Poller.POLLIN);
+        poller.register(entrada, Poller.POLLIN);
+
+        long espera = intervaloLatidoMs > 0 ? Math.min(1000, intervaloLatidoMs) : 1000;
+        long proximoLatido = System.currentTimeMillis() + intervaloLatidoMs;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                int eventos = poller.poll(espera);
+                if (intervaloLatidoMs > 0 && System.currentTimeMillis() >= proximoLatido) {
+                    backend.sendMore("");
+                    backend.send(TrabajadorPeticion.LATIDO, 0);
+                    proximoLatido = System.currentTimeMillis() + intervaloLatidoMs;
+                }
+                if (eventos <= 0) continue;
+
+                // Respuestas terminadas: reenviar tal cual al broker
+                // Formato: [empty]([clientAddr][correlación][response])+
+                if (poller.pollin(1)) {
+                    reenviar(entrada, backend);
+                }
+
+                // Nuevo lote del broker: [empty]([clientAddr][correlación o empty][request])+
+                if (poller.pollin(0)) {
+                    List<byte[]> dirClientes = new ArrayList<>();
+                    List<byte[]> correlaciones = new ArrayList<>();
+                    List<byte[]> peticiones = new ArrayList<>();
+
+                    backend.recv();
+                    byte[] dirCliente = backend.recv();
+                    if (!backend.hasReceiveMore()) {
+                        continue; // Latido del broker
+                    }
+                    while (true) {
+                        dirClientes.add(dirCliente);
+                        correlaciones.add(backend.recv());
+                        peticiones.add(backend.recv());
+                        if (!backend.hasReceiveMore()) {
+                            break;
+                        }
+                        dirCliente = backend.recv();
+                    }
+
+                    ejecutor.execute(() -> {
+                        List<byte[]> respuestas;
+                        try {
+                            respuestas = procesador.atender(dirClientes, correlaciones, peticiones);
+                        } catch (RuntimeException e) {
+                            System.out.println("[VIRTUAL " + id + "] Error procesando el lote: " + e);
+                            respuestas = new ArrayList<>(peticiones.size());
+                            for (byte[] peticion : peticiones) {
+                                respuestas.add(ProcesadorSolicitudes.respuestaError(peticion));
+                            }
+                        }
+                        enviarRespuestas(salida, dirClientes, correlaciones, respuestas);
+                    });
+                }
+            }
+        } catch (ZMQException e) {
+            if (e.getErrorCode() != ZMQ.Error.ETERM.getCode()) {
+                System.out.println("[VIRTUAL " + id + "] Error: " + e.getMessage());
+            }
+        } finally {
+            ejecutor.shutdown();
+            try {
+                ejecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void reenviar(Socket origen, Socket destino) {
+        while (true) {
+            byte[] trama = origen.recv();
+            boolean hayMas = origen.hasReceiveMore();
+            destino.send(trama, hayMas ? ZMQ.SNDMORE : 0);
+            if (!hayMas) {
+                return;
+            }
+        }
+    }
+
+    private static void enviarRespuestas(Socket salida, List<byte[]> dirClientes,
+                                         List<byte[]> correlaciones, List<byte[]> respuestas) {
+        synchronized (salida) {
+            salida.sendMore("");
+            for (int i = 0; i < dirClientes.size(); i++) {
+                salida.sendMore(dirClientes.get(i));
+                salida.sendMore(correlaciones.get(i));
+                salida.send(respuestas.get(i), i < dirClientes.size() - 1 ? ZMQ.SNDMORE : 0);
+            }
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor existe desde Java 21; se
+     * busca por reflexión para seguir compilando con target 17.
+     */
+    private ExecutorService crearEjecutor() {
+        try {
+            ExecutorService ejecutor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            System.out.println("[VIRTUAL " + id + "] Usando un hilo virtual por lote");
+            return ejecutor;
+        } catch (ReflectiveOperationException e) {
+            System.out.println("[VIRTUAL " + id + "] Hilos virtuales no disponibles en esta JVM, usando "
+                    + hilosRespaldo + " hilos de plataforma");
+            return Executors.newFixedThreadPool(hilosRespaldo);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.grupo4.redes;
+
+import org.grupo4.concurrencia.RecursosEmpaquetados;
+import org.grupo4.entidades.AdministradorInstalaciones;
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.entidades.Solicitud;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Lista de espera de solicitudes que el pool no pudo atender (Caso 3): en vez
+de responder "[ALERTA] No hay suficientes aulas" y que la facultad reintente
+a mano, el trabajador estaciona la solicitud aquí y no responde. Cada vez que
+vuelven recursos al pool (rechazo de una asignación, reserva vencida o
+rechazada, préstamo recibido) se hace una pasada de emparejamiento que
+reintenta las estacionadas y deja las respuestas listas para que el hilo del
+broker las envíe a sus clientes.
+
+Las estacionadas se recorren por orden de llegada, pero una que no entra no
+bloquea a las siguientes: una solicitud chica que llegó después puede tomar
+lo que a la primera no le alcanza. Ninguna espera indefinidamente: al pasar
+esperaMaximaMs recibe la respuesta RECURSOS_INSUFICIENTES de siempre.
+
+Pasadas:
+  - Corren en un hilo propio (lista-espera). Quien avisa (el broker, la rueda
+    de reservas o un trabajador) solo marca una pasada pendiente: nunca
+    reintenta asignaciones ni escribe en la bitácora en su hilo.
+  - Hay a lo sumo una pasada pendiente. Los avisos que llegan antes de que
+    empiece se juntan en ella; uno que llega durante una pasada deja otra
+    pendiente, así ningún recurso devuelto queda sin ofrecer.
+  - La pasada termina en cuanto el pool queda sin salones ni laboratorios.
+  - Estacionar también avisa: cubre los recursos que volvieron entre el
+    intento fallido del trabajador y su llegada a la lista.
+
+La retirada de la lista solo ocurre dentro de una pasada (emparejada o
+vencida), así una solicitud nunca recibe dos respuestas.
+ */
+public class ListaEspera {
+    // Respuesta del trabajador para una solicitud estacionada: el broker no la reenvía
+    static final byte[] ESTACIONADA = new byte[0];
+
+    private record Estacionada(byte[] cliente, byte[] correlacion, boolean binaria, Solicitud solicitud, long vence) {}
+
+    /**
+     * Respuesta lista para enviar al cliente de una solicitud estacionada
+     */
+    public record Entrega(byte[] cliente, byte[] correlacion, byte[] respuesta, boolean exitosa) {}
+
+    private final int capacidad;
+    private final long esperaMaximaMs;
+    private final int maxSalones;
+    private final int maxLabs;
+    private final ProcesadorSolicitudes formateador = new ProcesadorSolicitudes("[ESPERA]");
+
+    // Clave: orden de llegada
+    private final ConcurrentSkipListMap<Long, Estacionada> estacionadas = new ConcurrentSkipListMap<>();
+    private final AtomicLong secuencia = new AtomicLong();
+    private final AtomicInteger tamano = new AtomicInteger();
+    private final AtomicBoolean pasadaPendiente = new AtomicBoolean();
+    private final ExecutorService emparejador = Executors.newSingleThreadExecutor(tarea -> {
+        Thread hilo = new Thread(tarea, "lista-espera");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private final ConcurrentLinkedQueue<Entrega> entregas = new ConcurrentLinkedQueue<>();
+    // Instante (System.currentTimeMillis) del vencimiento más próximo
+    private volatile long proximoVencimiento = Long.MAX_VALUE;
+
+    private final AtomicLong estacionadasTotal = new AtomicLong();
+    private final AtomicLong emparejadas = new AtomicLong();
+    private final AtomicLong vencidas = new AtomicLong();
+
+    /**
+     * @param capacidad máximo de solicitudes estacionadas; las que no entran
+     *                  reciben la respuesta de recursos insuficientes
+     * @param maxSalones capacidad total del pool: lo que no cabe ni vacío no se estaciona
+     */
+    public ListaEspera(int capacidad, long esperaMaximaMs, int maxSalones, int maxLabs) {
+        this.capacidad = capacidad;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.maxSalones = maxSalones;
+        this.maxLabs = maxLabs;
+    }
+
+    /**
+     * Estaciona una solicitud que el pool no pudo atender. Devuelve false si
+     * la lista está llena o la solicitud no cabría ni con el pool vacío: en
+     * ese caso el trabajador responde como siempre
+     */
+    public boolean estacionar(byte[] cliente, byte[] correlacion, boolean binaria, Solicitud solicitud) {
+        int salones = solicitud.getNumSalones();
+        int labs = solicitud.getNumLaboratorios();
+        if (salones < 0 || labs < 0 || salones > maxSalones || salones + labs > maxSalones + maxLabs) {
+            return false;
+        }
+        if (tamano.incrementAndGet() > capacidad) {
+            tamano.decrementAndGet();
+            return false;
+        }
+
+        long vence = System.currentTimeMillis() + esperaMaximaMs;
+        estacionadas.put(secuencia.incrementAndGet(),
+                new Estacionada(cliente, correlacion, binaria, solicitud, vence));
+        proximoVencimiento = Math.min(proximoVencimiento, vence);
+        estacionadasTotal.incrementAndGet();
+        emparejar();
+        return true;
+    }
+
+    /**
+     * Aviso de recursos devueltos al pool: deja pendiente una pasada de
+     * emparejamiento en el hilo de la lista, si no lo estaba ya
+     */
+    public void emparejar() {
+        if (!pasadaPendiente.getAndSet(true)) {
+            emparejador.execute(this::pasadaPendiente);
+        }
+    }
+
+    private void pasadaPendiente() {
+        // Un aviso que llegue desde aquí encarga otra pasada
+        pasadaPendiente.set(false);
+        try {
+            pasada();
+        } catch (RuntimeException e) {
+            System.err.println("[ESPERA] Error en la pasada de emparejamiento: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Para el hilo del broker: si alguna estacionada ya venció, pide una
+     * pasada que la retira y deja su respuesta en las entregas
+     */
+    public void revisarVencidas(long ahora) {
+        if (ahora >= proximoVencimiento) {
+            emparejar();
+        }
+    }
+
+    private void pasada() {
+        AdministradorInstalaciones administrador = AdministradorInstalaciones.getInstance();
+        boolean porFranjas = administrador.getHorario() != null;
+        long ahora = System.currentTimeMillis();
+        long proximo = Long.MAX_VALUE;
+        boolean poolVacio = false;
+
+        Iterator<Map.Entry<Long, Estacionada>> it = estacionadas.entrySet().iterator();
+        while (it.hasNext()) {
+            Estacionada estacionada = it.next().getValue();
+            if (ahora >= estacionada.vence()) {
+                retirar(it, estacionada, new ResultadoAsignacion(0, 0, 0));
+                vencidas.incrementAndGet();
+                continue;
+            }
+            if (!poolVacio) {
+                ResultadoAsignacion resultado = administrador.reintentar(estacionada.solicitud());
+                // Con una rechazada (p. ej. la cuota se agotó mientras esperaba) también se responde
+                if (resultado.esExitoso() || resultado.rechazo() != null) {
+                    retirar(it, estacionada, resultado);
+                    if (resultado.esExitoso()) {
+                        emparejadas.incrementAndGet();
+                    }
+                    continue;
+                }
+                // Con contadores se sabe cuándo ya no queda nada que ofrecer
+                long estado = administrador.getEstadoEmpaquetado();
+                poolVacio = !porFranjas
+                        && RecursosEmpaquetados.salones(estado) == 0 && RecursosEmpaquetados.labs(estado) == 0;
+            }
+            proximo = Math.min(proximo, estacionada.vence());
+        }
+        proximoVencimiento = proximo;
+    }
+
+    private void retirar(Iterator<Map.Entry<Long, Estacionada>> it, Estacionada estacionada,
+                         ResultadoAsignacion resultado) {
+        it.remove();
+        tamano.decrementAndGet();
+        entregas.add(new Entrega(estacionada.cliente(), estacionada.correlacion(),
+                formateador.codificar(resultado, estacionada.solicitud(), estacionada.binaria()),
+                resultado.esExitoso()));
+    }
+
+    /**
+     * Siguiente respuesta lista para enviar, o null si no hay
+     */
+    public Entrega siguienteEntrega() {
+        return entregas.poll();
+    }
+
+    public boolean vacia() {
+        return tamano.get() == 0 && entregas.isEmpty();
+    }
+
+    public int getEstacionadas() {
+        return tamano.get();
+    }
+
+    public long getEstacionadasTotal() {
+        return estacionadasTotal.get();
+    }
+
+    public long getEmparejadas() {
+        return emparejadas.get();
+    }
+
+    public long getVencidas() {
+        return vencidas.get();
+    }
+}
@@ -0,0 +1,143 @@
+package org.grupo4.redes;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/*
+Backlog del broker con una subcola FIFO por cliente (la identidad ZeroMQ, que
+ClienteFacultad fija con el nombre de la facultad) y reparto por deficit
+round robin.
+
+Cada subcola activa recibe en su turno tantos créditos como su peso y entrega
+una solicitud por crédito; al agotarlos pasa al final del anillo. Así una
+facultad que envía cientos de solicitudes de una vez no demora a las que
+envían pocas: cada una espera a lo sumo una vuelta del anillo, no el volumen
+acumulado de las demás. Todas las solicitudes cuestan un crédito (el trabajo
+de un trabajador es parejo entre solicitudes).
+
+Con el backlog lleno se descarta desde la cola del cliente más largo, no la
+llegada de uno que apenas tiene solicitudes encoladas.
+
+No es segura para hilos: la usa únicamente el hilo del broker.
+ */
+public class PlanificadorJusto<T> {
+    private static final class SubCola<T> {
+        final ByteBuffer cliente;
+        final int peso;
+        final ArrayDeque<T> cola = new ArrayDeque<>();
+        int deficit = 0;
+
+        SubCola(ByteBuffer cliente, int peso) {
+            this.cliente = cliente;
+            this.peso = peso;
+        }
+    }
+
+    // Peso por identidad; los clientes que no figuran pesan 1
+    private final Map<ByteBuffer, Integer> pesos;
+    private final Map<ByteBuffer, SubCola<T>> porCliente = new HashMap<>();
+    // Subcolas con solicitudes, en orden de turno
+    private final ArrayDeque<SubCola<T>> activas = new ArrayDeque<>();
+    private int tamano = 0;
+
+    public PlanificadorJusto(Map<ByteBuffer, Integer> pesos) {
+        this.pesos = pesos;
+    }
+
+    public boolean vacio() {
+        return tamano == 0;
+    }
+
+    public int tamano() {
+        return tamano;
+    }
+
+    public int clientesActivos() {
+        return activas.size();
+    }
+
+    public int longitudDe(ByteBuffer cliente) {
+        SubCola<T> subCola = porCliente.get(cliente);
+        return subCola == null ? 0 : subCola.cola.size();
+    }
+
+    public void agregar(ByteBuffer cliente, T elemento) {
+        SubCola<T> subCola = porCliente.get(cliente);
+        if (subCola == null) {
+            subCola = new SubCola<>(cliente, Math.max(1, pesos.getOrDefault(cliente, 1)));
+            porCliente.put(cliente, subCola);
+            activas.addLast(subCola);
+        }
+        subCola.cola.addLast(elemento);
+        tamano++;
+    }
+
+    /**
+     * Próxima solicitud según deficit round robin, o null si no hay ninguna
+     */
+    public T siguiente() {
+        SubCola<T> turno = activas.peekFirst();
+        if (turno == null) {
+            return null;
+        }
+        if (turno.deficit == 0) {
+            turno.deficit = turno.peso;
+        }
+
+        T elemento = turno.cola.pollFirst();
+        turno.deficit--;
+        tamano--;
+        if (turno.cola.isEmpty()) {
+            // Una subcola que se vacía pierde los créditos que le quedaban
+            activas.pollFirst();
+            porCliente.remove(turno.cliente);
+        } else if (turno.deficit == 0) {
+            activas.addLast(activas.pollFirst());
+        }
+        return elemento;
+    }
+
+    /**
+     * Para hacer lugar a una llegada de "cliente" con el backlog lleno: quita
+     * y devuelve la última solicitud del cliente con más encoladas, siempre
+     * que tenga más que "cliente". Devuelve null si la llegada es la que debe
+     * rechazarse.
+     */
+    public T expulsarPara(ByteBuffer cliente) {
+        SubCola<T> masLarga = null;
+        for (SubCola<T> subCola : activas) {
+            if (masLarga == null || subCola.cola.size() > masLarga.cola.size()) {
+                masLarga = subCola;
+            }
+        }
+        if (masLarga == null || masLarga.cola.size() <= longitudDe(cliente) + 1) {
+            return null;
+        }
+        tamano--;
+        return masLarga.cola.pollLast();
+    }
+
+    /**
+     * Quita de la cabeza de cada subcola las solicitudes vencidas (cada
+     * subcola está en orden de llegada) y se las pasa a "accion"
+     */
+    public void quitarVencidas(Predicate<T> vencida, Consumer<T> accion) {
+        Iterator<SubCola<T>> iterador = activas.iterator();
+        while (iterador.hasNext()) {
+            SubCola<T> subCola = iterador.next();
+            while (!subCola.cola.isEmpty() && vencida.test(subCola.cola.peekFirst())) {
+                accion.accept(subCola.cola.pollFirst());
+                tamano--;
+            }
+            if (subCola.cola.isEmpty()) {
+                iterador.remove();
+                porCliente.remove(subCola.cliente);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.grupo4.redes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.grupo4.entidades.AdministradorInstalaciones;
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.entidades.Solicitud;
+import org.zeromq.ZMQ;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+Lógica de atención de solicitudes compartida por los modos de trabajador
+(hilo clásico por socket o despachador con hilos virtuales): deserializa
+cada payload en su formato, asigna la solicitud o el lote completo en una
+sola pasada atómica y codifica las respuestas en el formato de origen.
+
+Es segura para hilos: ObjectMapper lo es y el estado de recursos vive en
+AdministradorInstalaciones. En un trabajador remoto la asignación se delega
+al servicio del broker (ver AsignadorRemoto) y aquí solo se hace el
+deserializado y el formateo.
+ */
+public class ProcesadorSolicitudes {
+    // Marcador para payloads que no se pudieron deserializar (pide 0 recursos)
+    private static final Solicitud SOLICITUD_INVALIDA = new Solicitud("", "SOLICITUD INVALIDA", 0, 0, 0);
+    // Respuestas de error ya codificadas en cada formato (ver respuestaError)
+    private static final byte[] ERROR_BINARIO = CodecBinario.codificarResultado(EstadoAsignacion.ERROR_SERVIDOR, 0, 0, 0, 0);
+    private static final byte[] ERROR_JSON = serializarError();
+
+    private final String etiqueta;
+    private final ObjectMapper json = new ObjectMapper();
+    // Asignación fuera de este proceso (null = AdministradorInstalaciones local)
+    private final Function<List<Solicitud>, List<ResultadoAsignacion>> asignadorRemoto;
+
+    /**
+     * @param etiqueta prefijo de los mensajes de consola, p. ej. "[TRABAJADOR 3]"
+     */
+    public ProcesadorSolicitudes(String etiqueta) {
+        this(etiqueta, null);
+    }
+
+    /**
+     * @param asignadorRemoto asigna un lote completo en otro proceso, en orden
+     */
+    public ProcesadorSolicitudes(String etiqueta, Function<List<Solicitud>, List<ResultadoAsignacion>> asignadorRemoto) {
+        this.etiqueta = etiqueta;
+        this.asignadorRemoto = asignadorRemoto;
+    }
+
+    /**
+     * Atiende un lote recibido del broker y devuelve una respuesta por
+     * solicitud, en el mismo orden. Con lista de espera, las solicitudes que
+     * el pool no puede atender quedan estacionadas y su respuesta es
+     * ListaEspera.ESTACIONADA (vacía): la envía el broker cuando se empareja.
+     */
+    public List<byte[]> atender(List<byte[]> dirClientes, List<byte[]> correlaciones, List<byte[]> peticiones) {
+        List<Solicitud> solicitudes = new ArrayList<>(peticiones.size());
+        boolean[] formatosBinarios = new boolean[peticiones.size()];
+
+        for (int i = 0; i < peticiones.size(); i++) {
+            byte[] peticion = peticiones.get(i);
+            // Se responde en el mismo formato en que llegó la solicitud
+            formatosBinarios[i] = CodecBinario.esBinario(peticion, peticion.length);
+            Solicitud solicitud = leerSolicitud(peticion, formatosBinarios[i]);
+            solicitudes.add(solicitud);
+
+            System.out.println(etiqueta + " Procesando solicitud de "
+                    + new String(dirClientes.get(i), ZMQ.CHARSET) + ": " + solicitud);
+        }
+
+        List<ResultadoAsignacion> resultados;
+        ListaEspera espera = null;
+        if (asignadorRemoto != null) {
+            resultados = asignadorRemoto.apply(solicitudes);
+        } else {
+            espera = AdministradorInstalaciones.getInstance().getListaEspera();
+            resultados = solicitudes.size() == 1
+                    ? List.of(asignar(solicitudes.get(0)))
+                    : AdministradorInstalaciones.getInstance().asignarLote(solicitudes);
+        }
+
+        List<byte[]> respuestas = new ArrayList<>(resultados.size());
+        for (int i = 0; i < resultados.size(); i++) {
+            ResultadoAsignacion resultado = resultados.get(i);
+            Solicitud solicitud = solicitudes.get(i);
+            if (espera != null && estadoDe(resultado, solicitud) == EstadoAsignacion.RECURSOS_INSUFICIENTES
+                    && espera.estacionar(dirClientes.get(i), correlaciones.get(i), formatosBinarios[i], solicitud)) {
+                System.out.println(etiqueta + " Solicitud de "
+                        + new String(dirClientes.get(i), ZMQ.CHARSET) + " estacionada en la lista de espera");
+                respuestas.add(ListaEspera.ESTACIONADA);
+                continue;
+            }
+            respuestas.add(codificar(resultado, solicitud, formatosBinarios[i]));
+        }
+        return respuestas;
+    }
+
+    /**
+     * Respuesta para el resultado de una solicitud, en el formato indicado
+     */
+    byte[] codificar(ResultadoAsignacion resultado, Solicitud solicitud, boolean binario) {
+        return binario
+                ? codificarResultado(resultado, solicitud)
+                : serializarResultado(resultado, solicitud).getBytes(ZMQ.CHARSET);
+    }
+
+    /**
+     * Deserializa una solicitud. Si el payload es inválido se devuelve una
+     * solicitud vacía (0 salones, 0 laboratorios) para que el cliente reciba
+     * respuesta igualmente y el resto del lote no se pierda.
+     */
+    private Solicitud leerSolicitud(byte[] peticion, boolean binario) {
+        try {
+            return binario
+                    ? CodecBinario.decodificarSolicitud(peticion, peticion.length)
+                    : json.readValue(peticion, Solicitud.class);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(etiqueta + " Solicitud inválida: " + e.getMessage());
+            return SOLICITUD_INVALIDA;
+        }
+    }
+
+    /**
+     * Respuesta para una petición que no se pudo atender, en el formato en que
+     * llegó. La usan el trabajador (excepción al procesar) y el broker
+     * (trabajador declarado caído con la petición en vuelo)
+     */
+    public static byte[] respuestaError(byte[] peticion) {
+        return CodecBinario.esBinario(peticion, peticion.length) ? ERROR_BINARIO : ERROR_JSON;
+    }
+
+    private static byte[] serializarError() {
+        ResultadoEnvio resEnvio = new ResultadoEnvio(EstadoAsignacion.ERROR_SERVIDOR.getDescripcion(), 0, 0, 0, 0);
+        resEnvio.setEstado(EstadoAsignacion.ERROR_SERVIDOR);
+        try {
+            return new ObjectMapper().writeValueAsBytes(resEnvio);
+        } catch (JsonProcessingException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Respuesta OCUPADO en el formato indicado, con la espera sugerida antes
+     * de reintentar. El broker la arma una vez y la reutiliza
+     */
+    public static byte[] respuestaOcupado(boolean binario, long reintentarEnMs) {
+        if (binario) {
+            return CodecBinario.codificarResultado(EstadoAsignacion.OCUPADO, 0, 0, 0, reintentarEnMs);
+        }
+        ResultadoEnvio resEnvio = new ResultadoEnvio(EstadoAsignacion.OCUPADO.getDescripcion(), 0, 0, 0);
+        resEnvio.setEstado(EstadoAsignacion.OCUPADO);
+        resEnvio.setReintentarEnMs(reintentarEnMs);
+        try {
+            return new ObjectMapper().writeValueAsBytes(resEnvio);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String obtenerInfoGeneral (ResultadoAsignacion resultado, Solicitud solicitud) {
+        /*
+         * Estructura Repuesta
+         * Trama 1: Informacion general
+         * Trama 2: Laboratorios asignados
+         * Trama 3: Aulas moviles
+         * Trama 4: Salones asignados
+         */
+
+        if (solicitud == SOLICITUD_INVALIDA) {
+            return "[ERROR] Solicitud inválida";
+        }
+        if (resultado.rechazo() != null) {
+            return resultado.rechazo().getDescripcion();
+        }
+
+        String infoGeneral = "[ALERTA] No hay suficientes aulas o laboratorios para responder a la demanda";
+        //Caso 1
+        if (resultado.esExitoso()) {
+            if(resultado.aulaMovilAsignadas() == 0) {
+                infoGeneral = String.format("Asignacion exitosa de laboratorios y salones para %s", solicitud.getPrograma());
+            } else {
+                infoGeneral = String.format("Asignacion exitosa para %s, algunos laboratorios se asignaron como aulas moviles", solicitud.getPrograma());
+            }
+        }
+
+        return infoGeneral;
+    }
+
+    private ResultadoAsignacion asignar(Solicitud peticion) {
+        return AdministradorInstalaciones.getInstance().asignar(peticion);
+    }
+
+    /**
+     * Codificación binaria: solo viaja el código de estado, sin armar el texto
+     */
+    private byte[] codificarResultado(ResultadoAsignacion resultado, Solicitud peticion) {
+        return CodecBinario.codificarResultado(
+                estadoDe(resultado, peticion),
+                resultado.labsAsignados(),
+                resultado.aulaMovilAsignadas(),
+                resultado.salonesAsignados(),
+                resultado.rechazo() != null ? resultado.reintentarEnMs() : resultado.idReserva(),
+                resultado.idsAulas());
+    }
+
+    private static EstadoAsignacion estadoDe(ResultadoAsignacion resultado, Solicitud peticion) {
+        if (peticion == SOLICITUD_INVALIDA) {
+            return EstadoAsignacion.SOLICITUD_INVALIDA;
+        }
+        if (resultado.rechazo() != null) {
+            return resultado.rechazo();
+        }
+        if (!resultado.esExitoso()) {
+            return EstadoAsignacion.RECURSOS_INSUFICIENTES;
+        }
+        return resultado.aulaMovilAsignadas() == 0
+                ? EstadoAsignacion.EXITOSA
+                : EstadoAsignacion.EXITOSA_AULAS_MOVILES;
+    }
+
+    private String serializarResultado(ResultadoAsignacion resultado, Solicitud peticion) {
+        try {
+            ResultadoEnvio resEnvio = new ResultadoEnvio(
+                    obtenerInfoGeneral(resultado, peticion),
+                    resultado.labsAsignados(),
+                    resultado.aulaMovilAsignadas(),
+                    resultado.salonesAsignados(),
+                    resultado.idReserva());
+            resEnvio.setEstado(estadoDe(resultado, peticion));
+            resEnvio.setReintentarEnMs(resultado.reintentarEnMs());
+            resEnvio.setIdsAulas(resultado.idsAulas());
+
+            return json.writeValueAsString(resEnvio);
+
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
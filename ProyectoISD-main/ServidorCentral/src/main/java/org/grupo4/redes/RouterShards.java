@@ -0,0 +1,472 @@
+package org.grupo4.redes;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.grupo4.entidades.AdministradorInstalaciones;
+import org.grupo4.entidades.Solicitud;
+import org.grupo4.repositorio.Configuracion;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+import org.zeromq.ZMQ.Socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+Router del modo con shards. Cada shard es un ServidorCentral normal, en su
+propio proceso, dueño de una partición de salones y laboratorios
+(server.maxSalones / server.maxLabs de su configuración). El router acepta a
+las facultades con el mismo protocolo que el broker y reenvía cada mensaje al
+shard que corresponde:
+
+  - SOLICITUD: al shard de la facultad (router.facultades.<shard>, p. ej. por
+    campus o edificio; el resto por hash del nombre).
+  - CONFIRMAR/RECHAZAR: al shard que emitió la reserva, que va en los bits
+    altos del id (server.shardId); sin id, al último shard del cliente.
+  - NEGOCIAR: lo responde el router, todos los shards hablan el mismo formato.
+
+Préstamos: si un shard responde RECURSOS_INSUFICIENTES, el router pide a los
+demás shards (en orden de anillo) que le cedan lo que la solicitud necesita y,
+si uno acepta, se lo entrega al shard de origen y reenvía la solicitud. La
+capacidad prestada queda en el shard que la recibió. Si nadie presta, la
+facultad recibe la respuesta original. Si el shard de origen no acepta lo
+prestado, se devuelve al prestamista con otro RECIBIR_PRESTAMO.
+
+Hacia cada shard se usa un DEALER con el sobre segmentado del broker
+([tipo][correlación][payload]); la correlación es un contador del router que
+indexa los mensajes en vuelo. Todo el estado lo toca un solo hilo.
+ */
+public class RouterShards {
+    private static final int TAMANO_MAXIMO_MENSAJE = 64 * 1024;
+    private static final byte[] VACIO = new byte[0];
+    // Mensajes que se drenan de un socket antes de atender el siguiente
+    private static final int DRENAJE_MAXIMO = 256;
+    private static final long INTERVALO_LIMPIEZA_MS = 1000;
+    private static final byte[] PRESTAMO_RECIBIDO = "PRESTAMO RECIBIDO".getBytes(ZMQ.CHARSET);
+
+    private final String ip;
+    private final String port;
+    private final String[] shards;
+    private final Map<String, Integer> shardPorFacultad = new HashMap<>();
+    private final boolean prestamos;
+    private final long timeoutMs;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<Long, Pendiente> pendientes = new HashMap<>();
+    // Último shard de cada cliente, para confirmaciones sin id de reserva
+    private final Map<ByteBuffer, Integer> shardPorCliente;
+    private long siguienteCorrelacion = 1;
+
+    private Socket frontend;
+    private Socket[] backends;
+
+    // Métricas
+    private final long[] reenviadasPorShard;
+    private long prestamosConcedidos = 0;
+    private long prestamosSinCapacidad = 0;
+    private long prestamosDevueltos = 0;
+    private long prestamosPerdidos = 0;
+    private long vencidas = 0;
+
+    /**
+     * Mensaje reenviado a un shard que espera respuesta
+     */
+    private static final class Pendiente {
+        final byte[] cliente;
+        final byte[] correlacion; // null: cliente REQ o legado
+        final TipoMensaje tipo;
+        final byte[] carga;
+        final int shard;
+        final long creado = System.currentTimeMillis();
+
+        // Solo para solicitudes
+        int salones;
+        int labs;
+        boolean prestamoIntentado;
+        byte[] respuestaOriginal;
+
+        // Solo para PRESTAR / RECIBIR_PRESTAMO: la solicitud que lo originó
+        Pendiente solicitud;
+        // Solo para RECIBIR_PRESTAMO: shard que cedió la capacidad (-1 = es una devolución)
+        int prestamista = -1;
+
+        Pendiente(byte[] cliente, byte[] correlacion, TipoMensaje tipo, byte[] carga, int shard) {
+            this.cliente = cliente;
+            this.correlacion = correlacion;
+            this.tipo = tipo;
+            this.carga = carga;
+            this.shard = shard;
+        }
+    }
+
+    public RouterShards(String rutaConfig) {
+        Properties propiedades = Configuracion.cargarPropiedadesServidor(rutaConfig);
+        this.ip = propiedades.getProperty("router.ip", "0.0.0.0").trim();
+        this.port = propiedades.getProperty("router.port", "5555").trim();
+        this.shards = propiedades.getProperty("router.shards", "tcp://127.0.0.1:5556").trim().split("\\s*,\\s*");
+        this.prestamos = Boolean.parseBoolean(propiedades.getProperty("router.prestamos", "true").trim());
+        this.timeoutMs = Math.max(1, Configuracion.obtenerEntero(propiedades, "router.timeoutMs", 30_000));
+        int maxClientes = Math.max(1, Configuracion.obtenerEntero(propiedades, "router.maxClientes", 100_000));
+
+        for (int i = 0; i < shards.length; i++) {
+            String facultades = propiedades.getProperty("router.facultades." + i);
+            if (facultades == null) continue;
+            for (String facultad : facultades.split(",")) {
+                if (!facultad.isBlank()) {
+                    shardPorFacultad.put(facultad.trim(), i);
+                }
+            }
+        }
+
+        this.shardPorCliente = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Integer> mayor) {
+                return size() > maxClientes;
+            }
+        };
+        this.reenviadasPorShard = new long[shards.length];
+    }
+
+    /**
+     * Bucle principal del router
+     */
+    public void iniciar() {
+        try (ZContext context = new ZContext()) {
+            frontend = context.createSocket(SocketType.ROUTER);
+            frontend.setMaxMsgSize(TAMANO_MAXIMO_MENSAJE);
+            String endpoint = "tcp://" + ip + ":" + port;
+            frontend.bind(endpoint);
+            System.out.println("[ROUTER] Iniciado en " + endpoint + " con " + shards.length + " shards"
+                    + (prestamos ? ", préstamos entre shards habilitados" : ""));
+
+            Poller poller = context.createPoller(shards.length + 1);
+            poller.register(frontend, Poller.POLLIN);
+            backends = new Socket[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                backends[i] = context.createSocket(SocketType.DEALER);
+                backends[i].setSndHWM(0);
+                backends[i].setRcvHWM(0);
+                backends[i].connect(shards[i]);
+                poller.register(backends[i], Poller.POLLIN);
+                System.out.println("[ROUTER] Shard " + i + " en " + shards[i]);
+            }
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println("\nProceso Router Finalizado");
+                imprimirMetricas();
+            }));
+
+            long ultimaLimpieza = System.currentTimeMillis();
+            while (!Thread.currentThread().isInterrupted()) {
+                if (poller.poll(INTERVALO_LIMPIEZA_MS) > 0) {
+                    for (int i = 0; i < shards.length; i++) {
+                        if (poller.pollin(i + 1)) {
+                            for (int n = 0; n < DRENAJE_MAXIMO && manejarRespuestaShard(i); n++);
+                        }
+                    }
+                    if (poller.pollin(0)) {
+                        for (int n = 0; n < DRENAJE_MAXIMO && manejarMensajeCliente(); n++);
+                    }
+                }
+
+                long ahora = System.currentTimeMillis();
+                if (ahora - ultimaLimpieza >= INTERVALO_LIMPIEZA_MS) {
+                    vencerPendientes(ahora);
+                    ultimaLimpieza = ahora;
+                }
+            }
+        }
+    }
+
+    // ======================== CLIENTES ========================
+
+    /**
+     * Recibe un mensaje de una facultad sin bloquear y lo reenvía. Acepta los
+     * mismos sobres que el broker: [empty][tipo][payload],
+     * [empty][tipo][correlación][payload] o el JSON legado en un solo frame.
+     * Devuelve false si no había mensajes
+     */
+    private boolean manejarMensajeCliente() {
+        byte[] cliente = frontend.recv(ZMQ.DONTWAIT);
+        if (cliente == null) {
+            return false;
+        }
+        List<byte[]> tramas = new ArrayList<>(4);
+        while (frontend.hasReceiveMore()) {
+            tramas.add(frontend.recv());
+        }
+
+        TipoMensaje tipo = null;
+        byte[] correlacion = null;
+        byte[] carga = VACIO;
+        if (tramas.size() == 2 && tramas.get(0).length == 0) {
+            carga = tramas.get(1);
+            tipo = ServidorCentral.clasificarMensajeLegado(mapper, carga, carga.length);
+        } else if ((tramas.size() == 3 || tramas.size() == 4) && tramas.get(0).length == 0) {
+            byte[] trama = tramas.get(1);
+            tipo = trama.length == 1 ? TipoMensaje.desdeCodigo(trama[0]) : null;
+            correlacion = tramas.size() == 4 ? tramas.get(2) : null;
+            carga = tramas.get(tramas.size() - 1);
+        }
+
+        if (tipo == null || tipo == TipoMensaje.PRESTAR || tipo == TipoMensaje.RECIBIR_PRESTAMO) {
+            System.err.println("[ROUTER] Mensaje de tipo desconocido de " + new String(cliente, ZMQ.CHARSET));
+            responder(cliente, correlacion, "MENSAJE DESCONOCIDO".getBytes(ZMQ.CHARSET));
+            return true;
+        }
+
+        switch (tipo) {
+            case NEGOCIAR -> {
+                int ofrecida = carga.length > 0 ? carga[0] : 0;
+                responder(cliente, correlacion, new byte[]{(byte) Math.max(0, Math.min(ofrecida, CodecBinario.VERSION))});
+            }
+            case SOLICITUD -> reenviarSolicitud(cliente, correlacion, carga);
+            default -> {
+                int shard = shardDeConfirmacion(cliente, carga);
+                enviar(new Pendiente(cliente, correlacion, tipo, carga, shard));
+            }
+        }
+        return true;
+    }
+
+    private void reenviarSolicitud(byte[] cliente, byte[] correlacion, byte[] carga) {
+        Solicitud solicitud = leerSolicitud(carga);
+        String facultad = solicitud != null && solicitud.getFacultad() != null ? solicitud.getFacultad() : "";
+        int shard = elegirShard(facultad);
+        shardPorCliente.put(ByteBuffer.wrap(cliente), shard);
+
+        Pendiente pendiente = new Pendiente(cliente, correlacion, TipoMensaje.SOLICITUD, carga, shard);
+        if (solicitud != null) {
+            pendiente.salones = Math.max(0, solicitud.getNumSalones());
+            pendiente.labs = Math.max(0, solicitud.getNumLaboratorios());
+        }
+        enviar(pendiente);
+    }
+
+    /**
+     * Null si el payload no se puede leer; el shard responde SOLICITUD_INVALIDA
+     */
+    private Solicitud leerSolicitud(byte[] carga) {
+        try {
+            return CodecBinario.esBinario(carga, carga.length)
+                    ? CodecBinario.decodificarSolicitud(carga, carga.length)
+                    : mapper.readValue(carga, Solicitud.class);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private int elegirShard(String facultad) {
+        Integer asignado = shardPorFacultad.get(facultad);
+        return asignado != null ? asignado : Math.floorMod(facultad.hashCode(), shards.length);
+    }
+
+    /**
+     * El id de reserva dice qué shard la emitió; sin reservas (id 0) se usa
+     * el shard de la última solicitud del cliente
+     */
+    private int shardDeConfirmacion(byte[] cliente, byte[] carga) {
+        long idReserva = 0;
+        try {
+            ConfirmacionAsignacion confirmacion = CodecBinario.esBinario(carga, carga.length)
+                    ? CodecBinario.decodificarConfirmacion(carga, carga.length)
+                    : mapper.readValue(carga, ConfirmacionAsignacion.class);
+            idReserva = confirmacion.getResEnvio() != null ? confirmacion.getResEnvio().getIdReserva() : 0;
+        } catch (IOException | IllegalArgumentException e) {
+            // El shard responde CONFIRMACION INVALIDA
+        }
+
+        int shard = AdministradorInstalaciones.shardDeReserva(idReserva);
+        if (idReserva > 0 && shard < shards.length) {
+            return shard;
+        }
+        return shardPorCliente.getOrDefault(ByteBuffer.wrap(cliente), 0);
+    }
+
+    private void responder(byte[] cliente, byte[] correlacion, byte[] respuesta) {
+        frontend.sendMore(cliente);
+        frontend.sendMore(VACIO);
+        if (correlacion != null) {
+            frontend.sendMore(correlacion);
+        }
+        frontend.send(respuesta, 0);
+    }
+
+    // ======================== SHARDS ========================
+
+    private void enviar(Pendiente pendiente) {
+        long correlacion = siguienteCorrelacion++;
+        pendientes.put(correlacion, pendiente);
+        reenviadasPorShard[pendiente.shard]++;
+
+        Socket backend = backends[pendiente.shard];
+        backend.sendMore(VACIO);
+        backend.sendMore(pendiente.tipo.comoTrama());
+        backend.sendMore(ByteBuffer.allocate(Long.BYTES).putLong(correlacion).array());
+        backend.send(pendiente.carga, 0);
+    }
+
+    /**
+     * Recibe una respuesta de un shard sin bloquear: [empty][correlación][respuesta].
+     * Devuelve false si no había mensajes
+     */
+    private boolean manejarRespuestaShard(int shard) {
+        Socket backend = backends[shard];
+        if (backend.recv(ZMQ.DONTWAIT) == null) {
+            return false;
+        }
+        byte[] correlacion = backend.hasReceiveMore() ? backend.recv() : null;
+        byte[] respuesta = backend.hasReceiveMore() ? backend.recv() : null;
+        while (backend.hasReceiveMore()) {
+            backend.recv();
+        }
+
+        if (correlacion == null || correlacion.length != Long.BYTES || respuesta == null) {
+            System.err.println("[ROUTER] Respuesta mal formada del shard " + shard + ", se descarta");
+            return true;
+        }
+        Pendiente pendiente = pendientes.remove(ByteBuffer.wrap(correlacion).getLong());
+        if (pendiente == null) {
+            return true; // Ya vencida
+        }
+
+        switch (pendiente.tipo) {
+            case PRESTAR -> atenderPrestamo(pendiente, respuesta);
+            case RECIBIR_PRESTAMO -> confirmarEntrega(pendiente, respuesta);
+            case SOLICITUD -> atenderSolicitud(pendiente, respuesta);
+            default -> responder(pendiente.cliente, pendiente.correlacion, respuesta);
+        }
+        return true;
+    }
+
+    private void atenderSolicitud(Pendiente solicitud, byte[] respuesta) {
+        if (prestamos && shards.length > 1 && !solicitud.prestamoIntentado
+                && solicitud.salones + solicitud.labs > 0 && sinRecursos(respuesta)) {
+            solicitud.prestamoIntentado = true;
+            solicitud.respuestaOriginal = respuesta;
+            pedirPrestamo(solicitud, (solicitud.shard + 1) % shards.length);
+            return;
+        }
+        responder(solicitud.cliente, solicitud.correlacion, respuesta);
+    }
+
+    private boolean sinRecursos(byte[] respuesta) {
+        if (CodecBinario.esBinario(respuesta, respuesta.length)) {
+            return respuesta.length == CodecBinario.LONGITUD_RESULTADO
+                    && respuesta[1] == EstadoAsignacion.RECURSOS_INSUFICIENTES.getCodigo();
+        }
+        try {
+            JsonNode nodo = mapper.readTree(respuesta);
+            return nodo != null && EstadoAsignacion.RECURSOS_INSUFICIENTES.name().equals(nodo.path("estado").asText());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void pedirPrestamo(Pendiente solicitud, int prestamista) {
+        Pendiente pedido = new Pendiente(null, null, TipoMensaje.PRESTAR,
+                CodecBinario.codificarPrestamo(solicitud.salones, solicitud.labs), prestamista);
+        pedido.solicitud = solicitud;
+        enviar(pedido);
+    }
+
+    /**
+     * Si el prestamista cedió la capacidad, se entrega al shard de origen y se
+     * reenvía la solicitud detrás (el broker atiende RECIBIR_PRESTAMO en su
+     * propio hilo antes de despachar lo que llega después por la misma
+     * conexión). Si no, se prueba con el siguiente shard del anillo.
+     */
+    private void atenderPrestamo(Pendiente pedido, byte[] respuesta) {
+        Pendiente solicitud = pedido.solicitud;
+        int[] cedido;
+        try {
+            cedido = CodecBinario.decodificarPrestamo(respuesta, respuesta.length);
+        } catch (IllegalArgumentException e) {
+            cedido = new int[]{0, 0};
+        }
+
+        if (cedido[0] + cedido[1] > 0) {
+            prestamosConcedidos++;
+            System.out.println("[ROUTER] Shard " + pedido.shard + " presta " + cedido[0] + " salones y "
+                    + cedido[1] + " laboratorios al shard " + solicitud.shard);
+            Pendiente entrega = new Pendiente(null, null, TipoMensaje.RECIBIR_PRESTAMO,
+                    CodecBinario.codificarPrestamo(cedido[0], cedido[1]), solicitud.shard);
+            entrega.solicitud = solicitud;
+            entrega.prestamista = pedido.shard;
+            enviar(entrega);
+            enviar(solicitud);
+            return;
+        }
+
+        int siguiente = (pedido.shard + 1) % shards.length;
+        if (siguiente != solicitud.shard) {
+            pedirPrestamo(solicitud, siguiente);
+            return;
+        }
+        prestamosSinCapacidad++;
+        responder(solicitud.cliente, solicitud.correlacion, solicitud.respuestaOriginal);
+    }
+
+    /**
+     * El prestamista ya descontó lo cedido: si el shard de origen no lo sumó,
+     * se le devuelve para que la capacidad no se pierda. Si tampoco acepta la
+     * devolución solo queda registrarlo
+     */
+    private void confirmarEntrega(Pendiente entrega, byte[] respuesta) {
+        if (Arrays.equals(respuesta, PRESTAMO_RECIBIDO)) {
+            return;
+        }
+        int[] cedido = CodecBinario.decodificarPrestamo(entrega.carga, entrega.carga.length);
+        String motivo = new String(respuesta, ZMQ.CHARSET);
+        if (entrega.prestamista < 0) {
+            prestamosPerdidos++;
+            System.err.println("[ROUTER] El shard " + entrega.shard + " no aceptó la devolución de " + cedido[0]
+                    + " salones y " + cedido[1] + " laboratorios (" + motivo + "): capacidad fuera de todo shard");
+            return;
+        }
+
+        prestamosDevueltos++;
+        System.err.println("[ROUTER] El shard " + entrega.shard + " no aceptó el préstamo de " + cedido[0]
+                + " salones y " + cedido[1] + " laboratorios (" + motivo + "): se devuelve al shard "
+                + entrega.prestamista);
+        enviar(new Pendiente(null, null, TipoMensaje.RECIBIR_PRESTAMO, entrega.carga, entrega.prestamista));
+    }
+
+    /**
+     * Olvida los mensajes sin respuesta tras router.timeoutMs (shard caído);
+     * la facultad ya habrá vencido su propio timeout
+     */
+    private void vencerPendientes(long ahora) {
+        Iterator<Pendiente> iterador = pendientes.values().iterator();
+        while (iterador.hasNext()) {
+            Pendiente pendiente = iterador.next();
+            if (ahora - pendiente.creado >= timeoutMs) {
+                iterador.remove();
+                vencidas++;
+                System.err.println("[ROUTER] Sin respuesta del shard " + pendiente.shard + " para " + pendiente.tipo);
+            }
+        }
+    }
+
+    public void imprimirMetricas() {
+        System.out.println("\n--- MÉTRICAS DEL ROUTER ---");
+        for (int i = 0; i < shards.length; i++) {
+            System.out.println("Mensajes reenviados al shard " + i + ": " + reenviadasPorShard[i]);
+        }
+        System.out.println("Préstamos concedidos: " + prestamosConcedidos);
+        System.out.println("Solicitudes sin capacidad en ningún shard: " + prestamosSinCapacidad);
+        System.out.println("Préstamos devueltos al prestamista: " + prestamosDevueltos);
+        System.out.println("Préstamos perdidos (devolución rechazada): " + prestamosPerdidos);
+        System.out.println("Mensajes vencidos sin respuesta: " + vencidas);
+    }
+}
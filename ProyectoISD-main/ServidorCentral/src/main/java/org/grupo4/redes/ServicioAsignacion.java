@@ -0,0 +1,127 @@
+package org.grupo4.redes;
+
+import org.grupo4.entidades.AdministradorInstalaciones;
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.entidades.Solicitud;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+import org.zeromq.ZMQException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Servicio de asignación para los trabajadores remotos (ver AsignadorRemoto).
+
+El trabajador remoto deserializa y formatea; solo el cálculo de la
+asignación cruza la red, como un lote binario de solicitudes que se resuelve
+con una sola llamada a asignarLote sobre el estado del broker. Así las
+reservas, las confirmaciones (que atiende el hilo del broker) y la bitácora
+siguen viendo un único estado.
+
+Sobre: [identidad][empty][clave][pedido] -> [identidad][empty][asignaciones]
+
+La clave (asignador + correlación, ver AsignadorRemoto) permite al asignador
+que agotó su timeout reclamar el pedido con [clave][RECLAMO]: si ya se
+asignó recibe esas asignaciones, y si aún no llegó queda anulado y se
+descarta al llegar. Así un timeout nunca deja aulas asignadas que nadie
+informó. Cada asignador tiene a lo sumo un pedido en curso, así que basta
+recordar el último de cada uno. Un pedido sin clave ([empty][pedido]) se
+asigna sin seguimiento.
+ */
+public class ServicioAsignacion implements Runnable {
+    private static final byte[] VACIO = new byte[0];
+    private static final byte[] SIN_ASIGNACIONES = CodecBinario.codificarAsignaciones(List.of());
+    static final int LONGITUD_CLAVE = 2 * Long.BYTES;
+    static final byte[] RECLAMO = "RECLAMO".getBytes(ZMQ.CHARSET);
+
+    // Último pedido de cada asignador; respuesta null = reclamado antes de llegar
+    private record Ultimo(long correlacion, byte[] respuesta) {}
+
+    private final ZContext contexto;
+    private final String endpoint;
+    // Solo lo usa el hilo del servicio
+    private final Map<Long, Ultimo> ultimos = new HashMap<>();
+
+    public ServicioAsignacion(ZContext contexto, String endpoint) {
+        this.contexto = contexto;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void run() {
+        Socket socket = contexto.createSocket(SocketType.ROUTER);
+        socket.bind(endpoint);
+        System.out.println("[BROKER] Servicio de asignación para trabajadores remotos en " + endpoint);
+        AdministradorInstalaciones administrador = AdministradorInstalaciones.getInstance();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                byte[] identidad = socket.recv();
+                List<byte[]> tramas = new ArrayList<>(3);
+                while (socket.hasReceiveMore()) {
+                    tramas.add(socket.recv());
+                }
+                // El último frame es el pedido; con tres, el del medio es la clave
+                byte[] pedido = tramas.isEmpty() ? VACIO : tramas.get(tramas.size() - 1);
+                byte[] clave = tramas.size() == 3 && tramas.get(1).length == LONGITUD_CLAVE ? tramas.get(1) : null;
+
+                byte[] respuesta = clave != null
+                        ? atender(administrador, ByteBuffer.wrap(clave), pedido)
+                        : asignar(administrador, pedido);
+
+                socket.sendMore(identidad);
+                socket.sendMore(VACIO);
+                socket.send(respuesta, 0);
+            } catch (ZMQException e) {
+                if (e.getErrorCode() == ZMQ.Error.ETERM.getCode()) {
+                    return;
+                }
+                System.err.println("[BROKER] Error en el servicio de asignación: " + e.getMessage());
+            }
+        }
+    }
+
+    private byte[] atender(AdministradorInstalaciones administrador, ByteBuffer clave, byte[] pedido) {
+        long asignador = clave.getLong();
+        long correlacion = clave.getLong();
+        Ultimo ultimo = ultimos.get(asignador);
+
+        if (Arrays.equals(pedido, RECLAMO)) {
+            if (ultimo != null && ultimo.correlacion() == correlacion) {
+                return ultimo.respuesta() != null ? ultimo.respuesta() : SIN_ASIGNACIONES;
+            }
+            // Todavía no llegó: cuando llegue no se asigna
+            ultimos.put(asignador, new Ultimo(correlacion, null));
+            System.out.println("[BROKER] Pedido de asignación " + correlacion + " anulado por timeout del trabajador");
+            return SIN_ASIGNACIONES;
+        }
+        if (ultimo != null && correlacion <= ultimo.correlacion()) {
+            // Anulado, o atrasado detrás de uno posterior del mismo asignador
+            return ultimo.correlacion() == correlacion && ultimo.respuesta() != null
+                    ? ultimo.respuesta() : SIN_ASIGNACIONES;
+        }
+        byte[] respuesta = asignar(administrador, pedido);
+        ultimos.put(asignador, new Ultimo(correlacion, respuesta));
+        return respuesta;
+    }
+
+    private static byte[] asignar(AdministradorInstalaciones administrador, byte[] pedido) {
+        try {
+            List<Solicitud> solicitudes = CodecBinario.decodificarPedidoAsignacion(pedido, pedido.length);
+            List<ResultadoAsignacion> resultados = solicitudes.size() == 1
+                    ? List.of(administrador.asignar(solicitudes.get(0)))
+                    : administrador.asignarLote(solicitudes);
+            return CodecBinario.codificarAsignaciones(resultados);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[BROKER] Pedido de asignación inválido: " + e.getMessage());
+            return SIN_ASIGNACIONES;
+        }
+    }
+}
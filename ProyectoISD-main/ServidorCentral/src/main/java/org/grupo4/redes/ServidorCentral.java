@@ -1,9 +1,12 @@
 package org.grupo4.redes;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.grupo4.entidades.AdministradorInstalaciones;
-import org.grupo4.entidades.Solicitud;
+import org.grupo4.entidades.CuotasFacultades;
+import org.grupo4.entidades.HorarioAulas;
+import org.grupo4.entidades.InventarioAulas;
+import org.grupo4.repositorio.BitacoraInstalaciones;
 import org.grupo4.repositorio.Configuracion;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
@@ -11,19 +14,142 @@ import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Poller;
 import org.zeromq.ZMQ.Socket;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
 
 public class ServidorCentral {
+    // Tamaño máximo de un frame aceptado en el frontend (y de los buffers reutilizables)
+    private static final int TAMANO_MAXIMO_MENSAJE = 64 * 1024;
+    private static final byte[] VACIO = new byte[0];
+    // Los identificadores de correlación de los clientes DEALER son opacos para el broker
+    private static final int LONGITUD_MAXIMA_CORRELACION = 64;
+    private static final byte[] READY = TrabajadorPeticion.READY;
+
     private String ip;
     private String port;
     private String inproc;
     private int maxSalones;
     private int maxLabs;
+    // Máximo de solicitudes que se agrupan en un lote por trabajador (1 = sin lotes)
+    private int loteMaximo = 1;
+
+    // Pool de trabajadores: tamaño inicial/mínimo y máximo (iguales = pool fijo)
+    private int trabajadoresMinimo = 10;
+    private int trabajadoresMaximo = 10;
+    // Ventana tras la cual se retiran los trabajadores que no se usaron en ella
+    private long inactividadTrabajadorMs = 30_000;
+    // Modo de trabajadores: "clasico" (un hilo por socket) o "virtual" (ver DespachadorVirtual)
+    private String modoTrabajadores = "clasico";
+    // Solicitudes (lotes) en vuelo que admite el despachador virtual
+    private int creditosVirtuales = 1000;
+    // Atiende PRESTAR / RECIBIR_PRESTAMO del router de shards (ver RouterShards)
+    private boolean prestamosHabilitados = false;
+    // Trabajadores remotos (ver MainTrabajador): endpoint TCP adicional del
+    // backend y del servicio de asignación (vacíos = solo trabajadores locales)
+    private String backendTcp = "";
+    private String asignacionTcp = "";
+    // Latidos con los trabajadores (0 = sin latidos ni seguimiento de lo que
+    // está en vuelo). Un trabajador sin señales durante latidosPerdidos
+    // intervalos se declara caído y sus solicitudes en vuelo se responden con
+    // ERROR_SERVIDOR. No se redespachan: el trabajador pudo haberlas asignado
+    // (y registrado en la bitácora) antes de perder contacto
+    private long latidoMs = 1000;
+    private int latidosPerdidos = 3;
+    // Backlog propio del broker para cuando no hay trabajadores libres (0 =
+    // dejar de leer el frontend y que las solicitudes esperen en los buffers
+    // de ZeroMQ). Lo que no entra, o espera más que el plazo, recibe OCUPADO
+    // con la espera sugerida para reintentar. Se reparte entre facultades por
+    // deficit round robin con los pesos de server.pesosFacultades
+    private int backlogMaximo = 1000;
+    private long backlogPlazoMs = 2000;
+    private long reintentoOcupadoMs = 500;
+    // Ventana de agrupación (0 = despachar enseguida): las solicitudes esperan
+    // en el backlog hasta juntar loteMaximo o cumplir la ventana, y el
+    // trabajador asigna todo lo reunido en un solo lote
+    private long ventanaLoteMs = 0;
+    private long inicioVentanaLote = 0;
+
+    // Estado del pool, solo lo toca el hilo del broker
+    private int trabajadoresActivos = 0;
+    private int trabajadoresArrancando = 0;
+    private int siguienteIdTrabajador = 1;
+    private int minimoDisponiblesVentana = Integer.MAX_VALUE;
+    private long inicioVentanaInactividad = System.currentTimeMillis();
+
+    // Trabajadores registrados y lo que cada uno tiene en vuelo (solo con
+    // latidos); también solo los toca el hilo del broker
+    private final Map<ByteBuffer, EstadoTrabajador> trabajadores = new HashMap<>();
+    private final Set<ByteBuffer> trabajadoresLocales = new HashSet<>();
+    private long proximaRevision = 0;
+    private long trabajadoresCaidos = 0;
+    private long respuestasError = 0;
+
+    // Solicitud recibida a la espera de despacharBacklog; llegada en System.nanoTime()
+    private record SolicitudEnEspera(byte[] cliente, byte[] correlacion, byte[] carga, long llegada) {}
+
+    private PlanificadorJusto<SolicitudEnEspera> backlog = new PlanificadorJusto<>(Map.of());
+    private byte[] ocupadoBinario;
+    private byte[] ocupadoJson;
+    private long rechazadasBacklogLleno = 0;
+    private long rechazadasPlazoVencido = 0;
+    private int backlogPicoObservado = 0;
+
+    // Solicitudes estacionadas hasta que vuelvan recursos al pool (null =
+    // deshabilitada). Los trabajadores estacionan y el hilo del broker envía
+    // las respuestas que dejan listas las pasadas de emparejamiento
+    private ListaEspera listaEspera;
+
+    // Solicitud entregada a un trabajador que aún no respondió
+    private record PeticionEnVuelo(byte[] cliente, byte[] correlacion, byte[] carga) {}
 
-    private final List<Long> tiemposRespuesta = new ArrayList<>();
+    private static final class EstadoTrabajador {
+        final byte[] identidad;
+        long ultimoContacto = System.currentTimeMillis();
+        // Sesión del último READY (0 = READY sin sesión o trabajador desconocido)
+        long sesion;
+        // Créditos que estaban en la cola al declararlo caído
+        int creditosRetirados;
+        // Clave: ver claveEnVuelo
+        final Map<ByteBuffer, PeticionEnVuelo> enVuelo = new HashMap<>();
+
+        EstadoTrabajador(byte[] identidad, long sesion) {
+            this.identidad = identidad;
+            this.sesion = sesion;
+        }
+    }
+
+    // Declarados caídos que pueden volver a dar señales con la misma sesión
+    private final Map<ByteBuffer, EstadoTrabajador> caidos = new HashMap<>();
+    // Un caído que no vuelve en tantos plazos de latido se olvida
+    private static final int PLAZOS_OLVIDO_CAIDO = 10;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Métricas acumuladas sin almacenar cada medición
+    private long tiempoTotal = 0;
+    private long tiempoMinimo = Long.MAX_VALUE;
+    private long tiempoMaximo = 0;
     private int solicitudesAtendidas = 0;
     private int solicitudesNoAtendidas = 0;
 
+    // Buffers de recepción reutilizados por el hilo del broker
+    private final byte[] bufferTrabajador = new byte[ColaTrabajadores.LONGITUD_MAXIMA_IDENTIDAD];
+    private final byte[] bufferCliente = new byte[ColaTrabajadores.LONGITUD_MAXIMA_IDENTIDAD];
+    private final byte[] bufferCarga = new byte[TAMANO_MAXIMO_MENSAJE];
+    private final byte[] bufferCorrelacion = new byte[LONGITUD_MAXIMA_CORRELACION];
+    private final byte[] bufferDestino = new byte[ColaTrabajadores.LONGITUD_MAXIMA_IDENTIDAD];
+
+    // Mensaje de cliente que se está atendiendo (ver manejarMensajesClientes)
+    private final byte[] clienteMensaje = new byte[ColaTrabajadores.LONGITUD_MAXIMA_IDENTIDAD];
+    private int longitudClienteMensaje;
+    private final byte[] cargaMensaje = new byte[TAMANO_MAXIMO_MENSAJE];
+    private int longitudCargaMensaje;
+    private final byte[] correlacionMensaje = new byte[LONGITUD_MAXIMA_CORRELACION];
+    private int longitudCorrelacionMensaje;
+
 
     public ServidorCentral(String rutaConfig) {
         List<String> configuraciones = Configuracion.cargarConfiguracionServidor(rutaConfig);
@@ -33,8 +159,165 @@ public class ServidorCentral {
         this.port = configuraciones.get(3);
         this.inproc = configuraciones.size() > 4 ? configuraciones.get(4) : "backend";
 
+        Properties propiedades = Configuracion.cargarPropiedadesServidor(rutaConfig);
+        this.loteMaximo = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.loteMaximo", 1));
+        this.backendTcp = propiedades.getProperty("server.backendTcp", "").trim();
+        this.asignacionTcp = propiedades.getProperty("server.asignacionTcp", "").trim();
+        // Con backend TCP el broker puede quedarse sin trabajadores locales y solo enrutar
+        this.trabajadoresMinimo = Math.max(backendTcp.isEmpty() ? 1 : 0,
+                Configuracion.obtenerEntero(propiedades, "server.trabajadores", 10));
+        this.trabajadoresMaximo = Math.max(trabajadoresMinimo,
+                Configuracion.obtenerEntero(propiedades, "server.trabajadoresMaximo", trabajadoresMinimo));
+        this.inactividadTrabajadorMs = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.trabajadoresInactividadMs", 30_000));
+        this.modoTrabajadores = propiedades.getProperty("server.modoTrabajadores", "clasico").trim().toLowerCase();
+        this.creditosVirtuales = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.creditosVirtuales", 1000));
+        this.latidoMs = Math.max(0, Configuracion.obtenerEntero(propiedades, "server.latidoMs", 1000));
+        this.latidosPerdidos = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.latidosPerdidos", 3));
+        this.backlogMaximo = Math.max(0, Configuracion.obtenerEntero(propiedades, "server.backlogMaximo", 1000));
+        this.backlogPlazoMs = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.backlogPlazoMs", 2000));
+        this.reintentoOcupadoMs = Math.max(0, Configuracion.obtenerEntero(propiedades, "server.reintentoOcupadoMs", 500));
+        this.backlog = new PlanificadorJusto<>(leerPesos(propiedades.getProperty("server.pesosFacultades", "")));
+        this.ventanaLoteMs = Math.max(0, Configuracion.obtenerEntero(propiedades, "server.ventanaLoteMs", 0));
+        if (ventanaLoteMs > 0 && backlogMaximo == 0) {
+            System.err.println("[BROKER] La ventana de lotes necesita el backlog (server.backlogMaximo > 0): deshabilitada");
+            this.ventanaLoteMs = 0;
+        }
+        long reservaTimeoutMs = Configuracion.obtenerEntero(propiedades, "server.reservaTimeoutMs", 300_000);
+        long reservaTickMs = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.reservaTickMs", 100));
+
+        // Inventario de aulas concretas: generado para la capacidad configurada
+        // o cargado de un archivo, que entonces define la capacidad
+        InventarioAulas inventario = null;
+        String origenInventario = propiedades.getProperty("server.inventario", "").trim();
+        if (origenInventario.equalsIgnoreCase("generado")) {
+            inventario = InventarioAulas.generar(maxSalones, maxLabs);
+        } else if (!origenInventario.isEmpty()) {
+            try {
+                inventario = InventarioAulas.cargar(Path.of(origenInventario));
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo cargar el inventario " + origenInventario, e);
+            }
+            this.maxSalones = inventario.getNumSalones();
+            this.maxLabs = inventario.getNumLabs();
+        }
+        // Horarios: cada aula se asigna por franjas de la semana, no por semestre
+        boolean horarios = Boolean.parseBoolean(propiedades.getProperty("server.horarios", "false").trim());
+        if (horarios && inventario == null) {
+            inventario = InventarioAulas.generar(maxSalones, maxLabs);
+            origenInventario = "generado";
+        }
+
+        int shardId = Math.max(0, Configuracion.obtenerEntero(propiedades, "server.shardId", 0));
+
         // Inicializar el administrador de instalaciones con los valores de configuración
-        AdministradorInstalaciones.getInstance(maxSalones, maxLabs);
+        AdministradorInstalaciones admin = AdministradorInstalaciones.getInstance(maxSalones, maxLabs);
+        admin.configurarReservas(reservaTimeoutMs, reservaTickMs);
+
+        // Recuperar el estado anterior (instantánea + bitácora) antes de atender solicitudes
+        boolean persistencia = Boolean.parseBoolean(propiedades.getProperty("server.persistenciaHabilitada", "true").trim());
+        if (persistencia && horarios) {
+            System.err.println("[BROKER] El horario por franjas no se registra en la bitácora: persistencia deshabilitada");
+            persistencia = false;
+        } else if (persistencia && inventario != null) {
+            // Sin los ids, al reiniciar se volverían a entregar aulas que siguen ocupadas
+            System.err.println("[BROKER] Los ids del inventario no se registran en la bitácora: persistencia deshabilitada");
+            persistencia = false;
+        }
+        if (persistencia) {
+            // Cada shard con su propia bitácora: compartirla mezclaría sus estados
+            Path directorio = Path.of(propiedades.getProperty("server.persistenciaDirectorio",
+                    shardId > 0 ? "estado/shard-" + shardId : "estado").trim());
+            long intervaloInstantaneaMs = Configuracion.obtenerEntero(propiedades, "server.instantaneaIntervaloMs", 30_000);
+            boolean forzarDisco = Boolean.parseBoolean(propiedades.getProperty("server.walForzarDisco", "false").trim());
+            try {
+                admin.habilitarPersistencia(new BitacoraInstalaciones(directorio, forzarDisco), intervaloInstantaneaMs);
+                System.out.println("[BROKER] Persistencia del estado en " + directorio.toAbsolutePath());
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo recuperar el estado desde " + directorio, e);
+            }
+        }
+
+        // Las aulas ocupadas se deducen de los contadores ya recuperados
+        if (inventario != null) {
+            if (horarios) {
+                admin.configurarHorario(new HorarioAulas(inventario));
+            } else {
+                admin.configurarInventario(inventario);
+            }
+            System.out.println("[BROKER] Inventario de " + inventario.getNumSalones() + " salones y "
+                    + inventario.getNumLabs() + " laboratorios (" + origenInventario + ")"
+                    + (horarios ? ", asignados por franja horaria" : ""));
+        }
+
+        // Modo shards: este broker es dueño de una partición de la capacidad
+        admin.configurarShard(shardId);
+        this.prestamosHabilitados = Boolean.parseBoolean(
+                propiedades.getProperty("server.prestamosHabilitados", "false").trim());
+        if (prestamosHabilitados && inventario != null) {
+            System.err.println("[BROKER] Los préstamos entre shards no se admiten con inventario de aulas: deshabilitados");
+            this.prestamosHabilitados = false;
+        }
+        if (shardId > 0 || prestamosHabilitados) {
+            System.out.println("[BROKER] Shard " + shardId + " con " + maxSalones + " salones y " + maxLabs
+                    + " laboratorios" + (prestamosHabilitados ? ", préstamos entre shards habilitados" : ""));
+        }
+
+        // Control de admisión por facultad: tasa de solicitudes y cuota por semestre
+        int tasa = Math.max(0, Configuracion.obtenerEntero(propiedades, "server.tasaSolicitudes", 0));
+        int rafaga = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.rafagaSolicitudes", Math.max(1, tasa)));
+        CuotasFacultades.Limite cuotaPorDefecto = new CuotasFacultades.Limite(
+                Math.max(0, Configuracion.obtenerEntero(propiedades, "server.cuotaSalones", 0)),
+                Math.max(0, Configuracion.obtenerEntero(propiedades, "server.cuotaLabs", 0)));
+        Map<String, CuotasFacultades.Limite> cuotas = leerCuotas(propiedades.getProperty("server.cuotasFacultades", ""));
+        int maximoFacultades = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.admisionMaximoEntradas", 1024));
+        if (tasa > 0 || cuotaPorDefecto.salones() > 0 || cuotaPorDefecto.labs() > 0 || !cuotas.isEmpty()) {
+            admin.configurarCuotas(new CuotasFacultades(tasa, rafaga, cuotaPorDefecto, cuotas, maximoFacultades));
+            System.out.println("[BROKER] Control de admisión por facultad: "
+                    + (tasa > 0 ? tasa + " solicitudes/s (ráfaga " + rafaga + ")" : "sin límite de tasa")
+                    + ", cuota por semestre " + cuotaPorDefecto.salones() + " salones y " + cuotaPorDefecto.labs()
+                    + " laboratorios (0 = sin límite)" + (cuotas.isEmpty() ? "" : ", " + cuotas.size() + " cuotas propias"));
+        }
+
+        // Asignación del lote: en orden de llegada o eligiendo qué atender si no alcanza
+        String asignacionLote = propiedades.getProperty("server.asignacionLote", "orden").trim().toLowerCase();
+        if (asignacionLote.equals("optimo")) {
+            admin.configurarEmpaquetadoOptimo(true);
+            System.out.println("[BROKER] Lotes con empaquetado óptimo: con escasez se atiende la mayor cantidad de"
+                    + " programas con las menos aulas móviles (lotes de hasta " + loteMaximo
+                    + (ventanaLoteMs > 0 ? ", ventana de " + ventanaLoteMs + " ms)" : ")"));
+        }
+
+        // Lista de espera: lo que hoy recibe Caso 3 espera a que vuelvan recursos
+        int listaEsperaMaxima = Math.max(0, Configuracion.obtenerEntero(propiedades, "server.listaEspera", 0));
+        if (listaEsperaMaxima > 0) {
+            long listaEsperaMs = Math.max(1, Configuracion.obtenerEntero(propiedades, "server.listaEsperaMs", 30_000));
+            this.listaEspera = new ListaEspera(listaEsperaMaxima, listaEsperaMs, maxSalones, maxLabs);
+            admin.configurarListaEspera(listaEspera);
+            System.out.println("[BROKER] Lista de espera de hasta " + listaEsperaMaxima + " solicitudes, "
+                    + listaEsperaMs + " ms como máximo (solo trabajadores locales)");
+        }
+    }
+
+    /**
+     * "Facultad A:40:10,Facultad B:20:5" -> cuota de salones y laboratorios por facultad
+     */
+    private static Map<String, CuotasFacultades.Limite> leerCuotas(String valor) {
+        Map<String, CuotasFacultades.Limite> cuotas = new HashMap<>();
+        for (String entrada : valor.split(",")) {
+            int separadorLabs = entrada.lastIndexOf(':');
+            int separadorSalones = separadorLabs > 0 ? entrada.lastIndexOf(':', separadorLabs - 1) : -1;
+            if (separadorSalones <= 0) {
+                continue;
+            }
+            try {
+                cuotas.put(entrada.substring(0, separadorSalones).trim(), new CuotasFacultades.Limite(
+                        Integer.parseInt(entrada.substring(separadorSalones + 1, separadorLabs).trim()),
+                        Integer.parseInt(entrada.substring(separadorLabs + 1).trim())));
+            } catch (NumberFormatException e) {
+                System.err.println("[BROKER] Cuota inválida en server.cuotasFacultades: " + entrada.trim());
+            }
+        }
+        return cuotas;
     }
 
     public ServidorCentral(String ip, String port, String inproc, int maxSalones, int maxLabs) {
@@ -56,14 +339,18 @@ public class ServidorCentral {
 
             // Iniciar trabajadores
             iniciarTrabajadores(context);
+            iniciarServicioAsignacion(context);
 
             // Cola de trabajadores disponibles
-            Queue<String> workerQueue = new LinkedList<>();
+            ColaTrabajadores workerQueue = new ColaTrabajadores(16);
+            ocupadoBinario = ProcesadorSolicitudes.respuestaOcupado(true, reintentoOcupadoMs);
+            ocupadoJson = ProcesadorSolicitudes.respuestaOcupado(false, reintentoOcupadoMs);
 
             // Registrar shutdown hook para manejar Ctrl+C
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("\nProceso Servidor Central Finalizado");
                 imprimirMetricas();
+                AdministradorInstalaciones.getInstance().cerrarPersistencia();
             }));
 
             // Bucle principal del broker
@@ -76,6 +363,7 @@ public class ServidorCentral {
      */
     private Socket inicializarSocketFrontend(ZContext context) {
         Socket frontend = context.createSocket(SocketType.ROUTER);
+        frontend.setMaxMsgSize(TAMANO_MAXIMO_MENSAJE);
         String endpoint = "tcp://" + ip + ":" + port;
 
         frontend.bind(endpoint);
@@ -88,32 +376,161 @@ public class ServidorCentral {
      */
     private Socket inicializarSocketBackend(ZContext context) {
         Socket backend = context.createSocket(SocketType.ROUTER);
+        // Sin límite de cola por par: el despachador virtual recibe cientos de
+        // lotes en vuelo por una sola conexión y el ROUTER descartaría el exceso
+        backend.setSndHWM(0);
         String inprocEndpoint = "inproc://" + inproc;
         backend.bind(inprocEndpoint);
+
+        // Los trabajadores remotos se registran con READY igual que los locales
+        if (!backendTcp.isEmpty()) {
+            backend.bind(backendTcp);
+            System.out.println("[BROKER] Backend para trabajadores remotos en " + backendTcp);
+        }
         return backend;
     }
 
+    /**
+     * Los trabajadores remotos no tienen estado propio: piden la asignación de
+     * cada lote a este servicio, que la hace sobre el AdministradorInstalaciones
+     * del broker (el mismo de las confirmaciones, reservas y bitácora)
+     */
+    private void iniciarServicioAsignacion(ZContext context) {
+        if (asignacionTcp.isEmpty()) {
+            if (!backendTcp.isEmpty()) {
+                System.err.println("[BROKER] server.backendTcp sin server.asignacionTcp: los trabajadores remotos no podrán asignar");
+            }
+            return;
+        }
+        Thread servicio = new Thread(new ServicioAsignacion(context, asignacionTcp), "servicio-asignacion");
+        servicio.setDaemon(true);
+        servicio.start();
+    }
+
     /**
      * Inicializa y lanza los hilos de los trabajadores
      */
     private void iniciarTrabajadores(ZContext context) {
+        if (esModoVirtual()) {
+            System.out.println("[BROKER] Lanzando despachador de hilos virtuales...");
+            Thread despachador = new Thread(new DespachadorVirtual(
+                    context, "V1", "inproc://" + inproc, creditosVirtuales, trabajadoresMinimo, latidoMs),
+                    "despachador-virtual");
+            despachador.start();
+            trabajadoresArrancando = creditosVirtuales;
+            return;
+        }
+
         System.out.println("[BROKER] Lanzando trabajadores...");
-        for (int i = 1; i <= 10; i++) {
-            String workerId = String.valueOf(i);
-            new Thread(new TrabajadorPeticion(context, workerId)).start();
-            System.out.println("[BROKER] Trabajador " + workerId + " iniciado");
+        if (trabajadoresMaximo > trabajadoresMinimo) {
+            System.out.println("[BROKER] Pool elástico entre " + trabajadoresMinimo
+                    + " y " + trabajadoresMaximo + " trabajadores");
+        }
+        for (int i = 0; i < trabajadoresMinimo; i++) {
+            lanzarTrabajador(context);
         }
     }
 
+    private boolean esModoVirtual() {
+        return "virtual".equals(modoTrabajadores);
+    }
+
+    private void lanzarTrabajador(ZContext context) {
+        String workerId = String.valueOf(siguienteIdTrabajador++);
+        new Thread(new TrabajadorPeticion(context, workerId, "inproc://" + inproc,
+                new ProcesadorSolicitudes("[TRABAJADOR " + workerId + "]"), latidoMs)).start();
+        trabajadoresLocales.add(ByteBuffer.wrap(workerId.getBytes(ZMQ.CHARSET)));
+        trabajadoresActivos++;
+        trabajadoresArrancando++;
+        System.out.println("[BROKER] Trabajador " + workerId + " iniciado");
+    }
+
+    /**
+     * Retira el trabajador que lleva más tiempo disponible (cabeza de la cola)
+     */
+    private void retirarTrabajador(Socket backend, ColaTrabajadores workerQueue) {
+        int longitud = workerQueue.enviarPrimero(backend, bufferDestino);
+        backend.send(VACIO, 0, 0, ZMQ.SNDMORE);
+        backend.send(TrabajadorPeticion.STOP, 0, TrabajadorPeticion.STOP.length, 0);
+        if (conLatidos()) {
+            ByteBuffer clave = clave(bufferDestino, longitud);
+            trabajadores.remove(clave);
+            if (!trabajadoresLocales.remove(clave)) {
+                return; // Remoto: no cuenta en el pool local
+            }
+        }
+        trabajadoresActivos--;
+    }
+
     /**
-     * Gestiona los mensajes entre clientes y trabajadores
+     * Pool elástico. Crece de a un trabajador mientras la cola de disponibles
+     * esté vacía y haya clientes esperando en el frontend; espera el READY del
+     * nuevo antes de lanzar otro. Cada ventana de inactividad retira tantos
+     * trabajadores como el mínimo de disponibles observado en ella, es decir,
+     * los que no hicieron falta en toda la ventana.
      */
-    private void gestionarMensajes(ZContext context, Socket frontend, Socket backend, Queue<String> workerQueue) {
+    private void ajustarPool(ZContext context, Socket frontend, Socket backend, ColaTrabajadores workerQueue) {
+        minimoDisponiblesVentana = Math.min(minimoDisponiblesVentana, workerQueue.tamano());
+
+        if (workerQueue.vacia() && trabajadoresArrancando == 0 && trabajadoresActivos < trabajadoresMaximo
+                && (!backlog.vacio() || (frontend.getEvents() & Poller.POLLIN) != 0)) {
+            lanzarTrabajador(context);
+            System.out.println("[BROKER] Pool elástico: clientes en espera sin trabajadores libres, "
+                    + trabajadoresActivos + " activos");
+        }
+
+        long ahora = System.currentTimeMillis();
+        if (ahora - inicioVentanaInactividad >= inactividadTrabajadorMs) {
+            int sobrantes = Math.min(minimoDisponiblesVentana, trabajadoresActivos - trabajadoresMinimo);
+            for (int i = 0; i < sobrantes; i++) {
+                retirarTrabajador(backend, workerQueue);
+            }
+            if (sobrantes > 0) {
+                System.out.println("[BROKER] Pool elástico: " + sobrantes + " trabajadores inactivos retirados, "
+                        + trabajadoresActivos + " activos");
+            }
+            minimoDisponiblesVentana = workerQueue.tamano();
+            inicioVentanaInactividad = ahora;
+        }
+    }
+
+    /**
+     * Gestiona los mensajes entre clientes y trabajadores. Los pollers se crean
+     * y registran una sola vez; el interés en el frontend se activa o desactiva
+     * eligiendo cuál de los dos usar según haya trabajadores disponibles.
+     */
+    private void gestionarMensajes(ZContext context, Socket frontend, Socket backend, ColaTrabajadores workerQueue) {
+        Poller soloTrabajadores = context.createPoller(1);
+        soloTrabajadores.register(backend, Poller.POLLIN);
+
+        Poller completo = context.createPoller(2);
+        completo.register(backend, Poller.POLLIN);
+        completo.register(frontend, Poller.POLLIN);
+
+        // El despachador virtual ya escala por tarea; el pool elástico aplica al modo clásico
+        boolean elastico = !esModoVirtual() && trabajadoresMaximo > trabajadoresMinimo;
+
         while (!Thread.currentThread().isInterrupted()) {
-            // Preparar poller
-            Poller poller = prepararPoller(context, frontend, backend, workerQueue);
+            if (conLatidos()) {
+                revisarTrabajadores(context, frontend, backend, workerQueue);
+            }
+            despacharBacklog(frontend, backend, workerQueue);
+            if (listaEspera != null) {
+                entregarListaEspera(frontend);
+            }
+            if (elastico) {
+                ajustarPool(context, frontend, backend, workerQueue);
+            }
+            // Con backlog el frontend se sigue leyendo aunque no haya trabajadores libres
+            Poller poller = workerQueue.vacia() && backlogMaximo == 0 ? soloTrabajadores : completo;
 
-            int events = poller.poll(1000);
+            // Con pool elástico y sin trabajadores libres se revisa el backlog más seguido
+            long espera = conLatidos() ? Math.min(1000, latidoMs) : 1000;
+            // Las respuestas de la lista de espera se emparejan en otros hilos
+            if (!backlog.vacio() || (listaEspera != null && !listaEspera.vacia())) {
+                espera = Math.min(espera, ventanaLoteMs > 0 ? Math.min(50, ventanaLoteMs) : 50);
+            }
+            int events = poller.poll(elastico && workerQueue.vacia() ? 50 : espera);
             if (events == 0) continue;
 
             // Gestionar mensajes de trabajadores
@@ -122,155 +539,653 @@ public class ServidorCentral {
             }
 
             // Gestionar mensajes de clientes
-            if (poller.pollin(1)) {
+            if (poller == completo && poller.pollin(1)) {
                 manejarMensajesClientes(frontend, backend, workerQueue);
             }
         }
     }
 
     /**
-     * Prepara el poller para detectar mensajes entrantes
+     * Maneja los mensajes provenientes de los trabajadores. Los frames se
+     * reciben en buffers reutilizables y se reenvían tal cual al frontend.
      */
-    private Poller prepararPoller(ZContext context, Socket frontend, Socket backend, Queue<String> workerQueue) {
-        Poller poller = context.createPoller(2);
-        poller.register(backend, Poller.POLLIN);
+    private void manejarMensajesTrabajadores(Socket backend, Socket frontend, ColaTrabajadores workerQueue) {
+        int longitudTrabajador = backend.recv(bufferTrabajador, 0, bufferTrabajador.length, 0);
+        backend.recv(bufferCarga, 0, bufferCarga.length, 0); // Frame vacío
+        int longitudComando = backend.recv(bufferCliente, 0, bufferCliente.length, 0);
+
+        if (longitudTrabajador < 0 || longitudComando < 0) {
+            return;
+        }
+
+        ByteBuffer claveTrabajador = conLatidos() ? clave(bufferTrabajador, longitudTrabajador) : null;
+        EstadoTrabajador estado = claveTrabajador != null ? trabajadores.get(claveTrabajador) : null;
+        if (estado != null) {
+            estado.ultimoContacto = System.currentTimeMillis();
+        }
+
+        if (!backend.hasReceiveMore() && esReady(bufferCliente, longitudComando)) {
+            trabajadoresArrancando = Math.max(0, trabajadoresArrancando - 1);
+            if (claveTrabajador != null) {
+                registrarListo(frontend, workerQueue, claveTrabajador, estado, sesion(bufferCliente, longitudComando));
+            }
+            workerQueue.agregar(bufferTrabajador, longitudTrabajador);
+            System.out.println("[BROKER] Trabajador "
+                    + new String(bufferTrabajador, 0, longitudTrabajador, ZMQ.CHARSET) + " marcado como listo");
+            return;
+        }
+
+        if (!backend.hasReceiveMore() && esComando(bufferCliente, longitudComando, TrabajadorPeticion.LATIDO)) {
+            if (claveTrabajador != null && estado == null) {
+                // Declarado caído pero vivo: vuelve al pool con los créditos que
+                // tenía en la cola; los de lotes en curso vuelven con sus respuestas
+                revivir(workerQueue, claveTrabajador, 1);
+                System.out.println("[BROKER] Trabajador "
+                        + new String(bufferTrabajador, 0, longitudTrabajador, ZMQ.CHARSET) + " volvió a dar señales");
+            }
+            return;
+        }
+
+        // Las respuestas de un trabajador ya declarado caído llegan tarde: sus
+        // solicitudes ya se respondieron con error
+        boolean tardio = claveTrabajador != null && estado == null;
+        if (tardio) {
+            // El crédito de este lote vuelve al final, como en cualquier respuesta
+            estado = revivir(workerQueue, claveTrabajador, 0);
+            System.out.println("[BROKER] Trabajador "
+                    + new String(bufferTrabajador, 0, longitudTrabajador, ZMQ.CHARSET)
+                    + " volvió a dar señales, se descartan sus respuestas tardías");
+        }
+
+        // Es una respuesta (o un lote de respuestas) para reenviar a los clientes
+        // Formato: ([clientAddr][correlación o empty][response])+
+        int longitudCliente = longitudComando;
+        while (true) {
+            int longitudCorrelacion = backend.recv(bufferCorrelacion, 0, bufferCorrelacion.length, 0);
+            int longitudCarga = backend.recv(bufferCarga, 0, bufferCarga.length, 0);
 
-        if (!workerQueue.isEmpty()) {
-            poller.register(frontend, Poller.POLLIN);
-            System.out.println("[BROKER] Trabajadores disponibles: " + workerQueue.size());
-            System.out.println("[BROKER] Estado recursos: " + AdministradorInstalaciones.getInstance().getEstadisticas());
+            if (longitudCarga > bufferCarga.length) {
+                System.err.println("[BROKER] Respuesta de " + longitudCarga + " bytes excede el buffer, se descarta");
+            } else if (longitudCarga >= 0 && !tardio && (estado == null || estado.enVuelo.remove(
+                    claveEnVuelo(bufferCliente, longitudCliente, bufferCorrelacion, Math.max(0, longitudCorrelacion))) != null)
+                    // Respuesta vacía: quedó estacionada, la envía entregarListaEspera
+                    && longitudCarga > 0) {
+                // Reenviar respuesta al cliente, devolviendo su id de correlación si lo envió
+                frontend.send(bufferCliente, 0, longitudCliente, ZMQ.SNDMORE);
+                frontend.send(VACIO, 0, 0, ZMQ.SNDMORE);
+                if (longitudCorrelacion > 0) {
+                    frontend.send(bufferCorrelacion, 0, longitudCorrelacion, ZMQ.SNDMORE);
+                }
+                frontend.send(bufferCarga, 0, longitudCarga, 0);
+            }
+
+            if (!backend.hasReceiveMore()) {
+                break;
+            }
+            longitudCliente = backend.recv(bufferCliente, 0, bufferCliente.length, 0);
         }
 
-        return poller;
+        // Devolver trabajador a la cola
+        workerQueue.agregar(bufferTrabajador, longitudTrabajador);
+    }
+
+    private static boolean esComando(byte[] buffer, int longitud, byte[] comando) {
+        if (longitud != comando.length) {
+            return false;
+        }
+        return esPrefijo(buffer, comando);
+    }
+
+    private static boolean esPrefijo(byte[] buffer, byte[] comando) {
+        for (int i = 0; i < comando.length; i++) {
+            if (buffer[i] != comando[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // READY simple o con sesión (ver TrabajadorPeticion.ready)
+    private static boolean esReady(byte[] buffer, int longitud) {
+        return (longitud == READY.length || longitud == TrabajadorPeticion.LONGITUD_READY_CON_SESION)
+                && esPrefijo(buffer, READY);
+    }
+
+    private static long sesion(byte[] buffer, int longitud) {
+        long sesion = 0;
+        for (int i = READY.length; i < longitud; i++) {
+            sesion = (sesion << 8) | (buffer[i] & 0xFF);
+        }
+        return sesion;
+    }
+
+    // ======================== LATIDOS ========================
+
+    private boolean conLatidos() {
+        return latidoMs > 0;
+    }
+
+    private static ByteBuffer clave(byte[] buffer, int longitud) {
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, longitud));
+    }
+
+    // [longitud del cliente][cliente][correlación]: identifica una solicitud
+    // en vuelo (un cliente REQ tiene a lo sumo una, uno DEALER las correlaciona)
+    private static ByteBuffer claveEnVuelo(byte[] cliente, int longitudCliente, byte[] correlacion, int longitudCorrelacion) {
+        byte[] clave = new byte[1 + longitudCliente + longitudCorrelacion];
+        clave[0] = (byte) longitudCliente;
+        System.arraycopy(cliente, 0, clave, 1, longitudCliente);
+        System.arraycopy(correlacion, 0, clave, 1 + longitudCliente, longitudCorrelacion);
+        return ByteBuffer.wrap(clave);
+    }
+
+    /**
+     * Registra el READY de un trabajador. Cada conexión anuncia sus créditos
+     * con uno o más READY de la misma sesión (DespachadorVirtual envía uno por
+     * crédito): de la misma sesión es un crédito más. De otra sesión significa
+     * que se reconectó: perdió lo que tenía en vuelo y los créditos anteriores
+     */
+    private void registrarListo(Socket frontend, ColaTrabajadores workerQueue, ByteBuffer clave,
+                                EstadoTrabajador estado, long sesion) {
+        if (estado == null) {
+            EstadoTrabajador caido = caidos.get(clave);
+            if (caido != null && caido.sesion == sesion) {
+                revivir(workerQueue, clave, 0);
+                return;
+            }
+            caidos.remove(clave);
+            trabajadores.put(clave, new EstadoTrabajador(clave.array(), sesion));
+        } else if (estado.sesion != sesion) {
+            liberarEnVuelo(frontend, estado);
+            workerQueue.quitar(estado.identidad);
+            estado.sesion = sesion;
+        }
     }
 
     /**
-     * Maneja los mensajes provenientes de los trabajadores
+     * Devuelve al pool un trabajador declarado caído que volvió a dar señales,
+     * con los créditos que se le retiraron de la cola. Uno desconocido (p. ej.
+     * tras reiniciar el broker) recibe creditosDesconocido créditos
      */
-    private void manejarMensajesTrabajadores(Socket backend, Socket frontend, Queue<String> workerQueue) {
-        String workerAddr = backend.recvStr();
-        backend.recv(); // Frame vacío
-        String command = backend.recvStr();
-
-        if ("READY".equals(command)) {
-            workerQueue.add(workerAddr);
-            System.out.println("[BROKER] Trabajador " + workerAddr + " marcado como listo");
+    private EstadoTrabajador revivir(ColaTrabajadores workerQueue, ByteBuffer clave, int creditosDesconocido) {
+        EstadoTrabajador estado = caidos.remove(clave);
+        int creditos;
+        if (estado == null) {
+            estado = new EstadoTrabajador(clave.array(), 0);
+            creditos = creditosDesconocido;
         } else {
-            // Es una respuesta para reenviar al cliente
-            String clientAddr = command;
-            backend.recv(); // Frame vacío
-            String response = backend.recvStr();
+            estado.ultimoContacto = System.currentTimeMillis();
+            creditos = estado.creditosRetirados;
+            estado.creditosRetirados = 0;
+        }
+        trabajadores.put(clave, estado);
+        for (int i = 0; i < creditos; i++) {
+            workerQueue.agregar(estado.identidad, estado.identidad.length);
+        }
+        return estado;
+    }
 
-            System.out.println("[BROKER] Reenviando respuesta a cliente " + clientAddr
-                    + " desde trabajador " + workerAddr);
+    /**
+     * Una vez por intervalo: late hacia cada trabajador registrado, declara
+     * caídos a los que no dieron señales en latidosPerdidos intervalos
+     */
+    private void revisarTrabajadores(ZContext context, Socket frontend, Socket backend, ColaTrabajadores workerQueue) {
+        long ahora = System.currentTimeMillis();
+        if (ahora < proximaRevision) {
+            return;
+        }
+        proximaRevision = ahora + latidoMs;
+        long limite = latidoMs * latidosPerdidos;
+
+        List<EstadoTrabajador> nuevosCaidos = new ArrayList<>();
+        for (EstadoTrabajador trabajador : trabajadores.values()) {
+            if (ahora - trabajador.ultimoContacto > limite) {
+                nuevosCaidos.add(trabajador);
+            } else {
+                backend.send(trabajador.identidad, ZMQ.SNDMORE);
+                backend.send(VACIO, ZMQ.SNDMORE);
+                backend.send(TrabajadorPeticion.LATIDO, 0);
+            }
+        }
+        for (EstadoTrabajador caido : nuevosCaidos) {
+            declararCaido(context, frontend, workerQueue, caido);
+        }
+        caidos.values().removeIf(caido -> ahora - caido.ultimoContacto > limite * PLAZOS_OLVIDO_CAIDO);
+    }
 
-            // Reenviar respuesta al cliente
-            frontend.sendMore(clientAddr);
-            frontend.sendMore("");
-            frontend.send(response);
+    private void declararCaido(ZContext context, Socket frontend, ColaTrabajadores workerQueue, EstadoTrabajador caido) {
+        ByteBuffer clave = ByteBuffer.wrap(caido.identidad);
+        trabajadores.remove(clave);
+        caido.creditosRetirados = workerQueue.quitar(caido.identidad);
+        caidos.put(clave, caido);
+        trabajadoresCaidos++;
+        System.out.println("[BROKER] Trabajador " + new String(caido.identidad, ZMQ.CHARSET)
+                + " sin latidos, declarado caído con " + caido.enVuelo.size() + " solicitudes en vuelo");
+        liberarEnVuelo(frontend, caido);
 
-            // Devolver trabajador a la cola
-            workerQueue.add(workerAddr);
+        // Mantener el tamaño efectivo del pool local
+        if (trabajadoresLocales.remove(clave)) {
+            trabajadoresActivos--;
+            if (!esModoVirtual() && trabajadoresActivos < trabajadoresMinimo) {
+                lanzarTrabajador(context);
+            }
         }
     }
 
     /**
-     * Maneja los mensajes provenientes de los clientes
+     * Responde con ERROR_SERVIDOR lo que el trabajador tenía en vuelo. No se
+     * sabe si alcanzó a asignarlo: redespacharlo podría asignarlo dos veces,
+     * así que el cliente decide si reintenta
      */
-    private void manejarMensajesClientes(Socket frontend, Socket backend, Queue<String> workerQueue) {
-        String clientAddr = frontend.recvStr();
-        frontend.recv(); // Frame vacío
-        String request = frontend.recvStr();
+    private void liberarEnVuelo(Socket frontend, EstadoTrabajador trabajador) {
+        for (PeticionEnVuelo peticion : trabajador.enVuelo.values()) {
+            responderError(frontend, peticion);
+        }
+        trabajador.enVuelo.clear();
+    }
 
-        procesarSolicitudCliente(clientAddr, request, backend, frontend, workerQueue);
+    private void responderError(Socket frontend, PeticionEnVuelo peticion) {
+        responder(frontend, peticion.cliente(), peticion.correlacion(),
+                ProcesadorSolicitudes.respuestaError(peticion.carga()));
+        respuestasError++;
     }
 
+    private static void responder(Socket frontend, byte[] cliente, byte[] correlacion, byte[] respuesta) {
+        frontend.send(cliente, ZMQ.SNDMORE);
+        frontend.send(VACIO, ZMQ.SNDMORE);
+        if (correlacion.length > 0) {
+            frontend.send(correlacion, ZMQ.SNDMORE);
+        }
+        frontend.send(respuesta, 0);
+    }
+
+    // ======================== LISTA DE ESPERA ========================
+
     /**
-     * Procesa las solicitudes de los clientes y las distribuye a los trabajadores o las gestiona directamente
+     * Vence las estacionadas que pasaron el plazo y envía las respuestas que
+     * dejaron listas las pasadas de emparejamiento
      */
-    private void procesarSolicitudCliente(String clientAddr, String requestJson,
-                                          Socket backend, Socket frontend,
-                                          Queue<String> workerQueue) {
-        try {
-            // Validar que el JSON no sea nulo o vacío
-            if (requestJson == null || requestJson.trim().isEmpty()) {
-                System.err.println("[BROKER] Error: Mensaje JSON vacío o nulo");
-                return;
+    private void entregarListaEspera(Socket frontend) {
+        listaEspera.revisarVencidas(System.currentTimeMillis());
+        ListaEspera.Entrega entrega;
+        while ((entrega = listaEspera.siguienteEntrega()) != null) {
+            if (entrega.exitosa()) {
+                System.out.println("[BROKER] Solicitud en espera de "
+                        + new String(entrega.cliente(), ZMQ.CHARSET) + " atendida con recursos devueltos");
             }
+            responder(frontend, entrega.cliente(), entrega.correlacion(), entrega.respuesta());
+        }
+    }
+
+    // ======================== BACKLOG ========================
 
-            ObjectMapper mapper = new ObjectMapper();
+    private byte[] respuestaOcupado(byte[] carga, int longitud) {
+        return CodecBinario.esBinario(carga, longitud) ? ocupadoBinario : ocupadoJson;
+    }
 
-            // 1. Primer intento: Deserializar como ConfirmacionAsignacion
+    /**
+     * "Facultad A:3,Facultad B:2" -> peso por identidad de cliente
+     */
+    private static Map<ByteBuffer, Integer> leerPesos(String valor) {
+        Map<ByteBuffer, Integer> pesos = new HashMap<>();
+        for (String entrada : valor.split(",")) {
+            int separador = entrada.lastIndexOf(':');
+            if (separador <= 0) {
+                continue;
+            }
             try {
-                ConfirmacionAsignacion confirmacion = mapper.readValue(requestJson, ConfirmacionAsignacion.class);
-                procesarConfirmacion(clientAddr, confirmacion, frontend);
-                return;
-            } catch (JsonProcessingException e) {
-                System.out.println("[DEBUG] No es mensaje de confirmación: " + e.getMessage());
+                int peso = Integer.parseInt(entrada.substring(separador + 1).trim());
+                pesos.put(ByteBuffer.wrap(entrada.substring(0, separador).trim().getBytes(ZMQ.CHARSET)), peso);
+            } catch (NumberFormatException e) {
+                System.err.println("[BROKER] Peso inválido en server.pesosFacultades: " + entrada.trim());
             }
+        }
+        return pesos;
+    }
 
-            // 2. Segundo intento: Deserializar como Solicitud
-            try {
-                long inicio = System.nanoTime();
-                Solicitud solicitud = mapper.readValue(requestJson, Solicitud.class);
-                enviarSolicitudATrabajador(clientAddr, requestJson, backend, workerQueue);
-                long fin = System.nanoTime();
-                registrarTiempoRespuesta(inicio, fin, true);
+    /**
+     * Guarda una solicitud recibida hasta que despacharBacklog la entregue.
+     * Con el backlog lleno se hace lugar descartando la última del cliente
+     * con más encoladas; si ese cliente es el mismo, la rechazada es la
+     * llegada. Con backlogMaximo = 0 el frontend solo se lee con trabajadores
+     * libres y el backlog retiene a lo sumo lo drenado en una lectura
+     */
+    private void encolarEnBacklog(Socket frontend, long inicio) {
+        ByteBuffer cliente = ByteBuffer.wrap(Arrays.copyOf(clienteMensaje, longitudClienteMensaje));
+        if (backlog.tamano() >= (backlogMaximo > 0 ? backlogMaximo : loteMaximo)) {
+            SolicitudEnEspera expulsada = backlogMaximo > 0 ? backlog.expulsarPara(cliente) : null;
+            if (expulsada == null) {
+                responderCliente(frontend, respuestaOcupado(cargaMensaje, longitudCargaMensaje));
+                rechazadasBacklogLleno++;
+                registrarTiempoRespuesta(inicio, System.nanoTime(), false);
                 return;
+            }
+            rechazarOcupado(frontend, expulsada);
+            rechazadasBacklogLleno++;
+        }
+        if (backlog.vacio()) {
+            inicioVentanaLote = inicio;
+        }
+        backlog.agregar(cliente, new SolicitudEnEspera(
+                cliente.array(),
+                Arrays.copyOf(correlacionMensaje, longitudCorrelacionMensaje),
+                Arrays.copyOf(cargaMensaje, longitudCargaMensaje),
+                inicio));
+        backlogPicoObservado = Math.max(backlogPicoObservado, backlog.tamano());
+    }
+
+    private void rechazarOcupado(Socket frontend, SolicitudEnEspera solicitud) {
+        responder(frontend, solicitud.cliente(), solicitud.correlacion(),
+                respuestaOcupado(solicitud.carga(), solicitud.carga().length));
+        registrarTiempoRespuesta(solicitud.llegada(), System.nanoTime(), false);
+    }
 
-            } catch (JsonProcessingException e) {
-                System.out.println("[DEBUG] No es solicitud de recursos: " + e.getMessage());
+    /**
+     * Rechaza con OCUPADO lo que ya esperó más que el plazo (el cliente se
+     * entera enseguida en vez de agotar su propio timeout) y reparte el resto
+     * en lotes a los trabajadores libres, en el orden del planificador. Con
+     * ventana de lotes no despacha hasta juntar un lote o cumplir la ventana
+     */
+    private void despacharBacklog(Socket frontend, Socket backend, ColaTrabajadores workerQueue) {
+        if (backlog.vacio()) {
+            return;
+        }
+        long ahora = System.nanoTime();
+        long plazo = backlogPlazoMs * 1_000_000L;
+        backlog.quitarVencidas(solicitud -> ahora - solicitud.llegada() > plazo, vencida -> {
+            rechazarOcupado(frontend, vencida);
+            rechazadasPlazoVencido++;
+        });
+        if (ventanaLoteMs > 0 && backlog.tamano() < loteMaximo
+                && ahora - inicioVentanaLote < ventanaLoteMs * 1_000_000L) {
+            return;
+        }
+
+        while (!backlog.vacio() && !workerQueue.vacia()) {
+            EstadoTrabajador destino = abrirLote(backend, workerQueue);
+            for (int i = 0; i < loteMaximo && !backlog.vacio(); i++) {
+                SolicitudEnEspera solicitud = backlog.siguiente();
+                boolean ultima = i == loteMaximo - 1 || backlog.vacio();
+                backend.send(solicitud.cliente(), ZMQ.SNDMORE);
+                backend.send(solicitud.correlacion(), ZMQ.SNDMORE);
+                backend.send(solicitud.carga(), ultima ? 0 : ZMQ.SNDMORE);
+                if (destino != null) {
+                    destino.enVuelo.put(claveEnVuelo(solicitud.cliente(), solicitud.cliente().length,
+                            solicitud.correlacion(), solicitud.correlacion().length),
+                            new PeticionEnVuelo(solicitud.cliente(), solicitud.correlacion(), solicitud.carga()));
+                }
+                registrarTiempoRespuesta(solicitud.llegada(), ahora, true);
             }
-            registrarTiempoRespuesta(0, 0, false);
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("[BROKER] Error crítico: " + e.getMessage());
+    /**
+     * Abre un lote hacia el primer trabajador libre y devuelve su estado
+     * (null sin latidos). Formato del lote:
+     * [workerAddr][empty]([clientAddr][correlación o empty][request])+
+     * El trabajador devuelve el frame de correlación sin interpretarlo.
+     */
+    private EstadoTrabajador abrirLote(Socket backend, ColaTrabajadores workerQueue) {
+        EstadoTrabajador destino = null;
+        if (conLatidos()) {
+            int longitud = workerQueue.enviarPrimero(backend, bufferDestino);
+            destino = trabajadores.get(clave(bufferDestino, longitud));
+        } else {
+            workerQueue.enviarPrimero(backend);
+        }
+        backend.send(VACIO, 0, 0, ZMQ.SNDMORE);
+        return destino;
+    }
+
+    /**
+     * Entrega la solicitud recibida como lote de una sola al primer
+     * trabajador libre, directo desde los buffers del mensaje. Solo se copia
+     * para el seguimiento en vuelo, cuando hay latidos
+     */
+    private void enviarDirecto(Socket backend, ColaTrabajadores workerQueue, long inicio) {
+        EstadoTrabajador destino = abrirLote(backend, workerQueue);
+        backend.send(clienteMensaje, 0, longitudClienteMensaje, ZMQ.SNDMORE);
+        backend.send(correlacionMensaje, 0, longitudCorrelacionMensaje, ZMQ.SNDMORE);
+        backend.send(cargaMensaje, 0, longitudCargaMensaje, 0);
+        if (destino != null) {
+            byte[] cliente = Arrays.copyOf(clienteMensaje, longitudClienteMensaje);
+            byte[] correlacion = Arrays.copyOf(correlacionMensaje, longitudCorrelacionMensaje);
+            destino.enVuelo.put(claveEnVuelo(cliente, cliente.length, correlacion, correlacion.length),
+                    new PeticionEnVuelo(cliente, correlacion, Arrays.copyOf(cargaMensaje, longitudCargaMensaje)));
         }
+        registrarTiempoRespuesta(inicio, System.nanoTime(), true);
+    }
+
+    /**
+     * Maneja los mensajes provenientes de los clientes. Cada mensaje llega en un
+     * sobre [clientAddr][empty][tipo][payload]; el broker despacha por el byte de
+     * tipo y reenvía el payload de las solicitudes sin deserializarlo.
+     *
+     * Drena sin bloquear hasta server.loteMaximo mensajes de lo que ya esté
+     * encolado en el frontend. Con el backlog vacío, un trabajador libre y
+     * sin ventana de lotes la solicitud sale directo desde los buffers, sin
+     * copiarla; si no, entra al backlog y la entrega despacharBacklog. Así una
+     * recién llegada nunca se adelanta a las que ya esperaban, y lo que se
+     * acumula sin trabajadores libres sale en lotes.
+     */
+    private void manejarMensajesClientes(Socket frontend, Socket backend, ColaTrabajadores workerQueue) {
+        int recibidos = 0;
+        boolean encoladas = false;
+
+        while (recibidos < loteMaximo) {
+            int flags = recibidos == 0 ? 0 : ZMQ.DONTWAIT;
+            int longitudCliente = frontend.recv(clienteMensaje, 0,
+                    ColaTrabajadores.LONGITUD_MAXIMA_IDENTIDAD, flags);
+            if (longitudCliente < 0) {
+                break;
+            }
+            recibidos++;
+            long inicio = System.nanoTime();
+
+            frontend.recv(cargaMensaje, 0, TAMANO_MAXIMO_MENSAJE, 0); // Frame vacío
+            TipoMensaje tipo = recibirSobre(frontend);
+            longitudClienteMensaje = longitudCliente;
+
+            if (tipo == TipoMensaje.SOLICITUD && backlog.vacio() && !workerQueue.vacia() && ventanaLoteMs == 0) {
+                enviarDirecto(backend, workerQueue, inicio);
+            } else if (tipo == TipoMensaje.SOLICITUD) {
+                encolarEnBacklog(frontend, inicio);
+                encoladas = true;
+            } else if (tipo == TipoMensaje.NEGOCIAR) {
+                negociarFormato(frontend);
+            } else if (tipo == TipoMensaje.PRESTAR || tipo == TipoMensaje.RECIBIR_PRESTAMO) {
+                procesarPrestamo(frontend, tipo);
+            } else if (tipo != null) {
+                procesarConfirmacion(frontend, tipo);
+            } else {
+                System.err.println("[BROKER] Mensaje de tipo desconocido de "
+                        + new String(clienteMensaje, 0, longitudCliente, ZMQ.CHARSET));
+                responderCliente(frontend, "MENSAJE DESCONOCIDO");
+                registrarTiempoRespuesta(inicio, System.nanoTime(), false);
+            }
+        }
+
+        if (encoladas) {
+            despacharBacklog(frontend, backend, workerQueue);
+        }
+    }
+
+    /**
+     * Recibe el resto del sobre en los buffers indicados y devuelve su tipo.
+     * Los clientes DEALER segmentados agregan un id de correlación entre el
+     * tipo y el payload ([tipo][correlación][payload]) que se devuelve tal cual
+     * en la respuesta. Los clientes que aún envían un único frame JSON (sin
+     * trama de tipo) se clasifican con una sola lectura del árbol JSON.
+     */
+    private TipoMensaje recibirSobre(Socket frontend) {
+        byte[] carga = cargaMensaje;
+        int longitud = frontend.recv(carga, 0, TAMANO_MAXIMO_MENSAJE, 0);
+        longitudCorrelacionMensaje = 0;
+
+        if (frontend.hasReceiveMore()) {
+            TipoMensaje tipo = longitud == 1 ? TipoMensaje.desdeCodigo(carga[0]) : null;
+            longitudCargaMensaje = frontend.recv(carga, 0, TAMANO_MAXIMO_MENSAJE, 0);
+            if (frontend.hasReceiveMore()) {
+                // El frame recibido era la correlación; el payload viene a continuación
+                int longitudCorrelacion = longitudCargaMensaje;
+                if (longitudCorrelacion > LONGITUD_MAXIMA_CORRELACION) {
+                    tipo = null;
+                    longitudCorrelacion = 0;
+                }
+                System.arraycopy(carga, 0, correlacionMensaje, 0, Math.max(0, longitudCorrelacion));
+                longitudCorrelacionMensaje = Math.max(0, longitudCorrelacion);
+                longitudCargaMensaje = frontend.recv(carga, 0, TAMANO_MAXIMO_MENSAJE, 0);
+            }
+            // Descartar frames sobrantes de un sobre mal formado
+            while (frontend.hasReceiveMore()) {
+                frontend.recv(carga, 0, TAMANO_MAXIMO_MENSAJE, 0);
+                tipo = null;
+            }
+            return longitudCargaMensaje >= 0 ? tipo : null;
+        }
+
+        longitudCargaMensaje = longitud;
+        return longitud > 0 ? clasificarMensajeLegado(mapper, carga, longitud) : null;
+    }
+
+    static TipoMensaje clasificarMensajeLegado(ObjectMapper mapper, byte[] carga, int longitud) {
+        try {
+            JsonNode nodo = mapper.readTree(carga, 0, longitud);
+            if (nodo == null || !nodo.isObject()) {
+                return null;
+            }
+            if (nodo.has("encabezado")) {
+                String encabezado = nodo.get("encabezado").asText();
+                if (encabezado.startsWith("CONFIRMAR_ASIGNACION")) return TipoMensaje.CONFIRMAR_ASIGNACION;
+                if (encabezado.startsWith("RECHAZAR_ASIGNACION")) return TipoMensaje.RECHAZAR_ASIGNACION;
+                return null;
+            }
+            return nodo.has("programa") ? TipoMensaje.SOLICITUD : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Responde con la versión de formato binario a usar en esta conexión: la
+     * menor entre la que ofrece el cliente y la del servidor (0 = solo JSON).
+     */
+    private void negociarFormato(Socket frontend) {
+        int ofrecida = longitudCargaMensaje > 0 ? cargaMensaje[0] : 0;
+        byte elegida = (byte) Math.max(0, Math.min(ofrecida, CodecBinario.VERSION));
+
+        System.out.println("[BROKER] Formato negociado con "
+                + new String(clienteMensaje, 0, longitudClienteMensaje, ZMQ.CHARSET)
+                + ": " + (elegida > 0 ? "binario v" + elegida : "JSON"));
+        responderCliente(frontend, new byte[]{elegida});
     }
 
     /**
      * Procesa los mensajes de confirmación (aceptación o rechazo de asignaciones)
      */
-    private void procesarConfirmacion(String clientAddr, ConfirmacionAsignacion confirmacion, Socket frontend) {
+    private void procesarConfirmacion(Socket frontend, TipoMensaje tipo) {
+        ConfirmacionAsignacion confirmacion;
+        byte[] carga = cargaMensaje;
+        int longitud = longitudCargaMensaje;
+        try {
+            confirmacion = CodecBinario.esBinario(carga, longitud)
+                    ? CodecBinario.decodificarConfirmacion(carga, longitud)
+                    : mapper.readValue(carga, 0, longitud, ConfirmacionAsignacion.class);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("[BROKER] Confirmación inválida: " + e.getMessage());
+            responderCliente(frontend, "CONFIRMACION INVALIDA");
+            return;
+        }
+
         String respuesta = null;
-        String tipoConfirmacion = confirmacion.getEncabezado().split(":")[0];
+        AdministradorInstalaciones administrador = AdministradorInstalaciones.getInstance();
+        long idReserva = confirmacion.getResEnvio() != null ? confirmacion.getResEnvio().getIdReserva() : 0;
 
-        switch(tipoConfirmacion) {
-            case "CONFIRMAR_ASIGNACION":
-                System.out.println("[BROKER] Confirmación recibida de " + clientAddr);
-                respuesta = "CONFIRMADO ACEPTACION";
+        switch(tipo) {
+            case CONFIRMAR_ASIGNACION:
+                System.out.println("[BROKER] Confirmación recibida: " + confirmacion.getEncabezado());
+                if (idReserva > 0 && !administrador.confirmarReserva(idReserva)) {
+                    // La reserva venció y sus recursos ya volvieron al pool
+                    respuesta = "RESERVA EXPIRADA";
+                } else {
+                    respuesta = "CONFIRMADO ACEPTACION";
+                }
                 break;
 
-            case "RECHAZAR_ASIGNACION":
-                System.out.println("[BROKER] Rechazo recibido de " + clientAddr);
-                boolean exito = AdministradorInstalaciones.getInstance().devolverRecursos(confirmacion.getResEnvio());
+            case RECHAZAR_ASIGNACION:
+                System.out.println("[BROKER] Rechazo recibido: " + confirmacion.getEncabezado());
+                boolean exito = idReserva > 0
+                        ? administrador.liberarReserva(idReserva)
+                        : confirmacion.getResEnvio() != null
+                                && administrador.devolverRecursos(confirmacion.getResEnvio());
                 respuesta = "CONFIRMADO RECHAZO";
                 break;
+
+            default:
+                respuesta = "MENSAJE DESCONOCIDO";
         }
 
         // Enviar respuesta al cliente
-        frontend.sendMore(clientAddr);
-        frontend.sendMore("");
-        frontend.send(respuesta);
+        responderCliente(frontend, respuesta);
     }
 
     /**
-     * Envía una solicitud a un trabajador disponible
+     * Préstamos de capacidad entre shards pedidos por el router. PRESTAR cede
+     * los salones y laboratorios pedidos si están todos libres y responde lo
+     * cedido ([0][0] si no alcanzan); RECIBIR_PRESTAMO suma al pool lo que
+     * cedió otro shard.
      */
-    private void enviarSolicitudATrabajador(String clientAddr, String requestJson, Socket backend, Queue<String> workerQueue) {
-        String workerAddr = workerQueue.poll();
-        System.out.println("[BROKER] Solicitud genérica de " + clientAddr + " asignada a " + workerAddr);
+    private void procesarPrestamo(Socket frontend, TipoMensaje tipo) {
+        if (!prestamosHabilitados) {
+            responderCliente(frontend, "MENSAJE DESCONOCIDO");
+            return;
+        }
 
-        backend.sendMore(workerAddr);
-        backend.sendMore("");
-        backend.sendMore(clientAddr);
-        backend.sendMore("");
-        backend.send(requestJson);
+        int[] pedido;
+        try {
+            pedido = CodecBinario.decodificarPrestamo(cargaMensaje, longitudCargaMensaje);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[BROKER] Préstamo inválido: " + e.getMessage());
+            responderCliente(frontend, "PRESTAMO INVALIDO");
+            return;
+        }
+
+        AdministradorInstalaciones administrador = AdministradorInstalaciones.getInstance();
+        int salones = pedido[0];
+        int labs = pedido[1];
+        if (tipo == TipoMensaje.PRESTAR) {
+            boolean cedido = administrador.prestar(salones, labs);
+            System.out.println("[BROKER] Préstamo de " + salones + " salones y " + labs + " laboratorios "
+                    + (cedido ? "cedido" : "rechazado") + ". " + administrador.getEstadisticas());
+            responderCliente(frontend, cedido
+                    ? CodecBinario.codificarPrestamo(salones, labs)
+                    : CodecBinario.codificarPrestamo(0, 0));
+        } else {
+            boolean recibido = administrador.recibirPrestamo(salones, labs);
+            System.out.println("[BROKER] Préstamo recibido: " + salones + " salones y " + labs
+                    + " laboratorios. " + administrador.getEstadisticas());
+            responderCliente(frontend, recibido ? "PRESTAMO RECIBIDO" : "PRESTAMO INVALIDO");
+        }
+    }
+
+    private void responderCliente(Socket frontend, String respuesta) {
+        responderCliente(frontend, respuesta.getBytes(ZMQ.CHARSET));
+    }
+
+    private void responderCliente(Socket frontend, byte[] respuesta) {
+        frontend.send(clienteMensaje, 0, longitudClienteMensaje, ZMQ.SNDMORE);
+        frontend.send(VACIO, 0, 0, ZMQ.SNDMORE);
+        if (longitudCorrelacionMensaje > 0) {
+            frontend.send(correlacionMensaje, 0, longitudCorrelacionMensaje, ZMQ.SNDMORE);
+        }
+        frontend.send(respuesta, 0);
     }
 
     public void registrarTiempoRespuesta(long inicio, long fin, boolean atendida) {
         long duracion = fin - inicio;
-        tiemposRespuesta.add(duracion);
+        tiempoTotal += duracion;
+        tiempoMinimo = Math.min(tiempoMinimo, duracion);
+        tiempoMaximo = Math.max(tiempoMaximo, duracion);
 
         if (atendida) {
             solicitudesAtendidas++;
@@ -280,21 +1195,39 @@ public class ServidorCentral {
     }
 
     public void imprimirMetricas() {
-        if (tiemposRespuesta.isEmpty()) {
+        long registradas = solicitudesAtendidas + solicitudesNoAtendidas;
+        if (registradas == 0) {
             System.out.println("\n[SERVIDOR] No se registraron tiempos de respuesta.");
             return;
         }
 
-        long min = Collections.min(tiemposRespuesta);
-        long max = Collections.max(tiemposRespuesta);
-        double promedio = tiemposRespuesta.stream().mapToLong(Long::longValue).average().orElse(0.0);
+        double promedio = (double) tiempoTotal / registradas;
 
         System.out.println("\n--- MÉTRICAS DE DESEMPEÑO DEL SERVIDOR CENTRAL ---");
         System.out.println("Solicitudes atendidas: " + solicitudesAtendidas);
         System.out.println("Solicitudes no atendidas: " + solicitudesNoAtendidas);
-        System.out.printf("Tiempo mínimo de atención: %.2f ms%n", min / 1_000_000.0);
-        System.out.printf("Tiempo máximo de atención: %.2f ms%n", max / 1_000_000.0);
+        System.out.printf("Tiempo mínimo de atención: %.2f ms%n", tiempoMinimo / 1_000_000.0);
+        System.out.printf("Tiempo máximo de atención: %.2f ms%n", tiempoMaximo / 1_000_000.0);
         System.out.printf("Tiempo promedio de atención: %.2f ms%n", promedio / 1_000_000.0);
+        if (trabajadoresCaidos > 0) {
+            System.out.println("Trabajadores declarados caídos: " + trabajadoresCaidos);
+            System.out.println("Solicitudes respondidas con error: " + respuestasError);
+        }
+        CuotasFacultades cuotas = AdministradorInstalaciones.getInstance().getCuotas();
+        if (cuotas != null) {
+            System.out.println("Rechazadas por tasa de la facultad: " + cuotas.getRechazadasPorTasa());
+            System.out.println("Rechazadas por cuota de la facultad: " + cuotas.getRechazadasPorCuota());
+        }
+        if (listaEspera != null && listaEspera.getEstacionadasTotal() > 0) {
+            System.out.println("Estacionadas en la lista de espera: " + listaEspera.getEstacionadasTotal()
+                    + " (atendidas después: " + listaEspera.getEmparejadas()
+                    + ", vencidas: " + listaEspera.getVencidas() + ")");
+        }
+        if (backlogPicoObservado > 0 || rechazadasBacklogLleno > 0) {
+            System.out.println("Pico del backlog: " + backlogPicoObservado + " solicitudes");
+            System.out.println("Rechazadas con OCUPADO: " + (rechazadasBacklogLleno + rechazadasPlazoVencido)
+                    + " (backlog lleno: " + rechazadasBacklogLleno + ", plazo vencido: " + rechazadasPlazoVencido + ")");
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -1,115 +1,249 @@
 package org.grupo4.redes;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.grupo4.entidades.AdministradorInstalaciones;
-import org.grupo4.entidades.ResultadoAsignacion;
-import org.grupo4.entidades.Solicitud;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 
 public class TrabajadorPeticion extends Thread{
     private final String id;
     private final ZContext contexto;
-    private final ZMQ.Socket trabajador;
-    private final ObjectMapper json = new ObjectMapper();
+    private final String endpointBackend;
+    private ZMQ.Socket trabajador;
+    // Cambia en cada conexión: el broker distingue así una reconexión de un crédito más
+    private long sesion;
+    private final ProcesadorSolicitudes procesador;
+
+    // Latidos con el broker (0 = sin latidos): el trabajador late mientras
+    // espera trabajo y también mientras procesa un lote y, si está conectado
+    // por TCP, se reconecta cuando deja de oír al broker durante
+    // LATIDOS_PERDIDOS intervalos
+    private final long intervaloLatidoMs;
+    // Con latidos el lote se procesa en este hilo y el del socket sigue latiendo
+    private final ExecutorService procesamiento;
+    private static final int LATIDOS_PERDIDOS = 3;
+    private static final long ESPERA_RECONEXION_MAXIMA_MS = 32_000;
+
+    // Orden del broker para retirar un trabajador inactivo del pool
+    public static final byte[] STOP = "STOP".getBytes(ZMQ.CHARSET);
+    // Latido en ambos sentidos: [empty][LATIDO]
+    public static final byte[] LATIDO = "LATIDO".getBytes(ZMQ.CHARSET);
+    // Con latidos el READY lleva la sesión de la conexión: [empty]["READY" + 8 bytes]
+    public static final byte[] READY = "READY".getBytes(ZMQ.CHARSET);
+    public static final int LONGITUD_READY_CON_SESION = READY.length + Long.BYTES;
 
     public TrabajadorPeticion(ZContext contexto, String id) {
+        this(contexto, id, "inproc://backend");
+    }
+
+    public TrabajadorPeticion(ZContext contexto, String id, String endpointBackend) {
+        this(contexto, id, endpointBackend, new ProcesadorSolicitudes("[TRABAJADOR " + id + "]"), 0);
+    }
+
+    public TrabajadorPeticion(ZContext contexto, String id, String endpointBackend,
+                              ProcesadorSolicitudes procesador, long intervaloLatidoMs) {
         this.id = id;
         this.contexto = contexto;
-        this.trabajador = contexto.createSocket(SocketType.DEALER);
-        this.trabajador.setIdentity(id.getBytes(ZMQ.CHARSET));
-        this.trabajador.connect("inproc://backend");
-        System.out.println("[TRABAJADOR " + id + "] Conectado al broker");
+        this.endpointBackend = endpointBackend;
+        this.procesador = procesador;
+        this.intervaloLatidoMs = intervaloLatidoMs;
+        this.procesamiento = intervaloLatidoMs > 0 ? Executors.newSingleThreadExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "trabajador-" + id + "-lote");
+            hilo.setDaemon(true);
+            return hilo;
+        }) : null;
+        conectar();
+        System.out.println("[TRABAJADOR " + id + "] Conectado al broker en " + endpointBackend);
+    }
+
+    private void conectar() {
+        trabajador = contexto.createSocket(SocketType.DEALER);
+        trabajador.setIdentity(id.getBytes(ZMQ.CHARSET));
+        trabajador.setLinger(0);
+        if (intervaloLatidoMs > 0) {
+            trabajador.setReceiveTimeOut((int) intervaloLatidoMs);
+        }
+        trabajador.connect(endpointBackend);
+        sesion = nuevaSesion();
+    }
+
+    private void enviarReady() {
+        trabajador.sendMore("");
+        if (intervaloLatidoMs > 0) {
+            trabajador.send(ready(sesion), 0);
+        } else {
+            trabajador.send(READY, 0);
+        }
+    }
+
+    static long nuevaSesion() {
+        long sesion;
+        do {
+            sesion = ThreadLocalRandom.current().nextLong();
+        } while (sesion == 0);
+        return sesion;
+    }
+
+    /**
+     * READY con sesión. Sin latidos el broker no sigue a los trabajadores y
+     * se envía el READY simple
+     */
+    static byte[] ready(long sesion) {
+        byte[] trama = Arrays.copyOf(READY, LONGITUD_READY_CON_SESION);
+        for (int i = 0; i < Long.BYTES; i++) {
+            trama[READY.length + i] = (byte) (sesion >>> (8 * (Long.BYTES - 1 - i)));
+        }
+        return trama;
     }
 
 
     @Override
     public void run() {
+        try {
+            atenderBroker();
+        } finally {
+            if (procesamiento != null) {
+                procesamiento.shutdownNow();
+            }
+        }
+    }
+
+    private void atenderBroker() {
         // 1) Indicar al broker que estoy listo
         System.out.println("[TRABAJADOR " + id + "] Enviando señal READY");
-        trabajador.sendMore("");
-        trabajador.send("READY");
+        enviarReady();
+
+        // Un broker en el mismo proceso (inproc) no puede caerse por separado
+        boolean vigilarBroker = intervaloLatidoMs > 0 && !endpointBackend.startsWith("inproc://");
+        int vidasBroker = LATIDOS_PERDIDOS;
+        long esperaReconexionMs = intervaloLatidoMs;
+        long proximoLatido = System.currentTimeMillis() + intervaloLatidoMs;
 
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                // 2) Recibir el mensaje multipart del broker:
-                // Formato: [empty][clientAddr][empty][request]
-                trabajador.recv();
-                String dirCliente = trabajador.recvStr();
-                trabajador.recv();
-                String peticion = trabajador.recvStr();
+                // 2) Recibir el mensaje multipart del broker (una o varias solicitudes):
+                // Formato: [empty]([clientAddr][correlación o empty][request])+
+                List<byte[]> dirClientes = new ArrayList<>();
+                List<byte[]> peticiones = new ArrayList<>();
+                List<byte[]> correlaciones = new ArrayList<>();
+
+                byte[] vacio = trabajador.recv();
+                if (intervaloLatidoMs > 0 && System.currentTimeMillis() >= proximoLatido) {
+                    trabajador.sendMore("");
+                    trabajador.send(LATIDO, 0);
+                    proximoLatido = System.currentTimeMillis() + intervaloLatidoMs;
+                }
+                if (vacio == null) {
+                    // Sin noticias del broker durante un intervalo de latido
+                    if (vigilarBroker && --vidasBroker == 0) {
+                        System.out.println("[TRABAJADOR " + id + "] Sin latidos del broker, reconectando en "
+                                + esperaReconexionMs + " ms");
+                        Thread.sleep(esperaReconexionMs);
+                        esperaReconexionMs = Math.min(esperaReconexionMs * 2, ESPERA_RECONEXION_MAXIMA_MS);
+                        trabajador.close();
+                        conectar();
+                        enviarReady();
+                        vidasBroker = LATIDOS_PERDIDOS;
+                    }
+                    continue;
+                }
+                vidasBroker = LATIDOS_PERDIDOS;
+                esperaReconexionMs = intervaloLatidoMs;
 
-                System.out.println("[TRABAJADOR " + id + "] Procesando solicitud de "
-                        + dirCliente + ": " + peticion);
+                // La identidad puede ser binaria (generada por el ROUTER): se conserva en bytes
+                byte[] dirCliente = trabajador.recv();
+                if (!trabajador.hasReceiveMore() && Arrays.equals(dirCliente, LATIDO)) {
+                    continue;
+                }
+                if (!trabajador.hasReceiveMore() && Arrays.equals(dirCliente, STOP)) {
+                    System.out.println("[TRABAJADOR " + id + "] Retirado por el broker");
+                    trabajador.close();
+                    return;
+                }
 
-                // 3) Procesar la solicitud
-                String reqJson = peticion;
-                Solicitud solicitud = json.readValue(reqJson, Solicitud.class);
-                String resJson = procesarSolicitud(solicitud);
+                while (true) {
+                    // Frame de correlación del cliente (vacío si no la usa); se devuelve tal cual
+                    correlaciones.add(trabajador.recv());
+                    dirClientes.add(dirCliente);
+                    peticiones.add(trabajador.recv());
 
-                System.out.println("[TRABAJADOR " + id + "] Enviando respuesta a " + dirCliente);
+                    if (!trabajador.hasReceiveMore()) {
+                        break;
+                    }
+                    dirCliente = trabajador.recv();
+                }
 
-                // 4) Enviar respuesta al broker:
-                // Formato: [empty][clientAddr][empty][response]
-                trabajador.sendMore("");
-                trabajador.sendMore(dirCliente);
+                // 3) Procesar la solicitud o el lote completo en una sola pasada atómica.
+                // Un fallo no debe matar al hilo: el broker perdería al trabajador y
+                // los clientes quedarían esperando
+                List<byte[]> respuestas;
+                try {
+                    respuestas = procesamiento != null
+                            ? atenderLatiendo(dirClientes, correlaciones, peticiones)
+                            : procesador.atender(dirClientes, correlaciones, peticiones);
+                } catch (RuntimeException e) {
+                    System.out.println("[TRABAJADOR " + id + "] Error procesando el lote: " + e);
+                    respuestas = new ArrayList<>(peticiones.size());
+                    for (byte[] peticion : peticiones) {
+                        respuestas.add(ProcesadorSolicitudes.respuestaError(peticion));
+                    }
+                }
+
+                // 4) Enviar respuestas al broker:
+                // Formato: [empty]([clientAddr][correlación][response])+
                 trabajador.sendMore("");
-                trabajador.send(resJson);
+                for (int i = 0; i < dirClientes.size(); i++) {
+                    System.out.println("[TRABAJADOR " + id + "] Enviando respuesta a "
+                            + new String(dirClientes.get(i), ZMQ.CHARSET));
+
+                    trabajador.sendMore(dirClientes.get(i));
+                    trabajador.sendMore(correlaciones.get(i));
+                    trabajador.send(respuestas.get(i), i < dirClientes.size() - 1 ? ZMQ.SNDMORE : 0);
+                }
 
             } catch (ZMQException e) {
-                if (e.getErrorCode() != ZMQ.Error.ETERM.getCode()) {
-                    System.out.println("[TRABAJADOR " + id + "] Error: " + e.getMessage());
+                if (e.getErrorCode() == ZMQ.Error.ETERM.getCode()) {
+                    return;
                 }
-            } catch (JsonProcessingException e) {
                 System.out.println("[TRABAJADOR " + id + "] Error: " + e.getMessage());
+            } catch (InterruptedException e) {
+                return;
             }
         }
     }
 
-    public String obtenerInfoGeneral (ResultadoAsignacion resultado, Solicitud solicitud) {
-        /*
-         * Estructura Repuesta
-         * Trama 1: Informacion general
-         * Trama 2: Laboratorios asignados
-         * Trama 3: Aulas moviles
-         * Trama 4: Salones asignados
-         */
-
-        String infoGeneral = "[ALERTA] No hay suficientes aulas o laboratorios para responder a la demanda";
-        //Caso 1
-        if (resultado.esExitoso()) {
-            if(resultado.aulaMovilAsignadas() == 0) {
-                infoGeneral = String.format("Asignacion exitosa de laboratorios y salones para %s", solicitud.getPrograma());
-            } else {
-                infoGeneral = String.format("Asignacion exitosa para %s, algunos laboratorios se asignaron como aulas moviles", solicitud.getPrograma());
+    /*
+    Procesa el lote en el hilo de procesamiento y, mientras tanto, late cada
+    intervalo desde este hilo (el único que usa el socket). Así un lote lento
+    no hace que el broker declare caído a un trabajador que sigue vivo y
+    responda con error solicitudes que ya se asignaron.
+     */
+    private List<byte[]> atenderLatiendo(List<byte[]> dirClientes, List<byte[]> correlaciones,
+                                         List<byte[]> peticiones) throws InterruptedException {
+        Future<List<byte[]>> lote = procesamiento.submit(() -> procesador.atender(dirClientes, correlaciones, peticiones));
+        while (true) {
+            try {
+                return lote.get(intervaloLatidoMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                trabajador.sendMore("");
+                trabajador.send(LATIDO, 0);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException fallo) {
+                    throw fallo;
+                }
+                throw new IllegalStateException(e.getCause());
             }
         }
-
-        return infoGeneral;
-    }
-
-    public String procesarSolicitud(Solicitud peticion) {
-        try {
-            ResultadoAsignacion resultado = AdministradorInstalaciones.getInstance().asignar(
-                    peticion.getNumSalones(),
-                    peticion.getNumLaboratorios());
-
-            ResultadoEnvio resEnvio = new ResultadoEnvio(
-                    obtenerInfoGeneral(resultado, peticion),
-                    resultado.labsAsignados(),
-                    resultado.aulaMovilAsignadas(),
-                    resultado.salonesAsignados());
-
-            return json.writeValueAsString(resEnvio);
-
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
     }
 }
@@ -0,0 +1,202 @@
+package org.grupo4.rendimiento;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.grupo4.entidades.AdministradorInstalaciones;
+import org.grupo4.entidades.Solicitud;
+import org.grupo4.redes.ConfirmacionAsignacion;
+import org.grupo4.redes.ServidorCentral;
+import org.grupo4.redes.TipoMensaje;
+import org.grupo4.redes.TrabajadorPeticion;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+import org.zeromq.ZMQ.Socket;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mide el throughput (mensajes por segundo) del broker Load Balancing.
+ *
+ * Compara el bucle anterior (Poller nuevo en cada iteración, cola LinkedList
+ * de Strings, recvStr por frame y detección de tipo por excepción) con el bucle actual de ServidorCentral
+ * (pollers persistentes y cola circular de identidades en bytes). Ambos usan
+ * los mismos TrabajadorPeticion y la misma carga: varios clientes DEALER que
+ * mantienen una ventana de solicitudes en vuelo. Las solicitudes piden 0
+ * salones y 0 laboratorios para que el estado de recursos no se agote.
+ *
+ * Uso: java -cp ServidorCentral.jar org.grupo4.rendimiento.BenchmarkBroker [clientes] [ventana] [segundos]
+ */
+public class BenchmarkBroker {
+    private static final String SOLICITUD =
+            "{\"facultad\":\"Benchmark\",\"programa\":\"Carga\",\"semestre\":1,\"numSalones\":0,\"numLaboratorios\":0}";
+    private static final int PUERTO_LEGADO = 5601;
+    private static final int PUERTO_ACTUAL = 5602;
+
+    public static void main(String[] args) throws Exception {
+        int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int ventana = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        PrintStream consola = System.out;
+        // Los brokers y trabajadores imprimen por cada mensaje; se descarta la
+        // salida para medir el costo de formateo sin el de la terminal
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        AdministradorInstalaciones.getInstance(380, 60);
+
+        iniciarEnSegundoPlano(() -> brokerLegado(PUERTO_LEGADO), "broker-legado");
+        double legado = medir(PUERTO_LEGADO, clientes, ventana, segundos);
+
+        iniciarEnSegundoPlano(() -> new ServidorCentral(
+                "127.0.0.1", String.valueOf(PUERTO_ACTUAL), "backend", 380, 60).loadBalancingBroker(), "broker-actual");
+        double actual = medir(PUERTO_ACTUAL, clientes, ventana, segundos);
+
+        consola.println("\n--- BENCHMARK BROKER ---");
+        consola.printf("Clientes: %d, ventana por cliente: %d, duración: %d s%n", clientes, ventana, segundos);
+        consola.printf("Bucle anterior: %,.0f mensajes/s%n", legado);
+        consola.printf("Bucle actual:   %,.0f mensajes/s%n", actual);
+        consola.printf("Mejora: %.2fx%n", legado > 0 ? actual / legado : 0.0);
+        consola.flush();
+        // Los brokers siguen activos en segundo plano; terminar sin shutdown hooks
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void iniciarEnSegundoPlano(Runnable tarea, String nombre) throws InterruptedException {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+        // Dar tiempo a que los trabajadores envíen READY
+        Thread.sleep(500);
+    }
+
+    /**
+     * Lanza los clientes contra el puerto dado y devuelve las respuestas por segundo
+     */
+    private static double medir(int puerto, int clientes, int ventana, int segundos) throws InterruptedException {
+        AtomicLong respuestas = new AtomicLong();
+        CountDownLatch fin = new CountDownLatch(clientes);
+        long calentamientoMs = 1000;
+        long limite = System.currentTimeMillis() + calentamientoMs + segundos * 1000L;
+
+        for (int c = 0; c < clientes; c++) {
+            final int idCliente = c;
+            Thread hilo = new Thread(() -> {
+                try (ZContext contexto = new ZContext()) {
+                    Socket socket = contexto.createSocket(SocketType.DEALER);
+                    socket.setIdentity(("bench-" + puerto + "-" + idCliente).getBytes(ZMQ.CHARSET));
+                    socket.setReceiveTimeOut(2000);
+                    socket.connect("tcp://127.0.0.1:" + puerto);
+
+                    for (int i = 0; i < ventana; i++) {
+                        enviar(socket);
+                    }
+                    while (System.currentTimeMillis() < limite) {
+                        if (socket.recv() == null) continue; // Frame vacío
+                        socket.recv();
+                        respuestas.incrementAndGet();
+                        enviar(socket);
+                    }
+                } finally {
+                    fin.countDown();
+                }
+            });
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+
+        Thread.sleep(calentamientoMs);
+        long base = respuestas.get();
+        long inicioMedicion = System.nanoTime();
+        fin.await();
+
+        double transcurrido = (System.nanoTime() - inicioMedicion) / 1_000_000_000.0;
+        return (respuestas.get() - base) / transcurrido;
+    }
+
+    private static void enviar(Socket socket) {
+        socket.sendMore("");
+        socket.sendMore(TipoMensaje.SOLICITUD.comoTrama());
+        socket.send(SOLICITUD);
+    }
+
+    /**
+     * Réplica del bucle original del broker, conservada solo como referencia
+     * para la comparación.
+     */
+    private static void brokerLegado(int puerto) {
+        try (ZContext context = new ZContext()) {
+            Socket frontend = context.createSocket(SocketType.ROUTER);
+            frontend.bind("tcp://127.0.0.1:" + puerto);
+            Socket backend = context.createSocket(SocketType.ROUTER);
+            backend.bind("inproc://backend");
+
+            for (int i = 1; i <= 10; i++) {
+                new Thread(new TrabajadorPeticion(context, String.valueOf(i))).start();
+            }
+
+            Queue<String> workerQueue = new LinkedList<>();
+            while (!Thread.currentThread().isInterrupted()) {
+                Poller poller = context.createPoller(2);
+                poller.register(backend, Poller.POLLIN);
+                if (!workerQueue.isEmpty()) {
+                    poller.register(frontend, Poller.POLLIN);
+                    System.out.println("[BROKER] Trabajadores disponibles: " + workerQueue.size());
+                    System.out.println("[BROKER] Estado recursos: " + AdministradorInstalaciones.getInstance().getEstadisticas());
+                }
+
+                if (poller.poll(1000) == 0) continue;
+
+                if (poller.pollin(0)) {
+                    String workerAddr = backend.recvStr();
+                    backend.recv();
+                    String command = backend.recvStr();
+                    if (!"READY".equals(command)) {
+                        backend.recv();
+                        String response = backend.recvStr();
+                        frontend.sendMore(command);
+                        frontend.sendMore("");
+                        frontend.send(response);
+                    }
+                    workerQueue.add(workerAddr);
+                }
+
+                if (poller.pollin(1)) {
+                    String clientAddr = frontend.recvStr();
+                    frontend.recv();
+                    String request = frontend.recvStr();
+                    if (frontend.hasReceiveMore()) {
+                        // Trama de tipo: el bucle anterior solo entendía el payload
+                        request = frontend.recvStr();
+                    }
+
+                    // Detección de tipo por excepción, como en el broker original
+                    ObjectMapper mapper = new ObjectMapper();
+                    try {
+                        mapper.readValue(request, ConfirmacionAsignacion.class);
+                        continue;
+                    } catch (JsonProcessingException e) {
+                        // No es una confirmación: se prueba como solicitud
+                    }
+                    try {
+                        mapper.readValue(request, Solicitud.class);
+                    } catch (JsonProcessingException e) {
+                        continue;
+                    }
+
+                    backend.sendMore(workerQueue.poll());
+                    backend.sendMore("");
+                    backend.sendMore(clientAddr);
+                    backend.sendMore("");
+                    backend.send(request);
+                }
+            }
+        }
+    }
+}
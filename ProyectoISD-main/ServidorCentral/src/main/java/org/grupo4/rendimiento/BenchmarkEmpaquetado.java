@@ -0,0 +1,101 @@
+package org.grupo4.rendimiento;
+
+import org.grupo4.entidades.AdministradorInstalaciones;
+import org.grupo4.entidades.ResultadoAsignacion;
+import org.grupo4.entidades.Solicitud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Compara la asignación de lotes en orden de llegada con el empaquetado
+ * óptimo (server.asignacionLote=optimo) bajo escasez, sin red de por medio.
+ *
+ * Cada ronda arma una ventana de solicitudes aleatorias (1 a 5 salones y
+ * 0 a 3 laboratorios por programa, la misma semilla para ambos modos) contra
+ * un pool nuevo con la capacidad dada, por defecto la del Caso 4 (30 salones,
+ * 12 laboratorios), y la asigna con asignarLote. Mide programas atendidos,
+ * aulas móviles y el tiempo de asignar cada ventana. Las rondas son
+ * independientes y se reparten entre todos los núcleos.
+ *
+ * El tiempo medido es el de cómputo: con server.ventanaLoteMs cada solicitud
+ * espera además, como máximo, esa ventana en el broker.
+ *
+ * Uso: java -cp ServidorCentral.jar org.grupo4.rendimiento.BenchmarkEmpaquetado [salones] [labs] [rondas]
+ */
+public class BenchmarkEmpaquetado {
+    private static final int[] VENTANAS = {4, 8, 16, 32, 64};
+
+    private static final class Totales {
+        final LongAdder solicitudes = new LongAdder();
+        final LongAdder atendidas = new LongAdder();
+        final LongAdder aulasMoviles = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    public static void main(String[] args) {
+        int salones = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int labs = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int rondas = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        System.out.println("\n--- BENCHMARK EMPAQUETADO DE LOTES ---");
+        System.out.printf("Capacidad: %d salones, %d laboratorios; %d rondas por ventana en %d núcleos%n",
+                salones, labs, rondas, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s | %-26s | %-26s | %s%n", "Ventana",
+                "En orden (atend. / móviles)", "Óptimo (atend. / móviles)", "µs por ventana (orden / óptimo)");
+
+        for (int ventana : VENTANAS) {
+            // Calentar el JIT con las mismas ventanas antes de medir
+            medir(salones, labs, ventana, Math.min(rondas, 2_000), false);
+            medir(salones, labs, ventana, Math.min(rondas, 2_000), true);
+
+            Totales orden = medir(salones, labs, ventana, rondas, false);
+            Totales optimo = medir(salones, labs, ventana, rondas, true);
+            System.out.printf("%-8d | %6.1f%% / %6.2f          | %6.1f%% / %6.2f          | %.2f / %.2f%n",
+                    ventana,
+                    porcentaje(orden), orden.aulasMoviles.sum() / (double) rondas,
+                    porcentaje(optimo), optimo.aulasMoviles.sum() / (double) rondas,
+                    orden.nanos.sum() / 1_000.0 / rondas, optimo.nanos.sum() / 1_000.0 / rondas);
+        }
+    }
+
+    private static Totales medir(int salones, int labs, int ventana, int rondas, boolean optimo) {
+        Totales totales = new Totales();
+        IntStream.range(0, rondas).parallel().forEach(ronda -> {
+            List<Solicitud> lote = generarVentana(ventana, ronda);
+            AdministradorInstalaciones pool = new AdministradorInstalaciones(salones, labs);
+            pool.configurarEmpaquetadoOptimo(optimo);
+
+            long inicio = System.nanoTime();
+            List<ResultadoAsignacion> resultados = pool.asignarLote(lote);
+            totales.nanos.add(System.nanoTime() - inicio);
+
+            totales.solicitudes.add(resultados.size());
+            for (ResultadoAsignacion resultado : resultados) {
+                if (resultado.esExitoso()) {
+                    totales.atendidas.increment();
+                    totales.aulasMoviles.add(resultado.aulaMovilAsignadas());
+                }
+            }
+        });
+        return totales;
+    }
+
+    private static List<Solicitud> generarVentana(int ventana, int semilla) {
+        SplittableRandom aleatorio = new SplittableRandom(semilla * 31L + ventana);
+        List<Solicitud> lote = new ArrayList<>(ventana);
+        for (int i = 0; i < ventana; i++) {
+            lote.add(new Solicitud("Facultad " + (i % 10), "Programa " + i, 1,
+                    1 + aleatorio.nextInt(5), aleatorio.nextInt(4)));
+        }
+        return lote;
+    }
+
+    private static double porcentaje(Totales totales) {
+        long solicitudes = totales.solicitudes.sum();
+        return solicitudes == 0 ? 0 : 100.0 * totales.atendidas.sum() / solicitudes;
+    }
+}
@@ -0,0 +1,304 @@
+package org.grupo4.repositorio;
+
+import org.grupo4.entidades.Reserva;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+Bitácora de escritura anticipada (WAL) e instantáneas del estado de las
+instalaciones.
+
+Cada transición (asignación, devolución, confirmación o liberación de una
+reserva) se anexa como un registro de tamaño fijo con su número de secuencia
+(LSN) y un CRC; un registro incompleto o corrupto al final del archivo marca
+el punto donde se cortó la escritura y la lectura se detiene ahí.
+
+Periódicamente se escribe una instantánea compacta (contadores, reservas
+abiertas y el LSN que cubre) y se empieza un segmento nuevo; los segmentos
+anteriores a la instantánea se borran. Al arrancar se carga la instantánea y
+se reaplican solo los registros posteriores, así que el tiempo de
+recuperación depende del intervalo entre instantáneas y no del historial.
+
+Archivos en el directorio:
+  instantanea.bin          última instantánea completa
+  wal-<primer LSN>.log     segmentos de la bitácora
+ */
+public class BitacoraInstalaciones implements AutoCloseable {
+    public static final byte ASIGNACION = 1;
+    public static final byte DEVOLUCION = 2;
+    public static final byte CONFIRMACION = 3;
+    public static final byte LIBERACION = 4;
+
+    // [tipo u8][lsn i64][idReserva i64][salones i32][labs i32][aulasMoviles i32][crc i32]
+    private static final int TAMANO_REGISTRO = 1 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int MAGIA_INSTANTANEA = 0x494E5354; // "INST"
+    private static final int VERSION_INSTANTANEA = 1;
+    private static final String ARCHIVO_INSTANTANEA = "instantanea.bin";
+
+    private final Path directorio;
+    private final boolean forzarDisco;
+    private final ByteBuffer buffer = ByteBuffer.allocate(TAMANO_REGISTRO * 64);
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel segmento;
+    private Path rutaSegmento;
+    private long ultimoLsn = 0;
+
+    public record Transicion(byte tipo, long lsn, long idReserva, int salones, int labs, int aulasMoviles) {}
+
+    public record Instantanea(long lsn, long estado, long secuenciaReservas, List<Reserva> reservas) {}
+
+    /**
+     * @param forzarDisco si es true cada escritura se sincroniza con el disco
+     *                    (sobrevive a una caída del sistema, no solo del proceso)
+     */
+    public BitacoraInstalaciones(Path directorio, boolean forzarDisco) throws IOException {
+        this.directorio = directorio;
+        this.forzarDisco = forzarDisco;
+        Files.createDirectories(directorio);
+    }
+
+    // ======================== RECUPERACIÓN ========================
+
+    /**
+     * Lee la última instantánea válida, o null si no hay ninguna
+     */
+    public Instantanea leerInstantanea() throws IOException {
+        Path ruta = directorio.resolve(ARCHIVO_INSTANTANEA);
+        if (!Files.exists(ruta)) {
+            return null;
+        }
+
+        ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(ruta));
+        if (datos.remaining() < 4 * 3 + 8 * 3 + 4
+                || datos.getInt() != MAGIA_INSTANTANEA || datos.getInt() != VERSION_INSTANTANEA) {
+            System.err.println("[BITÁCORA] Instantánea con formato desconocido, se ignora");
+            return null;
+        }
+
+        CRC32 verificacion = new CRC32();
+        verificacion.update(datos.array(), 0, datos.limit() - 4);
+        if ((int) verificacion.getValue() != datos.getInt(datos.limit() - 4)) {
+            System.err.println("[BITÁCORA] Instantánea corrupta, se ignora");
+            return null;
+        }
+
+        long lsn = datos.getLong();
+        long estado = datos.getLong();
+        long secuencia = datos.getLong();
+        int cantidad = datos.getInt();
+        List<Reserva> reservas = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            long id = datos.getLong();
+            int labs = datos.getInt();
+            int aulas = datos.getInt();
+            int salones = datos.getInt();
+            reservas.add(new Reserva(id, labs, aulas, salones));
+        }
+        return new Instantanea(lsn, estado, secuencia, reservas);
+    }
+
+    /**
+     * Lee en orden las transiciones con LSN mayor a desdeLsn. Se detiene en el
+     * primer registro incompleto o con CRC inválido (escritura interrumpida)
+     */
+    public List<Transicion> leerTransiciones(long desdeLsn) throws IOException {
+        List<Transicion> transiciones = new ArrayList<>();
+        long anterior = desdeLsn;
+
+        for (Path ruta : segmentos()) {
+            ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(ruta));
+            while (datos.remaining() >= TAMANO_REGISTRO) {
+                int inicio = datos.position();
+                crc.reset();
+                crc.update(datos.array(), inicio, TAMANO_REGISTRO - 4);
+
+                byte tipo = datos.get();
+                long lsn = datos.getLong();
+                long id = datos.getLong();
+                int salones = datos.getInt();
+                int labs = datos.getInt();
+                int aulas = datos.getInt();
+                int esperado = datos.getInt();
+
+                if ((int) crc.getValue() != esperado || tipo < ASIGNACION || tipo > LIBERACION) {
+                    System.err.println("[BITÁCORA] Registro inválido en " + ruta.getFileName()
+                            + " (posición " + inicio + "), se descarta el resto de la bitácora");
+                    ultimoLsn = Math.max(ultimoLsn, anterior);
+                    return transiciones;
+                }
+                ultimoLsn = Math.max(ultimoLsn, lsn);
+                if (lsn > desdeLsn) {
+                    transiciones.add(new Transicion(tipo, lsn, id, salones, labs, aulas));
+                    anterior = lsn;
+                }
+            }
+        }
+        ultimoLsn = Math.max(ultimoLsn, desdeLsn);
+        return transiciones;
+    }
+
+    // ======================== ESCRITURA ========================
+
+    /**
+     * Abre un segmento nuevo a continuación del último LSN conocido. Se llama
+     * una vez tras la recuperación y luego en cada rotación
+     */
+    public synchronized void abrirSegmento() throws IOException {
+        if (segmento != null) {
+            segmento.close();
+        }
+        rutaSegmento = directorio.resolve(String.format("wal-%020d.log", ultimoLsn + 1));
+        segmento = FileChannel.open(rutaSegmento,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public synchronized void registrar(byte tipo, long idReserva, int salones, int labs, int aulasMoviles) {
+        agregar(tipo, idReserva, salones, labs, aulasMoviles);
+        volcar();
+    }
+
+    /**
+     * Agrega un registro al lote en curso; el lote se escribe con volcar().
+     * Quien llama debe tener el monitor de la bitácora (ver registrarLote)
+     */
+    private void agregar(byte tipo, long idReserva, int salones, int labs, int aulasMoviles) {
+        if (buffer.remaining() < TAMANO_REGISTRO) {
+            volcar();
+        }
+        int inicio = buffer.position();
+        buffer.put(tipo)
+              .putLong(++ultimoLsn)
+              .putLong(idReserva)
+              .putInt(salones)
+              .putInt(labs)
+              .putInt(aulasMoviles);
+        crc.reset();
+        crc.update(buffer.array(), inicio, TAMANO_REGISTRO - 4);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Escribe varias transiciones de una vez (una sola escritura al archivo)
+     */
+    public synchronized void registrarLote(List<Transicion> transiciones) {
+        for (Transicion t : transiciones) {
+            agregar(t.tipo(), t.idReserva(), t.salones(), t.labs(), t.aulasMoviles());
+        }
+        volcar();
+    }
+
+    private void volcar() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                segmento.write(buffer);
+            }
+            if (forzarDisco) {
+                segmento.force(false);
+            }
+        } catch (IOException e) {
+            System.err.println("[BITÁCORA] Error escribiendo " + rutaSegmento.getFileName() + ": " + e.getMessage());
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    public synchronized long getUltimoLsn() {
+        return ultimoLsn;
+    }
+
+    /**
+     * Cierra el segmento actual y abre uno nuevo. Devuelve el último LSN del
+     * segmento cerrado: la instantánea que lo cubre debe capturarse sin que
+     * haya transiciones en curso (ver AdministradorInstalaciones)
+     */
+    public synchronized long rotar() throws IOException {
+        long lsn = ultimoLsn;
+        abrirSegmento();
+        return lsn;
+    }
+
+    /**
+     * Escribe la instantánea de forma atómica (archivo temporal + renombrado)
+     * y borra los segmentos que ya quedan cubiertos por ella
+     */
+    public void escribirInstantanea(Instantanea instantanea) throws IOException {
+        ByteBuffer datos = ByteBuffer.allocate(4 * 2 + 8 * 3 + 4
+                + instantanea.reservas().size() * (8 + 4 * 3) + 4);
+        datos.putInt(MAGIA_INSTANTANEA)
+             .putInt(VERSION_INSTANTANEA)
+             .putLong(instantanea.lsn())
+             .putLong(instantanea.estado())
+             .putLong(instantanea.secuenciaReservas())
+             .putInt(instantanea.reservas().size());
+        for (Reserva reserva : instantanea.reservas()) {
+            datos.putLong(reserva.id())
+                 .putInt(reserva.labsAsignados())
+                 .putInt(reserva.aulaMovilAsignadas())
+                 .putInt(reserva.salonesAsignados());
+        }
+        CRC32 verificacion = new CRC32();
+        verificacion.update(datos.array(), 0, datos.position());
+        datos.putInt((int) verificacion.getValue());
+        datos.flip();
+
+        Path temporal = directorio.resolve(ARCHIVO_INSTANTANEA + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (datos.hasRemaining()) {
+                canal.write(datos);
+            }
+            canal.force(true);
+        }
+        Files.move(temporal, directorio.resolve(ARCHIVO_INSTANTANEA),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Los segmentos que empiezan antes del LSN cubierto ya no hacen falta
+        for (Path ruta : segmentos()) {
+            if (primerLsn(ruta) <= instantanea.lsn() && !ruta.equals(rutaActual())) {
+                Files.deleteIfExists(ruta);
+            }
+        }
+    }
+
+    private synchronized Path rutaActual() {
+        return rutaSegmento;
+    }
+
+    private List<Path> segmentos() throws IOException {
+        List<Path> rutas = new ArrayList<>();
+        try (DirectoryStream<Path> flujo = Files.newDirectoryStream(directorio, "wal-*.log")) {
+            flujo.forEach(rutas::add);
+        }
+        rutas.sort((a, b) -> Long.compare(primerLsn(a), primerLsn(b)));
+        return rutas;
+    }
+
+    private static long primerLsn(Path ruta) {
+        String nombre = ruta.getFileName().toString();
+        return Long.parseLong(nombre.substring(4, nombre.length() - 4));
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (segmento != null) {
+                segmento.force(true);
+                segmento.close();
+            }
+        } catch (IOException e) {
+            System.err.println("[BITÁCORA] Error cerrando la bitácora: " + e.getMessage());
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.grupo4.repositorio;
 
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -12,8 +14,11 @@ public class Configuracion {
      *   server.maxLabs = <valor>
      *   server.ip = <valor>
      *   server.port = <valor>
+     *   server.inproc = <valor>
      */
     public static List<String> cargarConfiguracionServidor(String rutaConfig) {
+        Properties prop = cargarPropiedadesServidor(rutaConfig);
+
         // Valores por defecto
         int maxSalones = 380;
         int maxLabs = 60;
@@ -21,23 +26,48 @@ public class Configuracion {
         String port = "5555";
         String inproc = "backend";
 
+        try {
+            maxSalones = Integer.parseInt(prop.getProperty("server.maxSalones", "380"));
+            maxLabs = Integer.parseInt(prop.getProperty("server.maxLabs", "60"));
+            ip = prop.getProperty("server.ip", "0.0.0.0");
+            port = prop.getProperty("server.port", "5555");
+            inproc = prop.getProperty("server.inproc", "backend").trim();
+        } catch (Exception e) {
+            System.err.println("Error cargando configuración. Usando valores por defecto. Detalle: " + e.getMessage());
+        }
+
+        List<String> valores = new ArrayList<>();
+        valores.add(String.valueOf(maxSalones));
+        valores.add(String.valueOf(maxLabs));
+        valores.add(ip);
+        valores.add(port);
+        valores.add(inproc);
+
+        return valores;
+    }
+
+    /**
+     * Carga el archivo de propiedades completo del servidor. Si la ruta es un
+     * archivo existente se lee de disco (varios shards en la misma máquina);
+     * si no, se busca en el classpath. Si no existe o no se puede leer se
+     * devuelve un Properties vacío, de modo que cada opción cae en su valor
+     * por defecto.
+     */
+    public static Properties cargarPropiedadesServidor(String rutaConfig) {
+        Properties prop = new Properties();
+
         // Corregir ruta por defecto
         if (rutaConfig == null) {
             rutaConfig = "configServidor.properties"; // Ruta desde classpath
         }
 
-        try (InputStream input = Configuracion.class.getClassLoader()
-                .getResourceAsStream(rutaConfig)) {
+        Path archivo = Path.of(rutaConfig);
+        try (InputStream input = Files.isRegularFile(archivo)
+                ? Files.newInputStream(archivo)
+                : Configuracion.class.getClassLoader().getResourceAsStream(rutaConfig)) {
 
             if (input != null) { // Evitar NPE si el archivo no existe
-                Properties prop = new Properties();
                 prop.load(input);
-
-                maxSalones = Integer.parseInt(prop.getProperty("server.maxSalones", "380"));
-                maxLabs = Integer.parseInt(prop.getProperty("server.maxLabs", "60"));
-                ip = prop.getProperty("server.ip", "0.0.0.0");
-                port = prop.getProperty("server.port", "5555");
-                inproc = prop.getProperty("server.inproc", "backend");
             } else {
                 System.err.println("Archivo de configuración no encontrado. Usando valores por defecto.");
             }
@@ -46,12 +76,22 @@ public class Configuracion {
             System.err.println("Error cargando configuración. Usando valores por defecto. Detalle: " + e.getMessage());
         }
 
-        List<String> valores = new ArrayList<>();
-        valores.add(String.valueOf(maxSalones));
-        valores.add(String.valueOf(maxLabs));
-        valores.add(ip);
-        valores.add(port);
+        return prop;
+    }
 
-        return valores;
+    /**
+     * Lee una propiedad entera, devolviendo el valor por defecto si falta o es inválida
+     */
+    public static int obtenerEntero(Properties prop, String clave, int valorPorDefecto) {
+        String valor = prop.getProperty(clave);
+        if (valor == null || valor.trim().isEmpty()) {
+            return valorPorDefecto;
+        }
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para " + clave + ": " + valor + ". Usando " + valorPorDefecto);
+            return valorPorDefecto;
+        }
     }
 }
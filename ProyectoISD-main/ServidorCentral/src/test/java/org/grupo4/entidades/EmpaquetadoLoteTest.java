@@ -0,0 +1,154 @@
+package org.grupo4.entidades;
+
+import org.grupo4.redes.EstadoAsignacion;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Compara EmpaquetadoLote.elegir con una búsqueda exhaustiva sobre todos los
+subconjuntos de lotes pequeños: lo elegido tiene que caber, no incluir
+solicitudes rechazadas o imposibles, y atender tantos programas con tan pocas
+aulas móviles como el mejor subconjunto.
+ */
+class EmpaquetadoLoteTest {
+    private static final int LOTES = 20_000;
+    private static final int MAXIMO_SOLICITUDES = 8;
+
+    // Cantidad de programas y aulas móviles de un subconjunto que cabe
+    private record Valor(int programas, int moviles) {
+        boolean mejorQue(Valor otro) {
+            return programas != otro.programas ? programas > otro.programas : moviles < otro.moviles;
+        }
+    }
+
+    @Test
+    void coincideConLaBusquedaExhaustiva() {
+        Random aleatorio = new Random(20241017L);
+        for (int lote = 0; lote < LOTES; lote++) {
+            int salones = aleatorio.nextInt(13);
+            int labs = aleatorio.nextInt(7);
+            int n = 1 + aleatorio.nextInt(MAXIMO_SOLICITUDES);
+            List<Solicitud> solicitudes = new ArrayList<>(n);
+            ResultadoAsignacion[] rechazos = new ResultadoAsignacion[n];
+            for (int i = 0; i < n; i++) {
+                int s = aleatorio.nextInt(10) == 0 ? -1 : aleatorio.nextInt(7);
+                int l = aleatorio.nextInt(5);
+                solicitudes.add(new Solicitud("Facultad " + i, "Programa " + i, 1, s, l));
+                if (aleatorio.nextInt(8) == 0) {
+                    rechazos[i] = ResultadoAsignacion.rechazada(EstadoAsignacion.CUOTA_EXCEDIDA, 0L);
+                }
+            }
+            String caso = String.format("lote %d: %d salones, %d labs, %s", lote, salones, labs, describir(solicitudes, rechazos));
+
+            Valor optimo = buscarOptimo(salones, labs, solicitudes, rechazos);
+            boolean[] seleccion = EmpaquetadoLote.elegir(salones, labs, solicitudes, rechazos);
+            if (seleccion == null) {
+                // Solo se omite la elección cuando todas las candidatas caben juntas
+                boolean[] todas = new boolean[n];
+                for (int i = 0; i < n; i++) {
+                    todas[i] = esCandidata(salones, labs, solicitudes.get(i), rechazos[i]);
+                }
+                Valor valor = evaluar(salones, labs, solicitudes, todas);
+                assertTrue(valor != null, "elegir devolvió null pero las candidatas no caben; " + caso);
+                assertEquals(optimo, valor, caso);
+                continue;
+            }
+
+            assertEquals(n, seleccion.length, caso);
+            for (int i = 0; i < n; i++) {
+                if (seleccion[i]) {
+                    assertTrue(esCandidata(salones, labs, solicitudes.get(i), rechazos[i]),
+                            "se eligió la solicitud " + i + " que no es candidata; " + caso);
+                }
+            }
+            Valor valor = evaluar(salones, labs, solicitudes, seleccion);
+            assertTrue(valor != null, "lo elegido no cabe; " + caso);
+            assertEquals(optimo, valor, caso);
+        }
+    }
+
+    @Test
+    void prefiereMasProgramasAunqueUsenAulasMoviles() {
+        // 5 salones y 1 laboratorio: (2,2) + (2,0) caben con una aula móvil;
+        // en orden de llegada (4,0) dejaría a las otras dos sin aulas
+        List<Solicitud> solicitudes = List.of(
+                new Solicitud("A", "P1", 1, 4, 0),
+                new Solicitud("B", "P2", 1, 2, 2),
+                new Solicitud("C", "P3", 1, 2, 0));
+        boolean[] seleccion = EmpaquetadoLote.elegir(5, 1, solicitudes, null);
+        assertFalse(seleccion[0]);
+        assertTrue(seleccion[1]);
+        assertTrue(seleccion[2]);
+    }
+
+    private static Valor buscarOptimo(int salones, int labs, List<Solicitud> solicitudes, ResultadoAsignacion[] rechazos) {
+        int n = solicitudes.size();
+        Valor optimo = new Valor(0, 0);
+        for (int mascara = 1; mascara < 1 << n; mascara++) {
+            boolean[] subconjunto = new boolean[n];
+            boolean valido = true;
+            for (int i = 0; i < n && valido; i++) {
+                subconjunto[i] = (mascara & (1 << i)) != 0;
+                valido = !subconjunto[i] || esCandidata(salones, labs, solicitudes.get(i), rechazos[i]);
+            }
+            Valor valor = valido ? evaluar(salones, labs, solicitudes, subconjunto) : null;
+            if (valor != null && valor.mejorQue(optimo)) {
+                optimo = valor;
+            }
+        }
+        return optimo;
+    }
+
+    private static boolean esCandidata(int salones, int labs, Solicitud solicitud, ResultadoAsignacion rechazo) {
+        int s = solicitud.getNumSalones();
+        int l = solicitud.getNumLaboratorios();
+        return rechazo == null && s >= 0 && l >= 0 && s <= salones && s + l <= salones + labs;
+    }
+
+    /*
+    Recorre el subconjunto en orden de llegada como calcularAsignacion: los
+    laboratorios que faltan se cubren con salones libres. Devuelve null si
+    alguna solicitud no alcanza
+     */
+    private static Valor evaluar(int salones, int labs, List<Solicitud> solicitudes, boolean[] subconjunto) {
+        int salonesLibres = salones;
+        int labsLibres = labs;
+        int programas = 0;
+        int moviles = 0;
+        for (int i = 0; i < subconjunto.length; i++) {
+            if (!subconjunto[i]) {
+                continue;
+            }
+            int s = solicitudes.get(i).getNumSalones();
+            int l = solicitudes.get(i).getNumLaboratorios();
+            int labsTomados = Math.min(l, labsLibres);
+            int faltantes = l - labsTomados;
+            if (s + faltantes > salonesLibres) {
+                return null;
+            }
+            labsLibres -= labsTomados;
+            salonesLibres -= s + faltantes;
+            moviles += faltantes;
+            programas++;
+        }
+        return new Valor(programas, moviles);
+    }
+
+    private static String describir(List<Solicitud> solicitudes, ResultadoAsignacion[] rechazos) {
+        StringBuilder texto = new StringBuilder("[");
+        for (int i = 0; i < solicitudes.size(); i++) {
+            texto.append(i == 0 ? "" : ", ")
+                    .append('(').append(solicitudes.get(i).getNumSalones())
+                    .append(',').append(solicitudes.get(i).getNumLaboratorios()).append(')')
+                    .append(rechazos[i] != null ? "R" : "");
+        }
+        return texto.append(']').toString();
+    }
+}